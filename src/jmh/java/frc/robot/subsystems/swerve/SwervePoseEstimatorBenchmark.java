@@ -0,0 +1,127 @@
+package frc.robot.subsystems.swerve;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+
+/**
+ * Compares a cycle like the robot's, ten odometry updates and a vision measurement from 100 ms ago, between the
+ * {@link SwervePoseEstimator} and WPILib's {@link SwerveDrivePoseEstimator}. The WPILib estimator is given freshly
+ * built module positions every update, as the drive used to do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SwervePoseEstimatorBenchmark {
+
+    private static final double
+        PERIOD_SECS = 0.004,
+        VX = 2,
+        VY = 0.5,
+        OMEGA = 1.5;
+
+    private static final int
+        CAPACITY = 512,
+        UPDATES_PER_CYCLE = 10,
+        VISION_LATENCY_STEPS = 25;
+
+    private static final Translation2d[] MODULE_TRANSLATIONS = {
+        new Translation2d(0.3, 0.3),
+        new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3),
+        new Translation2d(-0.3, -0.3),
+    };
+
+    private final double[] moduleSpeeds = new double[MODULE_TRANSLATIONS.length];
+    private final double[] anglesDegrees = new double[MODULE_TRANSLATIONS.length];
+    private final Rotation2d[] angles = new Rotation2d[MODULE_TRANSLATIONS.length];
+    private final double[] distances = new double[MODULE_TRANSLATIONS.length];
+    private final Pose2d visionPose = new Pose2d();
+
+    private SwervePoseEstimator estimator;
+    private SwerveDrivePoseEstimator wpilibEstimator;
+    private int step;
+
+    @Setup
+    public void setup () {
+        // The robot drives at constant chassis speeds, so each module has a constant speed and robot-relative angle
+        SwerveModulePosition[] startPositions = new SwerveModulePosition[MODULE_TRANSLATIONS.length];
+        for (int i = 0; i < MODULE_TRANSLATIONS.length; i ++) {
+            double moduleVx = VX - OMEGA * MODULE_TRANSLATIONS[i].getY();
+            double moduleVy = VY + OMEGA * MODULE_TRANSLATIONS[i].getX();
+            moduleSpeeds[i] = Math.hypot(moduleVx, moduleVy);
+            anglesDegrees[i] = Math.toDegrees(Math.atan2(moduleVy, moduleVx));
+            angles[i] = Rotation2d.fromDegrees(anglesDegrees[i]);
+            startPositions[i] = new SwerveModulePosition(0, angles[i]);
+        }
+
+        step = 0;
+        estimator = new SwervePoseEstimator(MODULE_TRANSLATIONS, CAPACITY);
+        estimator.resetPosition(0, distances, new Pose2d());
+        wpilibEstimator = new SwerveDrivePoseEstimator(
+            new SwerveDriveKinematics(MODULE_TRANSLATIONS),
+            new Rotation2d(),
+            startPositions,
+            new Pose2d()
+        );
+    }
+
+    private double advance () {
+        step ++;
+        double timestamp = step * PERIOD_SECS;
+        for (int i = 0; i < distances.length; i ++) {
+            distances[i] = moduleSpeeds[i] * timestamp;
+        }
+        return timestamp;
+    }
+
+    private double getVisionTimestamp () {
+        return (step - VISION_LATENCY_STEPS) * PERIOD_SECS;
+    }
+
+    @Benchmark
+    public double swervePoseEstimatorCycle () {
+        for (int i = 0; i < UPDATES_PER_CYCLE; i ++) {
+            double timestamp = advance();
+            estimator.update(timestamp, OMEGA * timestamp, distances, anglesDegrees);
+        }
+
+        estimator.addVisionMeasurement(0, 0, 0, getVisionTimestamp());
+        return estimator.getX();
+    }
+
+    @Benchmark
+    public Pose2d wpilibPoseEstimatorCycle () {
+        for (int i = 0; i < UPDATES_PER_CYCLE; i ++) {
+            double timestamp = advance();
+            SwerveModulePosition[] positions = new SwerveModulePosition[distances.length];
+            for (int module = 0; module < positions.length; module ++) {
+                positions[module] = new SwerveModulePosition(distances[module], angles[module]);
+            }
+            wpilibEstimator.updateWithTime(timestamp, new Rotation2d(OMEGA * timestamp), positions);
+        }
+
+        wpilibEstimator.addVisionMeasurement(visionPose, getVisionTimestamp());
+        return wpilibEstimator.getEstimatedPosition();
+    }
+
+}
@@ -0,0 +1,65 @@
+package frc.robot.subsystems.swerve;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Measures one {@link SwerveSetpointGenerator#calculate} step, which runs every fast control cycle. The desired
+ * speeds cycle through a precomputed mix of feasible and limited setpoints, so both the fast path and the steer
+ * and acceleration limits are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SwerveSetpointGeneratorBenchmark {
+
+    private static final double
+        MAX_WHEEL_SPEED = 4,
+        DT_SECS = 0.005;
+
+    private static final int INPUT_COUNT = 1024;
+
+    private static final Translation2d[] MODULE_TRANSLATIONS = {
+        new Translation2d(0.3, 0.3),
+        new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3),
+        new Translation2d(-0.3, -0.3),
+    };
+
+    private SwerveSetpointGenerator generator;
+    private final double[] vxs = new double[INPUT_COUNT], vys = new double[INPUT_COUNT], omegas = new double[INPUT_COUNT];
+    private int index = 0;
+
+    @Setup
+    public void setup () {
+        generator = new SwerveSetpointGenerator(MODULE_TRANSLATIONS, 10, 30, () -> 600);
+        for (int i = 0; i < INPUT_COUNT; i ++) {
+            vxs[i] = Math.sin(i * 0.05) * 3;
+            vys[i] = Math.cos(i * 0.065) * 3;
+            omegas[i] = Math.sin(i * 0.035) * 4;
+        }
+    }
+
+    @Benchmark
+    public double calculate () {
+        index = (index + 1) % INPUT_COUNT;
+        generator.calculate(vxs[index], vys[index], omegas[index], MAX_WHEEL_SPEED, DT_SECS);
+        return generator.getModuleStates().getSpeed(0);
+    }
+
+}
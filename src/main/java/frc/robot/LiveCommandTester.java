@@ -62,7 +62,10 @@ public class LiveCommandTester {
         }
     }
     
-    private static boolean getYesNo (ConsoleManager console, String prompt) {
+    /**
+     * Prompt the user over the console until they answer yes or no.
+     */
+    public static boolean getYesNo (ConsoleManager console, String prompt) {
         Optional<Boolean> answer = Optional.empty();
         
         console.println("");
@@ -6,16 +6,25 @@ package frc.robot;
 
 import claw.CLAWRobot;
 import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import frc.robot.limelight.Limelight;
+import frc.robot.limelight.LimelightJsonBenchmark;
+import frc.robot.subsystems.swerve.Swerve;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.SensorCache;
 import frc.robot.vision.VisionManager;
+import frc.robot.vision.VisionPoseFusion;
 
 public class Robot extends TimedRobot {
   private Command m_autonomousCommand;
 
   private RobotContainer m_robotContainer;
 
+  private LoopProfiler profiler;
+  private LoopProfiler.Stage sensorCacheStage, schedulerStage, limelightStage, visionFusionStage, visionManagerStage;
+
   @Override
   public void startCompetition () {
     CLAWRobot.startCompetition(this, super::startCompetition);
@@ -23,14 +32,49 @@ public class Robot extends TimedRobot {
   
   @Override
   public void robotInit() {
+    profiler = LoopProfiler.getInstance();
+    sensorCacheStage = profiler.getStage("SensorCache.refreshAll");
+    schedulerStage = profiler.getStage("CommandScheduler.run");
+    limelightStage = profiler.getStage("Limelight.update");
+    visionFusionStage = profiler.getStage("VisionPoseFusion.update");
+    visionManagerStage = profiler.getStage("VisionManager.update");
+    
     m_robotContainer = new RobotContainer();
+    
+    // Registers the JSON parser benchmark command
+    LimelightJsonBenchmark.getInstance();
+    
+    Swerve.getInstance().startFastLoop(this);
   }
 
   @Override
   public void robotPeriodic() {
-    CommandScheduler.getInstance().run();
+    profiler.startCycle();
+    
+    // Read every cached sensor once so all subsystems and commands see the same values this cycle
+    sensorCacheStage.start();
+    SensorCache.refreshAll();
+    sensorCacheStage.stop();
+    
+    // Receive camera frames before the scheduler runs, so commands see this cycle's frames
+    limelightStage.start();
     Limelight.update();
+    limelightStage.stop();
+    
+    // Correct the pose estimate with the new frames before commands read it
+    visionFusionStage.start();
+    VisionPoseFusion.getInstance().update();
+    visionFusionStage.stop();
+    
+    schedulerStage.start();
+    CommandScheduler.getInstance().run();
+    schedulerStage.stop();
+    
+    visionManagerStage.start();
     VisionManager.getInstance().update();
+    visionManagerStage.stop();
+    
+    profiler.endCycle();
   }
 
   @Override
@@ -73,7 +117,15 @@ public class Robot extends TimedRobot {
   public void testPeriodic() {}
 
   @Override
-  public void simulationInit() {}
+  public void simulationInit() {
+    // With no GUI or driver station to enable the robot (e.g. a headless simulation on a CI box), run autonomous
+    if (System.getenv("SIM_AUTONOMOUS") != null) {
+      DriverStationSim.setDsAttached(true);
+      DriverStationSim.setAutonomous(true);
+      DriverStationSim.setEnabled(true);
+      DriverStationSim.notifyNewData();
+    }
+  }
 
   @Override
   public void simulationPeriodic() {}
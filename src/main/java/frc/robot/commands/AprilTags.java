@@ -17,6 +17,7 @@ import frc.robot.subsystems.swerve.RotationalPID;
 import frc.robot.subsystems.swerve.Swerve;
 import frc.robot.util.NumericDebouncer;
 import frc.robot.limelight.Limelight;
+import frc.robot.limelight.Limelight.TargetData;
 import frc.robot.subsystems.Vision;
 
 public class AprilTags extends CommandBase {
@@ -76,8 +77,11 @@ public class AprilTags extends CommandBase {
     Optional<Double> targetRotation;
     Optional<Double> targetDistance;
 
-    if (vision.seesTarget() && vision.isTargetFriendly()) {
-      Rotation2d tagAbsRotation = swerveDrive.getRobotRotation().plus(Rotation2d.fromDegrees((Limelight.ARM_LIMELIGHT.getTarget()).get().horizontalOffset()));
+    // Read the arm camera's target once, from the same frame every other consumer sees this cycle
+    Optional<TargetData> armTarget = Limelight.ARM_LIMELIGHT.getTarget();
+
+    if (armTarget.isPresent() && vision.seesTarget() && vision.isTargetFriendly()) {
+      Rotation2d tagAbsRotation = swerveDrive.getRobotRotation().plus(Rotation2d.fromDegrees(armTarget.get().horizontalOffset()));
       targetRotation = rotationMeasurement.calculate(Optional.of(tagAbsRotation.getDegrees()));
       targetDistance = distanceMeasurement.calculate(Optional.of(vision.getDistance()));
     } else {
@@ -12,6 +12,7 @@ import frc.robot.subsystems.Arm;
 import frc.robot.subsystems.Claw;
 import frc.robot.subsystems.Arm.ArmPosition;
 import frc.robot.subsystems.Claw.ClawMovement;
+import frc.robot.util.LoopProfiler;
 
 public class ArmControlCommand extends CommandBase {
     
@@ -38,6 +39,8 @@ public class ArmControlCommand extends CommandBase {
     
     private final Transform boundSpeedLimitsTransform;
     
+    private final LoopProfiler.Stage executeStage = LoopProfiler.getInstance().getStage("ArmControlCommand.execute");
+    
     public ArmControlCommand (
         Arm arm,
         Claw claw,
@@ -77,6 +80,7 @@ public class ArmControlCommand extends CommandBase {
     
     @Override
     public void execute () {
+        executeStage.start();
         
         // Set claw movement
         if (!claw.hasBeenHomed()) {
@@ -113,6 +117,7 @@ public class ArmControlCommand extends CommandBase {
         
         arm.setArmSpeed(armInputSpeed);
         
+        executeStage.stop();
     }
     
     @Override
@@ -12,7 +12,8 @@ import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.commands.InputCurve.Input2D;
 import frc.robot.commands.auton.SwerveTurnCorrector;
 import frc.robot.subsystems.swerve.Swerve;
-import frc.robot.subsystems.swerve.SwerveTeleopAccelerationConstraints;
+import frc.robot.subsystems.swerve.SwerveSetpointGenerator;
+import frc.robot.util.LoopProfiler;
 
 public class DriveCommand extends CommandBase {
     
@@ -20,7 +21,7 @@ public class DriveCommand extends CommandBase {
         ROTATE_CURVE = InputCurve.THREE_HALVES_CURVE.withDeadband(0.14),
         STRAFE_CURVE = InputCurve.THREE_HALVES_CURVE.withDeadband(0.14);
     
-    private final SwerveTeleopAccelerationConstraints accelerationConstraints = new SwerveTeleopAccelerationConstraints(14.7, 54);
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(14.7, 54);
     
     private final Swerve swerve;
     private final BooleanSupplier xModeInput, turboModeControl, resetGyro, robotRelDriveControl;
@@ -29,6 +30,8 @@ public class DriveCommand extends CommandBase {
     private final Supplier<Optional<Double>> lockInRotationControl;
     private final SwerveTurnCorrector turnCorrector = new SwerveTurnCorrector();
     
+    private final LoopProfiler.Stage executeStage = LoopProfiler.getInstance().getStage("DriveCommand.execute");
+    
     private double DS_strafeX, DS_strafeY, DS_rotate;
     
     private Optional<Double> lockInRotation = Optional.empty();
@@ -68,12 +71,14 @@ public class DriveCommand extends CommandBase {
         // Stop swerve drive so it doesn't move on startup
         swerve.stop();
         
-        // Reset acceleration constraints to the current timestamp
-        accelerationConstraints.reset();
+        // Reset the setpoint generator to a stopped robot at the current timestamp
+        setpointGenerator.reset();
     }
     
     @Override
     public void execute () {
+        executeStage.start();
+        
         // Driving swerve
         if (xModeInput.getAsBoolean()) {
             // Put in x mode
@@ -89,6 +94,8 @@ public class DriveCommand extends CommandBase {
         if (resetGyro.getAsBoolean()) {
             swerve.zeroGyroTeleop();
         }
+        
+        executeStage.stop();
     }
     
     private double getTurnSpeed (double userSuppliedSpeed) {
@@ -103,7 +110,11 @@ public class DriveCommand extends CommandBase {
         // Return a turn speed according to the presense (or absense) of a lock-in rotation
         if (lockInRotation.isPresent()) {
             // If there is an active lock-in rotation, then turn accordingly
-            return turnCorrector.getCorrectionSpeed(swerve.getTeleopDriveRobotRotation(), Rotation2d.fromDegrees(-lockInRotation.get()));
+            return turnCorrector.getCorrectionSpeed(
+                swerve.getTeleopDriveRobotRotation(),
+                Rotation2d.fromDegrees(-lockInRotation.get()),
+                swerve.getRobotYawRateDegreesPerSec()
+            );
         } else {
             // Otherwise, turn according to user input
             return userSuppliedSpeed * 6.5;
@@ -148,7 +159,12 @@ public class DriveCommand extends CommandBase {
             );
         }
         
-        swerve.moveRobotRelative(accelerationConstraints.applyToSpeeds(desiredSpeeds));
+        swerve.moveRobotRelative(
+            setpointGenerator,
+            desiredSpeeds.vxMetersPerSecond,
+            desiredSpeeds.vyMetersPerSecond,
+            desiredSpeeds.omegaRadiansPerSecond
+        );
     }
     
     @Override
@@ -14,6 +14,7 @@ import frc.robot.subsystems.Intake;
 import frc.robot.subsystems.Conveyor.ConveyorMode;
 import frc.robot.subsystems.Intake.IntakeEngagement;
 import frc.robot.subsystems.Intake.IntakeSpeedMode;
+import frc.robot.util.LoopProfiler;
 
 public class TeleopIntake extends CommandBase {
     
@@ -24,6 +25,8 @@ public class TeleopIntake extends CommandBase {
     private final Debouncer runConveyorDebouncer = new Debouncer(1.75, DebounceType.kFalling);
     private IntakeRunType lastIntakeRunType = IntakeRunType.NONE;
     
+    private final LoopProfiler.Stage executeStage = LoopProfiler.getInstance().getStage("TeleopIntake.execute");
+    
     public TeleopIntake(
         Conveyor conveyor,
         Intake intake,
@@ -86,6 +89,7 @@ public class TeleopIntake extends CommandBase {
     
     @Override
     public void execute() {
+        executeStage.start();
         
         // Intake control
         
@@ -127,6 +131,7 @@ public class TeleopIntake extends CommandBase {
         // Run the last intake type so that while disengaging the intake continues to run
         lastIntakeRunType.runOnIntake(intake);
         
+        executeStage.stop();
     }
     
     @Override
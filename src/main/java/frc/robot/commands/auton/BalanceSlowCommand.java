@@ -20,9 +20,15 @@ public class BalanceSlowCommand extends CommandBase {
     
     private static final double PITCH_SETPOINT_ERROR_DEG = 1;
     
+    /**
+     * Drive speed per degree/sec of pitch rate. The pitch rate comes straight from consecutive gyro samples,
+     * instead of differencing the pitch once per loop.
+     */
+    private static final double DRIVE_PITCH_RATE_GAIN = 0.002;
+    
     private final Swerve swerveDrive;
     
-    private final PIDController drivePID = new PIDController(-0.049, 0, -0.002);
+    private final PIDController drivePID = new PIDController(-0.049, 0, 0);
     private final Debouncer balancedDebouncer = new Debouncer(1, DebounceType.kRising);
     private final SwerveTurnCorrector turnCorrector = new SwerveTurnCorrector();
     
@@ -47,14 +53,18 @@ public class BalanceSlowCommand extends CommandBase {
     public void execute () {
         double pitch = swerveDrive.getRobotPitch();
         
-        double speed = drivePID.calculate(pitch);
+        double speed = drivePID.calculate(pitch) + DRIVE_PITCH_RATE_GAIN * swerveDrive.getRobotPitchRateDegreesPerSec();
         if (Math.abs(pitch) < PITCH_SETPOINT_ERROR_DEG) speed = 0;
         
         swerveDrive.moveRobotRelative(
             new ChassisSpeeds(
                 speed,
                 0,
-                turnCorrector.getCorrectionSpeed(swerveDrive.getRobotRotation(), initialRobotYaw)
+                turnCorrector.getCorrectionSpeed(
+                    swerveDrive.getRobotRotation(),
+                    initialRobotYaw,
+                    swerveDrive.getRobotYawRateDegreesPerSec()
+                )
             )
         );
     }
@@ -2,11 +2,27 @@ package frc.robot.commands.auton;
 
 import claw.math.input.InputTransform;
 import claw.math.Transform;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.util.PIDGains;
 
 public class SwerveTurnCorrector {
     
     private static final double OFFSET_MIN = 1;
+    public static final double MAX_CORRECTION_SPEED = 3.5;
+    
+    /**
+     * Turn speed (radians per second) per degree of heading error. The derivative gain is subtracted per
+     * degree/sec of measured yaw rate, which damps the correction so it does not overshoot, and defaults to about
+     * a tenth of a second's worth of the proportional correction. These can be tuned with the {@code autotune}
+     * command, and the integral gain is not used.
+     */
+    public static final PIDGains HEADING_GAINS = new PIDGains(
+        "HEADING_PID",
+        MAX_CORRECTION_SPEED / 30.,
+        0,
+        MAX_CORRECTION_SPEED / 30. * 0.1
+    );
     
     private final Transform yawOffsetToCorrectionTurn =
         // Wrap degrees from -180 to +180
@@ -21,12 +37,20 @@ public class SwerveTurnCorrector {
         .then(Transform.NEGATE)
         
         // Apply the corrective turn
-        .then(offsetDeg -> offsetDeg / 30.)
-        .then(Transform.clamp(-1, 1))
-        .then(v -> 3.5*v);
+        .then(offsetDeg -> HEADING_GAINS.getP() * offsetDeg)
+        .then(Transform.clamp(-MAX_CORRECTION_SPEED, MAX_CORRECTION_SPEED));
     
     public double getCorrectionSpeed (Rotation2d currentRotation, Rotation2d desiredRotation) {
         return yawOffsetToCorrectionTurn.apply(currentRotation.minus(desiredRotation).getDegrees());
     }
     
+    /**
+     * Get the turn speed which corrects toward the desired rotation, damped by the robot's measured yaw rate
+     * (counter-clockwise positive, e.g. from {@link frc.robot.subsystems.swerve.Swerve#getRobotYawRateDegreesPerSec()}).
+     */
+    public double getCorrectionSpeed (Rotation2d currentRotation, Rotation2d desiredRotation, double yawRateDegreesPerSec) {
+        double correction = getCorrectionSpeed(currentRotation, desiredRotation) - HEADING_GAINS.getD() * yawRateDegreesPerSec;
+        return MathUtil.clamp(correction, -MAX_CORRECTION_SPEED, MAX_CORRECTION_SPEED);
+    }
+    
 }
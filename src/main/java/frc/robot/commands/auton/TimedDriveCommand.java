@@ -71,7 +71,11 @@ public class TimedDriveCommand extends CommandBase {
             new ChassisSpeeds(
                 xSpeed,
                 ySpeed,
-                withTurnCorrection ? turnCorrector.getCorrectionSpeed(swerve.getRobotRotation(), initialRobotRotation) : 0
+                withTurnCorrection ? turnCorrector.getCorrectionSpeed(
+                    swerve.getRobotRotation(),
+                    initialRobotRotation,
+                    swerve.getRobotYawRateDegreesPerSec()
+                ) : 0
             )
         );
     }
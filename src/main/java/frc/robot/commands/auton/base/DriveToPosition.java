@@ -12,7 +12,7 @@ import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.numbers.N2;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.subsystems.swerve.Swerve;
-import frc.robot.subsystems.swerve.SwerveTeleopAccelerationConstraints;
+import frc.robot.subsystems.swerve.SwerveSetpointGenerator;
 
 public class DriveToPosition extends CommandBase {
     
@@ -20,7 +20,7 @@ public class DriveToPosition extends CommandBase {
     private static final double
         MAX_STRAFE_VELOCITY_AT_END = 0.05,
         MAX_ANGULAR_VELOCITY_AT_END = 0.2,
-        MAX_DIST_FROM_ENDPOINT = 0.02,
+        MAX_DIST_FROM_ENDPOINT = 0.01,
         MAX_RADIANS_FROM_ENDPOINT = 0.01;
     
     private final Swerve swerve;
@@ -31,10 +31,10 @@ public class DriveToPosition extends CommandBase {
         thetaRadiansController = new PIDController(3, 0, 0);
     
     private static final double MAX_STRAFE_VELOCITY = 4.5, MAX_ANGULAR_VELOCITY = 4.5;
-    private final SwerveTeleopAccelerationConstraints constraints = new SwerveTeleopAccelerationConstraints(14.5, 9);
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(14.5, 9);
     
     private Pose2d targetPose = new Pose2d();
-    private ChassisSpeeds lastCommandedSpeeds = new ChassisSpeeds();
+    private final ChassisSpeeds lastCommandedSpeeds = new ChassisSpeeds();
     
     /**
      * Drives the swerve drive to a final target pose
@@ -59,28 +59,34 @@ public class DriveToPosition extends CommandBase {
     @Override
     public void initialize () {
         targetPose = robotPoseToTargetPose.apply(swerve.getPose());
-        lastCommandedSpeeds = new ChassisSpeeds();
         xController.reset();
         yController.reset();
         thetaRadiansController.reset();
-        constraints.reset();
+        setpointGenerator.reset();
+        setpointGenerator.getChassisSpeeds(lastCommandedSpeeds);
     }
     
     @Override
     public void execute () {
-        ChassisSpeeds desiredSpeeds = getPIDDesiredChassisSpeeds();
+        // Control from where the robot will be once the speeds already commanded take effect
+        Pose2d predictedPose = swerve.getPredictedPose();
+        
+        ChassisSpeeds desiredSpeeds = getPIDDesiredChassisSpeeds(predictedPose);
         ChassisSpeeds constrainedSpeeds = applyConstraintsToSpeeds(desiredSpeeds);
-        ChassisSpeeds robotRelSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(constrainedSpeeds, swerve.getRobotRotation());
-        swerve.moveRobotRelative(robotRelSpeeds);
-        lastCommandedSpeeds = robotRelSpeeds;
+        ChassisSpeeds robotRelSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(constrainedSpeeds, predictedPose.getRotation());
+        swerve.moveRobotRelative(
+            setpointGenerator,
+            robotRelSpeeds.vxMetersPerSecond,
+            robotRelSpeeds.vyMetersPerSecond,
+            robotRelSpeeds.omegaRadiansPerSecond
+        );
+        setpointGenerator.getChassisSpeeds(lastCommandedSpeeds);
     }
     
     /**
      * Gets field-relative speeds
      */
-    private ChassisSpeeds getPIDDesiredChassisSpeeds () {
-        Pose2d currentPose = swerve.getPose();
-        
+    private ChassisSpeeds getPIDDesiredChassisSpeeds (Pose2d currentPose) {
         double xSpeed = xController.calculate(currentPose.getX(), targetPose.getX());
         double ySpeed = yController.calculate(currentPose.getY(), targetPose.getY());
         
@@ -107,11 +113,11 @@ public class DriveToPosition extends CommandBase {
             angularVelocity = -MAX_ANGULAR_VELOCITY;
         }
         
-        return constraints.applyToSpeeds(new ChassisSpeeds(
+        return new ChassisSpeeds(
             strafeVelocity.getX(),
             strafeVelocity.getY(),
             angularVelocity
-        ));
+        );
     }
     
     @Override
@@ -7,20 +7,38 @@ import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.commands.Container;
+import frc.robot.limelight.LimelightFrame;
 import frc.robot.limelight.Limelight.AprilTagData;
+import frc.robot.limelight.Limelight.FrameSubscription;
 import frc.robot.vision.VisionManager;
 
 public class GetAprilTag extends CommandBase {
     
     private final Container<Transform2d> data;
+    private FrameSubscription frames;
     
     public GetAprilTag (Container<Transform2d> data) {
         this.data = data;
     }
     
+    @Override
+    public void initialize () {
+        frames = VisionManager.getInstance().subscribeArmFrames();
+    }
+    
     @Override
     public void execute () {
-        Optional<AprilTagData> optData = VisionManager.getInstance().getArmAprilTag();
+        VisionManager.getInstance().requestArmVisionProcessor();
+        
+        // Use the first frame received since the command started which sees a tag
+        Optional<LimelightFrame> frame;
+        while (data.get() == null && (frame = frames.poll()).isPresent()) {
+            useFrame(frame.get());
+        }
+    }
+    
+    private void useFrame (LimelightFrame frame) {
+        Optional<AprilTagData> optData = frame.getAprilTag();
         
         if (optData.isPresent()) {
             AprilTagData tag = optData.get();
@@ -56,7 +56,7 @@ public class DriveTest extends CommandBase {
         double sysTime = WPIUtilJNI.getSystemTime() * 1.e-6 - time;
         
         Trajectory.State desiredPose = trajectory.sample(sysTime);
-        ChassisSpeeds speeds = driveController.calculate(swerve.getPose(), desiredPose, desiredPose.poseMeters.getRotation());
+        ChassisSpeeds speeds = driveController.calculate(swerve.getPredictedPose(), desiredPose, desiredPose.poseMeters.getRotation());
         // System.out.println(speeds);
         swerve.moveRobotRelative(speeds);
     }
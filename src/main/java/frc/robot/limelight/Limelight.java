@@ -1,19 +1,22 @@
 package frc.robot.limelight;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Optional;
 
 import edu.wpi.first.cscore.HttpCamera;
 import edu.wpi.first.cscore.VideoSource;
-import edu.wpi.first.math.MathUtil;
-import edu.wpi.first.math.WPIMathJNI;
 import edu.wpi.first.math.geometry.Pose3d;
-import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.geometry.Rotation3d;
-import edu.wpi.first.math.util.Units;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.DoubleSubscriber;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.StringSubscriber;
+import edu.wpi.first.networktables.TimestampedDouble;
+import edu.wpi.first.networktables.TimestampedDoubleArray;
+import edu.wpi.first.wpilibj.Timer;
 
 public class Limelight {
     
@@ -21,35 +24,77 @@ public class Limelight {
     
     public static final Limelight
         INTAKE_LIMELIGHT = new Limelight("intake", "10.17.11.17"),
-        ARM_LIMELIGHT = new Limelight("arm", "10.17.11.16");
+        ARM_LIMELIGHT = new Limelight("arm", "10.17.11.16"),
+        DEFAULT_LIMELIGHT = new Limelight("", "limelight.local");
 
-    private NetworkTable TABLE;
     private static final long SNAPSHOT_RESET_MILLIS = 1000;
+
+    /**
+     * The number of frames kept for consumers to drain. At 90 frames per second this is about a third of a second,
+     * so a consumer which drains once per 20 ms cycle never misses a frame.
+     */
+    private static final int FRAME_BUFFER_SIZE = 32;
+
+    /**
+     * The number of updates each subscriber queues between polls. Values beyond this are dropped by NetworkTables.
+     */
+    private static final int QUEUE_DEPTH = 20;
+
+    /**
+     * Frames older than this are treated as if the camera had not sent any results.
+     */
+    private static final double STALE_FRAME_SECS = 0.5;
+
+    /**
+     * The camera publishes a frame's values one at a time, so each gets its own timestamp, and the frame marker
+     * isn't necessarily the last of them. Values up to this long after a marker belong to its frame. This is well
+     * under the 11 ms between frames at 90 frames per second.
+     */
+    private static final long FRAME_VALUE_WINDOW_MICROS = 5000;
+
+    private static final double[] NO_POSE = new double[0];
+
+    private final NetworkTable TABLE;
     private Optional<HttpCamera> cameraServer = Optional.empty();
     
-    private final String cameraAddress;
+    private final String tableName;
     private final String cameraIP;
     
     /**
-     * Basic targeting data
+     * Basic targeting data. Every value the camera publishes is queued with its timestamp, so that the values
+     * published together for each frame can be grouped back into a {@link LimelightFrame}.
      */
-    private final NetworkTableEntry
-        ENTRY_TV,                   // Whether the limelight has any valid targets (0 or 1)
-        ENTRY_TX,                   // Horizontal offset from crosshair to target
-        ENTRY_TY,                   // Vertical offset from crosshair to target
-        ENTRY_TA,                   // Target area of image (percentage)
-        ENTRY_TL,                   // Pipeline's latency contribution (ms)
-        ENTRY_TSHORT,               // Sidelength of shortest side of the fitted bounding box (pixels)
-        ENTRY_TLONG,                // Sidelength of longest side of the fitted bounding box (pixels)
-        ENTRY_THOR,                 // Horizontal sidelength of the rough bounding box (pixels)
-        ENTRY_TVERT,                // Vertical sidelength of the rough bounding box (pixels)
-        ENTRY_GETPIPE,              // True active pipeline index of the camera (0 .. 9)
-        ENTRY_JSON,                 // Full JSON dump of targeting results
-        ENTRY_TCLASS,               // Class ID of primary neural detector result or neural classifier result
-        ENTRY_TC,                   // Get the average HSV color underneath the crosshair region as a NumberArray
-        ENTRY_TPOSE,                // Get the pose of the target relative to the robot in an array of 6 doubles
-        ENTRY_RPOSE,                // The robot pose in fieldspace
-        ENTRY_TID;                  // Get the ID of the tag identified (Only effective for AprilTags)
+    private final DoubleChannel
+        CHANNEL_HB,                 // Heartbeat, which increments once per frame
+        CHANNEL_TV,                 // Whether the limelight has any valid targets (0 or 1)
+        CHANNEL_TX,                 // Horizontal offset from crosshair to target
+        CHANNEL_TY,                 // Vertical offset from crosshair to target
+        CHANNEL_TA,                 // Target area of image (percentage)
+        CHANNEL_TL,                 // Pipeline's latency contribution (ms)
+        CHANNEL_CL,                 // Capture latency, from the image being captured to the pipeline starting (ms)
+        CHANNEL_TSHORT,             // Sidelength of shortest side of the fitted bounding box (pixels)
+        CHANNEL_TLONG,              // Sidelength of longest side of the fitted bounding box (pixels)
+        CHANNEL_THOR,               // Horizontal sidelength of the rough bounding box (pixels)
+        CHANNEL_TVERT,              // Vertical sidelength of the rough bounding box (pixels)
+        CHANNEL_GETPIPE,            // True active pipeline index of the camera (0 .. 9)
+        CHANNEL_TCLASS,             // Class ID of primary neural detector result or neural classifier result
+        CHANNEL_TID;                // Get the ID of the tag identified (Only effective for AprilTags)
+
+    private final DoubleArrayChannel
+        CHANNEL_TC,                 // Get the average HSV color underneath the crosshair region as a NumberArray
+        CHANNEL_TPOSE,              // Get the pose of the target relative to the camera in an array of 6 doubles
+        CHANNEL_TPOSE_ROBOT,        // Get the pose of the target relative to the robot in an array of 6 doubles
+        CHANNEL_RPOSE,              // The robot pose in fieldspace
+        CHANNEL_RPOSE_BLUE;         // The robot pose in fieldspace, with the origin at the blue driver station
+
+    private final DoubleChannel[] doubleChannels;
+    private final DoubleArrayChannel[] doubleArrayChannels;
+
+    private final StringSubscriber SUB_JSON;    // Full JSON dump of targeting results
+
+    private final LimelightJsonParser jsonParser = new LimelightJsonParser();
+    private final Optional<LimelightJsonParser> jsonResults = Optional.of(jsonParser);
+    private long parsedJsonChange = -1;
 
     private final NetworkTableEntry
         ENTRY_LED_MODE,
@@ -59,28 +104,70 @@ public class Limelight {
         ENTRY_SNAPSHOT,
         ENTRY_CROP_RECTANGLE;
 
+    /**
+     * Frames whose pipeline plus capture latency is outside this range, in seconds, are discarded as invalid.
+     */
+    private static final double MIN_VALID_LATENCY_SECS = 0, MAX_VALID_LATENCY_SECS = 1;
+
+    // The frame ring is allocated once, along with an optional wrapping each frame, so receiving and handing out
+    // frames never allocates
+    private final LimelightFrame[] frames = new LimelightFrame[FRAME_BUFFER_SIZE];
+    private final Optional<LimelightFrame>[] frameOptionals = createFrameOptionals(frames);
+    private long nextSequence = 0;
+
+    // The frame every consumer sees this cycle, chosen once per update
+    private Optional<LimelightFrame> currentFrame = Optional.empty();
+
+    private double lastHeartbeat = Double.NaN, lastFrameTimestampSecs = Double.NEGATIVE_INFINITY;
+    private long invalidFrameCount = 0;
+
+    /**
+     * Create a new {@link Limelight}.
+     * @param cameraAddress The camera's hostname suffix, so that its table is {@code limelight-<cameraAddress>}.
+     * An empty address uses the unnamed {@code limelight} table.
+     * @param cameraIP      The camera's IP address or hostname, for its video stream.
+     */
     public Limelight (String cameraAddress, String cameraIP) {
         
-        this.cameraAddress = cameraAddress;
+        this.tableName = cameraAddress.isEmpty() ? "limelight" : "limelight-" + cameraAddress;
         this.cameraIP = cameraIP;
         
-        TABLE = NetworkTableInstance.getDefault().getTable("limelight-" + cameraAddress);
-        ENTRY_TV =      TABLE.getEntry("tv");
-        ENTRY_TX =      TABLE.getEntry("tx");
-        ENTRY_TY =      TABLE.getEntry("ty");
-        ENTRY_TA =      TABLE.getEntry("ta");
-        ENTRY_TL =      TABLE.getEntry("tl");
-        ENTRY_TSHORT =  TABLE.getEntry("tshort");
-        ENTRY_TLONG =   TABLE.getEntry("tlong");
-        ENTRY_THOR =    TABLE.getEntry("thor");
-        ENTRY_TVERT =   TABLE.getEntry("tvert");
-        ENTRY_GETPIPE = TABLE.getEntry("getpipe");
-        ENTRY_JSON =    TABLE.getEntry("json");
-        ENTRY_TCLASS =  TABLE.getEntry("tclass");
-        ENTRY_TC =      TABLE.getEntry("tc");
-        ENTRY_TPOSE =   TABLE.getEntry("targetpose_cameraspace");
-        ENTRY_RPOSE =   TABLE.getEntry("botpose");
-        ENTRY_TID =     TABLE.getEntry("tid");
+        TABLE = NetworkTableInstance.getDefault().getTable(tableName);
+        CHANNEL_HB =        new DoubleChannel(TABLE, "hb");
+        CHANNEL_TV =        new DoubleChannel(TABLE, "tv");
+        CHANNEL_TX =        new DoubleChannel(TABLE, "tx");
+        CHANNEL_TY =        new DoubleChannel(TABLE, "ty");
+        CHANNEL_TA =        new DoubleChannel(TABLE, "ta");
+        CHANNEL_TL =        new DoubleChannel(TABLE, "tl");
+        CHANNEL_CL =        new DoubleChannel(TABLE, "cl");
+        CHANNEL_TSHORT =    new DoubleChannel(TABLE, "tshort");
+        CHANNEL_TLONG =     new DoubleChannel(TABLE, "tlong");
+        CHANNEL_THOR =      new DoubleChannel(TABLE, "thor");
+        CHANNEL_TVERT =     new DoubleChannel(TABLE, "tvert");
+        CHANNEL_GETPIPE =   new DoubleChannel(TABLE, "getpipe");
+        CHANNEL_TCLASS =    new DoubleChannel(TABLE, "tclass");
+        CHANNEL_TID =       new DoubleChannel(TABLE, "tid");
+
+        CHANNEL_TC =            new DoubleArrayChannel(TABLE, "tc");
+        CHANNEL_TPOSE =         new DoubleArrayChannel(TABLE, "targetpose_cameraspace");
+        CHANNEL_TPOSE_ROBOT =   new DoubleArrayChannel(TABLE, "targetpose_robotspace");
+        CHANNEL_RPOSE =         new DoubleArrayChannel(TABLE, "botpose");
+        CHANNEL_RPOSE_BLUE =    new DoubleArrayChannel(TABLE, "botpose_wpiblue");
+
+        doubleChannels = new DoubleChannel[] {
+            CHANNEL_HB, CHANNEL_TV, CHANNEL_TX, CHANNEL_TY, CHANNEL_TA, CHANNEL_TL, CHANNEL_CL, CHANNEL_TSHORT,
+            CHANNEL_TLONG, CHANNEL_THOR, CHANNEL_TVERT, CHANNEL_GETPIPE, CHANNEL_TCLASS, CHANNEL_TID,
+        };
+
+        doubleArrayChannels = new DoubleArrayChannel[] {
+            CHANNEL_TC, CHANNEL_TPOSE, CHANNEL_TPOSE_ROBOT, CHANNEL_RPOSE, CHANNEL_RPOSE_BLUE,
+        };
+
+        CHANNEL_TID.setInitialValue(-1);
+        CHANNEL_GETPIPE.setInitialValue(-1);
+        CHANNEL_TCLASS.setInitialValue(-1);
+
+        SUB_JSON = TABLE.getStringTopic("json").subscribe("{}");
 
         ENTRY_LED_MODE          = TABLE.getEntry("ledMode");
         ENTRY_CAMERA_MODE       = TABLE.getEntry("camMode");
@@ -92,70 +179,107 @@ public class Limelight {
         allLimelights.add(this);
     }
 
+    // Frames
+
+    @SuppressWarnings("unchecked")
+    private static Optional<LimelightFrame>[] createFrameOptionals (LimelightFrame[] frames) {
+        Optional<LimelightFrame>[] optionals = new Optional[frames.length];
+        for (int i = 0; i < frames.length; i ++) {
+            frames[i] = new LimelightFrame();
+            optionals[i] = Optional.of(frames[i]);
+        }
+        return optionals;
+    }
+
+    /**
+     * Get the most recent frame received from the camera as of the last {@link #update()}, if it is recent enough
+     * to still describe what the camera sees. Every caller gets the same frame until the next update, so values
+     * read from it in one cycle are always consistent with each other.
+     */
+    public Optional<LimelightFrame> getLatestFrame () {
+        return currentFrame;
+    }
+
+    /**
+     * Get the number of frames discarded because their heartbeat repeated, their timestamp went backwards, or their
+     * latency was implausible.
+     */
+    public long getInvalidFrameCount () {
+        return invalidFrameCount;
+    }
+
+    /**
+     * Create a new {@link FrameSubscription}, through which every frame received from now on can be drained once.
+     */
+    public FrameSubscription subscribeFrames () {
+        return new FrameSubscription();
+    }
+
+    /**
+     * A consumer's position in a camera's frame buffer. Each subscription sees every frame exactly once, in order,
+     * independently of any other subscriptions to the same camera.
+     */
+    public class FrameSubscription {
+
+        private long nextFrame;
+        private long droppedFrames = 0;
+
+        private FrameSubscription () {
+            nextFrame = nextSequence;
+        }
+
+        /**
+         * Get the next frame this subscription hasn't seen yet, or an empty optional if it has seen every frame
+         * received so far. Frames which were pushed out of the buffer before being polled are skipped.
+         */
+        public Optional<LimelightFrame> poll () {
+            long oldestFrame = Math.max(0, nextSequence - FRAME_BUFFER_SIZE);
+            if (nextFrame < oldestFrame) {
+                droppedFrames += oldestFrame - nextFrame;
+                nextFrame = oldestFrame;
+            }
+
+            if (nextFrame >= nextSequence) return Optional.empty();
+
+            Optional<LimelightFrame> frame = frameOptionals[(int)(nextFrame % FRAME_BUFFER_SIZE)];
+            nextFrame ++;
+            return frame;
+        }
+
+        /**
+         * Get the number of frames which were pushed out of the buffer before this subscription polled them.
+         */
+        public long getDroppedFrames () {
+            return droppedFrames;
+        }
+
+    }
+
     /**
      * Take in boolean @param alliance {@code false} for red, {@code true} for blue,
      * @return double array which contains the botpose (x, y, z) relative to the alliance
      */
     public double[] getFieldRelativeBotPose () {
-        return ENTRY_RPOSE.getDoubleArray(new double[0]);
+        return getLatestFrame().map(LimelightFrame::getFieldRelativeBotPose).orElse(NO_POSE);
     }
     
     // Basic target recognition
    
 
     public boolean hasValidTarget () {
-        return ENTRY_TV.getInteger(0) == 1;
+        return getLatestFrame().map(LimelightFrame::hasValidTarget).orElse(false);
     }
     
     public Optional<TargetData> getTarget () {
-        if (!hasValidTarget()) {
-            return Optional.empty();
-        } else {
-            return Optional.of(new TargetData(
-                ENTRY_TX.getDouble(0),
-                ENTRY_TY.getDouble(0),
-                ENTRY_TA.getDouble(0),
-                ENTRY_TSHORT.getDouble(0),
-                ENTRY_TLONG.getDouble(0),
-                ENTRY_THOR.getDouble(0),
-                ENTRY_TVERT.getDouble(0),
-                (int)ENTRY_TCLASS.getInteger(-1),
-                ENTRY_TC.getDoubleArray(new double[3])
-            ));
-        }
+        return getLatestFrame().flatMap(LimelightFrame::getTarget);
     }
     
     public boolean hasAprilTag() {
-        return ENTRY_TID.getDouble(0) != -1;
-    }
-    
-    /**
-     * Gets a {@code Pose3d} from a Translation(x, y, z), Rotation(roll, pitch, yaw) array
-     */
-    private static Pose3d getPoseFromArray (double[] array) {
-        if (array.length < 6) return new Pose3d();
-        return new Pose3d(
-            array[0], array[1], array[2],                   // x, y, z
-            new Rotation3d(                                 // roll, pitch, yaw
-                Units.degreesToRadians(array[3]),
-                Units.degreesToRadians(array[4]),
-                Units.degreesToRadians(array[5])
-            )
-        );
+        return getLatestFrame().map(LimelightFrame::hasAprilTag).orElse(false);
     }
     
     public Optional<AprilTagData> getAprilTag () {
-        if (hasAprilTag()) {
-            return Optional.of(new AprilTagData(
-                ENTRY_TID.getDouble(0),
-                ENTRY_TX.getDouble(0),
-                ENTRY_TY.getDouble(0),
-                getPoseFromArray(ENTRY_TPOSE.getDoubleArray(new double[0])),
-                getPoseFromArray(ENTRY_RPOSE.getDoubleArray(new double[0]))
-            ));
-        } else {
-            return Optional.empty();
-        }
+        return getLatestFrame().flatMap(LimelightFrame::getAprilTag);
     }
     
     public static record TargetData (
@@ -181,19 +305,34 @@ public class Limelight {
     // Misc. data
     
     public double getPipelineLatency () {
-        return ENTRY_TL.getDouble(0);
+        return getLatestFrame().map(frame -> frame.getLatencySecs() * 1000).orElse(0.);
     }
     
     public String getJSONDump () {
-        return ENTRY_JSON.getString("{}");
+        return SUB_JSON.get();
+    }
+    
+    /**
+     * Get every fiducial and retroreflective target from the latest JSON results dump. The dump is only parsed
+     * again when it changes, and the results are overwritten when it does. The JSON dump must be enabled in the
+     * Limelight's output settings.
+     */
+    public Optional<LimelightJsonParser> getJSONResults () {
+        long lastChange = SUB_JSON.getLastChange();
+        if (lastChange != parsedJsonChange) {
+            parsedJsonChange = lastChange;
+            jsonParser.parse(SUB_JSON.get());
+        }
+        
+        return jsonParser.isValid() ? jsonResults : Optional.empty();
     }
 
     public int getTargetID () {
-        return (int)ENTRY_TID.getInteger(0);
+        return getLatestFrame().map(LimelightFrame::getTargetID).orElse(-1);
     }
     
     public int getActivePipeline () {
-        return (int)ENTRY_GETPIPE.getInteger(-1);
+        return getLatestFrame().map(LimelightFrame::getActivePipeline).orElse(-1);
     }
     
     // Camera controls
@@ -234,7 +373,7 @@ public class Limelight {
     
     public VideoSource getSource () {
         if (cameraServer.isEmpty()) {
-            cameraServer = Optional.of(new HttpCamera("limelight-"+cameraAddress, "http://" + cameraIP + ":5800"));
+            cameraServer = Optional.of(new HttpCamera(tableName, "http://" + cameraIP + ":5800"));
         }
         
         return cameraServer.get();
@@ -297,15 +436,192 @@ public class Limelight {
         ENTRY_CROP_RECTANGLE.setDoubleArray(new double[]{ minX, minY, maxX, maxY });
     }
     
+    /**
+     * Group the values received since the last update into frames, and add them to the frame buffer. Each frame
+     * is marked by a heartbeat update, or by a pipeline latency update if the camera doesn't publish a heartbeat,
+     * and a frame's values are the latest ones received up to {@link #FRAME_VALUE_WINDOW_MICROS} after its marker,
+     * but before the next marker. Values the camera didn't republish because they didn't change carry over from the
+     * previous frame.
+     * <br></br>
+     * Frames are discarded if their heartbeat repeats one already received, if they arrive with a timestamp before
+     * the previous frame's, or if their latency is implausible.
+     */
+    private void pollFrames () {
+        for (DoubleChannel channel : doubleChannels) channel.poll();
+        for (DoubleArrayChannel channel : doubleArrayChannels) channel.poll();
+
+        DoubleChannel marker = CHANNEL_HB.hasReceived() ? CHANNEL_HB : CHANNEL_TL;
+
+        while (marker.hasPending()) {
+            long timestampMicros = marker.getPendingTimestamp();
+            marker.advanceTo(timestampMicros);
+
+            long windowEndMicros = timestampMicros + FRAME_VALUE_WINDOW_MICROS;
+            if (marker.hasPending())
+                windowEndMicros = Math.min(windowEndMicros, marker.getPendingTimestamp() - 1);
+
+            for (DoubleChannel channel : doubleChannels) channel.advanceTo(windowEndMicros);
+            for (DoubleArrayChannel channel : doubleArrayChannels) channel.advanceTo(windowEndMicros);
+
+            double timestampSecs = timestampMicros / 1e6;
+            double latencySecs = (CHANNEL_TL.getValue() + CHANNEL_CL.getValue()) / 1000;
+            double heartbeat = CHANNEL_HB.getValue();
+
+            boolean repeatedHeartbeat = marker == CHANNEL_HB && heartbeat == lastHeartbeat;
+            boolean outOfOrder = timestampSecs < lastFrameTimestampSecs;
+            boolean invalidLatency = !(latencySecs >= MIN_VALID_LATENCY_SECS && latencySecs <= MAX_VALID_LATENCY_SECS);
+
+            lastHeartbeat = heartbeat;
+            if (repeatedHeartbeat || outOfOrder || invalidLatency) {
+                invalidFrameCount ++;
+                continue;
+            }
+
+            lastFrameTimestampSecs = timestampSecs;
+
+            frames[(int)(nextSequence % FRAME_BUFFER_SIZE)].load(
+                nextSequence,
+                timestampSecs,
+                latencySecs,
+                CHANNEL_TV.getValue() == 1,
+                CHANNEL_TX.getValue(),
+                CHANNEL_TY.getValue(),
+                CHANNEL_TA.getValue(),
+                CHANNEL_TSHORT.getValue(),
+                CHANNEL_TLONG.getValue(),
+                CHANNEL_THOR.getValue(),
+                CHANNEL_TVERT.getValue(),
+                (int)CHANNEL_TCLASS.getValue(),
+                CHANNEL_TC.getValue(),
+                CHANNEL_TID.getValue(),
+                CHANNEL_TPOSE.getValue(),
+                CHANNEL_TPOSE_ROBOT.getValue(),
+                CHANNEL_RPOSE.getValue(),
+                CHANNEL_RPOSE_BLUE.getValue(),
+                (int)CHANNEL_GETPIPE.getValue()
+            );
+
+            nextSequence ++;
+        }
+    }
+
     private void updateInstance () {
+        pollFrames();
+
+        // Choose the frame every consumer will see this cycle
+        if (nextSequence == 0) {
+            currentFrame = Optional.empty();
+        } else {
+            Optional<LimelightFrame> newest = frameOptionals[(int)((nextSequence - 1) % FRAME_BUFFER_SIZE)];
+            boolean stale = Timer.getFPGATimestamp() - newest.get().getTimestampSecs() > STALE_FRAME_SECS;
+            currentFrame = stale ? Optional.empty() : newest;
+        }
+
         if (canResetSnapshot())
             resetSnapshot();
     }
 
+    /**
+     * Receive new frames from every camera. This should be called once per cycle, before anything consumes frames.
+     */
     public static void update () {
         for (Limelight limelight : allLimelights) {
             limelight.updateInstance();
         }
     }
+
+    /**
+     * A single double value published by the camera, with the updates received but not yet assigned to a frame.
+     */
+    private static class DoubleChannel {
+        private final DoubleSubscriber subscriber;
+        private final ArrayDeque<TimestampedDouble> pending = new ArrayDeque<>();
+        private double value = 0;
+        private boolean received = false;
+
+        private DoubleChannel (NetworkTable table, String key) {
+            subscriber = table.getDoubleTopic(key).subscribe(
+                0,
+                PubSubOption.keepDuplicates(true),
+                PubSubOption.pollStorage(QUEUE_DEPTH)
+            );
+        }
+
+        private void setInitialValue (double value) {
+            this.value = value;
+        }
+
+        private void poll () {
+            for (TimestampedDouble update : subscriber.readQueue()) {
+                pending.add(update);
+                received = true;
+            }
+
+            // Values the camera keeps publishing without a frame marker would otherwise queue up forever
+            while (pending.size() > QUEUE_DEPTH) {
+                value = pending.poll().value;
+            }
+        }
+
+        private boolean hasReceived () {
+            return received;
+        }
+
+        private boolean hasPending () {
+            return !pending.isEmpty();
+        }
+
+        private long getPendingTimestamp () {
+            return pending.peek().timestamp;
+        }
+
+        private void advanceTo (long timestampMicros) {
+            while (!pending.isEmpty() && pending.peek().timestamp <= timestampMicros) {
+                value = pending.poll().value;
+            }
+        }
+
+        private double getValue () {
+            return value;
+        }
+    }
+
+    /**
+     * A single double array value published by the camera, with the updates received but not yet assigned to a
+     * frame.
+     */
+    private static class DoubleArrayChannel {
+        private final DoubleArraySubscriber subscriber;
+        private final ArrayDeque<TimestampedDoubleArray> pending = new ArrayDeque<>();
+        private double[] value = new double[0];
+
+        private DoubleArrayChannel (NetworkTable table, String key) {
+            subscriber = table.getDoubleArrayTopic(key).subscribe(
+                new double[0],
+                PubSubOption.keepDuplicates(true),
+                PubSubOption.pollStorage(QUEUE_DEPTH)
+            );
+        }
+
+        private void poll () {
+            for (TimestampedDoubleArray update : subscriber.readQueue()) {
+                pending.add(update);
+            }
+
+            while (pending.size() > QUEUE_DEPTH) {
+                value = pending.poll().value;
+            }
+        }
+
+        private void advanceTo (long timestampMicros) {
+            while (!pending.isEmpty() && pending.peek().timestamp <= timestampMicros) {
+                value = pending.poll().value;
+            }
+        }
+
+        private double[] getValue () {
+            return value;
+        }
+    }
     
 }
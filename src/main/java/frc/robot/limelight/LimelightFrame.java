@@ -0,0 +1,230 @@
+package frc.robot.limelight;
+
+import java.util.Optional;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.util.Units;
+import frc.robot.limelight.Limelight.AprilTagData;
+import frc.robot.limelight.Limelight.TargetData;
+
+/**
+ * The results of a single Limelight camera frame. Every value in a frame was published by the camera together,
+ * so they always describe the same image.
+ * <br></br>
+ * Frames are reused: each camera keeps a fixed ring of them, and a frame's contents, including its arrays, are
+ * overwritten once it falls out of the ring. Frames only change in {@link Limelight#update()}, so a frame is
+ * consistent for the rest of the cycle it was received or polled in, but values which need to be kept longer
+ * should be copied out. The {@link TargetData} and {@link AprilTagData} for a frame are built once and shared.
+ */
+public class LimelightFrame {
+
+    private long sequence = -1;
+    private double timestampSecs = 0, latencySecs = 0;
+
+    private boolean hasTarget = false;
+    private double
+        horizontalOffset,
+        verticalOffset,
+        targetArea,
+        shortSideLength,
+        longSideLength,
+        boundingBoxWidth,
+        boundingBoxHeight;
+    private int classId = -1;
+
+    private double tagId = -1;
+    private double[]
+        crosshairHSV = new double[0],
+        targetPoseCameraSpace = new double[0],
+        targetPoseRobotSpace = new double[0],
+        botPose = new double[0],
+        blueBotPose = new double[0];
+    private int pipeline = -1;
+
+    private Optional<TargetData> target = null;
+    private Optional<AprilTagData> aprilTag = null;
+
+    LimelightFrame () { }
+
+    /**
+     * Overwrite this frame with the values of a new frame. Arrays are copied into this frame's own buffers, which
+     * are only reallocated if the array length changes.
+     */
+    void load (
+            long sequence,
+            double timestampSecs,
+            double latencySecs,
+            boolean hasTarget,
+            double horizontalOffset,
+            double verticalOffset,
+            double targetArea,
+            double shortSideLength,
+            double longSideLength,
+            double boundingBoxWidth,
+            double boundingBoxHeight,
+            int classId,
+            double[] crosshairHSV,
+            double tagId,
+            double[] targetPoseCameraSpace,
+            double[] targetPoseRobotSpace,
+            double[] botPose,
+            double[] blueBotPose,
+            int pipeline
+        ) {
+        this.sequence = sequence;
+        this.timestampSecs = timestampSecs;
+        this.latencySecs = latencySecs;
+        this.hasTarget = hasTarget;
+        this.horizontalOffset = horizontalOffset;
+        this.verticalOffset = verticalOffset;
+        this.targetArea = targetArea;
+        this.shortSideLength = shortSideLength;
+        this.longSideLength = longSideLength;
+        this.boundingBoxWidth = boundingBoxWidth;
+        this.boundingBoxHeight = boundingBoxHeight;
+        this.classId = classId;
+        this.crosshairHSV = copyInto(this.crosshairHSV, crosshairHSV);
+        this.tagId = tagId;
+        this.targetPoseCameraSpace = copyInto(this.targetPoseCameraSpace, targetPoseCameraSpace);
+        this.targetPoseRobotSpace = copyInto(this.targetPoseRobotSpace, targetPoseRobotSpace);
+        this.botPose = copyInto(this.botPose, botPose);
+        this.blueBotPose = copyInto(this.blueBotPose, blueBotPose);
+        this.pipeline = pipeline;
+
+        target = null;
+        aprilTag = null;
+    }
+
+    private static double[] copyInto (double[] buffer, double[] values) {
+        if (buffer.length != values.length) buffer = new double[values.length];
+        System.arraycopy(values, 0, buffer, 0, values.length);
+        return buffer;
+    }
+
+    /**
+     * Get the frame's sequence number, which counts up by one for every valid frame received from the camera.
+     */
+    public long getSequence () {
+        return sequence;
+    }
+
+    /**
+     * Get the FPGA timestamp, in seconds, at which the frame's results were received over NetworkTables.
+     */
+    public double getTimestampSecs () {
+        return timestampSecs;
+    }
+
+    /**
+     * Get the time between the image being captured and its results being published, in seconds: the pipeline
+     * latency plus the capture latency.
+     */
+    public double getLatencySecs () {
+        return latencySecs;
+    }
+
+    /**
+     * Get the FPGA timestamp, in seconds, at which the frame's image was captured. Measurements from the frame
+     * describe the robot at this time.
+     */
+    public double getCaptureTimestampSecs () {
+        return timestampSecs - latencySecs;
+    }
+
+    public boolean hasValidTarget () {
+        return hasTarget;
+    }
+
+    public boolean hasAprilTag () {
+        return tagId != -1;
+    }
+
+    public int getTargetID () {
+        return (int)tagId;
+    }
+
+    public int getActivePipeline () {
+        return pipeline;
+    }
+
+    /**
+     * Get the robot pose in fieldspace, as reported by the camera. The array is empty if the camera didn't report
+     * a pose, and must not be modified.
+     */
+    public double[] getFieldRelativeBotPose () {
+        return botPose;
+    }
+
+    /**
+     * Get the robot pose in fieldspace with the origin at the blue driver station, matching the field coordinates
+     * used by WPILib and the swerve pose estimator. The array is empty if the camera didn't report a pose, and must
+     * not be modified. On recent Limelight firmware, it also reports the number of tags used for the pose at index 7
+     * and their average distance from the camera at index 9.
+     */
+    public double[] getBlueBotPose () {
+        return blueBotPose;
+    }
+
+    /**
+     * Get the pose of the target relative to the camera, as an array of six doubles. The array must not be modified.
+     */
+    public double[] getTargetPoseCameraSpace () {
+        return targetPoseCameraSpace;
+    }
+
+    /**
+     * Get the pose of the target relative to the robot, as an array of six doubles. The array must not be modified.
+     */
+    public double[] getTargetPoseRobotSpace () {
+        return targetPoseRobotSpace;
+    }
+
+    public Optional<TargetData> getTarget () {
+        if (target == null) {
+            target = !hasTarget ? Optional.empty() : Optional.of(new TargetData(
+                horizontalOffset,
+                verticalOffset,
+                targetArea,
+                shortSideLength,
+                longSideLength,
+                boundingBoxWidth,
+                boundingBoxHeight,
+                classId,
+                crosshairHSV
+            ));
+        }
+
+        return target;
+    }
+
+    public Optional<AprilTagData> getAprilTag () {
+        if (aprilTag == null) {
+            aprilTag = !hasAprilTag() ? Optional.empty() : Optional.of(new AprilTagData(
+                tagId,
+                horizontalOffset,
+                verticalOffset,
+                getPoseFromArray(targetPoseCameraSpace),
+                getPoseFromArray(botPose)
+            ));
+        }
+
+        return aprilTag;
+    }
+
+    /**
+     * Gets a {@code Pose3d} from a Translation(x, y, z), Rotation(roll, pitch, yaw) array
+     */
+    static Pose3d getPoseFromArray (double[] array) {
+        if (array.length < 6) return new Pose3d();
+        return new Pose3d(
+            array[0], array[1], array[2],                   // x, y, z
+            new Rotation3d(                                 // roll, pitch, yaw
+                Units.degreesToRadians(array[3]),
+                Units.degreesToRadians(array[4]),
+                Units.degreesToRadians(array[5])
+            )
+        );
+    }
+
+}
@@ -0,0 +1,262 @@
+package frc.robot.limelight;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import claw.CLAWRobot;
+import claw.rct.commands.CommandProcessor;
+import claw.rct.commands.CommandReader;
+import claw.rct.commands.CommandProcessor.BadCallException;
+import claw.rct.network.low.ConsoleManager;
+
+/**
+ * Benchmarks the {@link LimelightJsonParser} against a tree-based parse with Jackson, on JSON dumps recorded from a
+ * Limelight (or a built-in sample dump if none can be recorded). Both parsers extract the same fields, and their
+ * results are checked against each other before timing them.
+ */
+public class LimelightJsonBenchmark {
+
+    private static LimelightJsonBenchmark instance;
+
+    public static LimelightJsonBenchmark getInstance () {
+        if (instance == null)
+            instance = new LimelightJsonBenchmark();
+        return instance;
+    }
+
+    private static final int
+        MAX_RECORDED_PAYLOADS = 200,
+        RECORD_DURATION_MILLIS = 10_000,
+        RECORD_PERIOD_MILLIS = 20,
+        WARMUP_ITERATIONS = 2_000,
+        TIMED_ITERATIONS = 20_000;
+
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * A dump with two fiducials, in the format of the 2023 Limelight firmware, for when no payloads can be recorded.
+     */
+    private static final String SAMPLE_PAYLOAD =
+        "{\"Results\":{\"Classifier\":[],\"Detector\":[],\"Fiducial\":[" +
+        "{\"fID\":6,\"fam\":\"16H5C\",\"pts\":[[412.5,188.25],[468.0,190.5],[466.75,246.0],[410.25,243.5]]," +
+        "\"skew\":[],\"t6c_ts\":[-0.412,0.096,-2.381,3.52,-9.87,0.61],\"t6r_fs\":[-6.112,-1.287,0.172,1.05,-2.3,178.6]," +
+        "\"t6r_ts\":[0.402,-0.183,-2.401,3.5,-9.9,0.6],\"t6t_cs\":[0.389,0.188,2.402,-3.4,9.91,-0.66]," +
+        "\"t6t_rs\":[0.412,0.083,2.381,-3.52,9.87,-0.61],\"ta\":0.00423,\"tx\":8.91,\"txp\":439.6,\"ty\":-4.37,\"typ\":217.1}," +
+        "{\"fID\":7,\"fam\":\"16H5C\",\"pts\":[[102.0,201.5],[151.25,203.0],[150.5,252.75],[101.25,250.0]]," +
+        "\"skew\":[],\"t6c_ts\":[1.21,0.104,-2.93,3.1,12.4,0.4],\"t6r_fs\":[-6.098,-1.301,0.168,0.9,-2.1,178.9]," +
+        "\"t6r_ts\":[-1.19,-0.176,-2.95,3.0,12.5,0.4],\"t6t_cs\":[-1.202,0.171,2.941,-2.9,-12.3,-0.45]," +
+        "\"t6t_rs\":[-1.21,0.091,2.93,-3.1,-12.4,-0.4],\"ta\":0.00311,\"tx\":-22.37,\"txp\":126.3,\"ty\":-5.12,\"typ\":226.8}]," +
+        "\"Retro\":[],\"botpose\":[-6.105,-1.294,0.17,0.98,-2.2,178.75],\"botpose_wpiblue\":[2.165,2.716,0.17,0.98,-2.2,178.75]," +
+        "\"botpose_wpired\":[14.375,5.305,0.17,0.98,-2.2,-1.25],\"pID\":0.0,\"tl\":18.52,\"ts\":4823411.25,\"v\":1}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LimelightJsonParser streamingParser = new LimelightJsonParser();
+
+    // Written by each benchmark iteration so the extracted values can't be optimized away
+    private double sink = 0;
+
+    private LimelightJsonBenchmark () {
+        CLAWRobot.getExtensibleCommandInterpreter().addCommandProcessor(new CommandProcessor(
+            "jsonbench",
+            "jsonbench",
+            "Use this command to benchmark parsing the Limelight JSON dump. JSON dumps are recorded from a chosen " +
+            "Limelight, then parsed with the streaming parser and with a Jackson tree parse, checking that both " +
+            "agree and reporting the time and memory allocated per parse.",
+            this::runBenchmarkCommand
+        ));
+    }
+
+    private void runBenchmarkCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNone();
+
+        ArrayList<String> payloads = recordPayloads(console, getCamera(console));
+        if (payloads.isEmpty()) {
+            console.printlnErr("No JSON dumps were recorded, so the built-in sample dump will be used.");
+            payloads.add(SAMPLE_PAYLOAD);
+        }
+
+        // Check that both parsers extract the same values before comparing their speed
+        int mismatches = 0;
+        for (String payload : payloads) {
+            if (!resultsMatch(payload)) mismatches ++;
+        }
+
+        if (mismatches > 0) {
+            console.printlnErr(mismatches + " of " + payloads.size() + " dumps were parsed differently by the two parsers.");
+        } else {
+            console.printlnSys("Both parsers agree on all " + payloads.size() + " dumps.");
+        }
+
+        console.println("Benchmarking...");
+        Result streaming = benchmark(payloads, this::parseStreaming);
+        Result tree = benchmark(payloads, this::parseTree);
+
+        console.println("");
+        console.println(String.format("%-12s %12s %14s", "Parser", "us / parse", "bytes / parse"));
+        console.println(String.format("%-12s %12.2f %14s", "streaming", streaming.microsPerParse, streaming.formatBytes()));
+        console.println(String.format("%-12s %12.2f %14s", "tree", tree.microsPerParse, tree.formatBytes()));
+        console.println(String.format("Speedup: %.1fx", tree.microsPerParse / streaming.microsPerParse));
+    }
+
+    private static Limelight getCamera (ConsoleManager console) {
+        while (true) {
+            console.print("Record JSON dumps from which limelight? (intake | arm | none) ");
+            String input = console.readInputLine().strip().toLowerCase();
+
+            if (input.equals("intake")) return Limelight.INTAKE_LIMELIGHT;
+            if (input.equals("arm")) return Limelight.ARM_LIMELIGHT;
+            if (input.equals("none")) return null;
+        }
+    }
+
+    private static ArrayList<String> recordPayloads (ConsoleManager console, Limelight camera) {
+        ArrayList<String> payloads = new ArrayList<>();
+        if (camera == null) return payloads;
+
+        console.println("Recording JSON dumps for up to " + RECORD_DURATION_MILLIS / 1000 + " seconds...");
+
+        String lastPayload = null;
+        long endTime = System.currentTimeMillis() + RECORD_DURATION_MILLIS;
+        while (payloads.size() < MAX_RECORDED_PAYLOADS && System.currentTimeMillis() < endTime) {
+            String payload = camera.getJSONDump();
+            if (!payload.equals(lastPayload) && !payload.equals("{}")) {
+                payloads.add(payload);
+                lastPayload = payload;
+            }
+
+            try {
+                Thread.sleep(RECORD_PERIOD_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        console.println("Recorded " + payloads.size() + " dumps.");
+        return payloads;
+    }
+
+    private static record Result (double microsPerParse, double bytesPerParse) {
+        private String formatBytes () {
+            return Double.isNaN(bytesPerParse) ? "unavailable" : String.format("%.0f", bytesPerParse);
+        }
+    }
+
+    private interface Parse {
+        void parse (String payload) throws JsonProcessingException;
+    }
+
+    private Result benchmark (ArrayList<String> payloads, Parse parse) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean =
+            threadBean instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported()
+                ? bean
+                : null;
+        long threadId = Thread.currentThread().getId();
+
+        try {
+            for (int i = 0; i < WARMUP_ITERATIONS; i ++) {
+                parse.parse(payloads.get(i % payloads.size()));
+            }
+
+            long startBytes = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) : 0;
+            long startNanos = System.nanoTime();
+
+            for (int i = 0; i < TIMED_ITERATIONS; i ++) {
+                parse.parse(payloads.get(i % payloads.size()));
+            }
+
+            long elapsedNanos = System.nanoTime() - startNanos;
+            long allocatedBytes = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) - startBytes : 0;
+
+            return new Result(
+                elapsedNanos / 1e3 / TIMED_ITERATIONS,
+                allocationBean != null ? (double)allocatedBytes / TIMED_ITERATIONS : Double.NaN
+            );
+        } catch (JsonProcessingException e) {
+            return new Result(Double.NaN, Double.NaN);
+        }
+    }
+
+    private void parseStreaming (String payload) {
+        if (!streamingParser.parse(payload)) return;
+
+        LimelightJsonParser.TargetList fiducials = streamingParser.getFiducials();
+        for (int i = 0; i < fiducials.getCount(); i ++) {
+            sink += fiducials.getId(i) + fiducials.getHorizontalOffset(i) + fiducials.getCornerX(i, 0);
+            sink += fiducials.getTargetPoseCameraSpace(i)[2];
+        }
+    }
+
+    private void parseTree (String payload) throws JsonProcessingException {
+        JsonNode fiducials = objectMapper.readTree(payload).path("Results").path("Fiducial");
+        for (JsonNode fiducial : fiducials) {
+            sink += fiducial.path("fID").asInt(-1) + fiducial.path("tx").asDouble(Double.NaN);
+            sink += fiducial.path("pts").path(0).path(0).asDouble(0);
+            sink += fiducial.path("t6t_cs").path(2).asDouble(0);
+        }
+    }
+
+    /**
+     * Check that the streaming parser extracts the same fiducials, retroreflective targets and pose from the dump
+     * as a tree parse does.
+     */
+    private boolean resultsMatch (String payload) {
+        JsonNode results;
+        try {
+            results = objectMapper.readTree(payload).path("Results");
+        } catch (JsonProcessingException e) {
+            // Both parsers must reject malformed dumps
+            return !streamingParser.parse(payload);
+        }
+
+        if (!streamingParser.parse(payload)) return false;
+
+        return targetsMatch(results.path("Fiducial"), streamingParser.getFiducials(), LimelightJsonParser.MAX_FIDUCIALS)
+            && targetsMatch(results.path("Retro"), streamingParser.getRetroTargets(), LimelightJsonParser.MAX_RETRO_TARGETS)
+            && arrayMatches(results.path("botpose_wpiblue"), streamingParser.getBlueBotPose());
+    }
+
+    private static boolean targetsMatch (JsonNode nodes, LimelightJsonParser.TargetList targets, int maxTargets) {
+        if (Math.min(nodes.size(), maxTargets) != targets.getCount()) return false;
+
+        for (int i = 0; i < targets.getCount(); i ++) {
+            JsonNode node = nodes.get(i);
+
+            if (node.path("fID").asInt(-1) != targets.getId(i)) return false;
+            if (!valueMatches(node.path("tx"), targets.getHorizontalOffset(i))) return false;
+            if (!valueMatches(node.path("ty"), targets.getVerticalOffset(i))) return false;
+            if (!valueMatches(node.path("ta"), targets.getArea(i))) return false;
+            if (!valueMatches(node.path("ambiguity"), targets.getAmbiguity(i))) return false;
+            if (!arrayMatches(node.path("t6t_cs"), targets.getTargetPoseCameraSpace(i))) return false;
+            if (!arrayMatches(node.path("t6r_fs"), targets.getRobotPoseFieldSpace(i))) return false;
+
+            JsonNode corners = node.path("pts");
+            if (Math.min(corners.size(), LimelightJsonParser.MAX_CORNERS) != targets.getCornerCount(i)) return false;
+            for (int c = 0; c < targets.getCornerCount(i); c ++) {
+                if (!valueMatches(corners.path(c).path(0), targets.getCornerX(i, c))) return false;
+                if (!valueMatches(corners.path(c).path(1), targets.getCornerY(i, c))) return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean valueMatches (JsonNode node, double value) {
+        if (node.isMissingNode()) return Double.isNaN(value);
+        return Math.abs(node.asDouble() - value) <= TOLERANCE * Math.max(1, Math.abs(value));
+    }
+
+    private static boolean arrayMatches (JsonNode node, double[] values) {
+        for (int i = 0; i < values.length; i ++) {
+            double expected = i < node.size() ? node.get(i).asDouble() : 0;
+            if (Math.abs(expected - values[i]) > TOLERANCE * Math.max(1, Math.abs(expected))) return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,529 @@
+package frc.robot.limelight;
+
+import java.util.Arrays;
+
+/**
+ * Parses the Limelight's JSON results dump in a single pass, without building a tree of the document. Every detected
+ * fiducial and retroreflective target is read into preallocated arrays which are reused for every parse, so parsing
+ * doesn't allocate. Only the fields used by the robot code are read, and everything else is skipped over.
+ * <br></br>
+ * A parser holds the results of its last successful parse until the next one. The arrays it returns are its own
+ * buffers, so they must not be modified, and should be copied if they need to outlive the next parse.
+ */
+public class LimelightJsonParser {
+
+    /**
+     * Targets beyond these counts are skipped, as are corners beyond {@code MAX_CORNERS} per target.
+     */
+    public static final int MAX_FIDUCIALS = 16, MAX_RETRO_TARGETS = 16, MAX_CORNERS = 8;
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i ++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final TargetList fiducials = new TargetList(MAX_FIDUCIALS);
+    private final TargetList retroTargets = new TargetList(MAX_RETRO_TARGETS);
+    private final double[] blueBotPose = new double[6];
+    private boolean valid = false;
+    private double pipelineLatencyMillis = 0, timestampMillis = 0;
+    private int pipelineIndex = -1;
+
+    // Parse state
+    private String json;
+    private int pos, keyStart, keyEnd;
+
+    /**
+     * The targets of one kind found in a single result, stored by index. Values which weren't present in the JSON
+     * are {@code NaN}, and poses which weren't present are all zeros.
+     */
+    public static class TargetList {
+        private int count = 0;
+        private final int[] ids;
+        private final double[] horizontalOffsets, verticalOffsets, areas, ambiguities;
+        private final int[] cornerCounts;
+        private final double[][] corners, targetPosesCameraSpace, robotPosesFieldSpace;
+
+        private TargetList (int capacity) {
+            ids = new int[capacity];
+            horizontalOffsets = new double[capacity];
+            verticalOffsets = new double[capacity];
+            areas = new double[capacity];
+            ambiguities = new double[capacity];
+            cornerCounts = new int[capacity];
+            corners = new double[capacity][MAX_CORNERS * 2];
+            targetPosesCameraSpace = new double[capacity][6];
+            robotPosesFieldSpace = new double[capacity][6];
+        }
+
+        private int getCapacity () {
+            return ids.length;
+        }
+
+        private void reset (int index) {
+            ids[index] = -1;
+            horizontalOffsets[index] = Double.NaN;
+            verticalOffsets[index] = Double.NaN;
+            areas[index] = Double.NaN;
+            ambiguities[index] = Double.NaN;
+            cornerCounts[index] = 0;
+            Arrays.fill(targetPosesCameraSpace[index], 0);
+            Arrays.fill(robotPosesFieldSpace[index], 0);
+        }
+
+        public int getCount () {
+            return count;
+        }
+
+        /**
+         * Get the target's fiducial ID, or -1 for a retroreflective target.
+         */
+        public int getId (int index) {
+            return ids[index];
+        }
+
+        public double getHorizontalOffset (int index) {
+            return horizontalOffsets[index];
+        }
+
+        public double getVerticalOffset (int index) {
+            return verticalOffsets[index];
+        }
+
+        public double getArea (int index) {
+            return areas[index];
+        }
+
+        /**
+         * Get the pose ambiguity of a fiducial, from 0 (unambiguous) to 1, or {@code NaN} if the firmware doesn't
+         * report it.
+         */
+        public double getAmbiguity (int index) {
+            return ambiguities[index];
+        }
+
+        public int getCornerCount (int index) {
+            return cornerCounts[index];
+        }
+
+        public double getCornerX (int index, int corner) {
+            return corners[index][corner * 2];
+        }
+
+        public double getCornerY (int index, int corner) {
+            return corners[index][corner * 2 + 1];
+        }
+
+        /**
+         * Get the target's pose relative to the camera, as x, y, z, roll, pitch, yaw in Limelight camera space.
+         */
+        public double[] getTargetPoseCameraSpace (int index) {
+            return targetPosesCameraSpace[index];
+        }
+
+        /**
+         * Get the robot's field pose solved from this target alone, as x, y, z, roll, pitch, yaw.
+         */
+        public double[] getRobotPoseFieldSpace (int index) {
+            return robotPosesFieldSpace[index];
+        }
+    }
+
+    /**
+     * Parse a JSON results dump.
+     * @return  Whether the dump was parsed. If it wasn't, the previous results are no longer valid.
+     */
+    public boolean parse (String json) {
+        this.json = json;
+        pos = 0;
+        fiducials.count = 0;
+        retroTargets.count = 0;
+        Arrays.fill(blueBotPose, 0);
+        pipelineLatencyMillis = 0;
+        timestampMillis = 0;
+        pipelineIndex = -1;
+
+        try {
+            parseRoot();
+            valid = true;
+        } catch (MalformedJsonException e) {
+            valid = false;
+            fiducials.count = 0;
+            retroTargets.count = 0;
+        }
+
+        this.json = null;
+        return valid;
+    }
+
+    public boolean isValid () {
+        return valid;
+    }
+
+    public TargetList getFiducials () {
+        return fiducials;
+    }
+
+    public TargetList getRetroTargets () {
+        return retroTargets;
+    }
+
+    /**
+     * Get the robot pose in fieldspace with the origin at the blue driver station, solved from every fiducial.
+     */
+    public double[] getBlueBotPose () {
+        return blueBotPose;
+    }
+
+    public double getPipelineLatencyMillis () {
+        return pipelineLatencyMillis;
+    }
+
+    /**
+     * Get the Limelight's own timestamp for the result, in milliseconds since it booted.
+     */
+    public double getTimestampMillis () {
+        return timestampMillis;
+    }
+
+    public int getPipelineIndex () {
+        return pipelineIndex;
+    }
+
+    // Document structure
+
+    private void parseRoot () {
+        beginObject();
+        while (nextKey()) {
+            if (keyIs("Results")) {
+                parseResults();
+            } else {
+                skipValue();
+            }
+        }
+
+        skipWhitespace();
+        if (pos != json.length()) throw new MalformedJsonException();
+    }
+
+    private void parseResults () {
+        beginObject();
+        while (nextKey()) {
+            if (keyIs("Fiducial")) {
+                parseTargets(fiducials);
+            } else if (keyIs("Retro")) {
+                parseTargets(retroTargets);
+            } else if (keyIs("botpose_wpiblue")) {
+                readNumberArray(blueBotPose);
+            } else if (keyIs("tl")) {
+                pipelineLatencyMillis = readNumber();
+            } else if (keyIs("ts")) {
+                timestampMillis = readNumber();
+            } else if (keyIs("pID")) {
+                pipelineIndex = (int)readNumber();
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    private void parseTargets (TargetList targets) {
+        beginArray();
+        while (nextElement()) {
+            if (targets.count >= targets.getCapacity()) {
+                skipValue();
+                continue;
+            }
+
+            int index = targets.count;
+            targets.reset(index);
+            parseTarget(targets, index);
+            targets.count ++;
+        }
+    }
+
+    private void parseTarget (TargetList targets, int index) {
+        beginObject();
+        while (nextKey()) {
+            if (keyIs("fID")) {
+                targets.ids[index] = (int)readNumber();
+            } else if (keyIs("tx")) {
+                targets.horizontalOffsets[index] = readNumber();
+            } else if (keyIs("ty")) {
+                targets.verticalOffsets[index] = readNumber();
+            } else if (keyIs("ta")) {
+                targets.areas[index] = readNumber();
+            } else if (keyIs("ambiguity")) {
+                targets.ambiguities[index] = readNumber();
+            } else if (keyIs("pts")) {
+                targets.cornerCounts[index] = parseCorners(targets.corners[index]);
+            } else if (keyIs("t6t_cs")) {
+                readNumberArray(targets.targetPosesCameraSpace[index]);
+            } else if (keyIs("t6r_fs")) {
+                readNumberArray(targets.robotPosesFieldSpace[index]);
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    /**
+     * Parse an array of [x, y] corner points into the given buffer.
+     * @return  The number of corners read.
+     */
+    private int parseCorners (double[] corners) {
+        int count = 0;
+        beginArray();
+        while (nextElement()) {
+            if (count >= MAX_CORNERS) {
+                skipValue();
+                continue;
+            }
+
+            beginArray();
+            if (!nextElement()) throw new MalformedJsonException();
+            corners[count * 2] = readNumber();
+            if (!nextElement()) throw new MalformedJsonException();
+            corners[count * 2 + 1] = readNumber();
+            while (nextElement()) skipValue();
+            count ++;
+        }
+        return count;
+    }
+
+    /**
+     * Read an array of numbers into the given buffer, skipping any which don't fit.
+     */
+    private void readNumberArray (double[] buffer) {
+        int count = 0;
+        beginArray();
+        while (nextElement()) {
+            if (count < buffer.length) {
+                buffer[count] = readNumber();
+                count ++;
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    // Tokens
+
+    private char peek () {
+        skipWhitespace();
+        if (pos >= json.length()) throw new MalformedJsonException();
+        return json.charAt(pos);
+    }
+
+    private void skipWhitespace () {
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+            pos ++;
+        }
+    }
+
+    private void expect (char c) {
+        if (peek() != c) throw new MalformedJsonException();
+        pos ++;
+    }
+
+    // Objects and arrays are read by opening them, then calling nextKey or nextElement until it returns false. The
+    // first call for a container is told apart from later ones by the character just before the current position.
+
+    private void beginObject () {
+        expect('{');
+    }
+
+    private void beginArray () {
+        expect('[');
+    }
+
+    /**
+     * Move to the next key in the current object, storing its position for {@link #keyIs(String)}, and move past
+     * the following colon.
+     * @return  Whether there was another key, or false if the object ended.
+     */
+    private boolean nextKey () {
+        char c = peek();
+        if (c == '}') {
+            pos ++;
+            return false;
+        }
+
+        if (json.charAt(previousNonWhitespace()) != '{') {
+            expect(',');
+            c = peek();
+        }
+
+        if (c != '"') throw new MalformedJsonException();
+        keyStart = pos + 1;
+        skipString();
+        keyEnd = pos - 1;
+
+        expect(':');
+        return true;
+    }
+
+    /**
+     * Move to the next element of the current array.
+     * @return  Whether there was another element, or false if the array ended.
+     */
+    private boolean nextElement () {
+        char c = peek();
+        if (c == ']') {
+            pos ++;
+            return false;
+        }
+
+        if (json.charAt(previousNonWhitespace()) != '[') {
+            expect(',');
+        }
+
+        return true;
+    }
+
+    private int previousNonWhitespace () {
+        int i = pos - 1;
+        while (i > 0 && Character.isWhitespace(json.charAt(i))) i --;
+        return i;
+    }
+
+    private boolean keyIs (String key) {
+        return keyEnd - keyStart == key.length() && json.regionMatches(keyStart, key, 0, key.length());
+    }
+
+    private void skipString () {
+        expect('"');
+        while (pos < json.length()) {
+            char c = json.charAt(pos ++);
+            if (c == '\\') {
+                pos ++;
+            } else if (c == '"') {
+                return;
+            }
+        }
+        throw new MalformedJsonException();
+    }
+
+    private void skipValue () {
+        char c = peek();
+        if (c == '{') {
+            beginObject();
+            while (nextKey()) skipValue();
+        } else if (c == '[') {
+            beginArray();
+            while (nextElement()) skipValue();
+        } else if (c == '"') {
+            skipString();
+        } else if (c == 't') {
+            skipLiteral("true");
+        } else if (c == 'f') {
+            skipLiteral("false");
+        } else if (c == 'n') {
+            skipLiteral("null");
+        } else {
+            readNumber();
+        }
+    }
+
+    private void skipLiteral (String literal) {
+        if (!json.startsWith(literal, pos)) throw new MalformedJsonException();
+        pos += literal.length();
+    }
+
+    /**
+     * Read a number without creating a substring. Up to 18 significant digits are kept, which is more than a
+     * double holds. Numbers too large for a double are read as infinite, as with {@link Double#parseDouble(String)}.
+     */
+    private double readNumber () {
+        peek();
+
+        boolean negative = json.charAt(pos) == '-';
+        if (negative) pos ++;
+
+        long mantissa = 0;
+        int significantDigits = 0, exponent = 0;
+
+        // JSON numbers need at least one integer digit, and only zero itself may start with a zero
+        int integerStart = pos;
+        while (pos < json.length() && isDigit(json.charAt(pos))) {
+            if (significantDigits < 18) {
+                mantissa = mantissa * 10 + (json.charAt(pos) - '0');
+                if (mantissa != 0) significantDigits ++;
+            } else {
+                exponent ++;
+            }
+            pos ++;
+        }
+
+        if (pos == integerStart) throw new MalformedJsonException();
+        if (json.charAt(integerStart) == '0' && pos > integerStart + 1) throw new MalformedJsonException();
+
+        if (pos < json.length() && json.charAt(pos) == '.') {
+            pos ++;
+            int fractionStart = pos;
+            while (pos < json.length() && isDigit(json.charAt(pos))) {
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (json.charAt(pos) - '0');
+                    if (mantissa != 0) significantDigits ++;
+                    exponent --;
+                }
+                pos ++;
+            }
+
+            if (pos == fractionStart) throw new MalformedJsonException();
+        }
+
+        if (pos < json.length() && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+            pos ++;
+            boolean negativeExponent = pos < json.length() && json.charAt(pos) == '-';
+            if (pos < json.length() && (json.charAt(pos) == '-' || json.charAt(pos) == '+')) pos ++;
+
+            int exponentStart = pos;
+            int explicitExponent = 0;
+            while (pos < json.length() && isDigit(json.charAt(pos))) {
+                explicitExponent = Math.min(explicitExponent * 10 + (json.charAt(pos) - '0'), 1000);
+                pos ++;
+            }
+
+            if (pos == exponentStart) throw new MalformedJsonException();
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        // Zero is checked first, since zero times an overflowing power of ten would be NaN
+        if (mantissa == 0) return negative ? -0.0 : 0.0;
+
+        // Multiplying or dividing by an exact power of ten rounds correctly for most numbers the Limelight sends.
+        // Larger powers are applied in steps, so the value overflows to infinity or underflows to zero gradually
+        // instead of the power itself overflowing.
+        int maxPower = POWERS_OF_TEN.length - 1;
+        double value = mantissa;
+        while (exponent > maxPower) {
+            value *= POWERS_OF_TEN[maxPower];
+            exponent -= maxPower;
+        }
+        while (exponent < -maxPower) {
+            value /= POWERS_OF_TEN[maxPower];
+            exponent += maxPower;
+        }
+        value = exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value / POWERS_OF_TEN[-exponent];
+
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit (char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static class MalformedJsonException extends RuntimeException {
+        private MalformedJsonException () {
+            // No stack trace, since malformed dumps are expected and handled
+            super(null, null, false, false);
+        }
+    }
+
+}
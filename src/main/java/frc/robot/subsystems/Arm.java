@@ -12,6 +12,8 @@ import claw.CLAWRobot;
 import claw.Setting;
 import claw.math.input.InputTransform;
 import claw.math.Transform;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.filter.Debouncer;
 import edu.wpi.first.math.filter.SlewRateLimiter;
@@ -20,11 +22,20 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.util.sendable.SendableBuilder;
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.DutyCycle;
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.LiveCommandTester;
 import frc.robot.RobotContainer;
 import frc.robot.subsystems.DigitalInputEncoder.AnglePoint;
+import frc.robot.util.CANDeviceRegistry;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.MotorThermalMonitor;
+import frc.robot.util.PIDGains;
+import frc.robot.util.RelayAutoTuner;
+import frc.robot.util.SensorCache;
+import frc.robot.util.CANDeviceRegistry.SparkSignal;
+import frc.robot.util.SensorCache.CachedValue;
 import frc.robot.vision.VisionManager;
 
 public class Arm extends SubsystemBase {
@@ -58,14 +69,36 @@ public class Arm extends SubsystemBase {
         new AnglePoint(90, ARM_ENCODER_NINETY.get())
     );
     
+    private final CachedValue<Rotation2d> armRotation = SensorCache.cache(armEncoder::getRotation);
+    
     private final Debouncer
         armCurrentStopFirstDebouncer = new Debouncer(0.23, DebounceType.kRising),
         armCurrentStopSecondDebouncer = new Debouncer(1.4, DebounceType.kFalling);
     
+    private final LoopProfiler.Stage periodicStage = LoopProfiler.getInstance().getStage("Arm.periodic");
+    
+    private final MotorThermalMonitor.Motor leftArmThermal, rightArmThermal;
+    
     public Arm () {
         leftArmMotor.setIdleMode(IdleMode.kBrake);
         rightArmMotor.setIdleMode(IdleMode.kBrake);
         
+        // Only output current is read for the arm current limit, and temperature for thermal monitoring
+        CANDeviceRegistry.getInstance().registerSparkMax(
+            "Arm left",
+            leftArmMotor,
+            SparkSignal.CURRENT.every(20),
+            SparkSignal.TEMPERATURE.every(MotorThermalMonitor.POLL_PERIOD_MS)
+        );
+        CANDeviceRegistry.getInstance().registerSparkMax(
+            "Arm right",
+            rightArmMotor,
+            SparkSignal.CURRENT.every(20),
+            SparkSignal.TEMPERATURE.every(MotorThermalMonitor.POLL_PERIOD_MS)
+        );
+        leftArmThermal = MotorThermalMonitor.getInstance().register("Arm left", leftArmMotor);
+        rightArmThermal = MotorThermalMonitor.getInstance().register("Arm right", rightArmMotor);
+        
         XboxController controller = new XboxController(2);
         Transform transform = new InputTransform(
             InputTransform.SQUARE_CURVE,
@@ -105,10 +138,32 @@ public class Arm extends SubsystemBase {
         );
         
         RobotContainer.putConfigSendable("Arm Subsystem", this);
+        
+        RelayAutoTuner.getInstance().addTarget(new RelayAutoTuner.Target(
+            "arm",
+            this,
+            ARM_POSITION_GAINS,
+            () -> getArmRotation().getDegrees(),
+            output -> setArmSpeed(shapeArmPositionOutput(output)),
+            this::stop,
+            false,
+            true,
+            0.2,
+            1,
+            ARM_POSITION_MAX_SPEED,
+            15,
+            ARM_POSITION_TOLERANCE_DEGREES,
+            ARM_MIN_ANGLE_DEGREES,
+            ARM_MAX_ANGLE_DEGREES,
+            TimedRobot.kDefaultPeriod
+        ));
     }
     
+    /**
+     * Get the rotation of the arm, as read at the start of the current cycle.
+     */
     public Rotation2d getArmRotation () {
-        return armEncoder.getRotation();
+        return armRotation.get();
         // // xProp is the proportion from 0 to 90 degrees
         // double xProp = (armEncoder.get().getOutput() - ARM_ENCODER_ZERO.get()) / (ARM_ENCODER_NINETY.get() - ARM_ENCODER_ZERO.get());
         // return Rotation2d.fromDegrees(xProp * 90);
@@ -132,20 +187,46 @@ public class Arm extends SubsystemBase {
     public void setArmSpeedOverride (double input) {
         double armVoltage = armSpeedToVoltage.apply(input);
         
+        // The motors are geared together, so both are derated by the hotter one
+        armVoltage *= Math.min(leftArmThermal.getDerating(), rightArmThermal.getDerating());
+        
         leftArmMotor.setVoltage(armVoltage);
         rightArmMotor.setVoltage(-armVoltage);
     }
     
-    private final Transform degreesOffsetToMovement =
-        ((Transform)(deg -> Math.abs(deg) > 2 ? deg : 0))
-        .then(deg -> deg/25)
-        .then(InputTransform.THREE_HALVES_CURVE)
-        .then(Transform.clamp(-1, 1))
-        .then(speed -> speed*0.6)
-        .then(Transform.NEGATE);
+    /**
+     * Gains of the arm position controller, in arm speed (see {@link #setArmSpeed(double)}) per degree of error,
+     * before the output is shaped by {@link #shapeArmPositionOutput(double)}. These can be tuned with the
+     * {@code autotune} command, which tunes them through the same shaping.
+     */
+    private static final PIDGains ARM_POSITION_GAINS = new PIDGains("ARM_POSITION_PID", 0.6 / 25, 0, 0);
+    
+    private static final double
+        ARM_POSITION_TOLERANCE_DEGREES = 2,
+        ARM_POSITION_MAX_SPEED = 0.6;
+    
+    private final PIDController armPositionController = new PIDController(0, 0, 0);
     
     public double getSpeedToMoveToRotation (Rotation2d targetRotation) {
-        return degreesOffsetToMovement.apply(getArmRotation().minus(targetRotation).getDegrees());
+        double offsetDegrees = targetRotation.minus(getArmRotation()).getDegrees();
+        
+        if (Math.abs(offsetDegrees) <= ARM_POSITION_TOLERANCE_DEGREES) {
+            armPositionController.reset();
+            return 0;
+        }
+        
+        ARM_POSITION_GAINS.applyTo(armPositionController);
+        return shapeArmPositionOutput(armPositionController.calculate(-offsetDegrees, 0));
+    }
+    
+    /**
+     * Shape the arm position controller's output into an arm speed. The output is normalized to the speed cap and
+     * passed through a three-halves curve, so the arm eases into its target instead of approaching it linearly.
+     */
+    private static double shapeArmPositionOutput (double output) {
+        return ARM_POSITION_MAX_SPEED * InputTransform.THREE_HALVES_CURVE.apply(
+            MathUtil.clamp(output / ARM_POSITION_MAX_SPEED, -1, 1)
+        );
     }
     
     public enum ArmPosition {
@@ -193,7 +274,9 @@ public class Arm extends SubsystemBase {
     
     @Override
     public void periodic () {
+        periodicStage.start();
         VisionManager.getInstance().updateArmRotation(getArmRotation());
+        periodicStage.stop();
     }
     
 }
\ No newline at end of file
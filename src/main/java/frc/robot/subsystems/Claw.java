@@ -16,6 +16,9 @@ import edu.wpi.first.util.sendable.SendableBuilder;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.LiveCommandTester;
+import frc.robot.util.CANDeviceRegistry;
+import frc.robot.util.MotorThermalMonitor;
+import frc.robot.util.CANDeviceRegistry.SparkSignal;
 
 public class Claw extends SubsystemBase {
     
@@ -50,6 +53,8 @@ public class Claw extends SubsystemBase {
     
     private final SlewRateLimiter clawVoltageFilter = new SlewRateLimiter(120, -120, 0);
     
+    private final MotorThermalMonitor.Motor clawThermal;
+    
     private double clawEncoderOffset = 0;
     private boolean hasBeenHomed = false;
     private boolean isHoldingObject = false;
@@ -57,6 +62,17 @@ public class Claw extends SubsystemBase {
     public Claw () {
         clawMotor.setIdleMode(IdleMode.kBrake);
         
+        // Current is read for grab and homing detection, position for the claw's reach, and temperature for
+        // thermal monitoring
+        CANDeviceRegistry.getInstance().registerSparkMax(
+            "Claw",
+            clawMotor,
+            SparkSignal.CURRENT.every(20),
+            SparkSignal.POSITION.every(20),
+            SparkSignal.TEMPERATURE.every(MotorThermalMonitor.POLL_PERIOD_MS)
+        );
+        clawThermal = MotorThermalMonitor.getInstance().register("Claw", clawMotor);
+        
         XboxController controller = new XboxController(3);
         CommandProcessor processor = new LiveCommandTester(
             "Use controller 3. A and B will move the claw in opposite directions. A is typically grab and B is typically release, " +
@@ -137,7 +153,7 @@ public class Claw extends SubsystemBase {
     }
     
     private void setClawVoltageSmooth (double desiredVoltage) {
-        clawMotor.setVoltage(clawVoltageFilter.calculate(desiredVoltage));
+        clawMotor.setVoltage(clawVoltageFilter.calculate(desiredVoltage) * clawThermal.getDerating());
     }
     
     public void operateClaw (ClawMovement move, Rotation2d armRotation) {
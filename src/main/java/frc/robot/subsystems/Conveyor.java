@@ -5,6 +5,7 @@ import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
 
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.CANDeviceRegistry;
 
 public class Conveyor extends SubsystemBase{
 	
@@ -18,6 +19,9 @@ public class Conveyor extends SubsystemBase{
     
     public Conveyor () {
         conveyorMotor.setIdleMode(IdleMode.kBrake);
+        
+        // The conveyor is only driven open-loop, so none of its signals are read
+        CANDeviceRegistry.getInstance().registerSparkMax("Conveyor", conveyorMotor);
     }
     
     public enum ConveyorMode {
@@ -18,6 +18,9 @@ import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.LiveCommandTester;
 import frc.robot.RobotContainer;
+import frc.robot.util.CANDeviceRegistry;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.CANDeviceRegistry.SparkSignal;
 
 public class Intake extends SubsystemBase {
     
@@ -49,8 +52,18 @@ public class Intake extends SubsystemBase {
     private final double BOTTOM_INTAKE_RAW_POSITION = 6.69;
     private double engagementPositionOffset = getEngagementRawPosition();
     
+    private final LoopProfiler.Stage periodicStage = LoopProfiler.getInstance().getStage("Intake.periodic");
+    
     public Intake () {
         RobotContainer.putConfigSendable("Intake Subsystem", this);
+        
+        // The rollers are only driven open-loop, and only the engagement motors' positions are read
+        CANDeviceRegistry registry = CANDeviceRegistry.getInstance();
+        registry.registerSparkMax("Intake top roller", topRoller);
+        registry.registerSparkMax("Intake bottom roller", bottomRoller);
+        registry.registerSparkMax("Intake left engage", leftEngage, SparkSignal.POSITION.every(20));
+        registry.registerSparkMax("Intake right engage", rightEngage, SparkSignal.POSITION.every(20));
+        
         LiveCommandTester tester = new LiveCommandTester(
             "Use controller 1.",
             liveFields -> {
@@ -168,10 +181,14 @@ public class Intake extends SubsystemBase {
     
     @Override
     public void periodic () {
+        periodicStage.start();
+        
         if (upperLimitSwitch.isPressed() && !lowerLimitSwitch.isPressed())
             engagementPositionOffset = getEngagementRawPosition();
         else if (lowerLimitSwitch.isPressed() && !upperLimitSwitch.isPressed())
             engagementPositionOffset = getEngagementRawPosition() - BOTTOM_INTAKE_RAW_POSITION;
+        
+        periodicStage.stop();
     }
     
 }
\ No newline at end of file
@@ -1,11 +1,14 @@
 package frc.robot.subsystems;
 
-import edu.wpi.first.networktables.NetworkTable;
-import edu.wpi.first.networktables.NetworkTableEntry;
-import edu.wpi.first.networktables.NetworkTableInstance;
+import java.util.Optional;
+
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.limelight.Limelight;
+import frc.robot.limelight.LimelightFrame;
+import frc.robot.limelight.Limelight.CameraMode;
+import frc.robot.limelight.Limelight.LEDMode;
 
 public class Vision extends SubsystemBase{
     
@@ -15,25 +18,13 @@ public class Vision extends SubsystemBase{
         return visionInstance;
     }
 
-    private final NetworkTable limelight;
-    private NetworkTableEntry 
-            tv,
-            tx,
-            ty,
-            tid,
-            targetPose;
+    private final Limelight limelight = Limelight.DEFAULT_LIMELIGHT;
     public double maxOffsetDegrees = 1;
 
     private Vision () {
-        limelight = NetworkTableInstance.getDefault().getTable("limelight");
-        tv = limelight.getEntry("tv");
-        tx = limelight.getEntry("tx");
-        ty = limelight.getEntry("ty");
-        tid = limelight.getEntry("tid");
-        targetPose = limelight.getEntry("targetpose_robotspace");
-        limelight.getEntry("ledMode").setDouble(0); //Sets the LED to desired status. 0 to follow current pipeline, 1 for off, 2 for blinking, 3 for on
-        limelight.getEntry("camMode").setDouble(0); //Enables or disables vision processing. 0 for processing, 1 for drive camera
-        limelight.getEntry("pipeline").setDouble(0); //Changes the pipeline of the Limelight
+        limelight.setLEDMode(LEDMode.PIPELINE_DEFAULT); //Sets the LED to follow the current pipeline
+        limelight.setCameraMode(CameraMode.VISION_PROCESSOR); //Enables vision processing
+        limelight.setPipeline(0); //Changes the pipeline of the Limelight
     }
 
     public boolean isTargetFriendly () {
@@ -42,34 +33,43 @@ public class Vision extends SubsystemBase{
         else return false;
     }
     
-    //Checks if Limelight sees a target, returns false if the value is zero, true if it is 1
+    //Checks if Limelight sees a target in the latest frame
     public boolean seesTarget () {
-        return tv.getDouble(0) == 1;
+        return getFrame().map(LimelightFrame::hasValidTarget).orElse(false);
     }
 
     public double setPipeline (int pipeline) {
-        limelight.getEntry("pipeline").setDouble(pipeline);
-        return limelight.getEntry("pipeline").getDouble(0);
+        limelight.setPipeline(pipeline);
+        return pipeline;
     }
 
     //Returns the horizontal offset of the camera to the target (-27 degrees to 27 degrees)
     public double getHorizontalOffset () {
-        return tx.getDouble(0);
+        return getFrame().flatMap(LimelightFrame::getTarget).map(target -> target.horizontalOffset()).orElse(0.);
     }
 
     //Returns the vertical offset of the camera to the target (-20.5 degrees to 20.5 degrees)
     public double getVerticalOffset () {
-        return ty.getDouble(0);
+        return getFrame().flatMap(LimelightFrame::getTarget).map(target -> target.verticalOffset()).orElse(0.);
     }
 
     public double getTag () {
-        return tid.getDouble(0);
+        return getFrame().map(frame -> (double)frame.getTargetID()).orElse(0.);
     }
 
     public double getDistance () {
-        return targetPose.getDoubleArray(new double[5])[2]; //TODO: Measure robot and set proper specs in limelight pipeline
+        Optional<LimelightFrame> frame = getFrame();
+        if (frame.isEmpty() || frame.get().getTargetPoseRobotSpace().length < 3) return 0;
+        return frame.get().getTargetPoseRobotSpace()[2]; //TODO: Measure robot and set proper specs in limelight pipeline
+    }
+
+    /**
+     * Get this cycle's frame from the limelight, which every method here reads, so they always agree.
+     */
+    public Optional<LimelightFrame> getFrame () {
+        return limelight.getLatestFrame();
     }
 
   @Override
   public void periodic() {}
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * A fixed-capacity ring buffer of timestamped gyro samples (yaw, pitch and roll), with yaw, pitch and roll rates
+ * estimated from consecutive samples. Samples are pushed by the NavX's own update thread as soon as they arrive,
+ * and read by the main robot loop and the odometry sampler, which can look up the yaw at any recent timestamp.
+ * <br></br>
+ * Sensor timestamps are converted to FPGA time using the smallest observed delay between the sensor's clock and
+ * the time each sample was received, so that samples are stamped with when they were measured rather than when
+ * they arrived.
+ */
+class GyroSampleBuffer {
+
+    /**
+     * The sensor-to-FPGA offset estimate is allowed to grow by this much per sample, so that it can follow slow
+     * drift between the two clocks instead of sticking to an old minimum.
+     */
+    private static final double OFFSET_DRIFT_SECS_PER_SAMPLE = 1e-5;
+
+    /**
+     * Yaw is extrapolated at most this far beyond the newest sample.
+     */
+    private static final double MAX_EXTRAPOLATION_SECS = 0.02;
+
+    private final int capacity;
+    private final double[] timestamps, yawsDegrees, pitchesDegrees, rollsDegrees;
+    private int newestIndex = -1, count = 0;
+
+    private double yawRateDegreesPerSec = 0, pitchRateDegreesPerSec = 0, rollRateDegreesPerSec = 0;
+    private double sensorToFpgaOffsetSecs = Double.POSITIVE_INFINITY;
+
+    public GyroSampleBuffer (int capacity) {
+        this.capacity = capacity;
+        timestamps = new double[capacity];
+        yawsDegrees = new double[capacity];
+        pitchesDegrees = new double[capacity];
+        rollsDegrees = new double[capacity];
+    }
+
+    /**
+     * Add a sample stamped with the sensor's own clock.
+     * @param sensorTimestampMillis The sensor's timestamp for the sample, in milliseconds.
+     * @param receivedTimestamp     The FPGA time the sample was received, in seconds.
+     * @param yawDegrees            The yaw, counter-clockwise positive. It may be wrapped to any interval.
+     * @param pitchDegrees          The pitch.
+     * @param rollDegrees           The roll.
+     */
+    public synchronized void offerSensorSample (
+            long sensorTimestampMillis,
+            double receivedTimestamp,
+            double yawDegrees,
+            double pitchDegrees,
+            double rollDegrees
+        ) {
+        double sensorSecs = sensorTimestampMillis / 1000.;
+
+        // Transport delay is never negative, so the smallest observed difference is closest to the true offset
+        sensorToFpgaOffsetSecs = Math.min(
+            sensorToFpgaOffsetSecs + OFFSET_DRIFT_SECS_PER_SAMPLE,
+            receivedTimestamp - sensorSecs
+        );
+
+        offer(sensorSecs + sensorToFpgaOffsetSecs, yawDegrees, pitchDegrees, rollDegrees);
+    }
+
+    /**
+     * Add a sample stamped with FPGA time. Samples which are not newer than the newest sample are ignored.
+     * @param timestamp     The FPGA time the sample was measured, in seconds.
+     * @param yawDegrees    The yaw, counter-clockwise positive. It may be wrapped to any interval.
+     * @param pitchDegrees  The pitch.
+     * @param rollDegrees   The roll.
+     */
+    public synchronized void offer (double timestamp, double yawDegrees, double pitchDegrees, double rollDegrees) {
+        if (count > 0) {
+            double dt = timestamp - timestamps[newestIndex];
+            if (dt <= 0) return;
+
+            // Unwrap the yaw so that it is continuous with the previous sample
+            double lastYaw = yawsDegrees[newestIndex];
+            yawDegrees = lastYaw + MathUtil.inputModulus(yawDegrees - lastYaw, -180, 180);
+
+            yawRateDegreesPerSec = (yawDegrees - lastYaw) / dt;
+            pitchRateDegreesPerSec = (pitchDegrees - pitchesDegrees[newestIndex]) / dt;
+            rollRateDegreesPerSec = (rollDegrees - rollsDegrees[newestIndex]) / dt;
+        }
+
+        newestIndex = (newestIndex + 1) % capacity;
+        count = Math.min(count + 1, capacity);
+
+        timestamps[newestIndex] = timestamp;
+        yawsDegrees[newestIndex] = yawDegrees;
+        pitchesDegrees[newestIndex] = pitchDegrees;
+        rollsDegrees[newestIndex] = rollDegrees;
+    }
+
+    /**
+     * Get the continuous yaw at the given FPGA timestamp, counter-clockwise positive, interpolated between the
+     * samples on either side of it. Timestamps older than the buffer use the oldest sample, and timestamps newer
+     * than the newest sample are extrapolated a short way using the yaw rate.
+     */
+    public synchronized double getYawDegreesAt (double timestamp) {
+        if (count == 0) return 0;
+
+        double newestTimestamp = timestamps[newestIndex];
+        if (timestamp >= newestTimestamp) {
+            double extrapolationSecs = Math.min(timestamp - newestTimestamp, MAX_EXTRAPOLATION_SECS);
+            return yawsDegrees[newestIndex] + yawRateDegreesPerSec * extrapolationSecs;
+        }
+
+        // Walk back from the newest sample to the first one at or before the timestamp
+        int later = newestIndex;
+        for (int i = 1; i < count; i ++) {
+            int earlier = Math.floorMod(newestIndex - i, capacity);
+            if (timestamps[earlier] <= timestamp) {
+                double t = (timestamp - timestamps[earlier]) / (timestamps[later] - timestamps[earlier]);
+                return MathUtil.interpolate(yawsDegrees[earlier], yawsDegrees[later], t);
+            }
+            later = earlier;
+        }
+
+        return yawsDegrees[later];
+    }
+
+    /**
+     * Get the FPGA timestamp of the newest sample, or zero if there are no samples.
+     */
+    public synchronized double getLatestTimestamp () {
+        return count == 0 ? 0 : timestamps[newestIndex];
+    }
+
+    /**
+     * Get the continuous yaw of the newest sample, counter-clockwise positive.
+     */
+    public synchronized double getLatestYawDegrees () {
+        return count == 0 ? 0 : yawsDegrees[newestIndex];
+    }
+
+    public synchronized double getLatestPitchDegrees () {
+        return count == 0 ? 0 : pitchesDegrees[newestIndex];
+    }
+
+    public synchronized double getLatestRollDegrees () {
+        return count == 0 ? 0 : rollsDegrees[newestIndex];
+    }
+
+    /**
+     * Get the yaw rate between the two newest samples, counter-clockwise positive.
+     */
+    public synchronized double getYawRateDegreesPerSec () {
+        return yawRateDegreesPerSec;
+    }
+
+    public synchronized double getPitchRateDegreesPerSec () {
+        return pitchRateDegreesPerSec;
+    }
+
+    public synchronized double getRollRateDegreesPerSec () {
+        return rollRateDegreesPerSec;
+    }
+
+}
@@ -0,0 +1,208 @@
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.util.sendable.SendableBuilder;
+
+/**
+ * Compensates for the delay between commanding chassis speeds and the robot actually moving at them (one or more
+ * control loops plus CAN and motor response). Every commanded speed is kept in a short history, and the actuation
+ * latency is measured online by finding the delay at which the commanded speeds best match the speeds measured
+ * by the modules. The estimated pose can then be predicted forward through the commands which have been sent but
+ * have not yet taken effect, so that controllers act on where the robot will be rather than where it was.
+ * <br></br>
+ * This must only be used from the main robot thread.
+ */
+class LatencyCompensator implements Sendable {
+
+    /**
+     * Candidate latencies are tested every {@code LATENCY_STEP_SECS} from zero up to {@code MAX_LATENCY_SECS}.
+     */
+    private static final double LATENCY_STEP_SECS = 0.01, MAX_LATENCY_SECS = 0.15;
+    private static final int CANDIDATE_COUNT = (int)Math.round(MAX_LATENCY_SECS / LATENCY_STEP_SECS) + 1;
+
+    /**
+     * Used until enough moving samples have been seen to measure the latency.
+     */
+    private static final double DEFAULT_LATENCY_SECS = 0.04;
+    private static final int MIN_MEASUREMENTS = 50;
+
+    /**
+     * Weight given to each new measurement in the exponentially weighted error of every candidate latency.
+     */
+    private static final double ERROR_SMOOTHING = 0.02;
+
+    /**
+     * Latency is only measured while the robot is commanded or measured to move at least this fast, since a
+     * stationary robot matches every candidate equally well.
+     */
+    private static final double MIN_MEASUREMENT_SPEED_METERS_PER_SEC = 0.1;
+
+    private final double moduleRadiusMeters;
+
+    private final int capacity;
+    private final double[] timestamps, vxs, vys, omegas;
+    private int newestIndex = -1, count = 0;
+
+    private final double[] candidateErrors = new double[CANDIDATE_COUNT];
+    private int measurementCount = 0;
+    private double latencySecs = DEFAULT_LATENCY_SECS;
+
+    /**
+     * Create a new {@link LatencyCompensator}.
+     * @param capacity              The number of commanded speeds kept, which must cover at least
+     *                              {@code MAX_LATENCY_SECS} at the fastest command rate.
+     * @param moduleRadiusMeters    The distance from the center of the robot to a module, used to weigh angular
+     *                              speed errors against translational ones.
+     */
+    public LatencyCompensator (int capacity, double moduleRadiusMeters) {
+        this.capacity = capacity;
+        this.moduleRadiusMeters = moduleRadiusMeters;
+
+        timestamps = new double[capacity];
+        vxs = new double[capacity];
+        vys = new double[capacity];
+        omegas = new double[capacity];
+    }
+
+    /**
+     * Record robot-relative chassis speeds which were just commanded.
+     */
+    public void recordCommand (double timestamp, double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec) {
+        // Commands with the same timestamp replace each other
+        if (count == 0 || timestamp > timestamps[newestIndex]) {
+            newestIndex = (newestIndex + 1) % capacity;
+            count = Math.min(count + 1, capacity);
+        }
+
+        timestamps[newestIndex] = timestamp;
+        vxs[newestIndex] = vxMetersPerSec;
+        vys[newestIndex] = vyMetersPerSec;
+        omegas[newestIndex] = omegaRadiansPerSec;
+    }
+
+    /**
+     * Get the index of the command which was in effect at the given time, or -1 if it is older than the history.
+     */
+    private int getCommandIndexAt (double timestamp) {
+        for (int i = 0; i < count; i ++) {
+            int index = Math.floorMod(newestIndex - i, capacity);
+            if (timestamps[index] <= timestamp) return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Update the latency estimate with the robot-relative chassis speeds measured by the modules.
+     */
+    public void recordMeasurement (double timestamp, double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec) {
+        int newestCommand = count == 0 ? -1 : newestIndex;
+        boolean moving =
+            Math.hypot(vxMetersPerSec, vyMetersPerSec) > MIN_MEASUREMENT_SPEED_METERS_PER_SEC ||
+            (newestCommand != -1 && Math.hypot(vxs[newestCommand], vys[newestCommand]) > MIN_MEASUREMENT_SPEED_METERS_PER_SEC);
+        if (!moving) return;
+
+        for (int i = 0; i < CANDIDATE_COUNT; i ++) {
+            int command = getCommandIndexAt(timestamp - i * LATENCY_STEP_SECS);
+            if (command == -1) return;
+
+            double ex = vxMetersPerSec - vxs[command];
+            double ey = vyMetersPerSec - vys[command];
+            double eOmega = (omegaRadiansPerSec - omegas[command]) * moduleRadiusMeters;
+            double error = ex * ex + ey * ey + eOmega * eOmega;
+
+            candidateErrors[i] += ERROR_SMOOTHING * (error - candidateErrors[i]);
+        }
+
+        measurementCount ++;
+        if (measurementCount < MIN_MEASUREMENTS) return;
+
+        int best = 0;
+        for (int i = 1; i < CANDIDATE_COUNT; i ++) {
+            if (candidateErrors[i] < candidateErrors[best]) best = i;
+        }
+
+        latencySecs = best * LATENCY_STEP_SECS;
+    }
+
+    public double getLatencySecs () {
+        return latencySecs;
+    }
+
+    /**
+     * Predict where the robot will be once every command sent up to the given time has taken effect, by applying
+     * the commands from the last latency period on top of the given pose.
+     */
+    public Pose2d predict (Pose2d pose, double timestamp) {
+        double x = pose.getX(), y = pose.getY(), theta = pose.getRotation().getRadians();
+
+        double windowStart = timestamp - latencySecs;
+        int index = getCommandIndexAt(windowStart);
+        if (index == -1) {
+            if (count == 0) return pose;
+            index = Math.floorMod(newestIndex - (count - 1), capacity);
+        }
+
+        // Integrate each command over the part of the window in which it was in effect
+        while (true) {
+            boolean newest = index == newestIndex;
+            double segmentStart = Math.max(timestamps[index], windowStart);
+            double segmentEnd = newest ? timestamp : Math.min(timestamps[(index + 1) % capacity], timestamp);
+            double dt = segmentEnd - segmentStart;
+
+            if (dt > 0) {
+                // Apply the robot-relative twist (vx dt, vy dt, omega dt) with the SE(2) exponential
+                double dx = vxs[index] * dt, dy = vys[index] * dt, dTheta = omegas[index] * dt;
+                double s, c;
+                if (Math.abs(dTheta) < 1e-9) {
+                    s = 1 - dTheta * dTheta / 6;
+                    c = dTheta / 2;
+                } else {
+                    s = Math.sin(dTheta) / dTheta;
+                    c = (1 - Math.cos(dTheta)) / dTheta;
+                }
+
+                double localDx = dx * s - dy * c;
+                double localDy = dx * c + dy * s;
+                double cos = Math.cos(theta), sin = Math.sin(theta);
+                x += localDx * cos - localDy * sin;
+                y += localDx * sin + localDy * cos;
+                theta += dTheta;
+            }
+
+            if (newest) break;
+            index = (index + 1) % capacity;
+        }
+
+        return new Pose2d(x, y, new Rotation2d(theta));
+    }
+
+    /**
+     * Convert chassis speeds which should be followed continuously into speeds which, held constant for one
+     * control period, move the robot along the same arc. Without this, rotating while translating makes the robot
+     * drift sideways, because the translation direction is only updated once per period.
+     * @param speeds    The robot-relative {@code vx}, {@code vy} and {@code omega}, which are replaced in place.
+     */
+    public static void discretize (double[] speeds, double periodSecs) {
+        double dx = speeds[0] * periodSecs, dy = speeds[1] * periodSecs, dTheta = speeds[2] * periodSecs;
+        if (Math.abs(dTheta) < 1e-9) return;
+
+        // The twist whose exponential is the pose (dx, dy, dTheta) is the SE(2) logarithm of that pose
+        double halfTheta = dTheta / 2;
+        double halfThetaByTanHalfTheta = halfTheta * Math.sin(dTheta) / (1 - Math.cos(dTheta));
+
+        double twistDx = dx * halfThetaByTanHalfTheta + dy * halfTheta;
+        double twistDy = dy * halfThetaByTanHalfTheta - dx * halfTheta;
+
+        speeds[0] = twistDx / periodSecs;
+        speeds[1] = twistDy / periodSecs;
+    }
+
+    @Override
+    public void initSendable (SendableBuilder builder) {
+        builder.addDoubleProperty("Latency (ms)", () -> latencySecs * 1000, null);
+        builder.addDoubleProperty("Measurements", () -> measurementCount, null);
+    }
+
+}
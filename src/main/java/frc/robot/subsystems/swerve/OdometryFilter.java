@@ -0,0 +1,288 @@
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.util.sendable.SendableBuilder;
+
+/**
+ * Filters wheel odometry samples before they reach the pose estimator, so that wheel slip and collisions do not
+ * corrupt the estimated pose.
+ * <br></br>
+ * <b>Slip:</b> Over a short window of samples, every module's displacement is compared to the displacement
+ * predicted for it by a rigid-body fit of the other modules' displacements and the gyro's rotation. The module
+ * which disagrees most (if its disagreement is large enough) is considered to be slipping, and its wheel deltas are
+ * replaced with the rigid-body prediction until it agrees again.
+ * <br></br>
+ * <b>Collisions:</b> A sudden change in the gyro's measured linear acceleration indicates an impact, during which
+ * every wheel may skid. Wheel deltas are rejected entirely for a short time after a collision is detected, leaving
+ * the gyro as the only source of motion.
+ * <br></br>
+ * The filter keeps its own cumulative module distances, which are written back into each sample in place of the
+ * raw distances. It must only be used from the main robot thread.
+ */
+class OdometryFilter implements Sendable {
+
+    /**
+     * Slip is detected over this many samples (20 ms at the 250 Hz sample rate), which smooths over modules whose
+     * position frames arrive at slightly different times.
+     */
+    private static final int SLIP_WINDOW_SAMPLES = 5;
+
+    /**
+     * A module is slipping if, over the slip window, its displacement differs from the rigid-body prediction by
+     * more than both of these: an absolute distance and a fraction of its own displacement.
+     */
+    private static final double
+        SLIP_MIN_RESIDUAL_METERS = 0.01,
+        SLIP_RELATIVE_RESIDUAL = 0.25;
+
+    /**
+     * A change in world linear acceleration greater than this (in g) between samples is treated as a collision.
+     */
+    private static final double COLLISION_ACCEL_CHANGE_G = 0.5;
+
+    /**
+     * Wheel deltas are rejected for this long after a collision.
+     */
+    private static final double COLLISION_REJECT_SECS = 0.25;
+
+    private final int moduleCount;
+    private final double[] moduleXs, moduleYs;
+
+    private final boolean[] ignored;
+    private int ignoredCount = 0;
+
+    private final double[] lastRawDistances, filteredDistances;
+    private final double[] sampleDxs, sampleDys;
+    private double lastGyroYawDegrees = 0;
+
+    // Per-module displacements and gyro rotation over the slip window, stored as rings with running sums
+    private final double[] windowDxs, windowDys, windowDThetas;
+    private final double[] windowSumDxs, windowSumDys;
+    private double windowSumDTheta = 0;
+    private int windowIndex = 0, windowCount = 0;
+
+    private double lastAccelXG = 0, lastAccelYG = 0;
+    private boolean hasLastSample = false;
+
+    private int slippingModule = -1;
+    private double collisionRejectUntil = Double.NEGATIVE_INFINITY;
+
+    private final int[] slipEventCounts;
+    private int collisionEventCount = 0;
+    private int rejectedSampleCount = 0;
+    private double lastCollisionAccelChangeG = 0;
+
+    public OdometryFilter (Translation2d[] moduleTranslations, double[] initialDistances) {
+        moduleCount = moduleTranslations.length;
+        moduleXs = new double[moduleCount];
+        moduleYs = new double[moduleCount];
+        for (int i = 0; i < moduleCount; i ++) {
+            moduleXs[i] = moduleTranslations[i].getX();
+            moduleYs[i] = moduleTranslations[i].getY();
+        }
+
+        ignored = new boolean[moduleCount];
+        lastRawDistances = new double[moduleCount];
+        filteredDistances = new double[moduleCount];
+        sampleDxs = new double[moduleCount];
+        sampleDys = new double[moduleCount];
+
+        windowDxs = new double[SLIP_WINDOW_SAMPLES * moduleCount];
+        windowDys = new double[SLIP_WINDOW_SAMPLES * moduleCount];
+        windowDThetas = new double[SLIP_WINDOW_SAMPLES];
+        windowSumDxs = new double[moduleCount];
+        windowSumDys = new double[moduleCount];
+
+        slipEventCounts = new int[moduleCount];
+
+        System.arraycopy(initialDistances, 0, filteredDistances, 0, moduleCount);
+        resync(initialDistances);
+    }
+
+    /**
+     * Restart filtering from the given raw module distances, without changing the filtered distances. This should
+     * be called whenever samples are discarded, so the discarded motion is not applied on top of a reset pose.
+     */
+    public void resync (double[] rawDistances) {
+        System.arraycopy(rawDistances, 0, lastRawDistances, 0, moduleCount);
+        hasLastSample = false;
+        slippingModule = -1;
+
+        windowIndex = 0;
+        windowCount = 0;
+        windowSumDTheta = 0;
+        for (int i = 0; i < moduleCount; i ++) {
+            windowSumDxs[i] = 0;
+            windowSumDys[i] = 0;
+        }
+    }
+
+    /**
+     * Set whether the given module is ignored, as when it has failed. Ignored modules are left out of every
+     * rigid-body prediction and are never flagged as slipping.
+     */
+    public void setModuleIgnored (int module, boolean isIgnored) {
+        if (ignored[module] == isIgnored) return;
+        ignored[module] = isIgnored;
+        ignoredCount += isIgnored ? 1 : -1;
+    }
+
+    /**
+     * Get the filtered cumulative distance of the given module, in meters.
+     */
+    public double getFilteredDistance (int module) {
+        return filteredDistances[module];
+    }
+
+    /**
+     * Filter a sample in place, replacing its raw module distances with filtered cumulative distances.
+     */
+    public void filter (OdometrySampleBuffer.Sample sample) {
+        double dThetaRadians = hasLastSample ? Math.toRadians(sample.gyroYawDegrees - lastGyroYawDegrees) : 0;
+        lastGyroYawDegrees = sample.gyroYawDegrees;
+
+        // Raw module displacement vectors for this sample
+        for (int i = 0; i < moduleCount; i ++) {
+            double delta = sample.distancesMeters[i] - lastRawDistances[i];
+            lastRawDistances[i] = sample.distancesMeters[i];
+
+            double angleRadians = Math.toRadians(sample.anglesDegrees[i]);
+            sampleDxs[i] = delta * Math.cos(angleRadians);
+            sampleDys[i] = delta * Math.sin(angleRadians);
+        }
+
+        detectCollision(sample);
+        updateSlipWindow(dThetaRadians);
+        hasLastSample = true;
+
+        if (sample.timestamp < collisionRejectUntil) {
+            // Reject all wheel motion during a collision
+            rejectedSampleCount ++;
+        } else {
+            for (int i = 0; i < moduleCount; i ++) {
+                double angleRadians = Math.toRadians(sample.anglesDegrees[i]);
+                double dx = sampleDxs[i], dy = sampleDys[i];
+
+                if (i == slippingModule) {
+                    // Replace the slipping module's motion with the motion predicted by the other modules
+                    dx = getPredictedDx(i, sampleDxs, sampleDys, dThetaRadians);
+                    dy = getPredictedDy(i, sampleDxs, sampleDys, dThetaRadians);
+                }
+
+                // A module which isn't slipping rolls along its heading, so project onto it
+                filteredDistances[i] += dx * Math.cos(angleRadians) + dy * Math.sin(angleRadians);
+            }
+        }
+
+        for (int i = 0; i < moduleCount; i ++) {
+            sample.distancesMeters[i] = filteredDistances[i];
+        }
+    }
+
+    private void detectCollision (OdometrySampleBuffer.Sample sample) {
+        if (hasLastSample) {
+            double accelChangeG = Math.hypot(sample.accelXG - lastAccelXG, sample.accelYG - lastAccelYG);
+            if (accelChangeG > COLLISION_ACCEL_CHANGE_G) {
+                // Only count a new event if not already inside a collision's rejection window
+                if (sample.timestamp >= collisionRejectUntil) collisionEventCount ++;
+                collisionRejectUntil = sample.timestamp + COLLISION_REJECT_SECS;
+                lastCollisionAccelChangeG = accelChangeG;
+            }
+        }
+
+        lastAccelXG = sample.accelXG;
+        lastAccelYG = sample.accelYG;
+    }
+
+    private void updateSlipWindow (double dThetaRadians) {
+        // Replace the oldest sample in the window
+        if (windowCount == SLIP_WINDOW_SAMPLES) {
+            windowSumDTheta -= windowDThetas[windowIndex];
+            for (int i = 0; i < moduleCount; i ++) {
+                windowSumDxs[i] -= windowDxs[windowIndex * moduleCount + i];
+                windowSumDys[i] -= windowDys[windowIndex * moduleCount + i];
+            }
+        } else {
+            windowCount ++;
+        }
+
+        windowDThetas[windowIndex] = dThetaRadians;
+        windowSumDTheta += dThetaRadians;
+        for (int i = 0; i < moduleCount; i ++) {
+            windowDxs[windowIndex * moduleCount + i] = sampleDxs[i];
+            windowDys[windowIndex * moduleCount + i] = sampleDys[i];
+            windowSumDxs[i] += sampleDxs[i];
+            windowSumDys[i] += sampleDys[i];
+        }
+
+        windowIndex = (windowIndex + 1) % SLIP_WINDOW_SAMPLES;
+        if (windowCount < SLIP_WINDOW_SAMPLES) return;
+
+        // Find the module which disagrees most with the rigid-body motion of the others
+        int worstModule = -1;
+        double worstResidual = 0;
+        for (int i = 0; i < moduleCount; i ++) {
+            // With fewer than three modules to compare, a slipping module cannot be told apart from the others
+            if (ignored[i] || moduleCount - ignoredCount < 3) continue;
+
+            double residual = Math.hypot(
+                windowSumDxs[i] - getPredictedDx(i, windowSumDxs, windowSumDys, windowSumDTheta),
+                windowSumDys[i] - getPredictedDy(i, windowSumDxs, windowSumDys, windowSumDTheta)
+            );
+
+            double threshold = Math.max(
+                SLIP_MIN_RESIDUAL_METERS,
+                SLIP_RELATIVE_RESIDUAL * Math.hypot(windowSumDxs[i], windowSumDys[i])
+            );
+
+            if (residual > threshold && residual > worstResidual) {
+                worstModule = i;
+                worstResidual = residual;
+            }
+        }
+
+        if (worstModule != -1 && worstModule != slippingModule) {
+            slipEventCounts[worstModule] ++;
+        }
+
+        slippingModule = worstModule;
+    }
+
+    /*
+     * With the robot rotation dTheta known from the gyro, each module's displacement is d_i = t + dTheta x r_i for
+     * robot translation t. The least squares estimate of t from every module other than the excluded one is the
+     * mean of d_j - dTheta x r_j, and the prediction for the excluded module follows from that.
+     */
+
+    private double getPredictedDx (int excludedModule, double[] dxs, double[] dys, double dTheta) {
+        double tx = 0;
+        for (int j = 0; j < moduleCount; j ++) {
+            if (j != excludedModule && !ignored[j]) tx += dxs[j] + dTheta * moduleYs[j];
+        }
+        tx /= moduleCount - ignoredCount - (ignored[excludedModule] ? 0 : 1);
+        return tx - dTheta * moduleYs[excludedModule];
+    }
+
+    private double getPredictedDy (int excludedModule, double[] dxs, double[] dys, double dTheta) {
+        double ty = 0;
+        for (int j = 0; j < moduleCount; j ++) {
+            if (j != excludedModule && !ignored[j]) ty += dys[j] - dTheta * moduleXs[j];
+        }
+        ty /= moduleCount - ignoredCount - (ignored[excludedModule] ? 0 : 1);
+        return ty + dTheta * moduleXs[excludedModule];
+    }
+
+    @Override
+    public void initSendable (SendableBuilder builder) {
+        builder.addDoubleProperty("Slipping Module", () -> slippingModule, null);
+        builder.addDoubleProperty("FL Slip Events", () -> slipEventCounts[0], null);
+        builder.addDoubleProperty("FR Slip Events", () -> slipEventCounts[1], null);
+        builder.addDoubleProperty("RL Slip Events", () -> slipEventCounts[2], null);
+        builder.addDoubleProperty("RR Slip Events", () -> slipEventCounts[3], null);
+        builder.addDoubleProperty("Collision Events", () -> collisionEventCount, null);
+        builder.addDoubleProperty("Last Collision Accel Change (g)", () -> lastCollisionAccelChangeG, null);
+        builder.addDoubleProperty("Rejected Samples", () -> rejectedSampleCount, null);
+    }
+
+}
@@ -0,0 +1,118 @@
+package frc.robot.subsystems.swerve;
+
+/**
+ * A fixed-capacity, single-producer single-consumer ring buffer of timestamped odometry samples. The producer
+ * (the odometry sampler thread) and the consumer (the main robot loop) never block each other: each side only
+ * ever writes its own index, and sample data is stored in preallocated primitive arrays. If the consumer falls
+ * behind and the buffer fills up, new samples are dropped rather than overwriting unread ones.
+ */
+class OdometrySampleBuffer {
+
+    private final int capacity, moduleCount;
+
+    private final double[] timestamps, gyroYawsDegrees, accelsXG, accelsYG;
+
+    // Module values are stored with all of one sample's modules next to each other
+    private final double[] distancesMeters, anglesDegrees;
+
+    private volatile long writeCount = 0, readCount = 0;
+    private volatile int droppedSamples = 0;
+
+    public OdometrySampleBuffer (int capacity, int moduleCount) {
+        this.capacity = capacity;
+        this.moduleCount = moduleCount;
+
+        timestamps = new double[capacity];
+        gyroYawsDegrees = new double[capacity];
+        accelsXG = new double[capacity];
+        accelsYG = new double[capacity];
+        distancesMeters = new double[capacity * moduleCount];
+        anglesDegrees = new double[capacity * moduleCount];
+    }
+
+    /**
+     * Add a sample to the buffer. This must only be called from the producer thread.
+     * @param timestamp         The FPGA timestamp of the sample, in seconds.
+     * @param gyroYawDegrees    The raw (un-offset) gyro yaw, counter-clockwise positive.
+     * @param accelXG           The gyro's world-frame linear x acceleration, in g.
+     * @param accelYG           The gyro's world-frame linear y acceleration, in g.
+     * @param moduleDistances   The drive distance of each module, in meters.
+     * @param moduleAngles      The steer angle of each module, in degrees.
+     * @return                  Whether the sample was added. If the buffer is full, the sample is dropped.
+     */
+    public boolean offer (
+            double timestamp,
+            double gyroYawDegrees,
+            double accelXG,
+            double accelYG,
+            double[] moduleDistances,
+            double[] moduleAngles
+        ) {
+        long write = writeCount;
+        if (write - readCount >= capacity) {
+            droppedSamples ++;
+            return false;
+        }
+
+        int slot = (int)(write % capacity);
+        timestamps[slot] = timestamp;
+        gyroYawsDegrees[slot] = gyroYawDegrees;
+        accelsXG[slot] = accelXG;
+        accelsYG[slot] = accelYG;
+        System.arraycopy(moduleDistances, 0, distancesMeters, slot * moduleCount, moduleCount);
+        System.arraycopy(moduleAngles, 0, anglesDegrees, slot * moduleCount, moduleCount);
+
+        // Publishing the new write count makes the sample visible to the consumer
+        writeCount = write + 1;
+        return true;
+    }
+
+    /**
+     * Remove the oldest sample from the buffer and copy it into {@code out}. This must only be called from the
+     * consumer thread.
+     * @return Whether there was a sample to read.
+     */
+    public boolean poll (Sample out) {
+        long read = readCount;
+        if (read >= writeCount) return false;
+
+        int slot = (int)(read % capacity);
+        out.timestamp = timestamps[slot];
+        out.gyroYawDegrees = gyroYawsDegrees[slot];
+        out.accelXG = accelsXG[slot];
+        out.accelYG = accelsYG[slot];
+        System.arraycopy(distancesMeters, slot * moduleCount, out.distancesMeters, 0, moduleCount);
+        System.arraycopy(anglesDegrees, slot * moduleCount, out.anglesDegrees, 0, moduleCount);
+
+        // Publishing the new read count frees the slot for the producer
+        readCount = read + 1;
+        return true;
+    }
+
+    /**
+     * Discard all unread samples. This must only be called from the consumer thread.
+     */
+    public void clear () {
+        readCount = writeCount;
+    }
+
+    public int getDroppedSamples () {
+        return droppedSamples;
+    }
+
+    /**
+     * A reusable holder for one sample read out of an {@link OdometrySampleBuffer}.
+     */
+    public static class Sample {
+
+        public double timestamp, gyroYawDegrees, accelXG, accelYG;
+        public final double[] distancesMeters, anglesDegrees;
+
+        public Sample (int moduleCount) {
+            distancesMeters = new double[moduleCount];
+            anglesDegrees = new double[moduleCount];
+        }
+
+    }
+
+}
@@ -1,9 +1,12 @@
 package frc.robot.subsystems.swerve;
 
+import com.ctre.phoenix.ErrorCode;
 import com.ctre.phoenix.sensors.CANCoder;
 
 import claw.Setting;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.util.CANDeviceRegistry;
 
 /**
  * A wrapper around {@link CANCoder}
@@ -25,11 +28,17 @@ public class ResettableEncoder {
     // So, if offset is defined such that g = a + o, if we want to reset the offset, o = g - a.
     
     public Rotation2d getRotation () {
+        return Rotation2d.fromDegrees(getRotationDegrees());
+    }
+    
+    /**
+     * Get the rotation of the encoder in degrees on the interval [-180, 180), without allocating a
+     * {@link Rotation2d}. This is safe to call from threads other than the main robot thread.
+     */
+    public double getRotationDegrees () {
         // g = a + o
-        Rotation2d rotations = getAbsoluteRotation().plus(getOffset());
-        return inverted
-            ? Rotation2d.fromDegrees(-rotations.getDegrees())
-            : rotations;
+        double degrees = MathUtil.inputModulus(encoder.getAbsolutePosition() + offsetSetting.get(), -180, 180);
+        return inverted ? -degrees : degrees;
     }
     
     public void setRotation (Rotation2d rotation) {
@@ -38,10 +47,6 @@ public class ResettableEncoder {
         offsetSetting.set(offset.getDegrees());
     }
     
-    private Rotation2d getOffset () {
-        return Rotation2d.fromDegrees(offsetSetting.get());
-    }
-    
     public void zeroRotation () {
         setRotation(Rotation2d.fromRotations(0));
     }
@@ -54,4 +59,19 @@ public class ResettableEncoder {
         this.inverted = inverted;
     }
     
+    /**
+     * Register the CANCoder with the {@link CANDeviceRegistry}, setting how often it reports its position over CAN.
+     */
+    public void registerStatusFrames (String name, int sensorDataPeriodMs) {
+        CANDeviceRegistry.getInstance().registerCANCoder(name, encoder, sensorDataPeriodMs);
+    }
+    
+    /**
+     * Get the error from the last call made to the CANCoder. If the CANCoder stops reporting over CAN, reading its
+     * position returns an error (such as {@link ErrorCode#SensorNotPresent}) instead of {@link ErrorCode#OK}.
+     */
+    public ErrorCode getLastError () {
+        return encoder.getLastError();
+    }
+    
 }
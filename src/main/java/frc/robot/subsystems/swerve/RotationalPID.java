@@ -3,19 +3,54 @@ package frc.robot.subsystems.swerve;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.util.PIDGains;
 
 public class RotationalPID {
     
-    private final PIDController pid;
+    private PIDController pid;
+    private final PIDGains gains;
+    private final double setpointToleranceDegrees;
     
     public RotationalPID (double kP, double kI, double kD, double setpointToleranceDegrees) {
         pid = new PIDController(kP, kI, kD);
         pid.setTolerance(setpointToleranceDegrees);
         pid.reset();
+        gains = null;
+        this.setpointToleranceDegrees = setpointToleranceDegrees;
+    }
+    
+    /**
+     * Create a {@link RotationalPID} which follows the given saved gains, so that newly tuned gains take effect
+     * immediately.
+     * @param periodSecs    The period at which {@link #calculate(double, double)} is called.
+     */
+    public RotationalPID (PIDGains gains, double setpointToleranceDegrees, double periodSecs) {
+        pid = new PIDController(gains.getP(), gains.getI(), gains.getD(), periodSecs);
+        pid.setTolerance(setpointToleranceDegrees);
+        pid.reset();
+        this.gains = gains;
+        this.setpointToleranceDegrees = setpointToleranceDegrees;
+    }
+    
+    /**
+     * Set the period at which {@link #calculate(double, double)} is called, which scales the integral and derivative
+     * terms. The controller is only rebuilt, resetting its integral, if the period changes.
+     */
+    public void setPeriod (double periodSecs) {
+        if (periodSecs == pid.getPeriod()) return;
+        
+        pid = new PIDController(pid.getP(), pid.getI(), pid.getD(), periodSecs);
+        pid.setTolerance(setpointToleranceDegrees);
     }
     
     public double calculate (Rotation2d measured, Rotation2d setpoint) {
-        double offsetDegrees = setpoint.getDegrees() - measured.getDegrees();
+        return calculate(measured.getDegrees(), setpoint.getDegrees());
+    }
+    
+    public double calculate (double measuredDegrees, double setpointDegrees) {
+        if (gains != null) gains.applyTo(pid);
+        
+        double offsetDegrees = setpointDegrees - measuredDegrees;
         double calculatedValue = pid.calculate(0, MathUtil.inputModulus(offsetDegrees, -180, 180));
         
         if (pid.atSetpoint()) return 0;
@@ -13,19 +13,22 @@ import claw.Setting;
 import edu.wpi.first.math.controller.HolonomicDriveController;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.trajectory.Trajectory;
 import edu.wpi.first.math.trajectory.TrajectoryConfig;
 import edu.wpi.first.math.trajectory.TrajectoryGenerator;
 import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
 import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.SPI;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj2.command.Command;
@@ -35,6 +38,11 @@ import edu.wpi.first.wpilibj2.command.SwerveControllerCommand;
 import frc.robot.IDMap;
 import frc.robot.LiveCommandTester;
 import frc.robot.RobotContainer;
+import frc.robot.commands.auton.SwerveTurnCorrector;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.RelayAutoTuner;
+import frc.robot.util.SensorCache;
+import frc.robot.util.SensorCache.CachedDouble;
 
 public class Swerve extends SubsystemBase {
     
@@ -52,30 +60,63 @@ public class Swerve extends SubsystemBase {
         REAR_LEFT_MODULE_TRANSLATION = new Translation2d(-0.404, 0.404),
         REAR_RIGHT_MODULE_TRANSLATION = new Translation2d(-0.404, -0.404);
     
-    private final AHRS gyro = new AHRS();
+    /**
+     * The NavX reports acceleration in units of standard gravity.
+     */
+    private static final double STANDARD_GRAVITY = 9.80665;
+    
+    static final Translation2d[] MODULE_TRANSLATIONS = {
+        FRONT_LEFT_MODULE_TRANSLATION,
+        FRONT_RIGHT_MODULE_TRANSLATION,
+        REAR_LEFT_MODULE_TRANSLATION,
+        REAR_RIGHT_MODULE_TRANSLATION,
+    };
+    
+    /**
+     * The NavX's maximum update rate. Each update is pushed into the gyro sample buffer from the NavX's own thread
+     * as soon as it arrives, stamped with the time it was measured.
+     */
+    private static final byte GYRO_UPDATE_RATE_HZ = (byte)200;
+    
+    private final AHRS gyro = new AHRS(SPI.Port.kMXP, GYRO_UPDATE_RATE_HZ);
+    private final GyroSampleBuffer gyroSamples = new GyroSampleBuffer(64);
+    private final CachedDouble gyroYaw = SensorCache.cacheDouble(gyroSamples::getLatestYawDegrees);
+    private final CachedDouble gyroRoll = SensorCache.cacheDouble(gyroSamples::getLatestRollDegrees);
     
     private final SwerveModule
         flModule = new SwerveModule(
+            "FL",
             new Setting<>("FL_MODULE_ENCODER_OFFSET", ()->0.),
             IDMap.FRONT_LEFT_MODULE_DRIVE_SPARK_ID,
             IDMap.FRONT_LEFT_MODULE_STEER_SPARK_ID,
             IDMap.FRONT_LEFT_MODULE_STEER_CANCODER_ID),
         frModule = new SwerveModule(
+            "FR",
             new Setting<>("FR_MODULE_ENCODER_OFFSET", ()->0.),
             IDMap.FRONT_RIGHT_MODULE_DRIVE_SPARK_ID,
             IDMap.FRONT_RIGHT_MODULE_STEER_SPARK_ID,
             IDMap.FRONT_RIGHT_MODULE_STEER_CANCODER_ID),
         rlModule = new SwerveModule(
+            "RL",
             new Setting<>("RL_MODULE_ENCODER_OFFSET", ()->0.),
             IDMap.REAR_LEFT_MODULE_DRIVE_SPARK_ID,
             IDMap.REAR_LEFT_MODULE_STEER_SPARK_ID,
             IDMap.REAR_LEFT_MODULE_STEER_CANCODER_ID),
         rrModule = new SwerveModule(
+            "RR",
             new Setting<>("RR_MODULE_ENCODER_OFFSET", ()->0.),
             IDMap.REAR_RIGHT_MODULE_DRIVE_SPARK_ID,
             IDMap.REAR_RIGHT_MODULE_STEER_SPARK_ID,
             IDMap.REAR_RIGHT_MODULE_STEER_CANCODER_ID);
     
+    private final SwerveModule[] modules = { flModule, frModule, rlModule, rrModule };
+    
+    private final OdometrySampleBuffer odometryBuffer = new OdometrySampleBuffer(32, modules.length);
+    private final OdometrySampleBuffer.Sample odometrySample = new OdometrySampleBuffer.Sample(modules.length);
+    private final SwerveOdometrySampler odometrySampler = new SwerveOdometrySampler(odometryBuffer, gyro, gyroSamples, modules);
+    private final double[] rawModuleDistances = new double[modules.length];
+    private final OdometryFilter odometryFilter = new OdometryFilter(MODULE_TRANSLATIONS, readModuleDistances());
+    
     private final SwerveDriveKinematics kinematics = new SwerveDriveKinematics(
         FRONT_LEFT_MODULE_TRANSLATION,
         FRONT_RIGHT_MODULE_TRANSLATION,
@@ -83,6 +124,8 @@ public class Swerve extends SubsystemBase {
         REAR_RIGHT_MODULE_TRANSLATION
     );
     
+    private final SwerveModuleStateBank moduleStates = new SwerveModuleStateBank(MODULE_TRANSLATIONS);
+    
     private final Constraints robotConstraints = new Constraints(8, 8);
     
     private final PIDController
@@ -98,32 +141,88 @@ public class Swerve extends SubsystemBase {
     
     private final Field2d sendableField = new Field2d();
     
-    private Rotation2d absoluteRobotRotationOffset = gyro.getRotation2d();
+    private final LoopProfiler.Stage periodicStage = LoopProfiler.getInstance().getStage("Swerve.periodic");
+    
+    private Rotation2d absoluteRobotRotationOffset = getGyroRotation();
     private Rotation2d gyroTeleopYawOffset = Rotation2d.fromDegrees(0);
     private double gyroZeroPitchOffset = 0;
     
     
     private double measurementOffset = 0;
     
-    private final SwerveDrivePoseEstimator poseEstimator = new SwerveDrivePoseEstimator(
-        kinematics,
-        getRobotRotation(),
-        new SwerveModulePosition[]{
-            flModule.getPosition(),
-            frModule.getPosition(),
-            rlModule.getPosition(),
-            rrModule.getPosition(),
-        },
-        new Pose2d(0, 0, getRobotRotation())
+    /**
+     * Number of disabled robot cycles between re-syncing the integrated steer encoders (about once per second).
+     */
+    private static final int STEER_ENCODER_SYNC_CYCLES = 50;
+    private int disabledCycles = 0;
+    
+    /**
+     * About two seconds of odometry history at the 250 Hz sample rate, for applying late vision measurements.
+     */
+    private static final int POSE_HISTORY_CAPACITY = 512;
+    
+    private final SwervePoseEstimator poseEstimator = new SwervePoseEstimator(MODULE_TRANSLATIONS, POSE_HISTORY_CAPACITY);
+    private final double[] filteredModuleDistances = new double[modules.length];
+    
+    private final SwerveFastLoop fastLoop = new SwerveFastLoop(this);
+    
+    /**
+     * Enough commanded speeds to cover the longest measured latency at the fast loop rate.
+     */
+    private static final int COMMAND_HISTORY_CAPACITY = 64;
+    
+    private final LatencyCompensator latencyCompensator = new LatencyCompensator(
+        COMMAND_HISTORY_CAPACITY,
+        FRONT_LEFT_MODULE_TRANSLATION.getNorm()
+    );
+    private final double[] discretizedSpeeds = new double[3];
+    private final ChassisSpeeds setpointSpeeds = new ChassisSpeeds();
+    
+    private final SwerveDriveSim driveSim = RobotBase.isSimulation() ? new SwerveDriveSim(MODULE_TRANSLATIONS, gyroSamples, modules) : null;
+    
+    /**
+     * The simulation has no accelerometer, so the ground velocity estimate is bounded by the simulated chassis
+     * acceleration instead.
+     */
+    private final TractionController tractionController = new TractionController(
+        MODULE_TRANSLATIONS,
+        gyroSamples,
+        RobotBase.isSimulation()
+            ? driveSim::getAccelerationMetersPerSecSq
+            : () -> Math.hypot(gyro.getWorldLinearAccelX(), gyro.getWorldLinearAccelY()) * STANDARD_GRAVITY,
+        modules
     );
     
     private Swerve () {
+        // The NavX yaw is clockwise positive
+        gyro.registerCallback(
+            (systemTimestamp, sensorTimestamp, data, context) -> gyroSamples.offerSensorSample(
+                sensorTimestamp,
+                Timer.getFPGATimestamp(),
+                -data.yaw,
+                data.pitch,
+                data.roll
+            ),
+            null
+        );
+        
+        poseEstimator.resetPosition(
+            getRobotRotation().getRadians(),
+            getFilteredModuleDistances(),
+            new Pose2d(0, 0, getRobotRotation())
+        );
+        
         RobotContainer.putConfigSendable("Swerve Subsystem", this);
         RobotContainer.putConfigSendable("Position", sendableField);
+        RobotContainer.putConfigSendable("Odometry Filter", odometryFilter);
+        RobotContainer.putConfigSendable("Swerve Fast Loop", fastLoop);
+        RobotContainer.putConfigSendable("Latency Compensation", latencyCompensator);
+        RobotContainer.putConfigSendable("Traction Control", tractionController);
         
         // Add configuration buttons to the shuffleboard
         RobotContainer.putConfigCommand("Zero Swerve Modules", new InstantCommand(this::zeroModules, this).ignoringDisable(true), true);
         RobotContainer.putConfigCommand("Teleop Zero Gyro", new InstantCommand(this::zeroGyroTeleop, this).ignoringDisable(true), true);
+        RobotContainer.putConfigCommand("Reset Swerve Module Health", new InstantCommand(this::resetModuleHealth, this).ignoringDisable(true), true);
         
         // Add modules to the shuffleboard
         RobotContainer.putConfigSendable("fl-module", flModule);
@@ -153,6 +252,7 @@ public class Swerve extends SubsystemBase {
                     measurementOffset = measurement;
                 }
                 
+                setModuleControlPeriod(TimedRobot.kDefaultPeriod);
                 flModule.update(desiredState);
                 frModule.update(desiredState);
                 rlModule.update(desiredState);
@@ -167,7 +267,39 @@ public class Swerve extends SubsystemBase {
             tester.toCommandProcessor("swervetest")
         );
         
+        CLAWRobot.getExtensibleCommandInterpreter().addCommandProcessor(
+            new SwerveCharacterization(this, modules).toCommandProcessor("swervechar")
+        );
+        
+        CLAWRobot.getExtensibleCommandInterpreter().addCommandProcessor(
+            new SwerveModuleBenchmark(this, modules).toCommandProcessor("swervebench")
+        );
+        
+        // Steer gains are shared by every module, so they are tuned on the front left module
+        RelayAutoTuner autoTuner = RelayAutoTuner.getInstance();
+        autoTuner.addTarget(flModule.createSteerTuningTarget(this));
+        autoTuner.addTarget(new RelayAutoTuner.Target(
+            "heading",
+            this,
+            SwerveTurnCorrector.HEADING_GAINS,
+            () -> getRobotRotation().getDegrees(),
+            omega -> moveRobotRelative(0, 0, omega),
+            this::stop,
+            true,
+            false,
+            SwerveTurnCorrector.MAX_CORRECTION_SPEED / 2,
+            1,
+            SwerveTurnCorrector.MAX_CORRECTION_SPEED,
+            45,
+            2,
+            Double.NEGATIVE_INFINITY,
+            Double.POSITIVE_INFINITY,
+            TimedRobot.kDefaultPeriod
+        ));
+        
         gyroZeroPitchOffset = getRobotPitchRaw();
+        
+        odometrySampler.start();
     }
     
     /**
@@ -176,16 +308,144 @@ public class Swerve extends SubsystemBase {
      * @param speeds The {@code ChassisSpeeds} to try to match with the swerve drive.
      */
     public void moveRobotRelative (ChassisSpeeds speeds) {
-        SwerveModuleState[] moduleStates = kinematics.toSwerveModuleStates(speeds);
-        SwerveModule.desaturateWheelSpeeds(moduleStates);
-        setModuleStates(moduleStates);
+        moveRobotRelative(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, speeds.omegaRadiansPerSecond);
+    }
+    
+    /**
+     * Update all the swerve drive motor controllers to try to match the given robot-relative speeds.
+     * This method must be called periodically, and does not allocate.
+     */
+    public void moveRobotRelative (double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec) {
+        fastLoop.clear();
+        setModuleControlPeriod(TimedRobot.kDefaultPeriod);
+        discretize(vxMetersPerSec, vyMetersPerSec, omegaRadiansPerSec, TimedRobot.kDefaultPeriod);
+        recordCommand(discretizedSpeeds[0], discretizedSpeeds[1], discretizedSpeeds[2]);
+        
+        moduleStates.setFromChassisSpeeds(discretizedSpeeds[0], discretizedSpeeds[1], discretizedSpeeds[2]);
+        moduleStates.desaturate(getMaxDriveSpeedMetersPerSec());
+        
+        for (int i = 0; i < modules.length; i ++) {
+            updateModule(i, moduleStates);
+        }
+    }
+    
+    /**
+     * Update all the swerve drive motor controllers to follow the next setpoint from the given
+     * {@link SwerveSetpointGenerator}, moving toward the given robot-relative speeds as quickly as the modules can.
+     * If the fast control loop is running, the speeds are handed to it and the setpoint is followed at the fast
+     * loop rate instead. This method must be called periodically, and does not allocate.
+     */
+    public void moveRobotRelative (SwerveSetpointGenerator generator, double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec) {
+        if (fastLoop.isActive()) {
+            fastLoop.publish(generator, vxMetersPerSec, vyMetersPerSec, omegaRadiansPerSec);
+        } else {
+            followSetpoint(generator, vxMetersPerSec, vyMetersPerSec, omegaRadiansPerSec);
+        }
+    }
+    
+    private void followSetpoint (SwerveSetpointGenerator generator, double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec) {
+        for (int i = 0; i < modules.length; i ++) {
+            generator.setModuleIgnored(i, !modules[i].isHealthy());
+        }
+        
+        setModuleControlPeriod(fastLoop.getControlPeriodSecs());
+        discretize(vxMetersPerSec, vyMetersPerSec, omegaRadiansPerSec, fastLoop.getControlPeriodSecs());
+        generator.calculate(
+            discretizedSpeeds[0],
+            discretizedSpeeds[1],
+            discretizedSpeeds[2],
+            getMaxDriveSpeedMetersPerSec()
+        );
+        
+        generator.getChassisSpeeds(setpointSpeeds);
+        recordCommand(setpointSpeeds.vxMetersPerSecond, setpointSpeeds.vyMetersPerSecond, setpointSpeeds.omegaRadiansPerSecond);
+        
+        SwerveModuleStateBank setpoint = generator.getModuleStates();
+        for (int i = 0; i < modules.length; i ++) {
+            updateModule(i, setpoint);
+        }
     }
     
     private void setModuleStates (SwerveModuleState[] states) {
-        flModule.update(states[0]);
-        frModule.update(states[1]);
-        rlModule.update(states[2]);
-        rrModule.update(states[3]);
+        fastLoop.clear();
+        setModuleControlPeriod(TimedRobot.kDefaultPeriod);
+        SwerveDriveKinematics.desaturateWheelSpeeds(states, getMaxDriveSpeedMetersPerSec());
+        recordCommand(kinematics.toChassisSpeeds(states));
+        for (int i = 0; i < modules.length; i ++) {
+            updateModule(i, states[i].speedMetersPerSecond, states[i].angle.getDegrees());
+        }
+    }
+    
+    /**
+     * Get the fastest any wheel can be driven, given the battery voltage and the thermal derating of the hottest
+     * healthy drive motor. Every module is desaturated to this speed together, so a hot drive motor slows the whole
+     * robot down instead of making it curve or yaw. A drive motor which reaches its thermal cutoff makes its module
+     * unhealthy, so it is left out here and the remaining modules keep driving.
+     */
+    private double getMaxDriveSpeedMetersPerSec () {
+        double derating = 1;
+        for (SwerveModule module : modules) {
+            if (module.isHealthy()) derating = Math.min(derating, module.getDriveDerating());
+        }
+        
+        return SwerveModule.getMaxDriveSpeedMetersPerSec() * derating;
+    }
+    
+    /**
+     * Tell every module the period at which it is about to be updated, which the RoboRIO steer PID depends on.
+     */
+    private void setModuleControlPeriod (double periodSecs) {
+        for (SwerveModule module : modules) {
+            module.setControlPeriodSecs(periodSecs);
+        }
+    }
+    
+    /**
+     * Discretize the given robot-relative speeds over one control period into {@link #discretizedSpeeds}.
+     */
+    private void discretize (double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec, double periodSecs) {
+        discretizedSpeeds[0] = vxMetersPerSec;
+        discretizedSpeeds[1] = vyMetersPerSec;
+        discretizedSpeeds[2] = omegaRadiansPerSec;
+        LatencyCompensator.discretize(discretizedSpeeds, periodSecs);
+    }
+    
+    private void recordCommand (ChassisSpeeds speeds) {
+        recordCommand(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, speeds.omegaRadiansPerSecond);
+    }
+    
+    private void recordCommand (double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec) {
+        latencyCompensator.recordCommand(Timer.getFPGATimestamp(), vxMetersPerSec, vyMetersPerSec, omegaRadiansPerSec);
+    }
+    
+    /**
+     * Update a single module, or stop it (coasting) if it has failed. Each module's state is calculated independently from the
+     * chassis speeds, so the remaining modules still drive the robot as commanded without the failed one.
+     */
+    private void updateModule (int index, double speedMetersPerSec, double angleDegrees) {
+        if (modules[index].isHealthy()) {
+            modules[index].update(speedMetersPerSec, angleDegrees);
+        } else {
+            modules[index].stop();
+        }
+    }
+    
+    /**
+     * Update a single module to its state in the given bank, including the setpoint's rates of change for the
+     * module feedforwards, or stop it (coasting) if it has failed.
+     */
+    private void updateModule (int index, SwerveModuleStateBank states) {
+        if (modules[index].isHealthy()) {
+            modules[index].update(
+                states.getSpeed(index),
+                states.getAngleDegrees(index),
+                states.getAcceleration(index),
+                states.getSteerVelocity(index),
+                states.getSteerAcceleration(index)
+            );
+        } else {
+            modules[index].stop();
+        }
     }
     
     /**
@@ -200,11 +460,75 @@ public class Swerve extends SubsystemBase {
         );
     }
     
+    /**
+     * Switch every module between closing the drive velocity loop on the SPARK MAX and applying open-loop
+     * feedforward voltages from the RoboRIO.
+     */
+    public void setOnboardDriveVelocityControl (boolean onboard) {
+        SwerveModule.DriveControlMode mode = onboard
+            ? SwerveModule.DriveControlMode.ONBOARD_VELOCITY
+            : SwerveModule.DriveControlMode.OPEN_LOOP_VOLTAGE;
+        
+        for (SwerveModule module : modules) {
+            module.setDriveControlMode(mode);
+        }
+    }
+    
+    public boolean isOnboardDriveVelocityControl () {
+        return flModule.getDriveControlMode() == SwerveModule.DriveControlMode.ONBOARD_VELOCITY;
+    }
+    
+    /**
+     * Switch every module between closing the steer position loop on the SPARK MAX (seeded from the CANCoder)
+     * and running the steer PID on the RoboRIO.
+     */
+    public void setOnboardSteerPositionControl (boolean onboard) {
+        SwerveModule.SteerControlMode mode = onboard
+            ? SwerveModule.SteerControlMode.ONBOARD_POSITION
+            : SwerveModule.SteerControlMode.ROBORIO_PID;
+        
+        for (SwerveModule module : modules) {
+            module.setSteerControlMode(mode);
+        }
+    }
+    
+    public boolean isOnboardSteerPositionControl () {
+        return flModule.getSteerControlMode() == SwerveModule.SteerControlMode.ONBOARD_POSITION;
+    }
+    
+    private static final boolean[] X_MODE_TURN_DIRS = { false, true, true, false };
+    
     public void xMode () {
-        flModule.xMode(false);
-        frModule.xMode(true);
-        rlModule.xMode(true);
-        rrModule.xMode(false);
+        fastLoop.clear();
+        setModuleControlPeriod(TimedRobot.kDefaultPeriod);
+        recordCommand(0, 0, 0);
+        for (int i = 0; i < modules.length; i ++) {
+            if (modules[i].isHealthy()) {
+                modules[i].xMode(X_MODE_TURN_DIRS[i]);
+            } else {
+                modules[i].stop();
+            }
+        }
+    }
+    
+    /**
+     * Clear every module's latched health fault, letting failed modules rejoin the drive.
+     */
+    public void resetModuleHealth () {
+        for (SwerveModule module : modules) {
+            module.resetHealth();
+        }
+    }
+    
+    /**
+     * Get the number of modules which have failed and been removed from the drive.
+     */
+    public int getFailedModuleCount () {
+        int count = 0;
+        for (SwerveModule module : modules) {
+            if (!module.isHealthy()) count ++;
+        }
+        return count;
     }
     
     /**
@@ -230,7 +554,22 @@ public class Swerve extends SubsystemBase {
     }
     
     private double getRobotPitchRaw () {
-        return gyro.getRoll();
+        return gyroRoll.getAsDouble();
+    }
+    
+    /**
+     * Get the rate at which the robot's pitch is changing, in degrees per second, from the two newest gyro samples.
+     */
+    public double getRobotPitchRateDegreesPerSec () {
+        // The gyro is mounted so that its roll is the robot's pitch
+        return gyroSamples.getRollRateDegreesPerSec();
+    }
+    
+    /**
+     * Get the robot's counter-clockwise angular velocity in degrees per second, from the two newest gyro samples.
+     */
+    public double getRobotYawRateDegreesPerSec () {
+        return gyroSamples.getYawRateDegreesPerSec();
     }
     
     public Rotation2d getTeleopDriveRobotRotation () {
@@ -241,6 +580,9 @@ public class Swerve extends SubsystemBase {
      * Stop all swerve modules immediately.
      */
     public void stop () {
+        fastLoop.clear();
+        setModuleControlPeriod(TimedRobot.kDefaultPeriod);
+        recordCommand(0, 0, 0);
         flModule.stop();
         frModule.stop();
         rlModule.stop();
@@ -254,6 +596,10 @@ public class Swerve extends SubsystemBase {
         builder.addDoubleProperty("Teleop Yaw", () -> {
             return getTeleopDriveRobotRotation().getDegrees();
         }, null);
+        builder.addDoubleProperty("Odometry Dropped Samples", odometryBuffer::getDroppedSamples, null);
+        builder.addBooleanProperty("Onboard Drive Velocity", this::isOnboardDriveVelocityControl, this::setOnboardDriveVelocityControl);
+        builder.addDoubleProperty("Failed Modules", this::getFailedModuleCount, null);
+        builder.addBooleanProperty("Onboard Steer Position", this::isOnboardSteerPositionControl, this::setOnboardSteerPositionControl);
     }
     
     public Command getControllerCommand (Pose2d... waypoints) {
@@ -261,7 +607,7 @@ public class Swerve extends SubsystemBase {
         
         return new SwerveControllerCommand(
             trajectory,
-            poseEstimator::getEstimatedPosition,
+            this::getPredictedPose,
             kinematics,
             new HolonomicDriveController(
                 autonDriveXController,
@@ -274,12 +620,66 @@ public class Swerve extends SubsystemBase {
     }
     
     public Pose2d getPose () {
-        return poseEstimator.getEstimatedPosition();
+        return poseEstimator.getPose();
+    }
+    
+    /**
+     * Get the pose the robot is predicted to reach once the speeds already commanded have taken effect, based on
+     * the measured actuation latency. Controllers should act on this pose rather than {@link #getPose()}, so that
+     * they don't keep correcting for error which is about to be corrected anyway.
+     */
+    public Pose2d getPredictedPose () {
+        return latencyCompensator.predict(getPose(), Timer.getFPGATimestamp());
+    }
+    
+    /**
+     * Get the measured delay between commanding chassis speeds and the robot moving at them, in seconds.
+     */
+    public double getActuationLatencySecs () {
+        return latencyCompensator.getLatencySecs();
+    }
+    
+    /**
+     * Measure the robot-relative chassis speeds from every healthy module's velocity, by least squares, and use
+     * them to update the actuation latency estimate.
+     */
+    private void measureChassisSpeeds () {
+        double vxSum = 0, vySum = 0, omegaSum = 0, radiusSqSum = 0;
+        int moduleCount = 0;
+        
+        for (int i = 0; i < modules.length; i ++) {
+            if (!modules[i].isHealthy()) continue;
+            
+            double speed = modules[i].getDriveVelocityMetersPerSec();
+            double angleRadians = Math.toRadians(modules[i].getRotationDegrees());
+            double vx = speed * Math.cos(angleRadians), vy = speed * Math.sin(angleRadians);
+            double x = MODULE_TRANSLATIONS[i].getX(), y = MODULE_TRANSLATIONS[i].getY();
+            
+            vxSum += vx;
+            vySum += vy;
+            omegaSum += x * vy - y * vx;
+            radiusSqSum += x * x + y * y;
+            moduleCount ++;
+        }
+        
+        if (moduleCount == 0) return;
+        
+        // The modules are placed symmetrically, so translation and rotation separate
+        latencyCompensator.recordMeasurement(
+            Timer.getFPGATimestamp(),
+            vxSum / moduleCount,
+            vySum / moduleCount,
+            omegaSum / radiusSqSum
+        );
     }
     
     public Rotation2d getRobotRotation () {
         // P = R - A
-        return gyro.getRotation2d().minus(absoluteRobotRotationOffset);
+        return getGyroRotation().minus(absoluteRobotRotationOffset);
+    }
+    
+    private Rotation2d getGyroRotation () {
+        return Rotation2d.fromDegrees(gyroYaw.getAsDouble());
     }
     
     /**
@@ -288,26 +688,177 @@ public class Swerve extends SubsystemBase {
     public void setPose (Pose2d newPose) {
         // A = R - P
         // Adjust absoluteRobotRotationOffset to reset the getRobotRotation reading to fit the pose
-        absoluteRobotRotationOffset = gyro.getRotation2d().minus(newPose.getRotation());
+        absoluteRobotRotationOffset = getGyroRotation().minus(newPose.getRotation());
+        
+        // Samples taken before the reset must not be applied on top of the new pose
+        odometryBuffer.clear();
+        odometryFilter.resync(readModuleDistances());
         
-        poseEstimator.resetPosition(getRobotRotation(), new SwerveModulePosition[]{
-            flModule.getPosition(),
-            frModule.getPosition(),
-            rlModule.getPosition(),
-            rrModule.getPosition(),
-        }, newPose);
+        // The pose estimator tracks the filtered module distances, not the raw ones
+        poseEstimator.resetPosition(getRobotRotation().getRadians(), getFilteredModuleDistances(), newPose);
+    }
+    
+    /**
+     * Add a pose measured by vision at a past FPGA timestamp. The estimated pose is corrected toward the measurement
+     * as of that timestamp, and odometry since then is replayed on top of the correction.
+     */
+    public void addVisionMeasurement (Pose2d visionPose, double timestampSecs) {
+        poseEstimator.addVisionMeasurement(
+            visionPose.getX(),
+            visionPose.getY(),
+            visionPose.getRotation().getRadians(),
+            timestampSecs
+        );
+    }
+    
+    /**
+     * Add a pose measured by vision at a past FPGA timestamp, trusted according to the given standard deviations
+     * in meters and radians.
+     */
+    public void addVisionMeasurement (
+            Pose2d visionPose,
+            double timestampSecs,
+            double xStdDev,
+            double yStdDev,
+            double thetaStdDev
+        ) {
+        poseEstimator.addVisionMeasurement(
+            visionPose.getX(),
+            visionPose.getY(),
+            visionPose.getRotation().getRadians(),
+            timestampSecs,
+            xStdDev,
+            yStdDev,
+            thetaStdDev
+        );
+    }
+    
+    /**
+     * Get the estimated heading at a past FPGA timestamp, within the pose history.
+     */
+    public Rotation2d getHeadingAt (double timestampSecs) {
+        return new Rotation2d(poseEstimator.getThetaRadiansAt(timestampSecs));
+    }
+    
+    private double[] getFilteredModuleDistances () {
+        for (int i = 0; i < modules.length; i ++) {
+            filteredModuleDistances[i] = odometryFilter.getFilteredDistance(i);
+        }
+        return filteredModuleDistances;
+    }
+    
+    /**
+     * Read the raw drive distance of every module into a reused array.
+     */
+    private double[] readModuleDistances () {
+        for (int i = 0; i < modules.length; i ++) {
+            rawModuleDistances[i] = modules[i].getDisplacementMeters();
+        }
+        return rawModuleDistances;
+    }
+    
+    /**
+     * Drain all odometry samples taken since the last update into the pose estimator, in order, filtering out wheel
+     * slip and collisions.
+     */
+    private void updateOdometry () {
+        while (odometryBuffer.poll(odometrySample)) {
+            odometryFilter.filter(odometrySample);
+            
+            poseEstimator.update(
+                odometrySample.timestamp,
+                Math.toRadians(odometrySample.gyroYawDegrees) - absoluteRobotRotationOffset.getRadians(),
+                odometrySample.distancesMeters,
+                odometrySample.anglesDegrees
+            );
+        }
+    }
+    
+    /**
+     * Run every module's health checks, and remove failed modules from the drive and from odometry. The robot keeps
+     * driving on the remaining modules in a degraded mode until the faults are reset.
+     */
+    private void updateModuleHealth () {
+        for (int i = 0; i < modules.length; i ++) {
+            // A drive stall is only a fault if the other healthy modules are moving
+            double othersSpeed = 0;
+            for (int j = 0; j < modules.length; j ++) {
+                if (j != i && modules[j].isHealthy()) {
+                    othersSpeed = Math.max(othersSpeed, Math.abs(modules[j].getDriveVelocityMetersPerSec()));
+                }
+            }
+            
+            modules[i].updateHealth(othersSpeed);
+            
+            boolean healthy = modules[i].isHealthy();
+            poseEstimator.setModuleWeight(i, healthy ? 1 : 0);
+            odometryFilter.setModuleIgnored(i, !healthy);
+            moduleStates.setIgnored(i, !healthy);
+        }
+    }
+    
+    /**
+     * Start running module control and odometry on a fast {@link TimedRobot#addPeriodic} callback of the given
+     * robot, separate from the command loop. This must only be called once, during robotInit.
+     */
+    public void startFastLoop (TimedRobot robot) {
+        fastLoop.start(robot);
+    }
+    
+    /**
+     * Run a single cycle of the fast control loop: update odometry with the latest samples, and follow the next
+     * setpoint toward the desired speeds, if there are any.
+     */
+    void runFastCycle (SwerveSetpointGenerator generator, double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec) {
+        // In simulation, the physics is stepped over the time since the last fast cycle, so the sensors read below
+        // reflect the outputs applied in that cycle
+        if (driveSim != null) {
+            driveSim.update();
+        }
+        
+        // The sensor cache is only refreshed once per 20 ms robot loop, so the readings used here are refreshed
+        // every fast cycle instead of being up to four cycles old
+        for (SwerveModule module : modules) {
+            module.refreshSensors();
+        }
+        gyroYaw.refresh();
+        gyroRoll.refresh();
+        
+        updateOdometry();
+        tractionController.update();
+        
+        if (generator != null) {
+            followSetpoint(generator, vxMetersPerSec, vyMetersPerSec, omegaRadiansPerSec);
+        }
     }
     
     @Override
     public void periodic () {
-        poseEstimator.update(getRobotRotation(), new SwerveModulePosition[]{
-            flModule.getPosition(),
-            frModule.getPosition(),
-            rlModule.getPosition(),
-            rrModule.getPosition(),
-        });
-        
-        sendableField.setRobotPose(poseEstimator.getEstimatedPosition());
+        periodicStage.start();
+        
+        updateModuleHealth();
+        updateOdometry();
+        measureChassisSpeeds();
+        
+        // The modules may be turned by hand while disabled, so keep the integrated steer encoders in sync with
+        // the absolute CANCoders
+        if (DriverStation.isDisabled() && ++ disabledCycles % STEER_ENCODER_SYNC_CYCLES == 0) {
+            for (int i = 0; i < modules.length; i ++) {
+                modules[i].syncSteerMotorEncoder();
+            }
+        }
+        
+        sendableField.setRobotPose(getPose());
+        
+        periodicStage.stop();
+    }
+    
+    @Override
+    public void simulationPeriodic () {
+        // Once the fast loop is running, it steps the simulation instead
+        if (!fastLoop.isRunning()) {
+            driveSim.update();
+        }
     }
     
 }
@@ -0,0 +1,261 @@
+package frc.robot.subsystems.swerve;
+
+import claw.rct.commands.CommandProcessor;
+import claw.rct.commands.CommandReader;
+import claw.rct.commands.CommandProcessor.BadCallException;
+import claw.rct.network.low.ConsoleManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
+import frc.robot.LiveCommandTester;
+import frc.robot.util.FeedforwardFitter;
+
+/**
+ * An RCT command which characterizes the swerve drive and steer motors. Quasistatic (slow voltage ramp) and dynamic
+ * (voltage step) tests are run in both directions, sampling applied voltage and position on a dedicated
+ * {@link Notifier} thread, and the feedforward constants kS, kV and kA are fit by least squares on the robot. The
+ * results can then be saved to the swerve feedforward settings.
+ */
+class SwerveCharacterization {
+
+    private static final double SAMPLE_PERIOD_SECS = 0.005;
+
+    /**
+     * A mechanism of every swerve module which can be characterized, and the voltages used to test it.
+     */
+    private enum Mechanism {
+        DRIVE   ("m", 1, 4, 4, 1.5, 0.02),
+        STEER   ("deg", 0.5, 6, 2, 1, 5);
+
+        private final String units;
+        private final double rampVoltsPerSec, quasistaticDurationSecs;
+        private final double stepVolts, dynamicDurationSecs;
+        private final double minVelocity;
+
+        private Mechanism (
+                String units,
+                double rampVoltsPerSec,
+                double quasistaticDurationSecs,
+                double stepVolts,
+                double dynamicDurationSecs,
+                double minVelocity
+            ) {
+            this.units = units;
+            this.rampVoltsPerSec = rampVoltsPerSec;
+            this.quasistaticDurationSecs = quasistaticDurationSecs;
+            this.stepVolts = stepVolts;
+            this.dynamicDurationSecs = dynamicDurationSecs;
+            this.minVelocity = minVelocity;
+        }
+    }
+
+    private final Swerve swerve;
+    private final SwerveModule[] modules;
+
+    // Steer angles are unwrapped so that positions are continuous across the +/-180 degree boundary
+    private final double[] lastSteerDegrees, unwrappedSteerDegrees;
+
+    public SwerveCharacterization (Swerve swerve, SwerveModule... modules) {
+        this.swerve = swerve;
+        this.modules = modules;
+
+        lastSteerDegrees = new double[modules.length];
+        unwrappedSteerDegrees = new double[modules.length];
+    }
+
+    public CommandProcessor toCommandProcessor (String commandName) {
+        return new CommandProcessor(
+            commandName,
+            commandName,
+            "Use this command to characterize the swerve drive or steer motors. Quasistatic and dynamic voltage " +
+            "tests are run in both directions, and feedforward constants are fit to the results and can be saved.",
+            this::runCommand
+        );
+    }
+
+    private void runCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNone();
+        console.println("Double-tap enter to disable the robot and stop the characterization at any time.");
+
+        Mechanism mechanism = getMechanism(console);
+        if (mechanism == Mechanism.DRIVE) {
+            console.println("The robot will drive forward and back in a straight line. Make sure there are at least");
+            console.println("3 meters of clear space in front of and behind the robot.");
+        } else {
+            console.println("The modules will steer in place. The robot may be on the ground or on blocks.");
+        }
+
+        FeedforwardFitter fitter = new FeedforwardFitter(mechanism.minVelocity);
+
+        boolean[] quasistaticTests = { true, true, false, false };
+        boolean[] forwardTests = { true, false, true, false };
+
+        for (int i = 0; i < quasistaticTests.length; i ++) {
+            String testName = (quasistaticTests[i] ? "quasistatic " : "dynamic ") + (forwardTests[i] ? "forward" : "reverse");
+            if (!runTest(console, new Test(mechanism, fitter, quasistaticTests[i], forwardTests[i]), testName)) {
+                console.printlnErr("Characterization cancelled.");
+                return;
+            }
+        }
+
+        if (!fitter.fit()) {
+            console.printlnErr("Could not fit feedforward constants to " + fitter.getPointCount() + " points.");
+            return;
+        }
+
+        console.println("");
+        console.println("Points : " + fitter.getPointCount());
+        console.println("kS     : " + String.format("%.4f", fitter.getKS()) + " V");
+        console.println("kV     : " + String.format("%.5f", fitter.getKV()) + " V/(" + mechanism.units + "/s)");
+        console.println("kA     : " + String.format("%.5f", fitter.getKA()) + " V/(" + mechanism.units + "/s^2)");
+        console.println("R^2    : " + String.format("%.4f", fitter.getRSquared()));
+
+        if (fitter.getKV() <= 0 || fitter.getKS() < 0 || fitter.getKA() < 0) {
+            console.printlnErr("These constants are not physically reasonable and will not be saved.");
+            return;
+        }
+
+        if (LiveCommandTester.getYesNo(console, "Save these constants? ")) {
+            if (mechanism == Mechanism.DRIVE) {
+                SwerveModule.saveDriveFeedforward(fitter.getKS(), fitter.getKV(), fitter.getKA());
+            } else {
+                SwerveModule.saveSteerFeedforward(fitter.getKS(), fitter.getKV(), fitter.getKA());
+            }
+            console.printlnSys("Saved feedforward constants.");
+        }
+    }
+
+    private static Mechanism getMechanism (ConsoleManager console) {
+        while (true) {
+            console.print("Characterize which mechanism? (drive | steer) ");
+            String input = console.readInputLine().strip().toUpperCase();
+
+            for (Mechanism mechanism : Mechanism.values()) {
+                if (mechanism.name().equals(input)) return mechanism;
+            }
+        }
+    }
+
+    /**
+     * Run a single test to completion, asking the user to confirm first.
+     * @return Whether the test ran to completion.
+     */
+    private boolean runTest (ConsoleManager console, Test test, String testName) {
+        if (!LiveCommandTester.getYesNo(console, "Run the " + testName + " test? ")) return false;
+
+        while (DriverStation.isDisabled()) {
+            console.printlnErr("Enable the robot and try again.");
+            if (!LiveCommandTester.getYesNo(console, "Run the " + testName + " test? ")) return false;
+        }
+
+        Command command = test.withInterruptBehavior(InterruptionBehavior.kCancelIncoming);
+        command.schedule();
+        console.printlnSys("Running " + testName + " test");
+
+        while (command.isScheduled() && DriverStation.isEnabled()) {
+            Timer.delay(0.02);
+        }
+
+        command.cancel();
+        return test.completed;
+    }
+
+    /**
+     * A single quasistatic or dynamic test in one direction. Voltage is applied and samples are taken on a
+     * {@link Notifier} thread, while the main thread holds the module angles during drive tests.
+     */
+    private class Test extends CommandBase {
+
+        private final Mechanism mechanism;
+        private final FeedforwardFitter fitter;
+        private final boolean quasistatic;
+        private final double direction;
+        private final Notifier notifier = new Notifier(this::sample);
+
+        private double startTime = 0;
+        private volatile boolean completed = false;
+
+        public Test (Mechanism mechanism, FeedforwardFitter fitter, boolean quasistatic, boolean forward) {
+            this.mechanism = mechanism;
+            this.fitter = fitter;
+            this.quasistatic = quasistatic;
+            direction = forward ? 1 : -1;
+            addRequirements(swerve);
+        }
+
+        private double getDurationSecs () {
+            return quasistatic ? mechanism.quasistaticDurationSecs : mechanism.dynamicDurationSecs;
+        }
+
+        @Override
+        public void initialize () {
+            swerve.stop();
+
+            for (int i = 0; i < modules.length; i ++) {
+                lastSteerDegrees[i] = modules[i].readRotationDegrees();
+                unwrappedSteerDegrees[i] = lastSteerDegrees[i];
+            }
+
+            fitter.resetHistory();
+            completed = false;
+            startTime = Timer.getFPGATimestamp();
+            notifier.startPeriodic(SAMPLE_PERIOD_SECS);
+        }
+
+        @Override
+        public void execute () {
+            if (mechanism == Mechanism.DRIVE) {
+                for (SwerveModule module : modules) {
+                    module.steerTo(0);
+                }
+            }
+        }
+
+        private void sample () {
+            double timestamp = Timer.getFPGATimestamp();
+            double elapsed = timestamp - startTime;
+            double volts = direction * (quasistatic ? mechanism.rampVoltsPerSec * elapsed : mechanism.stepVolts);
+
+            // The position of the mechanism is averaged across all modules
+            double position = 0;
+            for (int i = 0; i < modules.length; i ++) {
+                if (mechanism == Mechanism.DRIVE) {
+                    position += modules[i].getDisplacementMeters();
+                } else {
+                    double degrees = modules[i].readRotationDegrees();
+                    unwrappedSteerDegrees[i] += Math.IEEEremainder(degrees - lastSteerDegrees[i], 360);
+                    lastSteerDegrees[i] = degrees;
+                    position += unwrappedSteerDegrees[i];
+                }
+            }
+
+            fitter.addSample(timestamp, position / modules.length, volts);
+
+            for (SwerveModule module : modules) {
+                if (mechanism == Mechanism.DRIVE) {
+                    module.setDriveVoltage(volts);
+                } else {
+                    module.updateSteerMotor(volts);
+                }
+            }
+        }
+
+        @Override
+        public boolean isFinished () {
+            return Timer.getFPGATimestamp() - startTime >= getDurationSecs();
+        }
+
+        @Override
+        public void end (boolean interrupted) {
+            // Each test only runs once, so its notifier can be released
+            notifier.close();
+            swerve.stop();
+            completed = !interrupted;
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Simulates the whole swerve drivetrain. Every module's motors are integrated at a fixed 1 kHz step, independent
+ * of how often the robot loop runs, and the chassis rotation implied by the module velocities is pushed into the
+ * gyro sample buffer at the NavX's update rate, so that the gyro, odometry and pose estimator all see consistent
+ * motion. The chassis acceleration is also simulated in place of the NavX's accelerometer.
+ */
+class SwerveDriveSim {
+
+    private static final double STEP_SECS = 0.001;
+
+    /**
+     * Gyro samples are produced every this many steps, matching the NavX's 200 Hz update rate.
+     */
+    private static final int GYRO_SAMPLE_STEPS = 5;
+
+    /**
+     * Simulation time which has passed beyond this (e.g. after pausing in a debugger) is dropped rather than
+     * integrated all at once.
+     */
+    private static final double MAX_UPDATE_SECS = 0.1;
+
+    private final SwerveModule[] modules;
+    private final double[] moduleXs, moduleYs;
+    private final double moduleRadiusSqSum;
+
+    private final GyroSampleBuffer gyroSamples;
+
+    private double headingRadians = 0;
+    private double fieldVx = 0, fieldVy = 0, accelerationMetersPerSecSq = 0;
+    private double lastUpdateTime, pendingSecs = 0;
+    private int stepCount = 0;
+
+    public SwerveDriveSim (Translation2d[] moduleTranslations, GyroSampleBuffer gyroSamples, SwerveModule... modules) {
+        this.modules = modules;
+        this.gyroSamples = gyroSamples;
+
+        moduleXs = new double[modules.length];
+        moduleYs = new double[modules.length];
+        double radiusSqSum = 0;
+        for (int i = 0; i < modules.length; i ++) {
+            moduleXs[i] = moduleTranslations[i].getX();
+            moduleYs[i] = moduleTranslations[i].getY();
+            radiusSqSum += moduleXs[i] * moduleXs[i] + moduleYs[i] * moduleYs[i];
+        }
+        moduleRadiusSqSum = radiusSqSum;
+
+        lastUpdateTime = Timer.getFPGATimestamp();
+    }
+
+    /**
+     * Integrate the simulation up to the current time. This should be called once per control cycle: every fast
+     * cycle while the {@link SwerveFastLoop} is running, or every robot cycle otherwise.
+     */
+    public void update () {
+        double now = Timer.getFPGATimestamp();
+        pendingSecs += MathUtil.clamp(now - lastUpdateTime, 0, MAX_UPDATE_SECS);
+        lastUpdateTime = now;
+
+        while (pendingSecs >= STEP_SECS) {
+            pendingSecs -= STEP_SECS;
+
+            // Steps are timestamped back from the current FPGA time rather than by accumulating step lengths, so
+            // gyro samples stay on the same clock as everything else even when time is dropped
+            step(STEP_SECS, now - pendingSecs);
+        }
+    }
+
+    private void step (double dtSecs, double timestampSecs) {
+        // The chassis angular velocity is the least squares fit of omega x r_i to the module velocities
+        double omegaSum = 0, vxSum = 0, vySum = 0;
+        for (int i = 0; i < modules.length; i ++) {
+            modules[i].simulationUpdate(dtSecs);
+
+            double speed = modules[i].getDriveVelocityMetersPerSec();
+            double angleRadians = Math.toRadians(modules[i].readRotationDegrees());
+            double vx = speed * Math.cos(angleRadians);
+            double vy = speed * Math.sin(angleRadians);
+            omegaSum += moduleXs[i] * vy - moduleYs[i] * vx;
+            vxSum += vx;
+            vySum += vy;
+        }
+
+        headingRadians += omegaSum / moduleRadiusSqSum * dtSecs;
+
+        // The modules are placed symmetrically, so the chassis velocity is their mean. It is differentiated in the
+        // field frame, so that turning at a constant speed still counts as accelerating.
+        double cos = Math.cos(headingRadians), sin = Math.sin(headingRadians);
+        double vx = vxSum / modules.length, vy = vySum / modules.length;
+        double newFieldVx = vx * cos - vy * sin, newFieldVy = vx * sin + vy * cos;
+        accelerationMetersPerSecSq = Math.hypot(newFieldVx - fieldVx, newFieldVy - fieldVy) / dtSecs;
+        fieldVx = newFieldVx;
+        fieldVy = newFieldVy;
+
+        if (++ stepCount % GYRO_SAMPLE_STEPS == 0) {
+            gyroSamples.offer(timestampSecs, Math.toDegrees(headingRadians), 0, 0);
+        }
+    }
+
+    /**
+     * Get the magnitude of the simulated chassis acceleration over the last step, in meters per second squared,
+     * as the NavX's accelerometer would measure it without gravity.
+     */
+    public double getAccelerationMetersPerSecSq () {
+        return accelerationMetersPerSecSq;
+    }
+
+}
@@ -0,0 +1,152 @@
+package frc.robot.subsystems.swerve;
+
+import claw.Setting;
+import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.util.RollingHistogram;
+
+/**
+ * Runs swerve module control and odometry on a fast {@link TimedRobot#addPeriodic} callback, separate from the
+ * 20 ms command loop. Commands publish the desired robot-relative speeds (and the {@link SwerveSetpointGenerator}
+ * to limit them with) into a slot, and every fast cycle applies the latest ones, so the setpoint generator,
+ * kinematics and module outputs all run at the fast rate.
+ * <br></br>
+ * {@code addPeriodic} callbacks run on the main robot thread, between iterations of the command loop, so the slot
+ * is plain primitive fields and needs no locking.
+ */
+class SwerveFastLoop implements Sendable {
+
+    /**
+     * The fast loop period. This is only read when the loop is started, so changes take effect after a restart.
+     */
+    private static final Setting<Double> PERIOD_SECS = new Setting<>("SWERVE_FAST_LOOP.PERIOD_SECS", () -> 0.005);
+
+    /**
+     * If no speeds are published for this long, the drive is stopped, in case the command publishing them has
+     * stopped running without stopping the drive.
+     */
+    private static final double WATCHDOG_SECS = 0.1;
+
+    // 1000 samples is five seconds of 5 ms cycles, and 10 us buckets cover up to 10 ms
+    private static final int WINDOW_LENGTH = 1000;
+    private static final long BUCKET_WIDTH_NANOS = 10_000;
+    private static final int BUCKET_COUNT = 1001;
+
+    private final Swerve swerve;
+
+    private SwerveSetpointGenerator generator = null;
+    private double desiredVx = 0, desiredVy = 0, desiredOmega = 0;
+    private double lastPublishTime = 0;
+
+    private boolean running = false, enabled = true;
+    private double periodSecs = TimedRobot.kDefaultPeriod;
+    private long periodNanos = 0, lastStartNanos = 0;
+
+    private final RollingHistogram
+        executionHistogram = new RollingHistogram(WINDOW_LENGTH, BUCKET_WIDTH_NANOS, BUCKET_COUNT),
+        periodHistogram = new RollingHistogram(WINDOW_LENGTH, BUCKET_WIDTH_NANOS, BUCKET_COUNT);
+    private int overrunCount = 0, watchdogCount = 0;
+
+    public SwerveFastLoop (Swerve swerve) {
+        this.swerve = swerve;
+    }
+
+    /**
+     * Start running the fast loop on the given robot. This must only be called once, during robotInit.
+     */
+    public void start (TimedRobot robot) {
+        periodSecs = PERIOD_SECS.get();
+        periodNanos = (long)(periodSecs * 1e9);
+
+        // Offset by half a period so the fast loop doesn't coincide with the start of the main loop
+        robot.addPeriodic(this::run, periodSecs, periodSecs / 2);
+        running = true;
+    }
+
+    /**
+     * Get the configured fast loop period, which the loop runs at once it is started.
+     */
+    static double getConfiguredPeriodSecs () {
+        return PERIOD_SECS.get();
+    }
+
+    /**
+     * Whether the fast loop has been started, so that {@link Swerve#runFastCycle} is called every fast period, even
+     * while the loop isn't active.
+     */
+    public boolean isRunning () {
+        return running;
+    }
+
+    /**
+     * Whether speeds published to the fast loop will be applied.
+     */
+    public boolean isActive () {
+        return running && enabled;
+    }
+
+    /**
+     * Get the period at which module outputs are updated: the fast loop period if it is active, or the main loop
+     * period otherwise.
+     */
+    public double getControlPeriodSecs () {
+        return isActive() ? periodSecs : TimedRobot.kDefaultPeriod;
+    }
+    
+    public void setEnabled (boolean enabled) {
+        if (!enabled) clear();
+        this.enabled = enabled;
+    }
+
+    /**
+     * Publish the desired robot-relative speeds, which will be applied every fast cycle until they are replaced
+     * or cleared. This must be called periodically.
+     */
+    public void publish (SwerveSetpointGenerator generator, double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec) {
+        this.generator = generator;
+        desiredVx = vxMetersPerSec;
+        desiredVy = vyMetersPerSec;
+        desiredOmega = omegaRadiansPerSec;
+        lastPublishTime = Timer.getFPGATimestamp();
+    }
+
+    /**
+     * Stop applying the last published speeds, as when the drive is being controlled some other way.
+     */
+    public void clear () {
+        generator = null;
+    }
+
+    private void run () {
+        long startNanos = System.nanoTime();
+        if (lastStartNanos != 0) periodHistogram.record(startNanos - lastStartNanos);
+        lastStartNanos = startNanos;
+
+        if (generator != null && Timer.getFPGATimestamp() - lastPublishTime > WATCHDOG_SECS) {
+            watchdogCount ++;
+            swerve.stop();
+        }
+
+        swerve.runFastCycle(generator, desiredVx, desiredVy, desiredOmega);
+
+        long executionNanos = System.nanoTime() - startNanos;
+        executionHistogram.record(executionNanos);
+        if (executionNanos > periodNanos) overrunCount ++;
+    }
+
+    @Override
+    public void initSendable (SendableBuilder builder) {
+        builder.addBooleanProperty("Enabled", () -> enabled, this::setEnabled);
+        builder.addBooleanProperty("Active Setpoint", () -> generator != null, null);
+        builder.addDoubleProperty("Execution p50 (ms)", () -> executionHistogram.getPercentileNanos(0.5) / 1e6, null);
+        builder.addDoubleProperty("Execution p99 (ms)", () -> executionHistogram.getPercentileNanos(0.99) / 1e6, null);
+        builder.addDoubleProperty("Execution Max (ms)", () -> executionHistogram.getMaxNanos() / 1e6, null);
+        builder.addDoubleProperty("Period p99 (ms)", () -> periodHistogram.getPercentileNanos(0.99) / 1e6, null);
+        builder.addDoubleProperty("Period Max (ms)", () -> periodHistogram.getMaxNanos() / 1e6, null);
+        builder.addDoubleProperty("Overruns", () -> overrunCount, null);
+        builder.addDoubleProperty("Watchdog Stops", () -> watchdogCount, null);
+    }
+
+}
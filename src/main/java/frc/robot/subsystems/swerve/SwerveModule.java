@@ -1,34 +1,161 @@
 package frc.robot.subsystems.swerve;
 
+import com.ctre.phoenix.ErrorCode;
 import com.revrobotics.CANSparkMax;
+import com.revrobotics.REVLibError;
+import com.revrobotics.RelativeEncoder;
+import com.revrobotics.SparkMaxPIDController;
+import com.revrobotics.CANSparkMax.ControlType;
 import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.SparkMaxPIDController.ArbFFUnits;
 
 import claw.Setting;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.util.sendable.Sendable;
 import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import frc.robot.util.CANDeviceRegistry;
+import frc.robot.util.MotorThermalMonitor;
+import frc.robot.util.PIDGains;
+import frc.robot.util.RelayAutoTuner;
+import frc.robot.util.SensorCache;
+import frc.robot.util.CANDeviceRegistry.SparkSignal;
+import frc.robot.util.SensorCache.CachedDouble;
 
 class SwerveModule implements Sendable {
     
-    // TODO: Calculate this value
-    private static final double
-        METERS_PER_SEC_TO_DRIVE_VOLTS = 1;
+    /**
+     * Drive motor rotations per meter driven by the wheel.
+     */
+    private static final double DRIVE_ROTATIONS_PER_METER = 20.032;
+    
+    /**
+     * Proportional gain of the SPARK MAX's onboard drive velocity loop, in duty cycle per meter/sec of error.
+     * The feedforward does most of the work, so this only needs to correct for load and battery sag.
+     */
+    private static final double DRIVE_VELOCITY_KP = 0.1;
+    
+    /**
+     * Steer motor rotations per full rotation of the module (SDS MK4).
+     */
+    private static final double STEER_GEAR_RATIO = 12.8;
+    
+    /**
+     * The steer PID output (both on the RoboRIO and onboard) is capped at this many volts.
+     */
+    private static final double MAX_STEER_VOLTS = 3;
+    
+    /**
+     * Gains of the RoboRIO steer PID, in volts per degree of error. These can be tuned with the {@code autotune}
+     * command, and default to {@code MAX_STEER_VOLTS} at 90 degrees of error.
+     */
+    static final PIDGains STEER_GAINS = new PIDGains("SWERVE_STEER_PID", MAX_STEER_VOLTS / 90, 0, 0);
+    
+    /**
+     * Maximum duty cycle of the onboard steer position loop, matching the cap on the RoboRIO steer PID.
+     */
+    private static final double STEER_POSITION_MAX_OUTPUT = MAX_STEER_VOLTS / 12;
+    
+    /**
+     * Period of the SPARK MAX's onboard control loops, which its integral and derivative gains are scaled by.
+     */
+    private static final double ONBOARD_LOOP_PERIOD_SECS = 0.001;
+    
+    /**
+     * Status frame period of the steer motor's integrated encoder position and velocity, which are compared against
+     * the CANCoder for health monitoring.
+     */
+    private static final int STEER_MOTOR_ENCODER_FRAME_MS = 20;
+    
+    // Feedforward constants, as measured by the swerve characterization routine (see SwerveCharacterization).
+    // Drive constants are in volts per meter/sec (and meter/sec^2), and steer constants are in volts per
+    // degree/sec (and degree/sec^2).
+    private static final Setting<Double>
+        DRIVE_FF_KS = new Setting<>("SWERVE_DRIVE_FEEDFORWARD.KS", () -> 0.2),
+        DRIVE_FF_KV = new Setting<>("SWERVE_DRIVE_FEEDFORWARD.KV", () -> 1.),
+        DRIVE_FF_KA = new Setting<>("SWERVE_DRIVE_FEEDFORWARD.KA", () -> 0.),
+        STEER_FF_KS = new Setting<>("SWERVE_STEER_FEEDFORWARD.KS", () -> 0.14),
+        STEER_FF_KV = new Setting<>("SWERVE_STEER_FEEDFORWARD.KV", () -> (MAX_STEER_VOLTS - 0.14) / 600),
+        STEER_FF_KA = new Setting<>("SWERVE_STEER_FEEDFORWARD.KA", () -> 0.);
+    
+    /**
+     * The steer PID output is in volts, so the steer feedforward's velocity and acceleration terms follow the setpoint
+     * generator's steer motion, and its static term is added in the direction of the total output (see
+     * {@link SwerveModuleControl}).
+     */
+    private static SimpleMotorFeedforward steerFeedforward;
+    private static SimpleMotorFeedforward driveFeedforward;
+    
+    static {
+        reloadFeedforwards();
+    }
+    
+    /**
+     * Rebuild the drive and steer feedforwards from the saved feedforward settings.
+     */
+    static void reloadFeedforwards () {
+        steerFeedforward = new SimpleMotorFeedforward(STEER_FF_KS.get(), STEER_FF_KV.get(), STEER_FF_KA.get());
+        driveFeedforward = new SimpleMotorFeedforward(DRIVE_FF_KS.get(), DRIVE_FF_KV.get(), DRIVE_FF_KA.get());
+    }
+    
+    private static SimpleMotorFeedforward getDriveFeedforward () {
+        return driveFeedforward;
+    }
+    
+    private static SimpleMotorFeedforward getSteerFeedforward () {
+        return steerFeedforward;
+    }
+    
+    static void saveDriveFeedforward (double kS, double kV, double kA) {
+        DRIVE_FF_KS.set(kS);
+        DRIVE_FF_KV.set(kV);
+        DRIVE_FF_KA.set(kA);
+        reloadFeedforwards();
+    }
     
-    private static final SimpleMotorFeedforward STEER_FEEDFORWARD = new SimpleMotorFeedforward(0.14, 1);
-    private static final SimpleMotorFeedforward DRIVE_FEEDFORWARD = new SimpleMotorFeedforward(0.2, 1);
+    static void saveSteerFeedforward (double kS, double kV, double kA) {
+        STEER_FF_KS.set(kS);
+        STEER_FF_KV.set(kV);
+        STEER_FF_KA.set(kA);
+        reloadFeedforwards();
+    }
     
-    private static double getMaxDriveSpeedMetersPerSec () {
-        return RobotController.getBatteryVoltage() / METERS_PER_SEC_TO_DRIVE_VOLTS;
+    /**
+     * Get the fastest wheel speed the drive motors can reach at the current battery voltage.
+     */
+    static double getMaxDriveSpeedMetersPerSec () {
+        return Math.max(0, RobotController.getBatteryVoltage() - driveFeedforward.ks) / driveFeedforward.kv;
+    }
+    
+    /**
+     * Get the drive feedforward's velocity gain, in volts per meter/sec.
+     */
+    static double getDriveVoltsPerMeterPerSec () {
+        return driveFeedforward.kv;
     }
     
-    public static void desaturateWheelSpeeds (SwerveModuleState[] moduleStates) {
-        SwerveDriveKinematics.desaturateWheelSpeeds(moduleStates, getMaxDriveSpeedMetersPerSec());
+    /**
+     * Get the fastest a module can be expected to steer with the steer PID output cap, in degrees per second.
+     */
+    static double getMaxSteerVelocityDegreesPerSec () {
+        return (MAX_STEER_VOLTS - steerFeedforward.ks) / steerFeedforward.kv;
+    }
+    
+    /**
+     * Get the drive motor's thermal derating factor, from 0 to 1. This is applied by the {@link Swerve} to every
+     * module together, so that a hot module doesn't make the robot curve. A module whose drive motor is cut off is
+     * unhealthy instead, so its zero derating never slows down the other modules.
+     */
+    double getDriveDerating () {
+        return driveThermal.getDerating();
     }
     
     private static CANSparkMax initializeMotor (int canId) {
@@ -37,8 +164,21 @@ class SwerveModule implements Sendable {
         return motor;
     }
     
+    private final String name;
     private final CANSparkMax driveMotor, steerMotor;
+    private final RelativeEncoder driveEncoder;
+    private final SparkMaxPIDController driveVelocityController;
+    private final RelativeEncoder steerMotorEncoder;
+    private final SparkMaxPIDController steerPositionController;
     private final ResettableEncoder steerEncoder;
+    private final CachedDouble steerRotationDegrees;
+    
+    /**
+     * The physics model which replaces the motor and CANCoder readings in simulation, or null on the robot.
+     */
+    private final SwerveModuleSim sim;
+    
+    private final MotorThermalMonitor.Motor driveThermal;
     
     private double
         DS_steerOutputVoltage = 0,
@@ -49,19 +189,117 @@ class SwerveModule implements Sendable {
     
     private boolean DS_driveEnabled = true;
     
+    private final SwerveModuleHealth health = new SwerveModuleHealth();
+    private boolean steerCommanded = false, coastingForFault = false;
+    
+    /**
+     * The steer gains last sent to the SPARK MAX's onboard position loop.
+     */
+    private double onboardSteerP = Double.NaN, onboardSteerI = Double.NaN, onboardSteerD = Double.NaN;
+    
+    private DriveControlMode driveControlMode = DriveControlMode.OPEN_LOOP_VOLTAGE;
+    private SteerControlMode steerControlMode = SteerControlMode.ROBORIO_PID;
+    
+    /**
+     * How the drive motor is made to match the desired drive speed.
+     */
+    public enum DriveControlMode {
+        /**
+         * Apply a feedforward voltage calculated on the RoboRIO, with no feedback on wheel speed.
+         */
+        OPEN_LOOP_VOLTAGE,
+        
+        /**
+         * Send a velocity setpoint (with the same feedforward as an arbitrary feedforward voltage) to the SPARK MAX,
+         * which closes the velocity loop onboard at 1 kHz.
+         */
+        ONBOARD_VELOCITY;
+    }
+    
     /**
-     * 1 unit input for this PID controller is a full 360 deg rotation.
-     * 1 unit output for this PID controller is one volt applied to the steer motor.
+     * How the steer motor is made to point the module at the desired angle.
      */
-    private final RotationalPID steerPID;
+    public enum SteerControlMode {
+        /**
+         * Run {@link RotationalPID} on the RoboRIO against the CANCoder angle and apply the output as a voltage.
+         */
+        ROBORIO_PID,
+        
+        /**
+         * Send a position setpoint to the SPARK MAX, which closes the loop onboard at 1 kHz against its integrated
+         * encoder. The integrated encoder is seeded from the absolute CANCoder angle (see
+         * {@link SwerveModule#syncSteerMotorEncoder()}).
+         */
+        ONBOARD_POSITION;
+    }
+    
+    private final SwerveModuleControl control;
     
-    public SwerveModule (Setting<Double> encoderOffsetSetting, int driveSparkId, int steerSparkId, int steerCANCoderId) {
-        steerPID = new RotationalPID(3/90., 0, 0, 3);
+    public SwerveModule (String name, Setting<Double> encoderOffsetSetting, int driveSparkId, int steerSparkId, int steerCANCoderId) {
+        this.name = name;
+        sim = RobotBase.isSimulation() ? new SwerveModuleSim(DRIVE_ROTATIONS_PER_METER, STEER_GEAR_RATIO) : null;
+        control = new SwerveModuleControl(
+            new RotationalPID(STEER_GAINS, MAX_STEER_VOLTS, TimedRobot.kDefaultPeriod),
+            MAX_STEER_VOLTS,
+            SwerveModule::getDriveFeedforward,
+            SwerveModule::getSteerFeedforward
+        );
         
         driveMotor = initializeMotor(driveSparkId);
         steerMotor = initializeMotor(steerSparkId);
         
+        // Have the drive encoder report meters and meters per second directly
+        driveEncoder = driveMotor.getEncoder();
+        driveEncoder.setPositionConversionFactor(1 / DRIVE_ROTATIONS_PER_METER);
+        driveEncoder.setVelocityConversionFactor(1 / DRIVE_ROTATIONS_PER_METER / 60);
+        
+        driveVelocityController = driveMotor.getPIDController();
+        driveVelocityController.setP(DRIVE_VELOCITY_KP);
+        driveVelocityController.setI(0);
+        driveVelocityController.setD(0);
+        driveVelocityController.setFF(0);
+        driveVelocityController.setOutputRange(-1, 1);
+        
         steerEncoder = new ResettableEncoder(encoderOffsetSetting, steerCANCoderId);
+        steerRotationDegrees = SensorCache.cacheDouble(this::readRotationDegrees);
+        
+        // Have the integrated steer encoder report module degrees, and wrap the onboard position loop so that
+        // it always takes the short way around
+        steerMotorEncoder = steerMotor.getEncoder();
+        steerMotorEncoder.setPositionConversionFactor(360 / STEER_GEAR_RATIO);
+        steerMotorEncoder.setVelocityConversionFactor(360 / STEER_GEAR_RATIO / 60);
+        
+        steerPositionController = steerMotor.getPIDController();
+        updateOnboardSteerGains();
+        steerPositionController.setFF(0);
+        steerPositionController.setOutputRange(-STEER_POSITION_MAX_OUTPUT, STEER_POSITION_MAX_OUTPUT);
+        steerPositionController.setPositionPIDWrappingEnabled(true);
+        steerPositionController.setPositionPIDWrappingMinInput(-180);
+        steerPositionController.setPositionPIDWrappingMaxInput(180);
+        
+        syncSteerMotorEncoder();
+        
+        // Odometry is sampled faster than the default 20 ms position frames. The steer motor's current, velocity
+        // and integrated encoder position are only used for health monitoring, so they can be sent slower than the
+        // CANCoder, but the encoder position must stay fresh enough to compare against it while steering.
+        CANDeviceRegistry registry = CANDeviceRegistry.getInstance();
+        registry.registerSparkMax(
+            name + " drive",
+            driveMotor,
+            SparkSignal.POSITION.every(5),
+            SparkSignal.VELOCITY.every(20),
+            SparkSignal.CURRENT.every(20),
+            SparkSignal.TEMPERATURE.every(MotorThermalMonitor.POLL_PERIOD_MS)
+        );
+        driveThermal = MotorThermalMonitor.getInstance().register(name + " drive", driveMotor);
+        registry.registerSparkMax(
+            name + " steer",
+            steerMotor,
+            SparkSignal.CURRENT.every(100),
+            SparkSignal.VELOCITY.every(STEER_MOTOR_ENCODER_FRAME_MS),
+            SparkSignal.POSITION.every(STEER_MOTOR_ENCODER_FRAME_MS)
+        );
+        steerEncoder.registerStatusFrames(name + " steer CANCoder", 5);
     }
     
     /**
@@ -70,31 +308,212 @@ class SwerveModule implements Sendable {
      * @param desiredState The desired {@link SwerveModuleState}.
      */
     public void update (SwerveModuleState desiredState) {
-        DS_unoptimizedDesiredRotation = desiredState.angle.getDegrees();
-        SwerveModuleState optimizedDesiredState = SwerveModuleState.optimize(desiredState, getRotation());
-        updateDriveMotor(optimizedDesiredState.speedMetersPerSecond);
+        update(desiredState.speedMetersPerSecond, desiredState.angle.getDegrees());
+    }
+    
+    /**
+     * Update this module's motor controllers to try to set the module to the desired speed and angle.
+     * This method must be called periodically, and does not allocate.
+     * @param desiredSpeedMetersPerSec  The desired drive speed.
+     * @param desiredAngleDegrees       The desired steer angle.
+     */
+    public void update (double desiredSpeedMetersPerSec, double desiredAngleDegrees) {
+        update(desiredSpeedMetersPerSec, desiredAngleDegrees, 0, 0, 0);
+    }
+    
+    /**
+     * Update this module's motor controllers to try to follow a moving setpoint, as from the
+     * {@link SwerveSetpointGenerator}. The setpoint's rates of change are passed to the drive and steer feedforwards.
+     * This method must be called periodically, and does not allocate.
+     * @param desiredSpeedMetersPerSec              The desired drive speed.
+     * @param desiredAngleDegrees                   The desired steer angle.
+     * @param desiredAccelMetersPerSecSq            The desired drive acceleration, along the desired angle.
+     * @param desiredSteerVelocityDegreesPerSec     The rate at which the desired angle is changing.
+     * @param desiredSteerAccelDegreesPerSecSq      The rate at which the desired steer velocity is changing.
+     */
+    public void update (
+            double desiredSpeedMetersPerSec,
+            double desiredAngleDegrees,
+            double desiredAccelMetersPerSecSq,
+            double desiredSteerVelocityDegreesPerSec,
+            double desiredSteerAccelDegreesPerSecSq
+        ) {
+        DS_unoptimizedDesiredRotation = desiredAngleDegrees;
+        double currentDegrees = getRotationDegrees();
+        
+        control.calculate(
+            desiredSpeedMetersPerSec,
+            desiredAngleDegrees,
+            desiredAccelMetersPerSecSq,
+            desiredSteerVelocityDegreesPerSec,
+            desiredSteerAccelDegreesPerSecSq,
+            currentDegrees
+        );
+        applyDriveOutput();
         
-        if (desiredState.speedMetersPerSecond != 0) {
-            updateSteerMotor(optimizedDesiredState.angle);
+        if (control.isSteering()) {
+            applySteerOutput(currentDegrees);
         } else {
+            steerCommanded = false;
             steerMotor.setVoltage(0);
         }
     }
     
+    /**
+     * Set the period at which {@link #update(double, double)} and {@link #steerTo(double)} are being called, so the
+     * RoboRIO steer PID's integral and derivative terms are scaled to match. This does not allocate unless the period
+     * changes.
+     */
+    void setControlPeriodSecs (double periodSecs) {
+        control.setPeriod(periodSecs);
+    }
+    
+    /**
+     * Limit the drive speeds given to {@link #update(double, double)} to within {@code maxLeadMetersPerSec} of the
+     * ground speed under the module, along its current heading. The drive output is mostly a feedforward voltage,
+     * so this bounds the torque the wheel can put into the carpet. Pass an infinite lead to remove the limit.
+     */
+    void setTractionLimit (double groundSpeedMetersPerSec, double maxLeadMetersPerSec) {
+        control.setTractionLimit(groundSpeedMetersPerSec, maxLeadMetersPerSec);
+    }
+    
+    /**
+     * Create an {@code autotune} target for the RoboRIO steer PID, run on this module. The relay output is applied
+     * directly as a steer voltage and the CANCoder is read directly, so the target can be sampled from the tuner's
+     * own thread at the fast loop period, which the steer PID is deployed at.
+     */
+    RelayAutoTuner.Target createSteerTuningTarget (Subsystem requirement) {
+        return new RelayAutoTuner.Target(
+            "steer",
+            requirement,
+            STEER_GAINS,
+            this::readRotationDegrees,
+            this::updateSteerMotor,
+            this::stop,
+            true,
+            false,
+            MAX_STEER_VOLTS / 2,
+            1,
+            MAX_STEER_VOLTS,
+            45,
+            2,
+            Double.NEGATIVE_INFINITY,
+            Double.POSITIVE_INFINITY,
+            SwerveFastLoop.getConfiguredPeriodSecs()
+        );
+    }
+    
     public void xMode (boolean turnDir) {
-        SwerveModuleState desiredState = new SwerveModuleState(0, Rotation2d.fromDegrees(45 + (turnDir ? 90 : 0)));
-        SwerveModuleState optimizedState = SwerveModuleState.optimize(desiredState, getRotation());
         updateDriveMotor(0);
-        updateSteerMotor(optimizedState.angle);
+        steerTo(45 + (turnDir ? 90 : 0));
     }
     
     public void updateDriveMotor (double desiredSpeedMetersPerSec) {
+        control.calculateDrive(desiredSpeedMetersPerSec, 0);
+        applyDriveOutput();
+    }
+    
+    /**
+     * Send the drive output from the last {@link SwerveModuleControl} calculation to the drive motor.
+     */
+    private void applyDriveOutput () {
+        double desiredSpeedMetersPerSec = control.getDriveSpeed();
         DS_desiredDriveSpeed = desiredSpeedMetersPerSec;
 
-        double voltsOutput = DRIVE_FEEDFORWARD.calculate(METERS_PER_SEC_TO_DRIVE_VOLTS * desiredSpeedMetersPerSec);
+        double voltsOutput = control.getDriveVolts();
         DS_driveOutputVoltage = voltsOutput;
-
-        driveMotor.setVoltage(DS_driveEnabled ? voltsOutput : 0);
+        
+        if (!DS_driveEnabled) {
+            driveMotor.setVoltage(0);
+        } else if (driveControlMode == DriveControlMode.ONBOARD_VELOCITY) {
+            driveVelocityController.setReference(
+                desiredSpeedMetersPerSec,
+                ControlType.kVelocity,
+                0,
+                voltsOutput,
+                ArbFFUnits.kVoltage
+            );
+        } else {
+            driveMotor.setVoltage(voltsOutput);
+        }
+    }
+    
+    public void setDriveControlMode (DriveControlMode mode) {
+        driveControlMode = mode;
+    }
+    
+    public DriveControlMode getDriveControlMode () {
+        return driveControlMode;
+    }
+    
+    public void setSteerControlMode (SteerControlMode mode) {
+        if (mode == SteerControlMode.ONBOARD_POSITION) {
+            syncSteerMotorEncoder();
+            updateOnboardSteerGains();
+        }
+        steerControlMode = mode;
+    }
+    
+    /**
+     * Send the steer gains to the SPARK MAX's onboard position loop if they have changed since they were last sent,
+     * so that newly tuned gains take effect onboard right away, as they do for the RoboRIO steer PID. The onboard
+     * gains are in duty cycle per degree, matching the RoboRIO steer PID at a nominal 12 volts, with the integral
+     * and derivative gains scaled to the onboard loop period.
+     */
+    private void updateOnboardSteerGains () {
+        double kP = STEER_GAINS.getP() / 12;
+        double kI = STEER_GAINS.getI() / 12 * ONBOARD_LOOP_PERIOD_SECS;
+        double kD = STEER_GAINS.getD() / 12 / ONBOARD_LOOP_PERIOD_SECS;
+        if (kP == onboardSteerP && kI == onboardSteerI && kD == onboardSteerD) return;
+        
+        steerPositionController.setP(kP);
+        steerPositionController.setI(kI);
+        steerPositionController.setD(kD);
+        onboardSteerP = kP;
+        onboardSteerI = kI;
+        onboardSteerD = kD;
+    }
+    
+    public SteerControlMode getSteerControlMode () {
+        return steerControlMode;
+    }
+    
+    /**
+     * Seed the SPARK MAX's integrated steer encoder with the absolute angle read from the CANCoder. The integrated
+     * encoder is only relative, so this must be done before using {@link SteerControlMode#ONBOARD_POSITION}, and
+     * should be repeated while the robot is disabled in case the modules were turned by hand.
+     */
+    public void syncSteerMotorEncoder () {
+        steerMotorEncoder.setPosition(readRotationDegrees());
+    }
+    
+    /**
+     * Apply a raw voltage to the drive motor, bypassing the feedforward and any onboard control loop.
+     */
+    void setDriveVoltage (double voltage) {
+        DS_driveOutputVoltage = voltage;
+        driveMotor.setVoltage(DS_driveEnabled ? voltage : 0);
+    }
+    
+    /**
+     * Steer toward the given angle, without driving. This method must be called periodically.
+     */
+    void steerTo (double desiredDegrees) {
+        steerTo(desiredDegrees, true);
+    }
+    
+    /**
+     * Steer toward the given angle, without driving. This method must be called periodically.
+     * @param allowReverse  Whether the module may steer to the opposite angle instead, if that is closer.
+     */
+    void steerTo (double desiredDegrees, boolean allowReverse) {
+        double currentDegrees = getRotationDegrees();
+        control.calculateSteer(
+            allowReverse && SwerveModuleControl.shouldReverse(desiredDegrees, currentDegrees) ? desiredDegrees + 180 : desiredDegrees,
+            0,
+            0
+        );
+        applySteerOutput(currentDegrees);
     }
     
     public void updateSteerMotor (double voltage) {
@@ -102,14 +521,47 @@ class SwerveModule implements Sendable {
         steerMotor.setVoltage(DS_driveEnabled ? voltage : 0);
     }
     
-    public void updateSteerMotor (Rotation2d desiredRotation) {
-        DS_desiredRotation = desiredRotation.getDegrees();
-        double voltsOutput = STEER_FEEDFORWARD.calculate(steerPID.calculate(getRotation(), desiredRotation));
-        updateSteerMotor(voltsOutput);
+    /**
+     * Send the steer setpoint from the last {@link SwerveModuleControl} calculation to the steer motor, either as a
+     * voltage from the RoboRIO steer PID or as a setpoint for the onboard position loop.
+     */
+    private void applySteerOutput (double currentDegrees) {
+        steerCommanded = true;
+        DS_desiredRotation = MathUtil.inputModulus(control.getSteerDegrees(), -180, 180);
+        
+        if (steerControlMode == SteerControlMode.ONBOARD_POSITION) {
+            if (DS_driveEnabled) {
+                updateOnboardSteerGains();
+                DS_steerOutputVoltage = 0;
+                steerPositionController.setReference(
+                    DS_desiredRotation,
+                    ControlType.kPosition,
+                    0,
+                    control.getOnboardSteerFeedforwardVolts(),
+                    ArbFFUnits.kVoltage
+                );
+            } else {
+                updateSteerMotor(0);
+            }
+            return;
+        }
+        
+        updateSteerMotor(control.calculateSteerVolts(currentDegrees));
+    }
+    
+    /**
+     * Get the total distance driven by this module. This is safe to call from threads other than the
+     * main robot thread.
+     */
+    public double getDisplacementMeters () {
+        return sim == null ? driveEncoder.getPosition() : sim.getDrivePositionMeters();
     }
     
-    private double getDisplacementMeters () {
-        return driveMotor.getEncoder().getPosition() / 20.032;
+    /**
+     * Get the measured speed of the drive wheel, in meters per second.
+     */
+    public double getDriveVelocityMetersPerSec () {
+        return sim == null ? driveEncoder.getVelocity() : sim.getDriveVelocityMetersPerSec();
     }
     
     public SwerveModulePosition getPosition () {
@@ -128,6 +580,136 @@ class SwerveModule implements Sendable {
         DS_driveOutputVoltage = 0;
         steerMotor.stopMotor();
         DS_steerOutputVoltage = 0;
+        steerCommanded = false;
+    }
+    
+    /**
+     * Run this module's health checks. This should be called once per robot cycle, after the module has been
+     * updated.
+     * @param othersSpeedMetersPerSec   The fastest measured wheel speed of the other healthy modules, used to
+     * tell a stalled drive motor apart from the whole robot being pushed against something.
+     */
+    public void updateHealth (double othersSpeedMetersPerSec) {
+        if (sim != null) {
+            // The simulated motors never fail, and the simulated steer motor encoder always matches the CANCoder
+            health.update(
+                false,
+                0,
+                sim.getDriveCurrentAmps(),
+                sim.getDriveVelocityMetersPerSec(),
+                othersSpeedMetersPerSec,
+                sim.getSteerCurrentAmps(),
+                sim.getSteerVelocityDegreesPerSec(),
+                MathUtil.inputModulus(DS_desiredRotation - getRotationDegrees(), -180, 180),
+                steerCommanded
+            );
+            updateFaultIdleMode();
+            return;
+        }
+        
+        double driveSpeed = driveEncoder.getVelocity();
+        double driveCurrent = driveMotor.getOutputCurrent();
+        boolean canStale = driveMotor.getLastError() != REVLibError.kOk;
+        
+        double steerCurrent = steerMotor.getOutputCurrent();
+        double steerVelocity = steerMotorEncoder.getVelocity();
+        double steerMotorDegrees = steerMotorEncoder.getPosition();
+        canStale |= steerMotor.getLastError() != REVLibError.kOk;
+        
+        double currentDegrees = getRotationDegrees();
+        canStale |= steerEncoder.getLastError() != ErrorCode.OK;
+        
+        // The integrated encoder is seeded from the CANCoder, so the two should only drift apart if one of them
+        // is slipping or has failed. The integrated encoder position can be up to a status frame older than the
+        // CANCoder angle, so the distance the module could have steered in that time is forgiven.
+        double encoderDisagreement = MathUtil.inputModulus(steerMotorDegrees - currentDegrees, -180, 180);
+        double frameLagDegrees = Math.abs(steerVelocity) * STEER_MOTOR_ENCODER_FRAME_MS / 1000.;
+        encoderDisagreement = Math.copySign(Math.max(0, Math.abs(encoderDisagreement) - frameLagDegrees), encoderDisagreement);
+        
+        // DS_desiredRotation already accounts for drive direction reversal, so the error is at most 90 degrees
+        // once the module is steering correctly
+        double steerError = MathUtil.inputModulus(DS_desiredRotation - currentDegrees, -180, 180);
+        
+        health.update(
+            canStale,
+            encoderDisagreement,
+            driveCurrent,
+            driveSpeed,
+            othersSpeedMetersPerSec,
+            steerCurrent,
+            steerVelocity,
+            steerError,
+            steerCommanded
+        );
+        
+        updateFaultIdleMode();
+    }
+    
+    /**
+     * Let a failed module's wheel and steering coast, so that it is dragged along by the remaining modules instead of
+     * braking against them. Brake mode is restored once the fault is reset.
+     */
+    private void updateFaultIdleMode () {
+        boolean coast = !isHealthy();
+        if (coast == coastingForFault) return;
+        
+        coastingForFault = coast;
+        IdleMode idleMode = coast ? IdleMode.kCoast : IdleMode.kBrake;
+        driveMotor.setIdleMode(idleMode);
+        steerMotor.setIdleMode(idleMode);
+    }
+    
+    /**
+     * Advance this module's physics model by one time step, using the voltages most recently applied to its motors.
+     * The SPARK MAX onboard control loops are emulated here with the same gains, since they do not run in
+     * simulation.
+     */
+    void simulationUpdate (double dtSecs) {
+        double driveVolts = DS_driveOutputVoltage;
+        if (driveControlMode == DriveControlMode.ONBOARD_VELOCITY) {
+            double velocityError = DS_desiredDriveSpeed - sim.getDriveVelocityMetersPerSec();
+            driveVolts = MathUtil.clamp(driveVolts + DRIVE_VELOCITY_KP * velocityError * 12, -12, 12);
+        }
+        
+        double steerVolts = DS_steerOutputVoltage;
+        if (steerControlMode == SteerControlMode.ONBOARD_POSITION && steerCommanded) {
+            double steerError = MathUtil.inputModulus(DS_desiredRotation - sim.getSteerAngleDegrees(), -180, 180);
+            steerVolts = MathUtil.clamp(
+                onboardSteerP * steerError,
+                -STEER_POSITION_MAX_OUTPUT,
+                STEER_POSITION_MAX_OUTPUT
+            ) * 12;
+        }
+        
+        if (!DS_driveEnabled) {
+            driveVolts = 0;
+            steerVolts = 0;
+        }
+        
+        sim.update(dtSecs, driveVolts, steerVolts);
+    }
+    
+    /**
+     * Whether this module is healthy. A module with a health fault stays unhealthy until {@link #resetHealth()} is
+     * called. A module whose drive motor has been cut off for overheating is also unhealthy, so that the other
+     * modules keep driving without it, but it rejoins the drive by itself once the motor has cooled.
+     */
+    public boolean isHealthy () {
+        return health.isHealthy() && !driveThermal.isCutOff();
+    }
+    
+    public SwerveModuleHealth.Fault getHealthFault () {
+        return health.getFault();
+    }
+    
+    private String getHealthDescription () {
+        return health.isHealthy() && driveThermal.isCutOff() ? "DRIVE_OVERHEATED" : health.getFault().name();
+    }
+    
+    public void resetHealth () {
+        health.reset();
+        updateFaultIdleMode();
+        syncSteerMotorEncoder();
     }
     
     /**
@@ -135,10 +717,41 @@ class SwerveModule implements Sendable {
      */
     public void zeroSteerEncoder () {
         steerEncoder.zeroRotation();
+        steerRotationDegrees.refresh();
     }
     
     private Rotation2d getRotation () {
-        return steerEncoder.getRotation();
+        return Rotation2d.fromDegrees(getRotationDegrees());
+    }
+    
+    /**
+     * Get the short name of this module (e.g. "FL").
+     */
+    public String getName () {
+        return name;
+    }
+    
+    /**
+     * Re-read this module's cached sensors. This is used by the fast control loop, which runs between cycles of
+     * the main loop and so cannot use the values read at the start of the cycle.
+     */
+    void refreshSensors () {
+        steerRotationDegrees.refresh();
+    }
+    
+    /**
+     * Get the steer angle of this module in degrees, as read at the start of the current cycle.
+     */
+    public double getRotationDegrees () {
+        return steerRotationDegrees.getAsDouble();
+    }
+    
+    /**
+     * Read the steer angle of this module in degrees directly from the CANCoder. This is safe to call from
+     * threads other than the main robot thread.
+     */
+    public double readRotationDegrees () {
+        return sim == null ? steerEncoder.getRotationDegrees() : sim.getSteerAngleDegrees();
     }
     
     @Override
@@ -146,8 +759,10 @@ class SwerveModule implements Sendable {
         builder.addDoubleProperty("unop-desiredRotation", () -> DS_unoptimizedDesiredRotation, null);
         builder.addDoubleProperty("desiredRotation", () -> DS_desiredRotation, null);
         builder.addDoubleProperty("desiredDriveSpeed", () -> DS_desiredDriveSpeed, null);
-        builder.addDoubleProperty("currentRotation", () -> steerEncoder.getRotation().getDegrees(), null);
+        builder.addDoubleProperty("measuredDriveSpeed", this::getDriveVelocityMetersPerSec, null);
+        builder.addDoubleProperty("currentRotation", this::getRotationDegrees, null);
         builder.addDoubleProperty("outputVoltage", () -> DS_steerOutputVoltage, null);
+        builder.addStringProperty("Health", this::getHealthDescription, null);
 
         builder.addBooleanProperty("Enabled Drive", () -> DS_driveEnabled, e -> DS_driveEnabled = e);
     }
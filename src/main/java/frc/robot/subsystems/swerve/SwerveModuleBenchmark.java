@@ -0,0 +1,396 @@
+package frc.robot.subsystems.swerve;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import claw.Setting;
+import claw.rct.commands.CommandProcessor;
+import claw.rct.commands.CommandReader;
+import claw.rct.commands.CommandProcessor.BadCallException;
+import claw.rct.network.low.ConsoleManager;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
+import frc.robot.LiveCommandTester;
+import frc.robot.util.StepResponseMetrics;
+
+/**
+ * An RCT command which benchmarks every swerve module's step response. Each module is run through a scripted
+ * sequence of steer angle steps and drive speed steps while its response is sampled on a dedicated {@link Notifier}
+ * thread, and the rise time, settle time, overshoot and steady-state error are compared against configurable
+ * thresholds. Results are appended to a file on the robot, so that a module which is degrading between matches can
+ * be spotted by comparing against the previous run.
+ */
+class SwerveModuleBenchmark {
+
+    private static final double SAMPLE_PERIOD_SECS = 0.005;
+
+    /**
+     * Time spent holding the initial setpoint before the first step, which is not measured.
+     */
+    private static final double HOLD_SECS = 0.5;
+
+    private static final String RESULTS_FILE_NAME = "swerve-benchmark.csv";
+    private static final String RESULTS_FILE_HEADER = "time,module,mechanism,riseSecs,settleSecs,overshootPercent,steadyStateError,passed";
+
+    /**
+     * A mechanism of every swerve module which can be benchmarked, with its step sequence (starting from a setpoint
+     * of zero) and pass/fail thresholds.
+     */
+    private enum Mechanism {
+        STEER   ("deg", "STEER", new double[] { 90, 180, -45 }, 0.75, 0.5, 3, 0.25, 0.5, 10, 2),
+        DRIVE   ("m/s", "DRIVE", new double[] { 1, 2, 0 }, 1, 0.7, 0.1, 0.3, 0.6, 15, 0.1);
+
+        private final String units;
+        private final double[] steps;
+        private final double stepDurationSecs, steadyStateStartSecs, settleBand;
+        private final Setting<Double> maxRiseSecs, maxSettleSecs, maxOvershootPercent, maxSteadyStateError;
+
+        private Mechanism (
+                String units,
+                String settingName,
+                double[] steps,
+                double stepDurationSecs,
+                double steadyStateStartSecs,
+                double settleBand,
+                double defaultMaxRiseSecs,
+                double defaultMaxSettleSecs,
+                double defaultMaxOvershootPercent,
+                double defaultMaxSteadyStateError
+            ) {
+            this.units = units;
+            this.steps = steps;
+            this.stepDurationSecs = stepDurationSecs;
+            this.steadyStateStartSecs = steadyStateStartSecs;
+            this.settleBand = settleBand;
+
+            String prefix = "SWERVE_BENCHMARK." + settingName;
+            maxRiseSecs = new Setting<>(prefix + "_MAX_RISE_SECS", () -> defaultMaxRiseSecs);
+            maxSettleSecs = new Setting<>(prefix + "_MAX_SETTLE_SECS", () -> defaultMaxSettleSecs);
+            maxOvershootPercent = new Setting<>(prefix + "_MAX_OVERSHOOT_PERCENT", () -> defaultMaxOvershootPercent);
+            maxSteadyStateError = new Setting<>(prefix + "_MAX_STEADY_STATE_ERROR", () -> defaultMaxSteadyStateError);
+        }
+
+        private double getDurationSecs () {
+            return HOLD_SECS + steps.length * stepDurationSecs;
+        }
+    }
+
+    /**
+     * The worst response of one module across every step of a benchmark. Any metric which could not be measured
+     * (e.g. the module never settled) is {@code NaN}, and fails.
+     */
+    private static class Result {
+        private double riseSecs = 0, settleSecs = 0, overshootPercent = 0, steadyStateError = 0;
+
+        private void include (StepResponseMetrics metrics) {
+            riseSecs = worst(riseSecs, metrics.getRiseTimeSecs());
+            settleSecs = worst(settleSecs, metrics.getSettleTimeSecs());
+            overshootPercent = worst(overshootPercent, metrics.getOvershootPercent());
+            steadyStateError = worst(steadyStateError, metrics.getSteadyStateError());
+        }
+
+        private static double worst (double a, double b) {
+            return Double.isNaN(a) || Double.isNaN(b) ? Double.NaN : Math.max(a, b);
+        }
+
+        private boolean passed (Mechanism mechanism) {
+            // Comparisons with NaN are false, so unmeasured metrics fail
+            return
+                riseSecs <= mechanism.maxRiseSecs.get() &&
+                settleSecs <= mechanism.maxSettleSecs.get() &&
+                overshootPercent <= mechanism.maxOvershootPercent.get() &&
+                steadyStateError <= mechanism.maxSteadyStateError.get();
+        }
+    }
+
+    private final Swerve swerve;
+    private final SwerveModule[] modules;
+
+    public SwerveModuleBenchmark (Swerve swerve, SwerveModule... modules) {
+        this.swerve = swerve;
+        this.modules = modules;
+    }
+
+    public CommandProcessor toCommandProcessor (String commandName) {
+        return new CommandProcessor(
+            commandName,
+            commandName,
+            "Use this command to benchmark the step response of every swerve module. The steer and drive motors are " +
+            "stepped through a fixed sequence of setpoints, and the results are checked against the " +
+            "SWERVE_BENCHMARK settings and saved to " + RESULTS_FILE_NAME + " for comparison with later runs.",
+            this::runCommand
+        );
+    }
+
+    private void runCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNone();
+        console.println("Double-tap enter to disable the robot and stop the benchmark at any time.");
+
+        Path resultsPath = Filesystem.getOperatingDirectory().toPath().resolve(RESULTS_FILE_NAME);
+        Map<String, Result> previousResults = loadPreviousResults(console, resultsPath);
+        StringBuilder csv = new StringBuilder();
+        String time = LocalDateTime.now().toString();
+
+        for (Mechanism mechanism : Mechanism.values()) {
+            if (mechanism == Mechanism.DRIVE) {
+                console.println("The drive wheels will spin up to 2 m/s. Put the robot on blocks, or make sure there");
+                console.println("are at least 4 meters of clear space in front of it.");
+            }
+
+            Test test = new Test(mechanism);
+            if (!runTest(console, test, mechanism.name().toLowerCase())) {
+                console.printlnErr("Benchmark cancelled.");
+                return;
+            }
+
+            console.println("");
+            console.println(String.format(
+                "%-6s %9s %11s %14s %12s %15s  %s",
+                mechanism.name(), "rise (s)", "settle (s)", "overshoot (%)", "ss error", "settle vs last", "result"
+            ));
+
+            for (int i = 0; i < modules.length; i ++) {
+                Result result = test.getResult(i);
+                boolean passed = result.passed(mechanism);
+                Result previous = previousResults.get(getResultKey(modules[i].getName(), mechanism));
+
+                String settleChange = previous == null ? "" : formatSigned(result.settleSecs - previous.settleSecs);
+                String line = String.format(
+                    "%-6s %9s %11s %14s %12s %15s  %s",
+                    modules[i].getName(),
+                    format(result.riseSecs, "%.3f"),
+                    format(result.settleSecs, "%.3f"),
+                    format(result.overshootPercent, "%.1f"),
+                    format(result.steadyStateError, "%.3f") + " " + mechanism.units,
+                    settleChange,
+                    passed ? "PASS" : "FAIL"
+                );
+
+                if (passed) {
+                    console.println(line);
+                } else {
+                    console.printlnErr(line);
+                }
+
+                csv.append(String.join(",",
+                    time,
+                    modules[i].getName(),
+                    mechanism.name(),
+                    Double.toString(result.riseSecs),
+                    Double.toString(result.settleSecs),
+                    Double.toString(result.overshootPercent),
+                    Double.toString(result.steadyStateError),
+                    Boolean.toString(passed)
+                )).append('\n');
+            }
+
+            console.println("");
+        }
+
+        try {
+            if (!Files.exists(resultsPath)) {
+                Files.writeString(resultsPath, RESULTS_FILE_HEADER + "\n");
+            }
+
+            Files.writeString(resultsPath, csv, StandardOpenOption.APPEND);
+            console.printlnSys("Saved results to " + resultsPath);
+        } catch (IOException e) {
+            console.printlnErr("Could not save results: " + e.getMessage());
+        }
+    }
+
+    private static String getResultKey (String moduleName, Mechanism mechanism) {
+        return moduleName + " " + mechanism.name();
+    }
+
+    private static String format (double value, String format) {
+        return Double.isNaN(value) ? "--" : String.format(format, value);
+    }
+
+    private static String formatSigned (double value) {
+        return Double.isNaN(value) ? "--" : String.format("%+.3f", value);
+    }
+
+    /**
+     * Load the most recent result for each module and mechanism from the results file.
+     */
+    private static Map<String, Result> loadPreviousResults (ConsoleManager console, Path resultsPath) {
+        Map<String, Result> results = new HashMap<>();
+        if (!Files.exists(resultsPath)) return results;
+
+        try {
+            List<String> lines = Files.readAllLines(resultsPath);
+
+            // Later lines are more recent, so they replace earlier results
+            for (int i = 1; i < lines.size(); i ++) {
+                String[] fields = lines.get(i).split(",");
+                if (fields.length < 8) continue;
+
+                Result result = new Result();
+                result.riseSecs = Double.parseDouble(fields[3]);
+                result.settleSecs = Double.parseDouble(fields[4]);
+                result.overshootPercent = Double.parseDouble(fields[5]);
+                result.steadyStateError = Double.parseDouble(fields[6]);
+                results.put(fields[1] + " " + fields[2], result);
+            }
+        } catch (IOException | NumberFormatException e) {
+            console.printlnErr("Could not load previous results: " + e.getMessage());
+        }
+
+        return results;
+    }
+
+    /**
+     * Run a single test to completion, asking the user to confirm first.
+     * @return Whether the test ran to completion.
+     */
+    private boolean runTest (ConsoleManager console, Test test, String testName) {
+        if (!LiveCommandTester.getYesNo(console, "Run the " + testName + " benchmark? ")) return false;
+
+        while (DriverStation.isDisabled()) {
+            console.printlnErr("Enable the robot and try again.");
+            if (!LiveCommandTester.getYesNo(console, "Run the " + testName + " benchmark? ")) return false;
+        }
+
+        Command command = test.withInterruptBehavior(InterruptionBehavior.kCancelIncoming);
+        command.schedule();
+        console.printlnSys("Running " + testName + " benchmark");
+
+        while (command.isScheduled() && DriverStation.isEnabled()) {
+            Timer.delay(0.02);
+        }
+
+        command.cancel();
+        return test.completed;
+    }
+
+    /**
+     * Steps every module through one mechanism's setpoint sequence. Setpoints are commanded from the main thread,
+     * as during normal driving, while the response is sampled on a {@link Notifier} thread.
+     */
+    private class Test extends CommandBase {
+
+        private final Mechanism mechanism;
+        private final StepResponseMetrics[][] metrics;
+        private final Notifier notifier = new Notifier(this::sample);
+
+        private double startTime = 0;
+        private volatile boolean completed = false;
+
+        public Test (Mechanism mechanism) {
+            this.mechanism = mechanism;
+
+            metrics = new StepResponseMetrics[modules.length][mechanism.steps.length];
+            for (int i = 0; i < modules.length; i ++) {
+                for (int step = 0; step < mechanism.steps.length; step ++) {
+                    double initial = step == 0 ? 0 : mechanism.steps[step - 1];
+                    double target = mechanism.steps[step];
+
+                    // Steer steps take the short way around, so the initial angle is unwrapped to match
+                    if (mechanism == Mechanism.STEER) {
+                        initial = target - MathUtil.inputModulus(target - initial, -180, 180);
+                    }
+
+                    metrics[i][step] = new StepResponseMetrics(
+                        initial,
+                        target,
+                        mechanism.settleBand,
+                        mechanism.steadyStateStartSecs
+                    );
+                }
+            }
+
+            addRequirements(swerve);
+        }
+
+        /**
+         * Get the index of the step running at the given time since the test started, which is -1 during the
+         * initial hold.
+         */
+        private int getStepIndex (double elapsed) {
+            if (elapsed < HOLD_SECS) return -1;
+            return Math.min((int)((elapsed - HOLD_SECS) / mechanism.stepDurationSecs), mechanism.steps.length - 1);
+        }
+
+        @Override
+        public void initialize () {
+            swerve.stop();
+            completed = false;
+            startTime = Timer.getFPGATimestamp();
+            notifier.startPeriodic(SAMPLE_PERIOD_SECS);
+        }
+
+        @Override
+        public void execute () {
+            int step = getStepIndex(Timer.getFPGATimestamp() - startTime);
+            double setpoint = step == -1 ? 0 : mechanism.steps[step];
+
+            for (SwerveModule module : modules) {
+                if (mechanism == Mechanism.STEER) {
+                    // Drive direction reversal would skip large steer steps entirely
+                    module.steerTo(setpoint, false);
+                    module.updateDriveMotor(0);
+                } else {
+                    module.steerTo(0);
+                    module.updateDriveMotor(setpoint);
+                }
+            }
+        }
+
+        private void sample () {
+            double elapsed = Timer.getFPGATimestamp() - startTime;
+            int step = getStepIndex(elapsed);
+            if (step == -1) return;
+
+            double secsSinceStep = elapsed - HOLD_SECS - step * mechanism.stepDurationSecs;
+            double target = mechanism.steps[step];
+
+            for (int i = 0; i < modules.length; i ++) {
+                double value;
+                if (mechanism == Mechanism.STEER) {
+                    // Measure the angle on the same side of the +/-180 degree boundary as the target
+                    value = target - MathUtil.inputModulus(target - modules[i].readRotationDegrees(), -180, 180);
+                } else {
+                    value = modules[i].getDriveVelocityMetersPerSec();
+                }
+
+                metrics[i][step].addSample(secsSinceStep, value);
+            }
+        }
+
+        private Result getResult (int module) {
+            Result result = new Result();
+            for (StepResponseMetrics stepMetrics : metrics[module]) {
+                result.include(stepMetrics);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isFinished () {
+            return Timer.getFPGATimestamp() - startTime >= mechanism.getDurationSecs();
+        }
+
+        @Override
+        public void end (boolean interrupted) {
+            // Each test only runs once, so its notifier can be released
+            notifier.close();
+            swerve.stop();
+            completed = !interrupted;
+        }
+
+    }
+
+}
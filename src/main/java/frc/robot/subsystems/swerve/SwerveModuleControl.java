@@ -0,0 +1,193 @@
+package frc.robot.subsystems.swerve;
+
+import java.util.function.Supplier;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+
+/**
+ * The part of a {@link SwerveModule}'s control which doesn't touch any hardware: deciding whether to reverse the
+ * drive direction, applying the traction limit, and calculating the drive and steer voltages from the feedforwards
+ * and the RoboRIO steer PID. The module only reads its sensors and sends these outputs to its motor controllers.
+ * <br></br>
+ * This runs for every module every control cycle, so nothing here allocates.
+ */
+class SwerveModuleControl {
+
+    /**
+     * 1 unit input for this PID controller is a full 360 deg rotation.
+     * 1 unit output for this PID controller is one volt applied to the steer motor.
+     */
+    private final RotationalPID steerPID;
+    private final double maxSteerVolts;
+    private final Supplier<SimpleMotorFeedforward> driveFeedforward, steerFeedforward;
+
+    private double tractionGroundSpeed = 0, tractionMaxLead = Double.POSITIVE_INFINITY;
+
+    private double driveSpeed = 0, driveVolts = 0;
+    private boolean steering = false;
+    private double steerDegrees = 0, steerVelocity = 0, steerAccel = 0;
+
+    /**
+     * Create a new {@link SwerveModuleControl}.
+     * @param steerPID          The RoboRIO steer PID, in volts per degree of error.
+     * @param maxSteerVolts     The steer output is capped at this many volts.
+     * @param driveFeedforward  Supplies the current drive feedforward, in volts per meter/sec.
+     * @param steerFeedforward  Supplies the current steer feedforward, in volts per degree/sec.
+     */
+    SwerveModuleControl (
+            RotationalPID steerPID,
+            double maxSteerVolts,
+            Supplier<SimpleMotorFeedforward> driveFeedforward,
+            Supplier<SimpleMotorFeedforward> steerFeedforward
+        ) {
+        this.steerPID = steerPID;
+        this.maxSteerVolts = maxSteerVolts;
+        this.driveFeedforward = driveFeedforward;
+        this.steerFeedforward = steerFeedforward;
+    }
+
+    /**
+     * Set the period at which the steer voltage is calculated, so the steer PID's integral and derivative terms are
+     * scaled to match.
+     */
+    void setPeriod (double periodSecs) {
+        steerPID.setPeriod(periodSecs);
+    }
+
+    /**
+     * Limit drive speeds to within {@code maxLeadMetersPerSec} of the ground speed under the module, along its
+     * current heading. Pass an infinite lead to remove the limit.
+     */
+    void setTractionLimit (double groundSpeedMetersPerSec, double maxLeadMetersPerSec) {
+        tractionGroundSpeed = groundSpeedMetersPerSec;
+        tractionMaxLead = maxLeadMetersPerSec;
+    }
+
+    /**
+     * Calculate the drive output and steer setpoint for a desired module state, reversing the drive direction
+     * instead of steering more than 90 degrees. A module with no desired speed doesn't steer.
+     * @param desiredSpeedMetersPerSec              The desired drive speed.
+     * @param desiredAngleDegrees                   The desired steer angle.
+     * @param desiredAccelMetersPerSecSq            The desired drive acceleration, along the desired angle.
+     * @param desiredSteerVelocityDegreesPerSec     The rate at which the desired angle is changing.
+     * @param desiredSteerAccelDegreesPerSecSq      The rate at which the desired steer velocity is changing.
+     * @param currentDegrees                        The module's current angle.
+     */
+    void calculate (
+            double desiredSpeedMetersPerSec,
+            double desiredAngleDegrees,
+            double desiredAccelMetersPerSecSq,
+            double desiredSteerVelocityDegreesPerSec,
+            double desiredSteerAccelDegreesPerSecSq,
+            double currentDegrees
+        ) {
+        boolean reverse = shouldReverse(desiredAngleDegrees, currentDegrees);
+        double speed = reverse ? -desiredSpeedMetersPerSec : desiredSpeedMetersPerSec;
+        double limitedSpeed = MathUtil.clamp(speed, tractionGroundSpeed - tractionMaxLead, tractionGroundSpeed + tractionMaxLead);
+
+        // The setpoint's acceleration no longer applies once traction control limits the speed
+        double accel = limitedSpeed != speed ? 0
+            : reverse ? -desiredAccelMetersPerSecSq : desiredAccelMetersPerSecSq;
+        calculateDrive(limitedSpeed, accel);
+
+        if (desiredSpeedMetersPerSec != 0) {
+            calculateSteer(
+                reverse ? desiredAngleDegrees + 180 : desiredAngleDegrees,
+                desiredSteerVelocityDegreesPerSec,
+                desiredSteerAccelDegreesPerSecSq
+            );
+        } else {
+            steering = false;
+        }
+    }
+
+    /**
+     * Calculate the drive output for the given drive speed and acceleration, without the traction limit.
+     */
+    void calculateDrive (double speedMetersPerSec, double accelMetersPerSecSq) {
+        driveSpeed = speedMetersPerSec;
+        driveVolts = driveFeedforward.get().calculate(speedMetersPerSec, accelMetersPerSecSq);
+    }
+
+    /**
+     * Set the steer setpoint to the given angle, moving at the given rates, without reversing.
+     */
+    void calculateSteer (double desiredDegrees, double velocityDegreesPerSec, double accelDegreesPerSecSq) {
+        steering = true;
+        steerDegrees = desiredDegrees;
+        steerVelocity = velocityDegreesPerSec;
+        steerAccel = accelDegreesPerSecSq;
+    }
+
+    /**
+     * Calculate the steer voltage to apply with the RoboRIO steer PID: the PID output, plus the steer feedforward's
+     * velocity and acceleration terms for the setpoint's motion, plus static friction compensation in the direction
+     * of the total. This steps the PID, so it should be called once per control cycle.
+     */
+    double calculateSteerVolts (double currentDegrees) {
+        SimpleMotorFeedforward feedforward = steerFeedforward.get();
+        double volts = steerPID.calculate(currentDegrees, steerDegrees) + getSteerMotionVolts(feedforward);
+        if (volts != 0) {
+            volts += Math.copySign(feedforward.ks, volts);
+        }
+
+        return MathUtil.clamp(volts, -maxSteerVolts, maxSteerVolts);
+    }
+
+    /**
+     * Get the arbitrary feedforward voltage to send with the steer setpoint to the SPARK MAX's onboard position loop.
+     * The onboard PID's output sign isn't known here, so static friction is only compensated while the setpoint is
+     * moving.
+     */
+    double getOnboardSteerFeedforwardVolts () {
+        SimpleMotorFeedforward feedforward = steerFeedforward.get();
+        double volts = getSteerMotionVolts(feedforward);
+        if (steerVelocity != 0) {
+            volts += Math.copySign(feedforward.ks, steerVelocity);
+        }
+
+        return MathUtil.clamp(volts, -maxSteerVolts, maxSteerVolts);
+    }
+
+    private double getSteerMotionVolts (SimpleMotorFeedforward feedforward) {
+        return feedforward.kv * steerVelocity + feedforward.ka * steerAccel;
+    }
+
+    /**
+     * Get the drive speed from the last calculation, after reversal and the traction limit.
+     */
+    double getDriveSpeed () {
+        return driveSpeed;
+    }
+
+    /**
+     * Get the drive feedforward voltage from the last calculation.
+     */
+    double getDriveVolts () {
+        return driveVolts;
+    }
+
+    /**
+     * Whether the last calculation asked the module to steer.
+     */
+    boolean isSteering () {
+        return steering;
+    }
+
+    /**
+     * Get the steer setpoint from the last calculation, which may be the opposite of the desired angle.
+     */
+    double getSteerDegrees () {
+        return steerDegrees;
+    }
+
+    /**
+     * Whether or not the module should reverse its drive direction and steer to the opposite angle, as in
+     * {@link edu.wpi.first.math.kinematics.SwerveModuleState#optimize}.
+     */
+    static boolean shouldReverse (double desiredAngleDegrees, double currentDegrees) {
+        return Math.abs(MathUtil.inputModulus(desiredAngleDegrees - currentDegrees, -180, 180)) > 90;
+    }
+
+}
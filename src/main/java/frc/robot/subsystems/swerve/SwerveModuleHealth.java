@@ -0,0 +1,150 @@
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.math.filter.Debouncer.DebounceType;
+
+/**
+ * Tracks the health of a single {@link SwerveModule}. Each check must fail continuously for some time before the
+ * module is marked unhealthy, and once marked unhealthy the module stays that way (latched) until {@link #reset()}
+ * is called, so that a module which is intermittently failing does not keep rejoining the drive.
+ */
+class SwerveModuleHealth {
+
+    private static final double
+        STALE_CAN_SECS = 0.25,
+        ENCODER_DISAGREEMENT_DEGREES = 15,
+        ENCODER_DISAGREEMENT_SECS = 0.5,
+        DRIVE_STALL_CURRENT_AMPS = 30,
+        DRIVE_STALL_SPEED_METERS_PER_SEC = 0.05,
+        DRIVE_STALL_OTHERS_SPEED_METERS_PER_SEC = 0.3,
+        DRIVE_STALL_SECS = 1,
+        STEER_STALL_CURRENT_AMPS = 15,
+        STEER_STALL_VELOCITY_DEGREES_PER_SEC = 20,
+        STEER_STALL_SECS = 0.5,
+        STEER_CONVERGENCE_ERROR_DEGREES = 30,
+        STEER_CONVERGENCE_SECS = 1;
+
+    /**
+     * The reason a module was marked unhealthy.
+     */
+    public enum Fault {
+        NONE,
+
+        /**
+         * A motor controller or the CANCoder has stopped reporting over CAN.
+         */
+        STALE_CAN,
+
+        /**
+         * The CANCoder and the steer motor's integrated encoder disagree about the steer angle.
+         */
+        ENCODER_DISAGREEMENT,
+
+        /**
+         * The drive motor is drawing high current without turning while the other modules are moving.
+         */
+        DRIVE_STALL,
+
+        /**
+         * The steer motor is drawing high current without turning.
+         */
+        STEER_STALL,
+
+        /**
+         * The steer angle is not converging to the desired angle.
+         */
+        STEER_NOT_CONVERGING;
+    }
+
+    private final Debouncer
+        staleCANDebouncer = new Debouncer(STALE_CAN_SECS, DebounceType.kRising),
+        encoderDisagreementDebouncer = new Debouncer(ENCODER_DISAGREEMENT_SECS, DebounceType.kRising),
+        driveStallDebouncer = new Debouncer(DRIVE_STALL_SECS, DebounceType.kRising),
+        steerStallDebouncer = new Debouncer(STEER_STALL_SECS, DebounceType.kRising),
+        steerConvergenceDebouncer = new Debouncer(STEER_CONVERGENCE_SECS, DebounceType.kRising);
+
+    private Fault fault = Fault.NONE;
+
+    /**
+     * Run every health check with the latest readings. This should be called once per robot cycle.
+     * @param canStale                  Whether any of the module's CAN devices reported an error.
+     * @param encoderDisagreementDegrees The difference between the CANCoder and integrated steer encoder angles.
+     * @param driveCurrentAmps          The drive motor output current.
+     * @param driveSpeedMetersPerSec    The measured drive wheel speed.
+     * @param othersSpeedMetersPerSec   The fastest measured wheel speed of the other healthy modules.
+     * @param steerCurrentAmps          The steer motor output current.
+     * @param steerVelocityDegPerSec    The measured steer velocity.
+     * @param steerErrorDegrees         The steer angle error, after drive direction optimization.
+     * @param steerCommanded            Whether the module is currently being steered.
+     */
+    public void update (
+            boolean canStale,
+            double encoderDisagreementDegrees,
+            double driveCurrentAmps,
+            double driveSpeedMetersPerSec,
+            double othersSpeedMetersPerSec,
+            double steerCurrentAmps,
+            double steerVelocityDegPerSec,
+            double steerErrorDegrees,
+            boolean steerCommanded
+        ) {
+        boolean staleCAN = staleCANDebouncer.calculate(canStale);
+
+        boolean encoderDisagreement = encoderDisagreementDebouncer.calculate(
+            Math.abs(encoderDisagreementDegrees) > ENCODER_DISAGREEMENT_DEGREES
+        );
+
+        // If every module is stalled the robot is probably pushing against something, which isn't a module fault
+        boolean driveStall = driveStallDebouncer.calculate(
+            Math.abs(driveCurrentAmps) > DRIVE_STALL_CURRENT_AMPS &&
+            Math.abs(driveSpeedMetersPerSec) < DRIVE_STALL_SPEED_METERS_PER_SEC &&
+            othersSpeedMetersPerSec > DRIVE_STALL_OTHERS_SPEED_METERS_PER_SEC
+        );
+
+        boolean steerStall = steerStallDebouncer.calculate(
+            steerCommanded &&
+            Math.abs(steerCurrentAmps) > STEER_STALL_CURRENT_AMPS &&
+            Math.abs(steerVelocityDegPerSec) < STEER_STALL_VELOCITY_DEGREES_PER_SEC
+        );
+
+        boolean steerNotConverging = steerConvergenceDebouncer.calculate(
+            steerCommanded && Math.abs(steerErrorDegrees) > STEER_CONVERGENCE_ERROR_DEGREES
+        );
+
+        // The first fault found is latched
+        if (fault != Fault.NONE) return;
+
+        if (staleCAN) {
+            fault = Fault.STALE_CAN;
+        } else if (encoderDisagreement) {
+            fault = Fault.ENCODER_DISAGREEMENT;
+        } else if (driveStall) {
+            fault = Fault.DRIVE_STALL;
+        } else if (steerStall) {
+            fault = Fault.STEER_STALL;
+        } else if (steerNotConverging) {
+            fault = Fault.STEER_NOT_CONVERGING;
+        }
+    }
+
+    public boolean isHealthy () {
+        return fault == Fault.NONE;
+    }
+
+    public Fault getFault () {
+        return fault;
+    }
+
+    /**
+     * Clear a latched fault, letting the module rejoin the drive.
+     */
+    public void reset () {
+        fault = Fault.NONE;
+        staleCANDebouncer.calculate(false);
+        encoderDisagreementDebouncer.calculate(false);
+        driveStallDebouncer.calculate(false);
+        steerStallDebouncer.calculate(false);
+        steerConvergenceDebouncer.calculate(false);
+    }
+
+}
@@ -0,0 +1,105 @@
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.simulation.DCMotorSim;
+
+/**
+ * A physics model of a single swerve module's drive and steer motors, used in place of the SPARK MAX encoders and
+ * the CANCoder when running in simulation. Each motor is a NEO driving an inertia through its gearing, and the
+ * simulated readings are published as volatile fields so that they can be read from the odometry sampler thread.
+ */
+class SwerveModuleSim {
+
+    /**
+     * Drive motor rotations per wheel rotation. Together with the drive motor rotations per meter, this determines
+     * the simulated wheel radius.
+     */
+    private static final double DRIVE_GEAR_RATIO = 6.75;
+
+    /**
+     * The drive inertia includes a quarter of the robot's mass, reflected through the wheel.
+     */
+    private static final double ROBOT_MASS_KG = 50;
+
+    private static final double STEER_MOMENT_OF_INERTIA_KG_METERS_SQ = 0.004;
+
+    private final double wheelRadiusMeters;
+    private final DCMotorSim driveSim, steerSim;
+
+    private volatile double
+        drivePositionMeters = 0,
+        driveVelocityMetersPerSec = 0,
+        driveCurrentAmps = 0,
+        steerAngleDegrees = 0,
+        steerVelocityDegreesPerSec = 0,
+        steerCurrentAmps = 0;
+
+    /**
+     * Create a new {@link SwerveModuleSim}.
+     * @param driveRotationsPerMeter    Drive motor rotations per meter driven by the wheel.
+     * @param steerGearRatio            Steer motor rotations per module rotation.
+     */
+    public SwerveModuleSim (double driveRotationsPerMeter, double steerGearRatio) {
+        wheelRadiusMeters = DRIVE_GEAR_RATIO / (driveRotationsPerMeter * 2 * Math.PI);
+
+        driveSim = new DCMotorSim(
+            DCMotor.getNEO(1),
+            DRIVE_GEAR_RATIO,
+            ROBOT_MASS_KG / 4 * wheelRadiusMeters * wheelRadiusMeters
+        );
+
+        steerSim = new DCMotorSim(DCMotor.getNEO(1), steerGearRatio, STEER_MOMENT_OF_INERTIA_KG_METERS_SQ);
+        steerSim.setState(VecBuilder.fill(0, 0));
+    }
+
+    /**
+     * Advance the simulation by one time step, with the given voltages applied to the motors.
+     */
+    public void update (double dtSecs, double driveVolts, double steerVolts) {
+        double batteryVolts = RobotController.getBatteryVoltage();
+
+        driveSim.setInputVoltage(MathUtil.clamp(driveVolts, -batteryVolts, batteryVolts));
+        steerSim.setInputVoltage(MathUtil.clamp(steerVolts, -batteryVolts, batteryVolts));
+        driveSim.update(dtSecs);
+        steerSim.update(dtSecs);
+
+        drivePositionMeters = driveSim.getAngularPositionRad() * wheelRadiusMeters;
+        driveVelocityMetersPerSec = driveSim.getAngularVelocityRadPerSec() * wheelRadiusMeters;
+        driveCurrentAmps = driveSim.getCurrentDrawAmps();
+
+        steerAngleDegrees = MathUtil.inputModulus(Math.toDegrees(steerSim.getAngularPositionRad()), -180, 180);
+        steerVelocityDegreesPerSec = Math.toDegrees(steerSim.getAngularVelocityRadPerSec());
+        steerCurrentAmps = steerSim.getCurrentDrawAmps();
+    }
+
+    public double getDrivePositionMeters () {
+        return drivePositionMeters;
+    }
+
+    public double getDriveVelocityMetersPerSec () {
+        return driveVelocityMetersPerSec;
+    }
+
+    public double getDriveCurrentAmps () {
+        return driveCurrentAmps;
+    }
+
+    /**
+     * Get the simulated steer angle on the interval [-180, 180), as the CANCoder would report it.
+     */
+    public double getSteerAngleDegrees () {
+        return steerAngleDegrees;
+    }
+
+    public double getSteerVelocityDegreesPerSec () {
+        return steerVelocityDegreesPerSec;
+    }
+
+    public double getSteerCurrentAmps () {
+        return steerCurrentAmps;
+    }
+
+}
@@ -0,0 +1,144 @@
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * A preallocated, mutable set of swerve module states stored as primitive speeds and angles. This performs the
+ * same inverse kinematics and desaturation as {@link edu.wpi.first.math.kinematics.SwerveDriveKinematics}, but
+ * in place, so that the drive path does not allocate a new {@code SwerveModuleState[]} every loop.
+ * <br></br>
+ * Each state may also carry the rate at which the setpoint is changing (the drive acceleration, and the steer
+ * velocity and acceleration), for the module feedforwards. States set directly from chassis speeds have no rates.
+ */
+class SwerveModuleStateBank {
+
+    private final double[] moduleXs, moduleYs;
+    private final double[] speedsMetersPerSec, anglesDegrees;
+    private final double[] accelerationsMetersPerSecSq, steerVelocitiesDegreesPerSec, steerAccelerationsDegreesPerSecSq;
+    private final boolean[] ignored;
+
+    public SwerveModuleStateBank (Translation2d... moduleTranslations) {
+        int size = moduleTranslations.length;
+        moduleXs = new double[size];
+        moduleYs = new double[size];
+        speedsMetersPerSec = new double[size];
+        anglesDegrees = new double[size];
+        accelerationsMetersPerSecSq = new double[size];
+        steerVelocitiesDegreesPerSec = new double[size];
+        steerAccelerationsDegreesPerSecSq = new double[size];
+        ignored = new boolean[size];
+
+        for (int i = 0; i < size; i ++) {
+            moduleXs[i] = moduleTranslations[i].getX();
+            moduleYs[i] = moduleTranslations[i].getY();
+        }
+    }
+
+    public int size () {
+        return speedsMetersPerSec.length;
+    }
+
+    /**
+     * Set every module state from robot-relative chassis speeds. As with {@code SwerveDriveKinematics}, if the
+     * chassis speeds are all zero then every module keeps its last angle with a speed of zero.
+     */
+    public void setFromChassisSpeeds (double vxMetersPerSec, double vyMetersPerSec, double omegaRadiansPerSec) {
+        for (int i = 0; i < size(); i ++) {
+            setRates(i, 0, 0, 0);
+        }
+
+        if (vxMetersPerSec == 0 && vyMetersPerSec == 0 && omegaRadiansPerSec == 0) {
+            for (int i = 0; i < size(); i ++) {
+                speedsMetersPerSec[i] = 0;
+            }
+            return;
+        }
+
+        for (int i = 0; i < size(); i ++) {
+            // v_module = v_robot + omega x r_module
+            double moduleVx = vxMetersPerSec - omegaRadiansPerSec * moduleYs[i];
+            double moduleVy = vyMetersPerSec + omegaRadiansPerSec * moduleXs[i];
+
+            speedsMetersPerSec[i] = Math.hypot(moduleVx, moduleVy);
+            anglesDegrees[i] = Math.toDegrees(Math.atan2(moduleVy, moduleVx));
+        }
+    }
+
+    /**
+     * Scale all module speeds down proportionally so that none exceed {@code maxSpeedMetersPerSec}. Ignored modules
+     * are not driven, so they do not limit the other modules' speeds.
+     * @return The scale applied to every module speed, which is 1 if no module exceeded the maximum speed.
+     */
+    public double desaturate (double maxSpeedMetersPerSec) {
+        double fastestSpeed = 0;
+        for (int i = 0; i < size(); i ++) {
+            if (ignored[i]) continue;
+            fastestSpeed = Math.max(fastestSpeed, Math.abs(speedsMetersPerSec[i]));
+        }
+
+        if (fastestSpeed > maxSpeedMetersPerSec) {
+            double scale = maxSpeedMetersPerSec / fastestSpeed;
+            for (int i = 0; i < size(); i ++) {
+                speedsMetersPerSec[i] *= scale;
+            }
+            return scale;
+        }
+
+        return 1;
+    }
+
+    public void set (int index, double speedMetersPerSec, double angleDegrees) {
+        speedsMetersPerSec[index] = speedMetersPerSec;
+        anglesDegrees[index] = angleDegrees;
+    }
+
+    /**
+     * Set the rates at which the given module's setpoint is changing. The acceleration is along the module's angle,
+     * and the steer rates are of the module's angle, in degrees.
+     */
+    public void setRates (int index, double accelerationMetersPerSecSq, double steerVelocityDegreesPerSec, double steerAccelerationDegreesPerSecSq) {
+        accelerationsMetersPerSecSq[index] = accelerationMetersPerSecSq;
+        steerVelocitiesDegreesPerSec[index] = steerVelocityDegreesPerSec;
+        steerAccelerationsDegreesPerSecSq[index] = steerAccelerationDegreesPerSecSq;
+    }
+
+    /**
+     * Set whether the given module is ignored, as when it has failed and is no longer being driven.
+     */
+    public void setIgnored (int index, boolean isIgnored) {
+        ignored[index] = isIgnored;
+    }
+
+    public boolean isIgnored (int index) {
+        return ignored[index];
+    }
+
+    public double getModuleX (int index) {
+        return moduleXs[index];
+    }
+
+    public double getModuleY (int index) {
+        return moduleYs[index];
+    }
+
+    public double getSpeed (int index) {
+        return speedsMetersPerSec[index];
+    }
+
+    public double getAngleDegrees (int index) {
+        return anglesDegrees[index];
+    }
+
+    public double getAcceleration (int index) {
+        return accelerationsMetersPerSecSq[index];
+    }
+
+    public double getSteerVelocity (int index) {
+        return steerVelocitiesDegreesPerSec[index];
+    }
+
+    public double getSteerAcceleration (int index) {
+        return steerAccelerationsDegreesPerSecSq[index];
+    }
+
+}
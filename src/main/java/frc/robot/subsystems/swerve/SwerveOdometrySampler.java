@@ -0,0 +1,68 @@
+package frc.robot.subsystems.swerve;
+
+import com.kauailabs.navx.frc.AHRS;
+
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Samples swerve module positions and gyro yaw on a dedicated {@link Notifier} thread at a fixed high rate,
+ * independent of the 20 ms robot loop. Each sample is stamped with the FPGA time it was taken and pushed into an
+ * {@link OdometrySampleBuffer}, which the main loop drains into the pose estimator.
+ */
+class SwerveOdometrySampler {
+
+    /**
+     * 250 Hz. The drive motor position frames and CANCoder sensor frames must be configured to report at least
+     * this fast for the samples to carry new data.
+     */
+    public static final double SAMPLE_PERIOD_SECS = 0.004;
+
+    private final AHRS gyro;
+    private final GyroSampleBuffer gyroSamples;
+    private final SwerveModule[] modules;
+    private final OdometrySampleBuffer buffer;
+    private final Notifier notifier = new Notifier(this::sample);
+
+    private final double[] moduleDistances, moduleAngles;
+
+    public SwerveOdometrySampler (OdometrySampleBuffer buffer, AHRS gyro, GyroSampleBuffer gyroSamples, SwerveModule... modules) {
+        this.buffer = buffer;
+        this.gyro = gyro;
+        this.gyroSamples = gyroSamples;
+        this.modules = modules;
+
+        moduleDistances = new double[modules.length];
+        moduleAngles = new double[modules.length];
+    }
+
+    public void start () {
+        notifier.startPeriodic(SAMPLE_PERIOD_SECS);
+    }
+
+    public void stop () {
+        notifier.stop();
+    }
+
+    private void sample () {
+        double timestamp = Timer.getFPGATimestamp();
+
+        for (int i = 0; i < modules.length; i ++) {
+            moduleDistances[i] = modules[i].getDisplacementMeters();
+            moduleAngles[i] = modules[i].readRotationDegrees();
+        }
+
+        // The gyro updates on its own schedule, so its yaw is interpolated to the time of this sample
+        double gyroYawDegrees = gyroSamples.getYawDegreesAt(timestamp);
+
+        buffer.offer(
+            timestamp,
+            gyroYawDegrees,
+            gyro.getWorldLinearAccelX(),
+            gyro.getWorldLinearAccelY(),
+            moduleDistances,
+            moduleAngles
+        );
+    }
+
+}
@@ -0,0 +1,397 @@
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * A swerve drive pose estimator which fuses wheel odometry, the gyro and late (latency-delayed) vision measurements,
+ * in the same way as WPILib's {@link edu.wpi.first.math.estimator.SwerveDrivePoseEstimator}. Instead of a
+ * {@code TreeMap} of boxed poses and module positions, the odometry history is kept in fixed-size primitive ring
+ * buffers, so that updates never allocate.
+ * <br></br>
+ * When a vision measurement arrives for a past timestamp, the pose at that time is found by binary search over the
+ * history and interpolation, corrected toward the measurement using a steady-state Kalman gain, and then every
+ * odometry update since that time is replayed in place on top of the corrected pose.
+ * <br></br>
+ * Odometry translation is found by a weighted least squares fit of the module displacements, with rotation taken
+ * from the gyro. Module weights default to 1 and may be lowered to discount untrustworthy modules.
+ */
+class SwervePoseEstimator {
+
+    private static final double
+        DEFAULT_STATE_STD_DEV_XY = 0.1,
+        DEFAULT_STATE_STD_DEV_THETA = 0.1,
+        DEFAULT_VISION_STD_DEV_XY = 0.9,
+        DEFAULT_VISION_STD_DEV_THETA = 0.9;
+
+    private final int capacity, moduleCount;
+    private final double[] moduleXs, moduleYs, moduleWeights;
+
+    // History of odometry inputs and the pose estimated after each update, stored oldest to newest from the start
+    // index. Module values are stored with all of one entry's modules next to each other.
+    private final double[] timestamps, xs, ys, thetas, gyroAngles;
+    private final double[] moduleDistances, moduleAnglesDegrees;
+    private int startIndex = 0, size = 0;
+
+    // Current odometry state
+    private double x = 0, y = 0, theta = 0;
+    private double gyroOffset = 0, lastGyroAngle = 0;
+    private final double[] lastModuleDistances;
+
+    private final double[] stateVariances = new double[3];
+    private final double[] visionGains = new double[3];
+
+    // Scratch space for the state interpolated at a vision measurement's timestamp
+    private final double[] interpolatedDistances;
+    private double interpolatedX, interpolatedY, interpolatedTheta, interpolatedGyroAngle;
+
+    private Pose2d cachedPose = new Pose2d();
+    private boolean cachedPoseIsStale = false;
+
+    /**
+     * Create a new {@link SwervePoseEstimator}.
+     * @param moduleTranslations    The location of each module relative to the robot's center.
+     * @param capacity              The number of odometry updates to keep for vision corrections. At the 250 Hz
+     *                              odometry rate, 512 updates is about two seconds of history.
+     */
+    public SwervePoseEstimator (Translation2d[] moduleTranslations, int capacity) {
+        this.capacity = capacity;
+        moduleCount = moduleTranslations.length;
+
+        moduleXs = new double[moduleCount];
+        moduleYs = new double[moduleCount];
+        moduleWeights = new double[moduleCount];
+        for (int i = 0; i < moduleCount; i ++) {
+            moduleXs[i] = moduleTranslations[i].getX();
+            moduleYs[i] = moduleTranslations[i].getY();
+            moduleWeights[i] = 1;
+        }
+
+        timestamps = new double[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        thetas = new double[capacity];
+        gyroAngles = new double[capacity];
+        moduleDistances = new double[capacity * moduleCount];
+        moduleAnglesDegrees = new double[capacity * moduleCount];
+
+        lastModuleDistances = new double[moduleCount];
+        interpolatedDistances = new double[moduleCount];
+
+        setStateStdDevs(DEFAULT_STATE_STD_DEV_XY, DEFAULT_STATE_STD_DEV_XY, DEFAULT_STATE_STD_DEV_THETA);
+        setVisionStdDevs(DEFAULT_VISION_STD_DEV_XY, DEFAULT_VISION_STD_DEV_XY, DEFAULT_VISION_STD_DEV_THETA);
+    }
+
+    /**
+     * Set how much the odometry is trusted, as standard deviations in meters and radians.
+     */
+    public void setStateStdDevs (double xStdDev, double yStdDev, double thetaStdDev) {
+        stateVariances[0] = xStdDev * xStdDev;
+        stateVariances[1] = yStdDev * yStdDev;
+        stateVariances[2] = thetaStdDev * thetaStdDev;
+    }
+
+    /**
+     * Set how much vision measurements are trusted by default, as standard deviations in meters and radians.
+     */
+    public void setVisionStdDevs (double xStdDev, double yStdDev, double thetaStdDev) {
+        calculateVisionGains(xStdDev, yStdDev, thetaStdDev);
+    }
+
+    private void calculateVisionGains (double xStdDev, double yStdDev, double thetaStdDev) {
+        visionGains[0] = getVisionGain(stateVariances[0], xStdDev * xStdDev);
+        visionGains[1] = getVisionGain(stateVariances[1], yStdDev * yStdDev);
+        visionGains[2] = getVisionGain(stateVariances[2], thetaStdDev * thetaStdDev);
+    }
+
+    /**
+     * The steady-state Kalman gain for a continuous process with variance q and a measurement with variance r, as
+     * used by the WPILib estimators.
+     */
+    private static double getVisionGain (double q, double r) {
+        if (q == 0) return 0;
+        return q / (q + Math.sqrt(q * r));
+    }
+
+    /**
+     * Set how much a module's displacement counts toward odometry, relative to the other modules. A weight of zero
+     * excludes the module entirely.
+     */
+    public void setModuleWeight (int module, double weight) {
+        moduleWeights[module] = weight;
+    }
+
+    /**
+     * Reset the estimated pose, discarding all odometry history.
+     * @param gyroAngleRadians  The current gyro angle, counter-clockwise positive.
+     * @param distances         The current cumulative drive distance of each module, in meters.
+     * @param pose              The new pose.
+     */
+    public void resetPosition (double gyroAngleRadians, double[] distances, Pose2d pose) {
+        x = pose.getX();
+        y = pose.getY();
+        theta = pose.getRotation().getRadians();
+
+        gyroOffset = theta - gyroAngleRadians;
+        lastGyroAngle = gyroAngleRadians;
+        System.arraycopy(distances, 0, lastModuleDistances, 0, moduleCount);
+
+        startIndex = 0;
+        size = 0;
+
+        cachedPose = pose;
+        cachedPoseIsStale = false;
+    }
+
+    /**
+     * Update the estimated pose with new odometry readings. This does not allocate.
+     * @param timestamp         The FPGA timestamp of the readings, in seconds.
+     * @param gyroAngleRadians  The gyro angle, counter-clockwise positive.
+     * @param distances         The cumulative drive distance of each module, in meters.
+     * @param anglesDegrees     The steer angle of each module, in degrees.
+     */
+    public void update (double timestamp, double gyroAngleRadians, double[] distances, double[] anglesDegrees) {
+        // Drop the oldest entry if the history is full
+        if (size == capacity) {
+            startIndex = (startIndex + 1) % capacity;
+            size --;
+        }
+
+        int slot = (startIndex + size) % capacity;
+        size ++;
+
+        timestamps[slot] = timestamp;
+        gyroAngles[slot] = gyroAngleRadians;
+        System.arraycopy(distances, 0, moduleDistances, slot * moduleCount, moduleCount);
+        System.arraycopy(anglesDegrees, 0, moduleAnglesDegrees, slot * moduleCount, moduleCount);
+
+        applyOdometry(slot);
+    }
+
+    /**
+     * Apply the odometry inputs stored in the given slot to the current state, and store the resulting pose in it.
+     */
+    private void applyOdometry (int slot) {
+        double gyroAngle = gyroAngles[slot];
+        double dTheta = gyroAngle - lastGyroAngle;
+
+        // Weighted least squares translation given the gyro's rotation: d_i = t + dTheta x r_i
+        double weightSum = 0, dx = 0, dy = 0;
+        for (int i = 0; i < moduleCount; i ++) {
+            int index = slot * moduleCount + i;
+            double delta = moduleDistances[index] - lastModuleDistances[i];
+            double angleRadians = Math.toRadians(moduleAnglesDegrees[index]);
+
+            double weight = moduleWeights[i];
+            dx += weight * (delta * Math.cos(angleRadians) + dTheta * moduleYs[i]);
+            dy += weight * (delta * Math.sin(angleRadians) - dTheta * moduleXs[i]);
+            weightSum += weight;
+
+            lastModuleDistances[i] = moduleDistances[index];
+        }
+
+        if (weightSum > 0) {
+            dx /= weightSum;
+            dy /= weightSum;
+        } else {
+            dx = 0;
+            dy = 0;
+        }
+
+        // Integrate the twist along an arc (the SE(2) exponential), as Pose2d.exp does
+        double sinTerm, cosTerm;
+        if (Math.abs(dTheta) < 1e-9) {
+            sinTerm = 1 - dTheta * dTheta / 6;
+            cosTerm = dTheta / 2;
+        } else {
+            sinTerm = Math.sin(dTheta) / dTheta;
+            cosTerm = (1 - Math.cos(dTheta)) / dTheta;
+        }
+
+        double localX = dx * sinTerm - dy * cosTerm;
+        double localY = dx * cosTerm + dy * sinTerm;
+        double cos = Math.cos(theta), sin = Math.sin(theta);
+
+        x += localX * cos - localY * sin;
+        y += localX * sin + localY * cos;
+        theta = MathUtil.angleModulus(gyroAngle + gyroOffset);
+        lastGyroAngle = gyroAngle;
+
+        xs[slot] = x;
+        ys[slot] = y;
+        thetas[slot] = theta;
+
+        cachedPoseIsStale = true;
+    }
+
+    /**
+     * Add a vision measurement using the default vision standard deviations.
+     */
+    public void addVisionMeasurement (double visionX, double visionY, double visionThetaRadians, double timestamp) {
+        applyVisionMeasurement(visionX, visionY, visionThetaRadians, timestamp);
+    }
+
+    /**
+     * Add a vision measurement with the given standard deviations, in meters and radians. The standard deviations
+     * only apply to this measurement.
+     */
+    public void addVisionMeasurement (
+            double visionX,
+            double visionY,
+            double visionThetaRadians,
+            double timestamp,
+            double xStdDev,
+            double yStdDev,
+            double thetaStdDev
+        ) {
+        double gainX = visionGains[0], gainY = visionGains[1], gainTheta = visionGains[2];
+        calculateVisionGains(xStdDev, yStdDev, thetaStdDev);
+
+        applyVisionMeasurement(visionX, visionY, visionThetaRadians, timestamp);
+
+        visionGains[0] = gainX;
+        visionGains[1] = gainY;
+        visionGains[2] = gainTheta;
+    }
+
+    private void applyVisionMeasurement (double visionX, double visionY, double visionThetaRadians, double timestamp) {
+        // Measurements from before the oldest history entry (or after the newest) cannot be applied
+        if (size < 2 || timestamp < timestamps[startIndex] || timestamp > timestamps[getSlot(size - 1)]) return;
+
+        int before = findIndexAtOrBefore(timestamp);
+        interpolate(before, timestamp);
+
+        // The twist (Pose2d.log) from the estimated pose at the measurement time to the vision pose, in the
+        // estimated pose's frame
+        double cos = Math.cos(interpolatedTheta), sin = Math.sin(interpolatedTheta);
+        double worldDx = visionX - interpolatedX, worldDy = visionY - interpolatedY;
+        double localX = worldDx * cos + worldDy * sin;
+        double localY = -worldDx * sin + worldDy * cos;
+        double dTheta = MathUtil.angleModulus(visionThetaRadians - interpolatedTheta);
+
+        double halfDTheta = dTheta / 2;
+        double cosMinusOne = Math.cos(dTheta) - 1;
+        double halfThetaByTanOfHalfDTheta = Math.abs(cosMinusOne) < 1e-9
+            ? 1 - dTheta * dTheta / 12
+            : -(halfDTheta * Math.sin(dTheta)) / cosMinusOne;
+
+        double scale = Math.hypot(halfThetaByTanOfHalfDTheta, halfDTheta);
+        double rotCos = halfThetaByTanOfHalfDTheta / scale, rotSin = -halfDTheta / scale;
+        double twistDx = (localX * rotCos - localY * rotSin) * scale;
+        double twistDy = (localX * rotSin + localY * rotCos) * scale;
+
+        // Scale the twist by the Kalman gain and apply it (Pose2d.exp) to get the corrected pose
+        twistDx *= visionGains[0];
+        twistDy *= visionGains[1];
+        double twistDTheta = dTheta * visionGains[2];
+
+        double sinTerm, cosTerm;
+        if (Math.abs(twistDTheta) < 1e-9) {
+            sinTerm = 1 - twistDTheta * twistDTheta / 6;
+            cosTerm = twistDTheta / 2;
+        } else {
+            sinTerm = Math.sin(twistDTheta) / twistDTheta;
+            cosTerm = (1 - Math.cos(twistDTheta)) / twistDTheta;
+        }
+
+        double correctionX = twistDx * sinTerm - twistDy * cosTerm;
+        double correctionY = twistDx * cosTerm + twistDy * sinTerm;
+
+        // Reset odometry to the corrected pose at the measurement time, then replay every later update on top of it
+        x = interpolatedX + correctionX * cos - correctionY * sin;
+        y = interpolatedY + correctionX * sin + correctionY * cos;
+        theta = MathUtil.angleModulus(interpolatedTheta + twistDTheta);
+        gyroOffset = theta - interpolatedGyroAngle;
+        lastGyroAngle = interpolatedGyroAngle;
+        System.arraycopy(interpolatedDistances, 0, lastModuleDistances, 0, moduleCount);
+
+        for (int i = before + 1; i < size; i ++) {
+            applyOdometry(getSlot(i));
+        }
+
+        cachedPoseIsStale = true;
+    }
+
+    private int getSlot (int index) {
+        return (startIndex + index) % capacity;
+    }
+
+    /**
+     * Binary search for the index (oldest = 0) of the newest history entry at or before the given timestamp. The
+     * timestamp must be within the history.
+     */
+    private int findIndexAtOrBefore (double timestamp) {
+        int low = 0, high = size - 1;
+        while (low < high) {
+            int mid = (low + high + 1) / 2;
+            if (timestamps[getSlot(mid)] <= timestamp) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Interpolate the stored state between the entry at the given index and the next one.
+     */
+    private void interpolate (int index, double timestamp) {
+        int slotA = getSlot(index);
+        int slotB = index + 1 < size ? getSlot(index + 1) : slotA;
+
+        double span = timestamps[slotB] - timestamps[slotA];
+        double t = span > 0 ? (timestamp - timestamps[slotA]) / span : 0;
+
+        interpolatedX = MathUtil.interpolate(xs[slotA], xs[slotB], t);
+        interpolatedY = MathUtil.interpolate(ys[slotA], ys[slotB], t);
+        interpolatedTheta = MathUtil.angleModulus(thetas[slotA] + t * MathUtil.angleModulus(thetas[slotB] - thetas[slotA]));
+        interpolatedGyroAngle = MathUtil.interpolate(gyroAngles[slotA], gyroAngles[slotB], t);
+
+        for (int i = 0; i < moduleCount; i ++) {
+            interpolatedDistances[i] = MathUtil.interpolate(
+                moduleDistances[slotA * moduleCount + i],
+                moduleDistances[slotB * moduleCount + i],
+                t
+            );
+        }
+    }
+
+    public double getX () {
+        return x;
+    }
+
+    public double getY () {
+        return y;
+    }
+
+    public double getThetaRadians () {
+        return theta;
+    }
+
+    /**
+     * Get the estimated heading at a past timestamp, interpolated from the odometry history. Timestamps outside the
+     * history get the oldest or current heading.
+     */
+    public double getThetaRadiansAt (double timestamp) {
+        if (size == 0 || timestamp >= timestamps[getSlot(size - 1)]) return theta;
+        if (timestamp <= timestamps[startIndex]) return thetas[startIndex];
+
+        interpolate(findIndexAtOrBefore(timestamp), timestamp);
+        return interpolatedTheta;
+    }
+
+    /**
+     * Get the estimated pose. A new {@link Pose2d} is only created when the estimate has changed since the last call.
+     */
+    public Pose2d getPose () {
+        if (cachedPoseIsStale) {
+            cachedPose = new Pose2d(x, y, new Rotation2d(theta));
+            cachedPoseIsStale = false;
+        }
+        return cachedPose;
+    }
+
+}
@@ -0,0 +1,250 @@
+package frc.robot.subsystems.swerve;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Generates module-level swerve setpoints which the drive can actually follow. Given the previous setpoint and a
+ * desired set of chassis speeds, this finds the furthest point along the way from one to the other such that no
+ * module has to steer faster than it can, no module's velocity changes faster than the drive acceleration limit,
+ * and no wheel is asked to exceed the maximum drive speed. Sudden direction reversals are therefore handled by
+ * slowing down and steering together, instead of modules fighting each other while they turn.
+ * <br></br>
+ * Each module setpoint also carries its drive acceleration and steer velocity and acceleration, from the change
+ * since the previous setpoint, so that the module feedforwards can follow it.
+ * <br></br>
+ * All state is kept in preallocated primitives, so {@link #calculate(double, double, double, double)} does not
+ * allocate.
+ */
+public class SwerveSetpointGenerator {
+
+    /**
+     * Below this speed, a module is considered stopped, and may be steered to any angle without limit.
+     */
+    private static final double STOPPED_MODULE_SPEED_METERS_PER_SEC = 0.05;
+
+    /**
+     * Below this speed, a module's velocity has no meaningful direction, so it holds its last angle.
+     */
+    private static final double ZERO_MODULE_SPEED_METERS_PER_SEC = 1e-6;
+
+    /**
+     * Number of bisection iterations used when finding the steer-limited interpolation fraction, which gives a
+     * resolution of about 0.1%.
+     */
+    private static final int STEER_SEARCH_ITERATIONS = 10;
+
+    /**
+     * The longest time step which will be used for a single setpoint. Longer gaps (e.g. when a command has just
+     * been resumed) are treated as this long so the setpoint cannot jump.
+     */
+    private static final double MAX_TIME_STEP_SECS = 0.1;
+
+    private final double maxDriveAccelMetersPerSecSq, maxAngularAccelRadiansPerSecSq;
+    private final DoubleSupplier maxSteerVelocityDegreesPerSec;
+
+    private final SwerveModuleStateBank setpointStates, desiredStates;
+
+    private double vxMetersPerSec, vyMetersPerSec, omegaRadiansPerSec;
+    private double lastCalculateTime = 0;
+
+    /**
+     * Create a new {@link SwerveSetpointGenerator}.
+     * @param maxDriveAccelMetersPerSecSq       The maximum change in any module's velocity vector, per second.
+     * @param maxAngularAccelRadiansPerSecSq    The maximum change in the chassis' angular velocity, per second.
+     */
+    public SwerveSetpointGenerator (double maxDriveAccelMetersPerSecSq, double maxAngularAccelRadiansPerSecSq) {
+        this(
+            Swerve.MODULE_TRANSLATIONS,
+            maxDriveAccelMetersPerSecSq,
+            maxAngularAccelRadiansPerSecSq,
+            SwerveModule::getMaxSteerVelocityDegreesPerSec
+        );
+    }
+
+    /**
+     * Create a new {@link SwerveSetpointGenerator} for the given modules.
+     * @param moduleTranslations                The position of each module relative to the robot's center.
+     * @param maxDriveAccelMetersPerSecSq       The maximum change in any module's velocity vector, per second.
+     * @param maxAngularAccelRadiansPerSecSq    The maximum change in the chassis' angular velocity, per second.
+     * @param maxSteerVelocityDegreesPerSec     Supplies the fastest any module can steer, in degrees per second.
+     */
+    SwerveSetpointGenerator (
+            Translation2d[] moduleTranslations,
+            double maxDriveAccelMetersPerSecSq,
+            double maxAngularAccelRadiansPerSecSq,
+            DoubleSupplier maxSteerVelocityDegreesPerSec
+        ) {
+        this.maxDriveAccelMetersPerSecSq = maxDriveAccelMetersPerSecSq;
+        this.maxAngularAccelRadiansPerSecSq = maxAngularAccelRadiansPerSecSq;
+        this.maxSteerVelocityDegreesPerSec = maxSteerVelocityDegreesPerSec;
+        setpointStates = new SwerveModuleStateBank(moduleTranslations);
+        desiredStates = new SwerveModuleStateBank(moduleTranslations);
+        reset();
+    }
+
+    /**
+     * Reset the previous setpoint to a stopped robot. Module angles are kept from the last setpoint.
+     */
+    public void reset () {
+        vxMetersPerSec = 0;
+        vyMetersPerSec = 0;
+        omegaRadiansPerSec = 0;
+        setpointStates.setFromChassisSpeeds(0, 0, 0);
+        lastCalculateTime = Timer.getFPGATimestamp();
+    }
+
+    /**
+     * Calculate the next setpoint, using the time since the last call as the time step.
+     * @param desiredVx                 The desired robot-relative x velocity, in meters per second.
+     * @param desiredVy                 The desired robot-relative y velocity, in meters per second.
+     * @param desiredOmega              The desired angular velocity, in radians per second.
+     * @param maxWheelSpeedMetersPerSec The maximum speed any wheel can be driven at.
+     */
+    public void calculate (double desiredVx, double desiredVy, double desiredOmega, double maxWheelSpeedMetersPerSec) {
+        double now = Timer.getFPGATimestamp();
+        double dt = MathUtil.clamp(now - lastCalculateTime, 0, MAX_TIME_STEP_SECS);
+        lastCalculateTime = now;
+
+        calculate(desiredVx, desiredVy, desiredOmega, maxWheelSpeedMetersPerSec, dt);
+    }
+
+    /**
+     * Calculate the next setpoint over the given time step.
+     */
+    public void calculate (double desiredVx, double desiredVy, double desiredOmega, double maxWheelSpeedMetersPerSec, double dtSecs) {
+        // Limit wheel speeds, scaling the whole chassis velocity so that the direction of travel is kept
+        desiredStates.setFromChassisSpeeds(desiredVx, desiredVy, desiredOmega);
+        double wheelSpeedScale = desiredStates.desaturate(maxWheelSpeedMetersPerSec);
+        desiredVx *= wheelSpeedScale;
+        desiredVy *= wheelSpeedScale;
+        desiredOmega *= wheelSpeedScale;
+
+        // Interpolate from the previous setpoint (s = 0) toward the desired speeds (s = 1)
+        double dvx = desiredVx - vxMetersPerSec;
+        double dvy = desiredVy - vyMetersPerSec;
+        double domega = desiredOmega - omegaRadiansPerSec;
+
+        double s = 1;
+
+        // Chassis angular acceleration limit
+        double maxDeltaOmega = maxAngularAccelRadiansPerSecSq * dtSecs;
+        if (Math.abs(domega) > maxDeltaOmega) {
+            s = Math.min(s, maxDeltaOmega / Math.abs(domega));
+        }
+
+        // Drive acceleration limit. Each module's velocity is linear in s, so the limit is found directly.
+        double maxDeltaModuleVelocity = maxDriveAccelMetersPerSecSq * dtSecs;
+        for (int i = 0; i < setpointStates.size(); i ++) {
+            if (setpointStates.isIgnored(i)) continue;
+            double moduleDeltaVx = dvx - domega * setpointStates.getModuleY(i);
+            double moduleDeltaVy = dvy + domega * setpointStates.getModuleX(i);
+            double moduleDeltaV = Math.hypot(moduleDeltaVx, moduleDeltaVy);
+
+            if (moduleDeltaV > maxDeltaModuleVelocity) {
+                s = Math.min(s, maxDeltaModuleVelocity / moduleDeltaV);
+            }
+        }
+
+        // Steer velocity limit, found by bisection for each module which is not already feasible
+        double maxSteerDegrees = maxSteerVelocityDegreesPerSec.getAsDouble() * dtSecs;
+        for (int i = 0; i < setpointStates.size(); i ++) {
+            if (setpointStates.isIgnored(i) || isSteerFeasible(i, dvx, dvy, domega, s, maxSteerDegrees)) continue;
+
+            double low = 0, high = s;
+            for (int iter = 0; iter < STEER_SEARCH_ITERATIONS; iter ++) {
+                double mid = (low + high) / 2;
+                if (isSteerFeasible(i, dvx, dvy, domega, mid, maxSteerDegrees)) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+
+            s = low;
+        }
+
+        // Apply the new setpoint
+        vxMetersPerSec += s * dvx;
+        vyMetersPerSec += s * dvy;
+        omegaRadiansPerSec += s * domega;
+
+        for (int i = 0; i < setpointStates.size(); i ++) {
+            double moduleVx = getModuleVx(i, vxMetersPerSec, omegaRadiansPerSec);
+            double moduleVy = getModuleVy(i, vyMetersPerSec, omegaRadiansPerSec);
+            double speed = Math.hypot(moduleVx, moduleVy);
+
+            // Stopped modules hold their last angle
+            double previousAngle = setpointStates.getAngleDegrees(i);
+            double angle = speed < ZERO_MODULE_SPEED_METERS_PER_SEC
+                ? previousAngle
+                : Math.toDegrees(Math.atan2(moduleVy, moduleVx));
+
+            if (dtSecs > 0) {
+                // The previous velocity is projected onto the new angle, so a module passing through zero speed
+                // keeps accelerating the same way. Steering is measured modulo 180 degrees, since the module can
+                // reverse its drive direction instead.
+                double angleChange = angle - previousAngle;
+                double acceleration = (speed - setpointStates.getSpeed(i) * Math.cos(Math.toRadians(angleChange))) / dtSecs;
+                double steerVelocity = MathUtil.inputModulus(angleChange, -90, 90) / dtSecs;
+                double steerAcceleration = (steerVelocity - setpointStates.getSteerVelocity(i)) / dtSecs;
+                setpointStates.setRates(i, acceleration, steerVelocity, steerAcceleration);
+            }
+
+            setpointStates.set(i, speed, angle);
+        }
+    }
+
+    private boolean isSteerFeasible (int module, double dvx, double dvy, double domega, double s, double maxSteerDegrees) {
+        double moduleVx = getModuleVx(module, vxMetersPerSec + s * dvx, omegaRadiansPerSec + s * domega);
+        double moduleVy = getModuleVy(module, vyMetersPerSec + s * dvy, omegaRadiansPerSec + s * domega);
+
+        // A (nearly) stopped module can steer freely
+        if (Math.hypot(moduleVx, moduleVy) < STOPPED_MODULE_SPEED_METERS_PER_SEC) return true;
+
+        double steerDegrees = Math.abs(MathUtil.inputModulus(
+            Math.toDegrees(Math.atan2(moduleVy, moduleVx)) - setpointStates.getAngleDegrees(module),
+            -180, 180
+        ));
+
+        // The module can reverse its drive direction instead of steering more than 90 degrees
+        if (steerDegrees > 90) steerDegrees = 180 - steerDegrees;
+
+        return steerDegrees <= maxSteerDegrees;
+    }
+
+    private double getModuleVx (int module, double vx, double omega) {
+        return vx - omega * setpointStates.getModuleY(module);
+    }
+
+    private double getModuleVy (int module, double vy, double omega) {
+        return vy + omega * setpointStates.getModuleX(module);
+    }
+
+    /**
+     * Copy the current chassis speeds setpoint into {@code out}.
+     */
+    public void getChassisSpeeds (ChassisSpeeds out) {
+        out.vxMetersPerSecond = vxMetersPerSec;
+        out.vyMetersPerSecond = vyMetersPerSec;
+        out.omegaRadiansPerSecond = omegaRadiansPerSec;
+    }
+
+    /**
+     * Set whether the given module is ignored, so that it no longer limits the setpoint. This is used when a module
+     * has failed and the drive continues on the remaining modules.
+     */
+    void setModuleIgnored (int module, boolean isIgnored) {
+        setpointStates.setIgnored(module, isIgnored);
+        desiredStates.setIgnored(module, isIgnored);
+    }
+
+    SwerveModuleStateBank getModuleStates () {
+        return setpointStates;
+    }
+
+}
@@ -0,0 +1,229 @@
+package frc.robot.subsystems.swerve;
+
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+import claw.Setting;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Keeps every drive wheel near peak friction by limiting how much torque each module can apply relative to the
+ * ground moving beneath it. Because it acts on the module outputs, it covers teleop and autonomous driving alike.
+ * <br></br>
+ * The robot's ground velocity is estimated from the median of the per-module velocity estimates (with the gyro's
+ * yaw rate removed), and it may only change as fast as the accelerometer says the robot is actually accelerating.
+ * If every wheel spins at once, the estimate therefore stays with the carpet instead of following the wheels. Each
+ * module's slip ratio compares its wheel speed with the estimated ground speed under it. While a module slips
+ * beyond the peak-friction slip ratio, its torque allowance is cut back, and it recovers gradually once the wheel
+ * grips again.
+ */
+class TractionController implements Sendable {
+
+    /**
+     * The slip ratio at which the carpet gives the most friction. Beyond this, more wheel speed only means less
+     * traction.
+     */
+    private static final Setting<Double> PEAK_SLIP_RATIO = new Setting<>("TRACTION_CONTROL.PEAK_SLIP_RATIO", () -> 0.15);
+
+    /**
+     * The drive voltage beyond the wheel's back-EMF which produces about peak friction force at the wheel. For a NEO
+     * on an SDS MK4 L2 (6.75:1, 2 inch wheel) under a quarter of a 50 kg robot with a friction coefficient of 1.1,
+     * this is about 4.5 volts.
+     */
+    private static final Setting<Double> MAX_TRACTION_VOLTS = new Setting<>("TRACTION_CONTROL.MAX_TRACTION_VOLTS", () -> 4.5);
+
+    /**
+     * Below this ground speed, slip ratios are computed relative to this speed instead, so that a wheel starting
+     * from rest isn't measured as slipping infinitely.
+     */
+    private static final double MIN_SLIP_REFERENCE_SPEED_METERS_PER_SEC = 0.5;
+
+    /**
+     * Allowance for accelerometer noise and vibration when bounding the change in the ground velocity estimate.
+     */
+    private static final double ACCEL_MARGIN_METERS_PER_SEC_SQ = 2;
+
+    /**
+     * A slipping module's torque allowance is multiplied by {@code SLIP_GAIN_DECAY} for every
+     * {@code SLIP_GAIN_DECAY_PERIOD_SECS} it slips, down to {@code MIN_GAIN}, and recovers by
+     * {@code GAIN_RECOVERY_PER_SEC} once it stops slipping. Both are scaled by the time between updates, so they
+     * don't depend on the loop rate.
+     */
+    private static final double
+        SLIP_GAIN_DECAY = 0.7,
+        SLIP_GAIN_DECAY_PERIOD_SECS = 0.005,
+        MIN_GAIN = 0.3,
+        GAIN_RECOVERY_PER_SEC = 2;
+
+    /**
+     * Updates further apart than this (e.g. after the robot was disabled) reset the ground velocity estimate
+     * instead of bounding it.
+     */
+    private static final double MAX_UPDATE_SECS = 0.1;
+
+    private final SwerveModule[] modules;
+    private final double[] moduleXs, moduleYs;
+    private final GyroSampleBuffer gyroSamples;
+    private final DoubleSupplier accelerationMagnitude;
+
+    private final double[] moduleVxs, moduleVys;
+    private final double[] slipRatios, gains;
+
+    private double groundVx = 0, groundVy = 0;
+    private double lastUpdateTime = 0;
+    private boolean enabled = true;
+
+    /**
+     * Create a new {@link TractionController}.
+     * @param moduleTranslations    The position of each module relative to the center of the robot.
+     * @param gyroSamples           The gyro samples to read the yaw rate from.
+     * @param accelerationMagnitude Supplies the magnitude of the robot's horizontal acceleration, in meters per
+     *                              second squared, without gravity.
+     * @param modules               The modules to limit.
+     */
+    public TractionController (
+            Translation2d[] moduleTranslations,
+            GyroSampleBuffer gyroSamples,
+            DoubleSupplier accelerationMagnitude,
+            SwerveModule... modules
+        ) {
+        this.modules = modules;
+        this.gyroSamples = gyroSamples;
+        this.accelerationMagnitude = accelerationMagnitude;
+
+        moduleXs = new double[modules.length];
+        moduleYs = new double[modules.length];
+        for (int i = 0; i < modules.length; i ++) {
+            moduleXs[i] = moduleTranslations[i].getX();
+            moduleYs[i] = moduleTranslations[i].getY();
+        }
+
+        moduleVxs = new double[modules.length];
+        moduleVys = new double[modules.length];
+        slipRatios = new double[modules.length];
+        gains = new double[modules.length];
+        Arrays.fill(gains, 1);
+    }
+
+    public void setEnabled (boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            for (SwerveModule module : modules) {
+                module.setTractionLimit(0, Double.POSITIVE_INFINITY);
+            }
+        }
+    }
+
+    /**
+     * Update the ground velocity estimate and every module's slip ratio and traction limit from the latest sensor
+     * readings. This should be called once every fast control cycle, before the modules are updated, and from
+     * nowhere else, since the ground velocity estimate is integrated over the time between calls.
+     */
+    public void update () {
+        double now = Timer.getFPGATimestamp();
+        double dtSecs = now - lastUpdateTime;
+        lastUpdateTime = now;
+
+        double omega = Math.toRadians(gyroSamples.getYawRateDegreesPerSec());
+
+        // Estimate the robot's translational velocity from each healthy module, removing the rotational part
+        int count = 0;
+        for (int i = 0; i < modules.length; i ++) {
+            if (!modules[i].isHealthy()) continue;
+
+            double speed = modules[i].getDriveVelocityMetersPerSec();
+            double angleRadians = Math.toRadians(modules[i].getRotationDegrees());
+            moduleVxs[count] = speed * Math.cos(angleRadians) + omega * moduleYs[i];
+            moduleVys[count] = speed * Math.sin(angleRadians) - omega * moduleXs[i];
+            count ++;
+        }
+
+        if (count == 0) return;
+
+        double wheelVx = median(moduleVxs, count), wheelVy = median(moduleVys, count);
+
+        if (dtSecs <= 0 || dtSecs > MAX_UPDATE_SECS) {
+            groundVx = wheelVx;
+            groundVy = wheelVy;
+        } else {
+            // The estimate is robot-relative, so rotate it with the robot
+            double dTheta = -omega * dtSecs;
+            double cos = Math.cos(dTheta), sin = Math.sin(dTheta);
+            double rotatedVx = groundVx * cos - groundVy * sin;
+            double rotatedVy = groundVx * sin + groundVy * cos;
+
+            // Follow the wheels only as fast as the robot is measured to be accelerating
+            double maxChange = (accelerationMagnitude.getAsDouble() + ACCEL_MARGIN_METERS_PER_SEC_SQ) * dtSecs;
+            double changeX = wheelVx - rotatedVx, changeY = wheelVy - rotatedVy;
+            double change = Math.hypot(changeX, changeY);
+            double scale = change > maxChange ? maxChange / change : 1;
+
+            groundVx = rotatedVx + changeX * scale;
+            groundVy = rotatedVy + changeY * scale;
+        }
+
+        if (!enabled) return;
+
+        double peakSlip = PEAK_SLIP_RATIO.get();
+        double maxLead = MAX_TRACTION_VOLTS.get() / SwerveModule.getDriveVoltsPerMeterPerSec();
+        double gainDtSecs = MathUtil.clamp(dtSecs, 0, MAX_UPDATE_SECS);
+        double slipGainDecay = Math.pow(SLIP_GAIN_DECAY, gainDtSecs / SLIP_GAIN_DECAY_PERIOD_SECS);
+
+        for (int i = 0; i < modules.length; i ++) {
+            // The ground velocity under the module, along the module's current heading
+            double angleRadians = Math.toRadians(modules[i].getRotationDegrees());
+            double groundSpeed =
+                (groundVx - omega * moduleYs[i]) * Math.cos(angleRadians) +
+                (groundVy + omega * moduleXs[i]) * Math.sin(angleRadians);
+
+            double wheelSpeed = modules[i].getDriveVelocityMetersPerSec();
+            slipRatios[i] = (wheelSpeed - groundSpeed) / Math.max(Math.abs(groundSpeed), MIN_SLIP_REFERENCE_SPEED_METERS_PER_SEC);
+
+            if (Math.abs(slipRatios[i]) > peakSlip) {
+                gains[i] = Math.max(MIN_GAIN, gains[i] * slipGainDecay);
+            } else {
+                gains[i] = Math.min(1, gains[i] + GAIN_RECOVERY_PER_SEC * gainDtSecs);
+            }
+
+            modules[i].setTractionLimit(groundSpeed, gains[i] * maxLead);
+        }
+    }
+
+    /**
+     * Get the median of the first {@code count} values, reordering them in place.
+     */
+    private static double median (double[] values, int count) {
+        // Insertion sort, since there are only ever a few modules
+        for (int i = 1; i < count; i ++) {
+            double value = values[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] > value) {
+                values[j + 1] = values[j];
+                j --;
+            }
+            values[j + 1] = value;
+        }
+
+        return count % 2 == 1 ? values[count / 2] : (values[count / 2 - 1] + values[count / 2]) / 2;
+    }
+
+    public double getSlipRatio (int moduleIndex) {
+        return slipRatios[moduleIndex];
+    }
+
+    @Override
+    public void initSendable (SendableBuilder builder) {
+        builder.addBooleanProperty("Enabled", () -> enabled, this::setEnabled);
+        builder.addDoubleProperty("Ground Speed (m per s)", () -> Math.hypot(groundVx, groundVy), null);
+        for (int i = 0; i < modules.length; i ++) {
+            final int index = i;
+            builder.addDoubleProperty(modules[i].getName() + " Slip Ratio", () -> slipRatios[index], null);
+            builder.addDoubleProperty(modules[i].getName() + " Torque Allowance", () -> gains[index], null);
+        }
+    }
+
+}
@@ -0,0 +1,273 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+
+import com.ctre.phoenix.sensors.CANCoder;
+import com.ctre.phoenix.sensors.CANCoderStatusFrame;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+
+import claw.CLAWRobot;
+import claw.rct.commands.CommandProcessor;
+import claw.rct.commands.CommandReader;
+import claw.rct.commands.CommandProcessor.BadCallException;
+import claw.rct.network.low.ConsoleManager;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * A central registry of every CAN device on the robot. Each subsystem declares which signals it actually reads
+ * from each of its devices, and the registry sets the devices' status frame periods to match: frames carrying a
+ * used signal are sent as fast as the fastest consumer needs, and all other frames are slowed down as far as they
+ * safely can be. The registry also estimates the CAN bus utilization this configuration should produce, compared
+ * to the utilization with every device at its default frame periods.
+ */
+public class CANDeviceRegistry {
+
+    private static CANDeviceRegistry instance;
+
+    public static CANDeviceRegistry getInstance () {
+        if (instance == null)
+            instance = new CANDeviceRegistry();
+        return instance;
+    }
+
+    /**
+     * An extended CAN frame with an 8 byte payload is about 128 bits before bit stuffing, so this is a reasonably
+     * conservative average including stuffing.
+     */
+    private static final double BITS_PER_FRAME = 135;
+    private static final double BUS_BITS_PER_SECOND = 1_000_000;
+
+    /**
+     * Every motor controller receives a setpoint or voltage from the robot loop about once per 20 ms cycle.
+     */
+    private static final double COMMAND_FRAMES_PER_SECOND = 50;
+
+    /**
+     * Period for SPARK MAX frames which carry no used signals. Status 0 also carries faults, and status 1 and 2 carry
+     * the signals shown on the dashboard, so these are kept slow rather than disabled entirely.
+     */
+    private static final int
+        SPARK_UNUSED_STATUS_0_PERIOD_MS = 100,
+        SPARK_UNUSED_STATUS_1_2_PERIOD_MS = 500,
+        SPARK_DISABLED_PERIOD_MS = 65535;
+
+    private static final int[] SPARK_DEFAULT_PERIODS_MS = { 10, 20, 20, 50, 20, 200, 200 };
+
+    private static final int
+        CANCODER_DEFAULT_SENSOR_DATA_PERIOD_MS = 10,
+        CANCODER_DEFAULT_VBAT_FAULTS_PERIOD_MS = 100,
+        CANCODER_MAX_PERIOD_MS = 255;
+
+    /**
+     * Signals reported by a SPARK MAX, and the periodic status frame each is carried in.
+     */
+    public enum SparkSignal {
+        APPLIED_OUTPUT              (PeriodicFrame.kStatus0),
+        FAULTS                      (PeriodicFrame.kStatus0),
+        VELOCITY                    (PeriodicFrame.kStatus1),
+        CURRENT                     (PeriodicFrame.kStatus1),
+        TEMPERATURE                 (PeriodicFrame.kStatus1),
+        BUS_VOLTAGE                 (PeriodicFrame.kStatus1),
+        POSITION                    (PeriodicFrame.kStatus2),
+        ANALOG_SENSOR               (PeriodicFrame.kStatus3),
+        ALTERNATE_ENCODER           (PeriodicFrame.kStatus4),
+        ABSOLUTE_ENCODER_POSITION   (PeriodicFrame.kStatus5),
+        ABSOLUTE_ENCODER_VELOCITY   (PeriodicFrame.kStatus6);
+
+        private final PeriodicFrame frame;
+        private SparkSignal (PeriodicFrame frame) {
+            this.frame = frame;
+        }
+
+        /**
+         * Declare that this signal is read at least once every {@code periodMs} milliseconds.
+         */
+        public SignalUse every (int periodMs) {
+            return new SignalUse(this, periodMs);
+        }
+    }
+
+    /**
+     * A {@link SparkSignal} and how often it is read.
+     */
+    public static class SignalUse {
+        private final SparkSignal signal;
+        private final int periodMs;
+
+        private SignalUse (SparkSignal signal, int periodMs) {
+            this.signal = signal;
+            this.periodMs = periodMs;
+        }
+    }
+
+    private final ArrayList<Device> devices = new ArrayList<>();
+    private final NetworkTable table = NetworkTableInstance.getDefault().getTable("CANBus");
+
+    private CANDeviceRegistry () {
+        CLAWRobot.getExtensibleCommandInterpreter().addCommandProcessor(new CommandProcessor(
+            "canbus",
+            "canbus",
+            "Use this command to view the status frame periods assigned to every registered CAN device and the " +
+            "estimated CAN bus utilization.",
+            this::runCANBusCommand
+        ));
+    }
+
+    /**
+     * Register a SPARK MAX and set its status frame periods according to the signals read from it.
+     * @param name      A name for the device, for reporting.
+     * @param motor     The {@link CANSparkMax}.
+     * @param uses      Every signal read from this device by robot code, and how often it is read. Signals only
+     *                  used by the SPARK MAX's onboard control loops do not need to be listed.
+     */
+    public synchronized void registerSparkMax (String name, CANSparkMax motor, SignalUse... uses) {
+        PeriodicFrame[] frames = PeriodicFrame.values();
+        int[] periodsMs = new int[frames.length];
+
+        for (int i = 0; i < frames.length; i ++) {
+            periodsMs[i] = getUnusedSparkPeriod(frames[i]);
+        }
+
+        for (SignalUse use : uses) {
+            int frameIndex = use.signal.frame.ordinal();
+            periodsMs[frameIndex] = Math.min(periodsMs[frameIndex], use.periodMs);
+        }
+
+        for (int i = 0; i < frames.length; i ++) {
+            motor.setPeriodicFramePeriod(frames[i], periodsMs[i]);
+        }
+
+        double framesPerSecond = COMMAND_FRAMES_PER_SECOND, defaultFramesPerSecond = COMMAND_FRAMES_PER_SECOND;
+        for (int i = 0; i < frames.length; i ++) {
+            framesPerSecond += getFramesPerSecond(periodsMs[i]);
+            defaultFramesPerSecond += getFramesPerSecond(SPARK_DEFAULT_PERIODS_MS[i]);
+        }
+
+        addDevice(new Device(name, "SPARK MAX", motor.getDeviceId(), periodsMs, framesPerSecond, defaultFramesPerSecond));
+    }
+
+    /**
+     * Register a CANCoder and set its status frame periods. Only the sensor data frame carries the position, so the
+     * battery voltage and faults frame is always slowed to its maximum period.
+     * @param name                  A name for the device, for reporting.
+     * @param encoder               The {@link CANCoder}.
+     * @param sensorDataPeriodMs    How often the absolute position is read.
+     */
+    public synchronized void registerCANCoder (String name, CANCoder encoder, int sensorDataPeriodMs) {
+        sensorDataPeriodMs = Math.min(sensorDataPeriodMs, CANCODER_MAX_PERIOD_MS);
+
+        encoder.setStatusFramePeriod(CANCoderStatusFrame.SensorData, sensorDataPeriodMs);
+        encoder.setStatusFramePeriod(CANCoderStatusFrame.VbatAndFaults, CANCODER_MAX_PERIOD_MS);
+
+        int[] periodsMs = { sensorDataPeriodMs, CANCODER_MAX_PERIOD_MS };
+        double framesPerSecond = getFramesPerSecond(sensorDataPeriodMs) + getFramesPerSecond(CANCODER_MAX_PERIOD_MS);
+        double defaultFramesPerSecond =
+            getFramesPerSecond(CANCODER_DEFAULT_SENSOR_DATA_PERIOD_MS) +
+            getFramesPerSecond(CANCODER_DEFAULT_VBAT_FAULTS_PERIOD_MS);
+
+        addDevice(new Device(name, "CANCoder", encoder.getDeviceID(), periodsMs, framesPerSecond, defaultFramesPerSecond));
+    }
+
+    private void addDevice (Device device) {
+        devices.add(device);
+        table.getEntry("expectedUtilization").setDouble(getExpectedUtilization());
+        table.getEntry("defaultUtilization").setDouble(getDefaultUtilization());
+    }
+
+    private static int getUnusedSparkPeriod (PeriodicFrame frame) {
+        switch (frame) {
+            case kStatus0:
+                return SPARK_UNUSED_STATUS_0_PERIOD_MS;
+            case kStatus1:
+            case kStatus2:
+                return SPARK_UNUSED_STATUS_1_2_PERIOD_MS;
+            default:
+                return SPARK_DISABLED_PERIOD_MS;
+        }
+    }
+
+    private static double getFramesPerSecond (int periodMs) {
+        // Frames at the maximum period are effectively disabled
+        if (periodMs >= SPARK_DISABLED_PERIOD_MS) return 0;
+        return 1000. / periodMs;
+    }
+
+    private static double getUtilization (double framesPerSecond) {
+        return framesPerSecond * BITS_PER_FRAME / BUS_BITS_PER_SECOND;
+    }
+
+    /**
+     * Get the estimated fraction of CAN bus bandwidth used by all registered devices with their configured status
+     * frame periods.
+     */
+    public synchronized double getExpectedUtilization () {
+        double framesPerSecond = 0;
+        for (Device device : devices) {
+            framesPerSecond += device.framesPerSecond;
+        }
+        return getUtilization(framesPerSecond);
+    }
+
+    /**
+     * Get the estimated fraction of CAN bus bandwidth which all registered devices would use with their default
+     * status frame periods.
+     */
+    public synchronized double getDefaultUtilization () {
+        double framesPerSecond = 0;
+        for (Device device : devices) {
+            framesPerSecond += device.defaultFramesPerSecond;
+        }
+        return getUtilization(framesPerSecond);
+    }
+
+    private void runCANBusCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNone();
+
+        console.println(String.format("%-24s %-10s %4s %10s %10s  %s", "Device", "Type", "ID", "frames/s", "default", "periods (ms)"));
+
+        synchronized (this) {
+            for (Device device : devices) {
+                StringBuilder periods = new StringBuilder();
+                for (int periodMs : device.periodsMs) {
+                    periods.append(periodMs >= SPARK_DISABLED_PERIOD_MS ? "off" : periodMs).append(' ');
+                }
+
+                console.println(String.format(
+                    "%-24s %-10s %4d %10.1f %10.1f  %s",
+                    device.name,
+                    device.type,
+                    device.canId,
+                    device.framesPerSecond,
+                    device.defaultFramesPerSecond,
+                    periods.toString()
+                ));
+            }
+        }
+
+        console.println("");
+        console.println(String.format(
+            "Estimated bus utilization: %.1f%% (%.1f%% with default frame periods)",
+            getExpectedUtilization() * 100,
+            getDefaultUtilization() * 100
+        ));
+    }
+
+    private static class Device {
+        private final String name, type;
+        private final int canId;
+        private final int[] periodsMs;
+        private final double framesPerSecond, defaultFramesPerSecond;
+
+        private Device (String name, String type, int canId, int[] periodsMs, double framesPerSecond, double defaultFramesPerSecond) {
+            this.name = name;
+            this.type = type;
+            this.canId = canId;
+            this.periodsMs = periodsMs;
+            this.framesPerSecond = framesPerSecond;
+            this.defaultFramesPerSecond = defaultFramesPerSecond;
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+package frc.robot.util;
+
+/**
+ * Fits the constants of a simple motor feedforward, {@code V = kS * sgn(v) + kV * v + kA * a}, to logged voltage
+ * and position samples by ordinary least squares. Samples are accumulated online into the normal equations, so no
+ * sample log needs to be kept and the fit can be computed at any time.
+ * <br></br>
+ * Velocity and acceleration are estimated from positions by central differences over several samples, which keeps
+ * the estimates usable even when the position signal updates no faster than the sample rate.
+ */
+public class FeedforwardFitter {
+
+    /**
+     * Number of samples on either side of a point used for each central difference.
+     */
+    private static final int DIFFERENCE_STRIDE = 2;
+    private static final int HISTORY_LENGTH = 4 * DIFFERENCE_STRIDE + 1;
+
+    private final double minVelocity;
+
+    private final double[] timestamps = new double[HISTORY_LENGTH];
+    private final double[] positions = new double[HISTORY_LENGTH];
+    private final double[] voltages = new double[HISTORY_LENGTH];
+    private int historyCount = 0;
+
+    // Normal equations (X^T X) b = X^T y for regressors x = [sgn(v), v, a] and y = V
+    private final double[][] xtx = new double[3][3];
+    private final double[] xty = new double[3];
+    private final double[] x = new double[3];
+    private double yty = 0, ySum = 0;
+    private int pointCount = 0;
+
+    private double kS = 0, kV = 0, kA = 0, rSquared = 0;
+
+    /**
+     * Create a new {@link FeedforwardFitter}.
+     * @param minVelocity   Points with a speed below this are ignored, because the mechanism may be held by
+     *                      static friction rather than following the model.
+     */
+    public FeedforwardFitter (double minVelocity) {
+        this.minVelocity = minVelocity;
+    }
+
+    /**
+     * Add a sample of the mechanism's position and the voltage applied to it.
+     */
+    public synchronized void addSample (double timestamp, double position, double voltage) {
+        // Shift the history back by one sample
+        if (historyCount == HISTORY_LENGTH) {
+            System.arraycopy(timestamps, 1, timestamps, 0, HISTORY_LENGTH - 1);
+            System.arraycopy(positions, 1, positions, 0, HISTORY_LENGTH - 1);
+            System.arraycopy(voltages, 1, voltages, 0, HISTORY_LENGTH - 1);
+            historyCount --;
+        }
+
+        timestamps[historyCount] = timestamp;
+        positions[historyCount] = position;
+        voltages[historyCount] = voltage;
+        historyCount ++;
+
+        if (historyCount < HISTORY_LENGTH) return;
+
+        // The point being fit is in the middle of the history, with velocities estimated on either side of it
+        int center = 2 * DIFFERENCE_STRIDE;
+        double velocity = getVelocity(center);
+        double acceleration =
+            (getVelocity(center + DIFFERENCE_STRIDE) - getVelocity(center - DIFFERENCE_STRIDE)) /
+            (timestamps[center + DIFFERENCE_STRIDE] - timestamps[center - DIFFERENCE_STRIDE]);
+
+        if (Math.abs(velocity) >= minVelocity) {
+            addPoint(velocity, acceleration, voltages[center]);
+        }
+    }
+
+    private double getVelocity (int index) {
+        return
+            (positions[index + DIFFERENCE_STRIDE] - positions[index - DIFFERENCE_STRIDE]) /
+            (timestamps[index + DIFFERENCE_STRIDE] - timestamps[index - DIFFERENCE_STRIDE]);
+    }
+
+    private void addPoint (double velocity, double acceleration, double voltage) {
+        x[0] = Math.signum(velocity);
+        x[1] = velocity;
+        x[2] = acceleration;
+
+        for (int i = 0; i < 3; i ++) {
+            for (int j = 0; j < 3; j ++) {
+                xtx[i][j] += x[i] * x[j];
+            }
+            xty[i] += x[i] * voltage;
+        }
+
+        yty += voltage * voltage;
+        ySum += voltage;
+        pointCount ++;
+    }
+
+    /**
+     * Discard the sample history used for differencing, without discarding any accumulated points. This must be
+     * called between separate test runs so that differences are not taken across them.
+     */
+    public synchronized void resetHistory () {
+        historyCount = 0;
+    }
+
+    /**
+     * Discard all samples and accumulated points.
+     */
+    public synchronized void clear () {
+        resetHistory();
+        for (int i = 0; i < 3; i ++) {
+            for (int j = 0; j < 3; j ++) {
+                xtx[i][j] = 0;
+            }
+            xty[i] = 0;
+        }
+
+        yty = 0;
+        ySum = 0;
+        pointCount = 0;
+    }
+
+    /**
+     * Solve for the feedforward constants using all accumulated points.
+     * @return Whether the fit succeeded. It fails if there are too few points, or if the points do not excite
+     * every term (e.g. the mechanism never accelerated).
+     */
+    public synchronized boolean fit () {
+        if (pointCount < 3) return false;
+
+        // Solve the 3x3 normal equations by Gaussian elimination with partial pivoting
+        double[][] a = new double[3][4];
+        for (int i = 0; i < 3; i ++) {
+            System.arraycopy(xtx[i], 0, a[i], 0, 3);
+            a[i][3] = xty[i];
+        }
+
+        for (int col = 0; col < 3; col ++) {
+            int pivot = col;
+            for (int row = col + 1; row < 3; row ++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) pivot = row;
+            }
+
+            if (Math.abs(a[pivot][col]) < 1e-12) return false;
+
+            double[] temp = a[col];
+            a[col] = a[pivot];
+            a[pivot] = temp;
+
+            for (int row = col + 1; row < 3; row ++) {
+                double factor = a[row][col] / a[col][col];
+                for (int k = col; k < 4; k ++) {
+                    a[row][k] -= factor * a[col][k];
+                }
+            }
+        }
+
+        double[] b = new double[3];
+        for (int row = 2; row >= 0; row --) {
+            double sum = a[row][3];
+            for (int k = row + 1; k < 3; k ++) {
+                sum -= a[row][k] * b[k];
+            }
+            b[row] = sum / a[row][row];
+        }
+
+        kS = b[0];
+        kV = b[1];
+        kA = b[2];
+
+        // R^2 = 1 - SS_res / SS_tot, where SS_res = y^T y - b^T X^T y for the least squares solution
+        double residualSumSquares = yty - (b[0] * xty[0] + b[1] * xty[1] + b[2] * xty[2]);
+        double totalSumSquares = yty - ySum * ySum / pointCount;
+        rSquared = totalSumSquares > 0 ? 1 - residualSumSquares / totalSumSquares : 0;
+
+        return true;
+    }
+
+    public synchronized double getKS () {
+        return kS;
+    }
+
+    public synchronized double getKV () {
+        return kV;
+    }
+
+    public synchronized double getKA () {
+        return kA;
+    }
+
+    public synchronized double getRSquared () {
+        return rSquared;
+    }
+
+    public synchronized int getPointCount () {
+        return pointCount;
+    }
+
+}
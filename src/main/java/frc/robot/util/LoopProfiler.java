@@ -0,0 +1,249 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+
+import claw.CLAWRobot;
+import claw.rct.commands.CommandProcessor;
+import claw.rct.commands.CommandReader;
+import claw.rct.commands.CommandProcessor.BadCallException;
+import claw.rct.network.low.ConsoleManager;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.TimedRobot;
+
+/**
+ * Times named stages of the main robot loop (subsystem periodics, command executes, vision updates, etc.) and
+ * attributes loop overruns to the stage which took the most time during the overrunning cycle. Timing statistics
+ * are kept in {@link RollingHistogram}s so that recording a stage never allocates.
+ */
+public class LoopProfiler {
+
+    private static LoopProfiler instance;
+
+    public static LoopProfiler getInstance () {
+        if (instance == null)
+            instance = new LoopProfiler();
+        return instance;
+    }
+
+    private static final long LOOP_PERIOD_NANOS = (long)(TimedRobot.kDefaultPeriod * 1e9);
+
+    // 250 samples is five seconds of 20 ms cycles, and 50 us buckets cover up to 20 ms
+    private static final int WINDOW_LENGTH = 250;
+    private static final long BUCKET_WIDTH_NANOS = 50_000;
+    private static final int BUCKET_COUNT = 401;
+
+    private static final int PUBLISH_PERIOD_CYCLES = 25;
+
+    private final ArrayList<Stage> stages = new ArrayList<>();
+    private final Stage cycleStage;
+
+    private final NetworkTable table = NetworkTableInstance.getDefault().getTable("LoopProfiler");
+    private final NetworkTableEntry
+        ENTRY_OVERRUNS = table.getEntry("overruns"),
+        ENTRY_LAST_OVERRUN_STAGE = table.getEntry("lastOverrunStage"),
+        ENTRY_LAST_OVERRUN_MS = table.getEntry("lastOverrunMs");
+
+    private Stage activeStage = null;
+    private long cycleStartNanos = 0;
+    private int cyclesSincePublish = 0;
+
+    private int overrunCount = 0;
+    private String lastOverrunStageName = "none";
+    private double lastOverrunMillis = 0;
+
+    private LoopProfiler () {
+        // The cycle stage measures the whole cycle, and is not listed with the other stages
+        cycleStage = new Stage("cycle");
+
+        CLAWRobot.getExtensibleCommandInterpreter().addCommandProcessor(new CommandProcessor(
+            "looptimes",
+            "looptimes",
+            "Use this command to view loop timing statistics for each profiled stage of the robot loop, " +
+            "and which stage was responsible for recent loop overruns.",
+            this::runLoopTimesCommand
+        ));
+    }
+
+    /**
+     * Get the {@link Stage} with the given name, creating it if it does not yet exist. Stages should be
+     * retrieved once (e.g. in a constructor) and kept, not retrieved every cycle.
+     */
+    public synchronized Stage getStage (String name) {
+        for (Stage stage : stages) {
+            if (stage.name.equals(name)) return stage;
+        }
+
+        Stage stage = new Stage(name);
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Mark the start of a robot loop cycle. This should be called at the very beginning of robotPeriodic.
+     */
+    public void startCycle () {
+        for (int i = 0; i < stages.size(); i ++) {
+            stages.get(i).resetCycle();
+        }
+
+        activeStage = null;
+        cycleStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Mark the end of a robot loop cycle, check for an overrun, and periodically publish statistics.
+     * This should be called at the very end of robotPeriodic.
+     */
+    public void endCycle () {
+        long cycleNanos = System.nanoTime() - cycleStartNanos;
+        cycleStage.histogram.record(cycleNanos);
+
+        if (cycleNanos > LOOP_PERIOD_NANOS) {
+            attributeOverrun(cycleNanos);
+        }
+
+        cyclesSincePublish ++;
+        if (cyclesSincePublish >= PUBLISH_PERIOD_CYCLES) {
+            cyclesSincePublish = 0;
+            publish();
+        }
+    }
+
+    private void attributeOverrun (long cycleNanos) {
+        // Find the stage with the greatest self time (excluding nested stages) this cycle
+        Stage worstStage = null;
+        long worstNanos = 0;
+        long topLevelNanos = 0;
+
+        for (int i = 0; i < stages.size(); i ++) {
+            Stage stage = stages.get(i);
+            long selfNanos = stage.cycleNanos - stage.cycleChildNanos;
+            if (selfNanos > worstNanos) {
+                worstStage = stage;
+                worstNanos = selfNanos;
+            }
+
+            if (stage.cycleIsTopLevel) topLevelNanos += stage.cycleNanos;
+        }
+
+        overrunCount ++;
+        cycleStage.overrunCount ++;
+        lastOverrunMillis = cycleNanos / 1e6;
+
+        // Time which isn't covered by any stage may be the culprit instead (e.g. garbage collection)
+        if (worstStage == null || cycleNanos - topLevelNanos > worstNanos) {
+            lastOverrunStageName = "untracked";
+        } else {
+            worstStage.overrunCount ++;
+            lastOverrunStageName = worstStage.name;
+        }
+    }
+
+    private void publish () {
+        cycleStage.publish();
+        for (int i = 0; i < stages.size(); i ++) {
+            stages.get(i).publish();
+        }
+
+        ENTRY_OVERRUNS.setDouble(overrunCount);
+        ENTRY_LAST_OVERRUN_STAGE.setString(lastOverrunStageName);
+        ENTRY_LAST_OVERRUN_MS.setDouble(lastOverrunMillis);
+    }
+
+    private void runLoopTimesCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNone();
+
+        console.println(String.format("%-28s %9s %9s %9s %9s", "Stage", "p50 (ms)", "p99 (ms)", "max (ms)", "overruns"));
+        printStage(console, cycleStage);
+
+        synchronized (this) {
+            for (Stage stage : stages) {
+                printStage(console, stage);
+            }
+        }
+
+        console.println("");
+        console.println("Last overrun: " + lastOverrunStageName + " (" + String.format("%.2f", lastOverrunMillis) + " ms cycle)");
+    }
+
+    private static void printStage (ConsoleManager console, Stage stage) {
+        console.println(String.format(
+            "%-28s %9.3f %9.3f %9.3f %9d",
+            stage.name,
+            stage.histogram.getPercentileNanos(0.5) / 1e6,
+            stage.histogram.getPercentileNanos(0.99) / 1e6,
+            stage.histogram.getMaxNanos() / 1e6,
+            stage.overrunCount
+        ));
+    }
+
+    /**
+     * A named, timed section of the robot loop. Stages may be nested (e.g. a subsystem periodic inside of
+     * the command scheduler), in which case overruns are attributed using each stage's self time.
+     */
+    public class Stage {
+
+        private final String name;
+        private final RollingHistogram histogram = new RollingHistogram(WINDOW_LENGTH, BUCKET_WIDTH_NANOS, BUCKET_COUNT);
+        private final NetworkTableEntry entryP50, entryP99, entryMax, entryOverruns;
+
+        private Stage parent = null;
+        private long startNanos = 0;
+        private long cycleNanos = 0, cycleChildNanos = 0;
+        private boolean cycleIsTopLevel = false;
+        private int overrunCount = 0;
+
+        private Stage (String name) {
+            this.name = name;
+            NetworkTable stageTable = table.getSubTable(name);
+            entryP50 = stageTable.getEntry("p50Ms");
+            entryP99 = stageTable.getEntry("p99Ms");
+            entryMax = stageTable.getEntry("maxMs");
+            entryOverruns = stageTable.getEntry("overruns");
+        }
+
+        /**
+         * Start timing this stage. Every call to {@code start} must be followed by a call to {@link #stop()}.
+         */
+        public void start () {
+            parent = activeStage;
+            activeStage = this;
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Stop timing this stage and record the elapsed time.
+         */
+        public void stop () {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            histogram.record(elapsedNanos);
+
+            cycleNanos += elapsedNanos;
+            if (parent != null) {
+                parent.cycleChildNanos += elapsedNanos;
+            } else {
+                cycleIsTopLevel = true;
+            }
+
+            activeStage = parent;
+            parent = null;
+        }
+
+        private void resetCycle () {
+            cycleNanos = 0;
+            cycleChildNanos = 0;
+            cycleIsTopLevel = false;
+        }
+
+        private void publish () {
+            entryP50.setDouble(histogram.getPercentileNanos(0.5) / 1e6);
+            entryP99.setDouble(histogram.getPercentileNanos(0.99) / 1e6);
+            entryMax.setDouble(histogram.getMaxNanos() / 1e6);
+            entryOverruns.setDouble(overrunCount);
+        }
+
+    }
+
+}
@@ -0,0 +1,304 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+
+import com.revrobotics.CANSparkMax;
+
+import claw.CLAWRobot;
+import claw.Setting;
+import claw.rct.commands.CommandProcessor;
+import claw.rct.commands.CommandReader;
+import claw.rct.commands.CommandProcessor.BadCallException;
+import claw.rct.network.low.ConsoleManager;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Tracks the temperature of every registered motor and derates motors before they overheat. Each motor's reported
+ * temperature and output current are polled on a dedicated {@link Notifier} thread and run through a first-order
+ * thermal model: the winding temperature approaches a steady state which rises with the square of the current,
+ * with a fixed time constant. The model fills in between the motor controller's coarse, slow temperature readings,
+ * and predicts how long the motor can keep drawing its recent average current before reaching the cutoff.
+ * <br></br>
+ * Each motor's derating factor is a multiplier for its output, which subsystems apply to their voltages. It falls
+ * smoothly from 1 to {@code THERMAL.MIN_DERATING} as the motor's predicted temperature approaches the cutoff, and
+ * drops to zero once the measured temperature reaches it. Subsystems which can keep working without a cut-off motor
+ * should check {@link Motor#isCutOff()} and stop using it instead.
+ */
+public class MotorThermalMonitor {
+
+    private static MotorThermalMonitor instance;
+
+    public static MotorThermalMonitor getInstance () {
+        if (instance == null)
+            instance = new MotorThermalMonitor();
+        return instance;
+    }
+
+    /**
+     * Temperature and current are polled at this period. Motors registered with the {@link CANDeviceRegistry} must
+     * report {@link CANDeviceRegistry.SparkSignal#TEMPERATURE} and {@link CANDeviceRegistry.SparkSignal#CURRENT} at
+     * least this often.
+     */
+    public static final int POLL_PERIOD_MS = 100;
+
+    /**
+     * Thermal model constants for a NEO, from published locked-rotor and continuous-current tests: the winding
+     * temperature rises about 0.05 degrees C per amp squared at steady state, with a time constant of a few minutes.
+     */
+    public static final double
+        NEO_TIME_CONSTANT_SECS = 150,
+        NEO_CELSIUS_PER_AMP_SQ = 0.05;
+
+    /**
+     * Derating begins when the predicted temperature reaches {@code DERATE_START_CELSIUS}, and motors are cut off
+     * when the measured temperature reaches {@code CUTOFF_CELSIUS}. Cut-off motors resume once they have cooled by
+     * {@code CUTOFF_HYSTERESIS_CELSIUS}.
+     */
+    private static final Setting<Double>
+        DERATE_START_CELSIUS = new Setting<>("THERMAL.DERATE_START_CELSIUS", () -> 70.),
+        CUTOFF_CELSIUS = new Setting<>("THERMAL.CUTOFF_CELSIUS", () -> 100.),
+        MIN_DERATING = new Setting<>("THERMAL.MIN_DERATING", () -> 0.3),
+        PREDICTION_HORIZON_SECS = new Setting<>("THERMAL.PREDICTION_HORIZON_SECS", () -> 10.);
+
+    private static final double CUTOFF_HYSTERESIS_CELSIUS = 5;
+
+    /**
+     * The model's temperature estimate is pulled toward the readings with about this time constant. Readings are
+     * only whole degrees, and lag the windings since the sensor is outside them, so they only correct the model's
+     * slow drift (from the ambient temperature or model constants being off). A faster correction would make the
+     * model a lagged copy of the readings, and lose the prediction from current which it exists for.
+     */
+    private static final double MEASUREMENT_CORRECTION_SECS = 20;
+
+    /**
+     * The recent average squared current used for predictions is smoothed over about this long.
+     */
+    private static final double CURRENT_AVERAGE_SECS = 10;
+
+    /**
+     * Assumed until the first reading, and used as the temperature the motors cool toward.
+     */
+    private static final double AMBIENT_CELSIUS = 25;
+
+    private static final int PUBLISH_PERIOD_POLLS = 5;
+
+    private final ArrayList<Motor> motors = new ArrayList<>();
+    private final NetworkTable table = NetworkTableInstance.getDefault().getTable("MotorThermal");
+    private final Notifier notifier = new Notifier(this::poll);
+
+    private double lastPollTime = Timer.getFPGATimestamp();
+    private int pollsSincePublish = 0;
+
+    private MotorThermalMonitor () {
+        CLAWRobot.getExtensibleCommandInterpreter().addCommandProcessor(new CommandProcessor(
+            "thermal",
+            "thermal",
+            "Use this command to view every registered motor's measured and modeled temperature, its thermal " +
+            "headroom to the cutoff, the predicted time until it reaches the cutoff at its recent average current, " +
+            "and the derating currently applied to its output.",
+            this::runThermalCommand
+        ));
+
+        notifier.startPeriodic(POLL_PERIOD_MS / 1000.);
+    }
+
+    /**
+     * Register a NEO to be monitored.
+     * @param name  A name for the motor, for reporting.
+     * @param motor The {@link CANSparkMax} driving it.
+     * @return      The {@link Motor}, whose derating should be applied to every output.
+     */
+    public Motor register (String name, CANSparkMax motor) {
+        return register(name, motor, NEO_TIME_CONSTANT_SECS, NEO_CELSIUS_PER_AMP_SQ);
+    }
+
+    /**
+     * Register a motor to be monitored.
+     * @param name                  A name for the motor, for reporting.
+     * @param motor                 The {@link CANSparkMax} driving it.
+     * @param timeConstantSecs      The time constant of the motor's first-order thermal model.
+     * @param celsiusPerAmpSq       The steady-state temperature rise over ambient per amp squared of current.
+     * @return                      The {@link Motor}, whose derating should be applied to every output.
+     */
+    public synchronized Motor register (String name, CANSparkMax motor, double timeConstantSecs, double celsiusPerAmpSq) {
+        Motor thermalMotor = new Motor(name, motor, timeConstantSecs, celsiusPerAmpSq, table.getSubTable(name));
+        motors.add(thermalMotor);
+        return thermalMotor;
+    }
+
+    private synchronized void poll () {
+        double now = Timer.getFPGATimestamp();
+        double dtSecs = now - lastPollTime;
+        lastPollTime = now;
+
+        double deratingStart = DERATE_START_CELSIUS.get();
+        double cutoff = CUTOFF_CELSIUS.get();
+        double minDerating = MIN_DERATING.get();
+        double horizonSecs = PREDICTION_HORIZON_SECS.get();
+
+        for (Motor motor : motors) {
+            motor.update(dtSecs, deratingStart, cutoff, minDerating, horizonSecs);
+        }
+
+        if (++ pollsSincePublish >= PUBLISH_PERIOD_POLLS) {
+            pollsSincePublish = 0;
+            for (Motor motor : motors) {
+                motor.publish(cutoff);
+            }
+        }
+    }
+
+    private void runThermalCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNone();
+
+        double cutoff = CUTOFF_CELSIUS.get();
+        console.println(String.format(
+            "%-24s %9s %9s %9s %11s %15s %9s",
+            "Motor", "temp (C)", "model (C)", "amps", "headroom (C)", "to cutoff (s)", "derating"
+        ));
+
+        synchronized (this) {
+            for (Motor motor : motors) {
+                String line = String.format(
+                    "%-24s %9.0f %9.1f %9.1f %11.1f %15s %9.2f",
+                    motor.name,
+                    motor.measuredCelsius,
+                    motor.modelCelsius,
+                    motor.currentAmps,
+                    cutoff - motor.modelCelsius,
+                    Double.isInfinite(motor.secsToCutoff) ? "-" : String.format("%.0f", motor.secsToCutoff),
+                    motor.derating
+                );
+
+                if (motor.derating < 1) {
+                    console.printlnErr(line);
+                } else {
+                    console.println(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * A single monitored motor, and the derating to apply to its output.
+     */
+    public static class Motor {
+        private final String name;
+        private final CANSparkMax motor;
+        private final double timeConstantSecs, celsiusPerAmpSq;
+
+        private final NetworkTableEntry
+            entryTemperature,
+            entryHeadroom,
+            entrySecsToCutoff,
+            entryDerating;
+
+        private boolean hasReading = false;
+        private volatile boolean cutOff = false;
+        private double measuredCelsius = AMBIENT_CELSIUS, modelCelsius = AMBIENT_CELSIUS;
+        private double currentAmps = 0, meanAmpsSq = 0;
+        private double secsToCutoff = Double.POSITIVE_INFINITY;
+        private volatile double derating = 1;
+
+        private Motor (String name, CANSparkMax motor, double timeConstantSecs, double celsiusPerAmpSq, NetworkTable table) {
+            this.name = name;
+            this.motor = motor;
+            this.timeConstantSecs = timeConstantSecs;
+            this.celsiusPerAmpSq = celsiusPerAmpSq;
+
+            entryTemperature = table.getEntry("temperature");
+            entryHeadroom = table.getEntry("headroom");
+            entrySecsToCutoff = table.getEntry("secsToCutoff");
+            entryDerating = table.getEntry("derating");
+        }
+
+        /**
+         * Get the factor to multiply this motor's output by, between zero (cut off) and one (no derating).
+         */
+        public double getDerating () {
+            return derating;
+        }
+
+        /**
+         * Whether this motor has reached the cutoff temperature, and hasn't yet cooled enough to resume.
+         */
+        public boolean isCutOff () {
+            return cutOff;
+        }
+
+        /**
+         * Get the steady-state temperature the motor approaches while drawing the given squared current.
+         */
+        private double getSteadyStateCelsius (double ampsSq) {
+            return AMBIENT_CELSIUS + celsiusPerAmpSq * ampsSq;
+        }
+
+        /**
+         * Get the modeled temperature after drawing the given squared current for the given time.
+         */
+        private double predictCelsius (double ampsSq, double secs) {
+            double steadyState = getSteadyStateCelsius(ampsSq);
+            return steadyState + (modelCelsius - steadyState) * Math.exp(-secs / timeConstantSecs);
+        }
+
+        private void update (double dtSecs, double deratingStart, double cutoff, double minDerating, double horizonSecs) {
+            measuredCelsius = motor.getMotorTemperature();
+            currentAmps = motor.getOutputCurrent();
+            double ampsSq = currentAmps * currentAmps;
+
+            if (!hasReading) {
+                modelCelsius = measuredCelsius;
+                hasReading = true;
+            } else {
+                // Integrate the model, then pull it toward the coarse measurement
+                modelCelsius = predictCelsius(ampsSq, dtSecs);
+                modelCelsius += Math.min(dtSecs / MEASUREMENT_CORRECTION_SECS, 1) * (measuredCelsius - modelCelsius);
+            }
+
+            meanAmpsSq += Math.min(dtSecs / CURRENT_AVERAGE_SECS, 1) * (ampsSq - meanAmpsSq);
+
+            // Time until the cutoff if the recent average current continues
+            double steadyState = getSteadyStateCelsius(meanAmpsSq);
+            if (modelCelsius >= cutoff) {
+                secsToCutoff = 0;
+            } else if (steadyState <= cutoff) {
+                secsToCutoff = Double.POSITIVE_INFINITY;
+            } else {
+                secsToCutoff = timeConstantSecs * Math.log((steadyState - modelCelsius) / (steadyState - cutoff));
+            }
+
+            // Hard cutoff on the measured temperature, with hysteresis
+            if (measuredCelsius >= cutoff) {
+                cutOff = true;
+            } else if (measuredCelsius < cutoff - CUTOFF_HYSTERESIS_CELSIUS) {
+                cutOff = false;
+            }
+
+            if (cutOff) {
+                derating = 0;
+                return;
+            }
+
+            // Derate on the temperature predicted a short way ahead, so derating begins before the motor gets hot
+            double predicted = Math.max(modelCelsius, predictCelsius(meanAmpsSq, horizonSecs));
+            double t = (predicted - deratingStart) / (cutoff - deratingStart);
+            t = Math.max(0, Math.min(1, t));
+
+            // Smoothstep, so the output doesn't change abruptly as derating begins or reaches its minimum
+            double smooth = t * t * (3 - 2 * t);
+            derating = 1 - (1 - minDerating) * smooth;
+        }
+
+        private void publish (double cutoff) {
+            entryTemperature.setDouble(modelCelsius);
+            entryHeadroom.setDouble(cutoff - modelCelsius);
+            entrySecsToCutoff.setDouble(secsToCutoff);
+            entryDerating.setDouble(derating);
+        }
+    }
+
+}
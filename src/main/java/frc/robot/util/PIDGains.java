@@ -0,0 +1,66 @@
+package frc.robot.util;
+
+import claw.Setting;
+import edu.wpi.first.math.controller.PIDController;
+
+/**
+ * A set of PID gains saved as {@link Setting}s, so that gains found by tuning on the robot persist across restarts.
+ * The gains are loaded once and cached, so reading them every cycle is cheap, and saving new gains takes effect
+ * immediately for every controller which reads them.
+ */
+public class PIDGains {
+
+    private final Setting<Double> kPSetting, kISetting, kDSetting;
+    private volatile double kP, kI, kD;
+
+    /**
+     * Create a new {@link PIDGains}.
+     * @param name      The settings name. The gains are saved as {@code <name>.KP}, {@code <name>.KI} and
+     *                  {@code <name>.KD}.
+     * @param defaultP  The proportional gain to use until gains are saved.
+     * @param defaultI  The integral gain to use until gains are saved.
+     * @param defaultD  The derivative gain to use until gains are saved.
+     */
+    public PIDGains (String name, double defaultP, double defaultI, double defaultD) {
+        kPSetting = new Setting<>(name + ".KP", () -> defaultP);
+        kISetting = new Setting<>(name + ".KI", () -> defaultI);
+        kDSetting = new Setting<>(name + ".KD", () -> defaultD);
+
+        kP = kPSetting.get();
+        kI = kISetting.get();
+        kD = kDSetting.get();
+    }
+
+    public double getP () {
+        return kP;
+    }
+
+    public double getI () {
+        return kI;
+    }
+
+    public double getD () {
+        return kD;
+    }
+
+    /**
+     * Save new gains, which take effect immediately.
+     */
+    public void save (double kP, double kI, double kD) {
+        kPSetting.set(kP);
+        kISetting.set(kI);
+        kDSetting.set(kD);
+
+        this.kP = kP;
+        this.kI = kI;
+        this.kD = kD;
+    }
+
+    /**
+     * Set the gains of the given {@link PIDController} to these gains.
+     */
+    public void applyTo (PIDController controller) {
+        controller.setPID(kP, kI, kD);
+    }
+
+}
@@ -0,0 +1,516 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+
+import claw.CLAWRobot;
+import claw.rct.commands.CommandProcessor;
+import claw.rct.commands.CommandReader;
+import claw.rct.commands.CommandProcessor.BadCallException;
+import claw.rct.network.low.ConsoleManager;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
+import frc.robot.LiveCommandTester;
+
+/**
+ * An RCT command which tunes PID gains for a registered mechanism with a relay feedback (Astrom-Hagglund) test.
+ * The mechanism is driven with a fixed positive or negative output depending on which side of its setpoint it is
+ * on, which makes it oscillate at its ultimate period. The ultimate gain is found from the relay amplitude and the
+ * amplitude of the oscillation, and PID gains are computed from both with a selectable tuning rule.
+ * <br></br>
+ * The new gains are then checked with a closed-loop step response test, and saved to the mechanism's
+ * {@link PIDGains} if the user accepts them.
+ */
+public class RelayAutoTuner {
+
+    private static RelayAutoTuner instance;
+
+    public static RelayAutoTuner getInstance () {
+        if (instance == null)
+            instance = new RelayAutoTuner();
+        return instance;
+    }
+
+    /**
+     * Oscillation cycles which are discarded while the oscillation settles into its limit cycle, and cycles which
+     * are then averaged to measure it.
+     */
+    private static final int WARMUP_CYCLES = 2, MEASURED_CYCLES = 4;
+
+    /**
+     * The relay test is abandoned if it doesn't complete in this long.
+     */
+    private static final double MAX_RELAY_SECS = 20;
+
+    /**
+     * The step test holds the setpoint for this long before stepping, and runs for this long after the step.
+     */
+    private static final double STEP_HOLD_SECS = 0.5, STEP_DURATION_SECS = 3;
+
+    /**
+     * A step response passes if it settles with at most this much overshoot.
+     */
+    private static final double MAX_STEP_OVERSHOOT_PERCENT = 25;
+
+    /**
+     * A rule for computing PID gains from the ultimate gain and period. Each rule gives the proportional gain as
+     * a fraction of the ultimate gain, and the integral and derivative times as fractions of the ultimate period.
+     */
+    public enum TuningRule {
+        ZIEGLER_NICHOLS     (0.6,   0.5,    0.125),
+        PESSEN_INTEGRAL     (0.7,   0.4,    0.15),
+        SOME_OVERSHOOT      (0.33,  0.5,    0.33),
+        NO_OVERSHOOT        (0.2,   0.5,    0.33),
+        TYREUS_LUYBEN       (0.45,  2.2,    0.159);
+
+        private final double kPFraction, integralTimeFraction, derivativeTimeFraction;
+
+        private TuningRule (double kPFraction, double integralTimeFraction, double derivativeTimeFraction) {
+            this.kPFraction = kPFraction;
+            this.integralTimeFraction = integralTimeFraction;
+            this.derivativeTimeFraction = derivativeTimeFraction;
+        }
+
+        /**
+         * Get the {@code kP}, {@code kI} and {@code kD} gains for the given ultimate gain and period.
+         */
+        public double[] getGains (double ultimateGain, double ultimatePeriodSecs, boolean useIntegral) {
+            double kP = kPFraction * ultimateGain;
+            double kI = useIntegral ? kP / (integralTimeFraction * ultimatePeriodSecs) : 0;
+            double kD = kP * derivativeTimeFraction * ultimatePeriodSecs;
+            return new double[] { kP, kI, kD };
+        }
+    }
+
+    /**
+     * A mechanism which can be tuned. The controller output is in whatever units {@code output} accepts, and the
+     * computed gains are in those units per unit of measurement.
+     */
+    public static class Target {
+        private final String name;
+        private final Subsystem requirement;
+        private final PIDGains gains;
+        private final DoubleSupplier measurement;
+        private final DoubleConsumer output;
+        private final Runnable stop;
+        private final boolean angular, useIntegral;
+        private final double relayAmplitude, hysteresis, maxOutput;
+        private final double stepSize, settleBand, minMeasurement, maxMeasurement;
+        private final double samplePeriodSecs;
+
+        /**
+         * Create a new {@link Target}.
+         * @param name              The name used to choose this target from the console.
+         * @param requirement       The subsystem the tests require.
+         * @param gains             The gains to tune.
+         * @param measurement       Supplies the mechanism's measured position.
+         * @param output            Applies an output to the mechanism.
+         * @param stop              Stops the mechanism.
+         * @param angular           Whether the measurement is an angle in degrees, whose errors should wrap.
+         * @param useIntegral       Whether the controller using the gains has an integral term.
+         * @param relayAmplitude    The relay output applied on either side of the setpoint.
+         * @param hysteresis        The error beyond which the relay switches, which keeps sensor noise from
+         *                          switching it rapidly.
+         * @param maxOutput         The largest output the step test may apply.
+         * @param stepSize          The size of the step test's step.
+         * @param settleBand        The step response has settled once it stays within this distance of its target.
+         * @param minMeasurement    The mechanism is stopped if it goes below this position.
+         * @param maxMeasurement    The mechanism is stopped if it goes above this position.
+         * @param samplePeriodSecs  The period at which the mechanism is sampled and its output is updated. This
+         *                          should be the period the tuned controller is deployed at, since the step test
+         *                          runs the controller at this period. Periods shorter than the robot loop run on a
+         *                          separate {@link Notifier} thread, so the measurement and output must then be safe
+         *                          to use from another thread.
+         */
+        public Target (
+                String name,
+                Subsystem requirement,
+                PIDGains gains,
+                DoubleSupplier measurement,
+                DoubleConsumer output,
+                Runnable stop,
+                boolean angular,
+                boolean useIntegral,
+                double relayAmplitude,
+                double hysteresis,
+                double maxOutput,
+                double stepSize,
+                double settleBand,
+                double minMeasurement,
+                double maxMeasurement,
+                double samplePeriodSecs
+            ) {
+            this.name = name;
+            this.requirement = requirement;
+            this.gains = gains;
+            this.measurement = measurement;
+            this.output = output;
+            this.stop = stop;
+            this.angular = angular;
+            this.useIntegral = useIntegral;
+            this.relayAmplitude = relayAmplitude;
+            this.hysteresis = hysteresis;
+            this.maxOutput = maxOutput;
+            this.stepSize = stepSize;
+            this.settleBand = settleBand;
+            this.minMeasurement = minMeasurement;
+            this.maxMeasurement = maxMeasurement;
+            this.samplePeriodSecs = samplePeriodSecs;
+        }
+
+        private double getError (double setpoint, double measured) {
+            double error = setpoint - measured;
+            return angular ? MathUtil.inputModulus(error, -180, 180) : error;
+        }
+
+        private boolean isOutOfBounds (double measured) {
+            return measured < minMeasurement || measured > maxMeasurement;
+        }
+    }
+
+    private final ArrayList<Target> targets = new ArrayList<>();
+
+    private RelayAutoTuner () {
+        CLAWRobot.getExtensibleCommandInterpreter().addCommandProcessor(new CommandProcessor(
+            "autotune",
+            "autotune",
+            "Use this command to tune the PID gains of a mechanism with a relay feedback test. The mechanism " +
+            "oscillates around its current position while its ultimate gain and period are measured, gains are " +
+            "computed with the chosen tuning rule, and the gains are checked with a step response test before " +
+            "they can be saved.",
+            this::runCommand
+        ));
+    }
+
+    /**
+     * Register a mechanism which can be tuned.
+     */
+    public synchronized void addTarget (Target target) {
+        targets.add(target);
+    }
+
+    private void runCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNone();
+        console.println("Double-tap enter to disable the robot and stop the test at any time.");
+
+        Target target = getTarget(console);
+        TuningRule rule = getRule(console);
+
+        RelayTest relayTest = new RelayTest(target);
+        if (!runTest(console, relayTest, "relay")) {
+            console.printlnErr("Tuning cancelled.");
+            return;
+        }
+
+        if (!relayTest.succeeded) {
+            console.printlnErr("The mechanism did not oscillate steadily. Try again with a larger relay amplitude.");
+            return;
+        }
+
+        double ultimateGain = relayTest.getUltimateGain();
+        double ultimatePeriod = relayTest.getUltimatePeriodSecs();
+        double[] gains = rule.getGains(ultimateGain, ultimatePeriod, target.useIntegral);
+
+        console.println("");
+        console.println(String.format("Ultimate gain:    %.5g", ultimateGain));
+        console.println(String.format("Ultimate period:  %.4f s", ultimatePeriod));
+        console.println(String.format(
+            "%s gains:  kP = %.5g, kI = %.5g, kD = %.5g",
+            rule.name(), gains[0], gains[1], gains[2]
+        ));
+        console.println(String.format(
+            "Current gains:  kP = %.5g, kI = %.5g, kD = %.5g",
+            target.gains.getP(), target.gains.getI(), target.gains.getD()
+        ));
+
+        StepTest stepTest = new StepTest(target, gains);
+        if (!runTest(console, stepTest, "step response")) {
+            console.printlnErr("Tuning cancelled.");
+            return;
+        }
+
+        StepResponseMetrics metrics = stepTest.metrics;
+        if (metrics == null) {
+            console.printlnErr("The mechanism left its safe range before the step response could be measured.");
+            return;
+        }
+
+        boolean passed =
+            !Double.isNaN(metrics.getSettleTimeSecs()) &&
+            metrics.getOvershootPercent() <= MAX_STEP_OVERSHOOT_PERCENT;
+
+        console.println("");
+        console.println(String.format(
+            "Step response:  rise %.3f s, settle %.3f s, overshoot %.1f%%, steady-state error %.3g",
+            metrics.getRiseTimeSecs(),
+            metrics.getSettleTimeSecs(),
+            metrics.getOvershootPercent(),
+            metrics.getSteadyStateError()
+        ));
+
+        if (passed) {
+            console.printlnSys("The step response check passed.");
+        } else {
+            console.printlnErr("The step response check failed: the response did not settle, or overshot by more than " +
+                MAX_STEP_OVERSHOOT_PERCENT + "%.");
+        }
+
+        if (LiveCommandTester.getYesNo(console, passed ? "Save these gains? " : "Save these gains anyway? ")) {
+            target.gains.save(gains[0], gains[1], gains[2]);
+            console.printlnSys("Saved gains.");
+        }
+    }
+
+    private synchronized Target getTarget (ConsoleManager console) {
+        StringBuilder names = new StringBuilder();
+        for (Target target : targets) {
+            if (names.length() > 0) names.append(" | ");
+            names.append(target.name);
+        }
+
+        while (true) {
+            console.print("Tune which mechanism? (" + names + ") ");
+            String input = console.readInputLine().strip();
+
+            for (Target target : targets) {
+                if (target.name.equalsIgnoreCase(input)) return target;
+            }
+        }
+    }
+
+    private static TuningRule getRule (ConsoleManager console) {
+        StringBuilder names = new StringBuilder();
+        for (TuningRule rule : TuningRule.values()) {
+            if (names.length() > 0) names.append(" | ");
+            names.append(rule.name().toLowerCase());
+        }
+
+        while (true) {
+            console.print("Use which tuning rule? (" + names + ") ");
+            String input = console.readInputLine().strip().toUpperCase();
+
+            for (TuningRule rule : TuningRule.values()) {
+                if (rule.name().equals(input)) return rule;
+            }
+        }
+    }
+
+    /**
+     * Run a single test to completion, asking the user to confirm first.
+     * @return Whether the test ran to completion.
+     */
+    private boolean runTest (ConsoleManager console, TunerTest test, String testName) {
+        if (!LiveCommandTester.getYesNo(console, "Run the " + testName + " test? ")) return false;
+
+        while (DriverStation.isDisabled()) {
+            console.printlnErr("Enable the robot and try again.");
+            if (!LiveCommandTester.getYesNo(console, "Run the " + testName + " test? ")) return false;
+        }
+
+        Command command = test.withInterruptBehavior(InterruptionBehavior.kCancelIncoming);
+        command.schedule();
+        console.printlnSys("Running " + testName + " test");
+
+        while (command.isScheduled() && DriverStation.isEnabled()) {
+            Timer.delay(0.02);
+        }
+
+        command.cancel();
+        return test.completed;
+    }
+
+    /**
+     * A test which samples the target and updates its output at the target's sample period, either in
+     * {@link #execute()} or on a {@link Notifier} thread if the period is shorter than the robot loop.
+     */
+    private static abstract class TunerTest extends CommandBase {
+
+        protected final Target target;
+        private final boolean useNotifier;
+        private final Notifier notifier = new Notifier(this::runSample);
+
+        protected double startTime = 0;
+        private volatile boolean finished = false;
+        private volatile boolean completed = false;
+
+        public TunerTest (Target target) {
+            this.target = target;
+            useNotifier = target.samplePeriodSecs < TimedRobot.kDefaultPeriod;
+            addRequirements(target.requirement);
+        }
+
+        /**
+         * Sample the target and update its output.
+         * @return Whether the test is finished.
+         */
+        protected abstract boolean sample (double elapsedSecs, double measured);
+
+        private synchronized void runSample () {
+            if (finished) return;
+
+            double measured = target.measurement.getAsDouble();
+            if (target.isOutOfBounds(measured)) {
+                finished = true;
+                return;
+            }
+
+            finished = sample(Timer.getFPGATimestamp() - startTime, measured);
+        }
+
+        @Override
+        public void initialize () {
+            target.stop.run();
+            finished = false;
+            completed = false;
+            startTime = Timer.getFPGATimestamp();
+            if (useNotifier) notifier.startPeriodic(target.samplePeriodSecs);
+        }
+
+        @Override
+        public void execute () {
+            if (!useNotifier) runSample();
+        }
+
+        @Override
+        public boolean isFinished () {
+            return finished;
+        }
+
+        @Override
+        public void end (boolean interrupted) {
+            // Each test only runs once, so its notifier can be released
+            notifier.close();
+            target.stop.run();
+            completed = !interrupted;
+        }
+
+    }
+
+    /**
+     * Drives the target with a relay around its initial position, and measures the period and amplitude of the
+     * resulting oscillation.
+     */
+    private static class RelayTest extends TunerTest {
+
+        private double setpoint = Double.NaN;
+        private boolean relayHigh = true;
+
+        private double maxError = Double.NEGATIVE_INFINITY, minError = Double.POSITIVE_INFINITY;
+        private double lastRisingSwitchSecs = Double.NaN;
+        private int cycleCount = 0;
+        private double periodSum = 0, amplitudeSum = 0;
+
+        private volatile boolean succeeded = false;
+
+        public RelayTest (Target target) {
+            super(target);
+        }
+
+        @Override
+        protected boolean sample (double elapsedSecs, double measured) {
+            if (Double.isNaN(setpoint)) setpoint = measured;
+            if (elapsedSecs > MAX_RELAY_SECS) return true;
+
+            double error = target.getError(setpoint, measured);
+            maxError = Math.max(maxError, error);
+            minError = Math.min(minError, error);
+
+            boolean wasHigh = relayHigh;
+            if (error > target.hysteresis) {
+                relayHigh = true;
+            } else if (error < -target.hysteresis) {
+                relayHigh = false;
+            }
+
+            // A full cycle ends every time the relay switches high
+            if (relayHigh && !wasHigh) {
+                if (!Double.isNaN(lastRisingSwitchSecs)) {
+                    cycleCount ++;
+
+                    if (cycleCount > WARMUP_CYCLES) {
+                        periodSum += elapsedSecs - lastRisingSwitchSecs;
+                        amplitudeSum += (maxError - minError) / 2;
+                    }
+
+                    if (cycleCount == WARMUP_CYCLES + MEASURED_CYCLES) {
+                        succeeded = amplitudeSum / MEASURED_CYCLES > target.hysteresis;
+                        return true;
+                    }
+                }
+
+                lastRisingSwitchSecs = elapsedSecs;
+                maxError = Double.NEGATIVE_INFINITY;
+                minError = Double.POSITIVE_INFINITY;
+            }
+
+            target.output.accept(relayHigh ? target.relayAmplitude : -target.relayAmplitude);
+            return false;
+        }
+
+        /**
+         * Get the ultimate gain from the describing function of a relay with hysteresis.
+         */
+        public double getUltimateGain () {
+            double amplitude = amplitudeSum / MEASURED_CYCLES;
+            double effectiveAmplitude = Math.sqrt(amplitude * amplitude - target.hysteresis * target.hysteresis);
+            return 4 * target.relayAmplitude / (Math.PI * effectiveAmplitude);
+        }
+
+        public double getUltimatePeriodSecs () {
+            return periodSum / MEASURED_CYCLES;
+        }
+
+    }
+
+    /**
+     * Holds the target at its initial position, then steps it with a PID controller using the new gains and
+     * measures the step response.
+     */
+    private static class StepTest extends TunerTest {
+
+        private final PIDController controller;
+        private double initialValue = Double.NaN, targetValue = Double.NaN;
+        private volatile StepResponseMetrics metrics = null;
+
+        public StepTest (Target target, double[] gains) {
+            super(target);
+            controller = new PIDController(gains[0], gains[1], gains[2], target.samplePeriodSecs);
+        }
+
+        @Override
+        protected boolean sample (double elapsedSecs, double measured) {
+            if (Double.isNaN(initialValue)) {
+                initialValue = measured;
+
+                // Step down instead of up if stepping up would leave the bounds
+                double step = Math.abs(target.stepSize);
+                targetValue = measured + step > target.maxMeasurement ? measured - step : measured + step;
+                metrics = new StepResponseMetrics(initialValue, targetValue, target.settleBand, STEP_DURATION_SECS / 2);
+            }
+
+            boolean stepped = elapsedSecs >= STEP_HOLD_SECS;
+            double error = target.getError(stepped ? targetValue : initialValue, measured);
+
+            if (stepped) {
+                // Measure on the same side of the wrap as the target
+                metrics.addSample(elapsedSecs - STEP_HOLD_SECS, targetValue - error);
+            }
+
+            double output = controller.calculate(-error, 0);
+            target.output.accept(MathUtil.clamp(output, -target.maxOutput, target.maxOutput));
+
+            return elapsedSecs >= STEP_HOLD_SECS + STEP_DURATION_SECS;
+        }
+
+    }
+
+}
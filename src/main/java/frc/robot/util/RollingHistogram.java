@@ -0,0 +1,97 @@
+package frc.robot.util;
+
+/**
+ * A rolling window of duration samples (in nanoseconds) which can report approximate percentiles and an exact
+ * maximum without allocating after construction. Samples are counted into fixed-width buckets, so percentiles
+ * are accurate to within one bucket width. Samples beyond the last bucket are counted in an overflow bucket.
+ */
+public class RollingHistogram {
+
+    private final long bucketWidthNanos;
+    private final int[] bucketCounts;
+    private final long[] window;
+
+    private int windowIndex = 0;
+    private int windowSize = 0;
+
+    /**
+     * @param windowLength      The number of most recent samples kept in the histogram.
+     * @param bucketWidthNanos  The width of each bucket, in nanoseconds.
+     * @param bucketCount       The number of buckets. The last bucket is used for all samples which do not fit in
+     *                          the others.
+     */
+    public RollingHistogram (int windowLength, long bucketWidthNanos, int bucketCount) {
+        this.bucketWidthNanos = bucketWidthNanos;
+        bucketCounts = new int[bucketCount];
+        window = new long[windowLength];
+    }
+
+    private int getBucket (long nanos) {
+        long bucket = Math.max(0, nanos) / bucketWidthNanos;
+        return (int)Math.min(bucket, bucketCounts.length - 1);
+    }
+
+    /**
+     * Add a sample to the histogram, evicting the oldest sample if the window is full.
+     */
+    public synchronized void record (long nanos) {
+        if (windowSize == window.length) {
+            bucketCounts[getBucket(window[windowIndex])] --;
+        } else {
+            windowSize ++;
+        }
+
+        window[windowIndex] = nanos;
+        bucketCounts[getBucket(nanos)] ++;
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    /**
+     * Get the upper bound of the bucket containing the given percentile of the samples in the window.
+     * @param percentile    A percentile on the interval [0, 1].
+     * @return              The approximate percentile in nanoseconds, or zero if there are no samples.
+     */
+    public synchronized long getPercentileNanos (double percentile) {
+        if (windowSize == 0) return 0;
+
+        int rank = Math.max(1, (int)Math.ceil(percentile * windowSize));
+        long max = getMaxNanos();
+        int seen = 0;
+
+        for (int i = 0; i < bucketCounts.length - 1; i ++) {
+            seen += bucketCounts[i];
+            if (seen >= rank) return Math.min((i + 1) * bucketWidthNanos, max);
+        }
+
+        // The percentile falls in the overflow bucket
+        return max;
+    }
+
+    /**
+     * Get the largest sample currently in the window, in nanoseconds.
+     */
+    public synchronized long getMaxNanos () {
+        long max = 0;
+        for (int i = 0; i < windowSize; i ++) {
+            max = Math.max(max, window[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Get the number of samples currently in the window.
+     */
+    public synchronized int getSampleCount () {
+        return windowSize;
+    }
+
+    public synchronized void reset () {
+        for (int i = 0; i < bucketCounts.length; i ++) {
+            bucketCounts[i] = 0;
+        }
+
+        windowIndex = 0;
+        windowSize = 0;
+    }
+
+}
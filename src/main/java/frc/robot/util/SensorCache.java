@@ -0,0 +1,102 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A cycle-scoped snapshot of sensor readings. Each cached sensor is read once at the start of every robot loop
+ * (see {@link #refreshAll()}), and every subsystem and command which reads it during the rest of that cycle sees
+ * the same memoized value instead of making another JNI or CAN read.
+ * <br></br>
+ * Cached values must only be used from the main robot thread. Code which runs on other threads (e.g. the odometry
+ * sampler) should read hardware directly.
+ */
+public class SensorCache {
+
+    private static final ArrayList<Refreshable> allCachedValues = new ArrayList<>();
+
+    private SensorCache () { }
+
+    /**
+     * Create a new {@link CachedDouble} which reads from the given supplier once per cycle.
+     */
+    public static CachedDouble cacheDouble (DoubleSupplier sensor) {
+        CachedDouble value = new CachedDouble(sensor);
+        allCachedValues.add(value);
+        return value;
+    }
+
+    /**
+     * Create a new {@link CachedValue} which reads from the given supplier once per cycle.
+     */
+    public static <T> CachedValue<T> cache (Supplier<T> sensor) {
+        CachedValue<T> value = new CachedValue<>(sensor);
+        allCachedValues.add(value);
+        return value;
+    }
+
+    /**
+     * Read every cached sensor. This should be called once, at the very start of robotPeriodic.
+     */
+    public static void refreshAll () {
+        for (int i = 0; i < allCachedValues.size(); i ++) {
+            allCachedValues.get(i).refresh();
+        }
+    }
+
+    private interface Refreshable {
+        public void refresh ();
+    }
+
+    public static class CachedDouble implements Refreshable, DoubleSupplier {
+
+        private final DoubleSupplier sensor;
+        private double value;
+
+        private CachedDouble (DoubleSupplier sensor) {
+            this.sensor = sensor;
+            refresh();
+        }
+
+        /**
+         * Read the sensor again immediately, e.g. after resetting it partway through a cycle.
+         */
+        @Override
+        public void refresh () {
+            value = sensor.getAsDouble();
+        }
+
+        @Override
+        public double getAsDouble () {
+            return value;
+        }
+
+    }
+
+    public static class CachedValue <T> implements Refreshable, Supplier<T> {
+
+        private final Supplier<T> sensor;
+        private T value;
+
+        private CachedValue (Supplier<T> sensor) {
+            this.sensor = sensor;
+            refresh();
+        }
+
+        /**
+         * Read the sensor again immediately, e.g. after resetting it partway through a cycle.
+         */
+        @Override
+        public void refresh () {
+            value = sensor.get();
+        }
+
+        @Override
+        public T get () {
+            return value;
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+package frc.robot.util;
+
+/**
+ * Measures the response of a mechanism to a single step in its setpoint, from samples of the mechanism's value taken
+ * over the course of the step. Samples are processed online as they arrive, so no sample log needs to be kept.
+ * <br></br>
+ * Rise time is measured from 10% to 90% of the way to the target, settle time is the time after which the value
+ * stays within the settle band of the target, overshoot is how far past the target the value went (as a percentage
+ * of the step), and steady-state error is the mean absolute error once the mechanism should have settled.
+ */
+public class StepResponseMetrics {
+
+    private static final double
+        RISE_START_FRACTION = 0.1,
+        RISE_END_FRACTION = 0.9;
+
+    private final double initialValue, targetValue;
+    private final double settleBand;
+    private final double steadyStateStartSecs;
+
+    private double riseStartSecs, riseEndSecs;
+    private double peakFraction;
+    private double lastOutsideBandSecs;
+    private boolean lastSampleInsideBand;
+    private double steadyStateErrorSum;
+    private int steadyStateSampleCount, sampleCount;
+
+    /**
+     * Create a new {@link StepResponseMetrics} for a single step.
+     * @param initialValue          The setpoint before the step.
+     * @param targetValue           The setpoint after the step.
+     * @param settleBand            The mechanism has settled once it stays within this distance of the target.
+     * @param steadyStateStartSecs  Samples taken at least this long after the step are used for steady-state error.
+     */
+    public StepResponseMetrics (double initialValue, double targetValue, double settleBand, double steadyStateStartSecs) {
+        this.initialValue = initialValue;
+        this.targetValue = targetValue;
+        this.settleBand = settleBand;
+        this.steadyStateStartSecs = steadyStateStartSecs;
+        reset();
+    }
+
+    /**
+     * Discard all samples.
+     */
+    public synchronized void reset () {
+        riseStartSecs = Double.NaN;
+        riseEndSecs = Double.NaN;
+        peakFraction = 0;
+        lastOutsideBandSecs = 0;
+        lastSampleInsideBand = false;
+        steadyStateErrorSum = 0;
+        steadyStateSampleCount = 0;
+        sampleCount = 0;
+    }
+
+    /**
+     * Add a sample of the mechanism's value.
+     * @param secsSinceStep The time since the step in the setpoint.
+     * @param value         The measured value of the mechanism.
+     */
+    public synchronized void addSample (double secsSinceStep, double value) {
+        // Fraction of the way from the initial value to the target, which is 1 once the target is reached
+        double fraction = (value - initialValue) / (targetValue - initialValue);
+        double error = Math.abs(targetValue - value);
+
+        if (Double.isNaN(riseStartSecs) && fraction >= RISE_START_FRACTION) riseStartSecs = secsSinceStep;
+        if (Double.isNaN(riseEndSecs) && fraction >= RISE_END_FRACTION) riseEndSecs = secsSinceStep;
+        peakFraction = Math.max(peakFraction, fraction);
+
+        lastSampleInsideBand = error <= settleBand;
+        if (!lastSampleInsideBand) lastOutsideBandSecs = secsSinceStep;
+
+        if (secsSinceStep >= steadyStateStartSecs) {
+            steadyStateErrorSum += error;
+            steadyStateSampleCount ++;
+        }
+
+        sampleCount ++;
+    }
+
+    /**
+     * Get the time taken to go from 10% to 90% of the way to the target, or {@code NaN} if the mechanism never got
+     * 90% of the way there.
+     */
+    public synchronized double getRiseTimeSecs () {
+        return riseEndSecs - riseStartSecs;
+    }
+
+    /**
+     * Get the time after the step at which the mechanism entered the settle band for the last time, or
+     * {@code NaN} if it was still outside the settle band at the last sample.
+     */
+    public synchronized double getSettleTimeSecs () {
+        return lastSampleInsideBand ? lastOutsideBandSecs : Double.NaN;
+    }
+
+    /**
+     * Get how far the mechanism went past its target, as a percentage of the step size.
+     */
+    public synchronized double getOvershootPercent () {
+        return Math.max(0, peakFraction - 1) * 100;
+    }
+
+    /**
+     * Get the mean absolute error during the steady-state part of the step, or {@code NaN} if there were no
+     * samples in it.
+     */
+    public synchronized double getSteadyStateError () {
+        return steadyStateSampleCount == 0 ? Double.NaN : steadyStateErrorSum / steadyStateSampleCount;
+    }
+
+    public synchronized int getSampleCount () {
+        return sampleCount;
+    }
+
+}
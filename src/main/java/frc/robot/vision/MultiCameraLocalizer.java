@@ -0,0 +1,509 @@
+package frc.robot.vision;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.DoubleFunction;
+
+import claw.Setting;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.RobotContainer;
+import frc.robot.limelight.Limelight;
+import frc.robot.limelight.LimelightFrame;
+import frc.robot.limelight.Limelight.FrameSubscription;
+import frc.robot.subsystems.Arm;
+import frc.robot.subsystems.swerve.Swerve;
+
+/**
+ * Localizes the robot from the AprilTags seen by both Limelights. Each camera's tag observation is turned into a
+ * robot position using the camera's pose on the robot (for the arm camera, a function of the arm angle at the
+ * time the image was captured) and the robot's heading at that time. Observations captured at about the same time
+ * by either camera are combined, weighted by their uncertainty, into a single pose estimate with a covariance.
+ * <br></br>
+ * A tag's position is measured much less precisely along the line of sight than across it, so each observation's
+ * covariance is elongated along the ray from the camera to the tag. Combining observations in information form lets
+ * a second camera constrain the direction the first measures poorly. When the cameras see two different tags, the
+ * bearing between the tags also gives the robot's heading; otherwise the estimate leaves the heading to the gyro.
+ * <br></br>
+ * Observations are rejected if the tag is too far away, if the position is off the field, or if the tag's measured
+ * orientation disagrees with the heading. A single tag seen nearly face-on has two plausible solutions mirrored
+ * about the tag, and the wrong one has a very different orientation, so the orientation check rejects ambiguous
+ * solutions.
+ */
+public class MultiCameraLocalizer implements Sendable {
+
+    private static MultiCameraLocalizer instance;
+
+    public static MultiCameraLocalizer getInstance () {
+        if (instance == null)
+            instance = new MultiCameraLocalizer();
+        return instance;
+    }
+
+    /**
+     * Observations of tags farther than this from the camera are rejected.
+     */
+    private static final Setting<Double> MAX_TAG_DISTANCE_METERS =
+        new Setting<>("VISION_FUSION.MAX_TAG_DISTANCE_METERS", () -> 4.);
+
+    /**
+     * An observation is rejected if the tag's orientation differs from the one expected from the estimated heading
+     * by more than this.
+     */
+    private static final Setting<Double> MAX_TAG_ORIENTATION_ERROR_DEGREES =
+        new Setting<>("VISION_FUSION.MAX_TAG_ORIENTATION_ERROR_DEGREES", () -> 15.);
+
+    /**
+     * The standard deviations of an observation of a tag one meter away, along and across the line of sight. They
+     * grow with the square of the distance.
+     */
+    private static final Setting<Double>
+        RANGE_STD_DEV_AT_ONE_METER = new Setting<>("VISION_FUSION.RANGE_STD_DEV_AT_ONE_METER", () -> 0.1),
+        LATERAL_STD_DEV_AT_ONE_METER = new Setting<>("VISION_FUSION.LATERAL_STD_DEV_AT_ONE_METER", () -> 0.03);
+
+    /**
+     * Observations captured within this long of each other are combined into one estimate.
+     */
+    private static final double SIMULTANEOUS_WINDOW_SECS = 0.02;
+
+    /**
+     * Poses may be this far outside the field, in meters, before they are rejected.
+     */
+    private static final double FIELD_MARGIN_METERS = 0.5;
+
+    /**
+     * Two tags closer than this together in the robot's frame don't give a useful heading.
+     */
+    private static final double MIN_HEADING_BASELINE_METERS = 0.5;
+
+    /**
+     * The intake camera's pose relative to the robot's center, on the floor: its position in meters (x forward,
+     * y left, z up) and its pitch (positive down) and yaw (positive left) in degrees. These must be measured on the
+     * robot before vision fusion is enabled.
+     */
+    private static final Setting<Double>
+        INTAKE_CAMERA_X_METERS = new Setting<>("VISION_CAMERAS.INTAKE_X_METERS", () -> Units.inchesToMeters(12)),
+        INTAKE_CAMERA_Y_METERS = new Setting<>("VISION_CAMERAS.INTAKE_Y_METERS", () -> 0.),
+        INTAKE_CAMERA_Z_METERS = new Setting<>("VISION_CAMERAS.INTAKE_Z_METERS", () -> Units.inchesToMeters(20)),
+        INTAKE_CAMERA_PITCH_DEGREES = new Setting<>("VISION_CAMERAS.INTAKE_PITCH_DEGREES", () -> 15.),
+        INTAKE_CAMERA_YAW_DEGREES = new Setting<>("VISION_CAMERAS.INTAKE_YAW_DEGREES", () -> 0.);
+
+    /**
+     * The arm pivot's position relative to the robot's center, on the floor, and the arm camera's distance from the
+     * pivot along the arm. With the arm at 90 degrees, the arm is horizontal and the camera faces forward, pitched by
+     * the mount pitch (positive down). These must be measured on the robot before vision fusion is enabled.
+     */
+    private static final Setting<Double>
+        ARM_PIVOT_X_METERS = new Setting<>("VISION_CAMERAS.ARM_PIVOT_X_METERS", () -> Units.inchesToMeters(-6)),
+        ARM_PIVOT_Z_METERS = new Setting<>("VISION_CAMERAS.ARM_PIVOT_Z_METERS", () -> Units.inchesToMeters(40)),
+        ARM_CAMERA_DISTANCE_METERS = new Setting<>("VISION_CAMERAS.ARM_CAMERA_DISTANCE_METERS", () -> Units.inchesToMeters(30)),
+        ARM_CAMERA_MOUNT_PITCH_DEGREES = new Setting<>("VISION_CAMERAS.ARM_CAMERA_MOUNT_PITCH_DEGREES", () -> 0.);
+
+    /**
+     * The arm angle is recorded every update for this many updates, so the arm camera's pose can be found at the
+     * time each frame was captured.
+     */
+    private static final int ARM_HISTORY_LENGTH = 16;
+
+    private final Swerve swerve = Swerve.getInstance();
+    private final Arm arm = Arm.getInstance();
+    private final Optional<AprilTagFieldLayout> fieldLayout = loadFieldLayout();
+
+    private final Camera[] cameras;
+
+    private final double[] armHistoryTimes = new double[ARM_HISTORY_LENGTH], armHistoryDegrees = new double[ARM_HISTORY_LENGTH];
+    private int armHistoryCount = 0, armHistoryNext = 0;
+
+    private final ArrayList<Observation> observations = new ArrayList<>();
+    private final ArrayList<FusedPoseEstimate> estimates = new ArrayList<>();
+    private Optional<FusedPoseEstimate> latestEstimate = Optional.empty();
+    private final int[] rejectedCounts = new int[Rejection.values().length];
+
+    private MultiCameraLocalizer () {
+        cameras = new Camera[] {
+            new Camera("Intake", Limelight.INTAKE_LIMELIGHT, timestamp -> getRobotToIntakeCamera()),
+            new Camera("Arm", Limelight.ARM_LIMELIGHT, this::getRobotToArmCamera),
+        };
+
+        RobotContainer.putConfigSendable("Multi-Camera Localizer", this);
+    }
+
+    private static Optional<AprilTagFieldLayout> loadFieldLayout () {
+        try {
+            return Optional.of(AprilTagFields.k2023ChargedUp.loadAprilTagLayoutField());
+        } catch (UncheckedIOException e) {
+            DriverStation.reportError("Failed to load the AprilTag field layout: " + e.getMessage(), false);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * A fused robot pose, in field coordinates with the origin at the blue driver station wall.
+     * @param pose              The estimated pose. Its heading is the gyro heading unless two different tags were
+     *                          seen.
+     * @param timestampSecs     The FPGA timestamp the estimate describes.
+     * @param covariance        The covariance of x (meters), y (meters) and heading (radians). The heading variance
+     *                          is infinite if the heading wasn't measured.
+     * @param observationCount  The number of tag observations combined.
+     */
+    public static record FusedPoseEstimate (
+        Pose2d pose,
+        double timestampSecs,
+        Matrix<N3, N3> covariance,
+        int observationCount
+    ) { }
+
+    private enum Rejection {
+        UNKNOWN_TAG,
+        TOO_FAR,
+        OFF_FIELD,
+        AMBIGUOUS,
+    }
+
+    /**
+     * A camera and its pose on the robot, as a function of the FPGA timestamp.
+     */
+    private static class Camera {
+        private final String name;
+        private final FrameSubscription frames;
+        private final DoubleFunction<Transform3d> robotToCamera;
+        private int acceptedCount = 0;
+
+        private Camera (String name, Limelight limelight, DoubleFunction<Transform3d> robotToCamera) {
+            this.name = name;
+            this.frames = limelight.subscribeFrames();
+            this.robotToCamera = robotToCamera;
+        }
+    }
+
+    /**
+     * A robot position measured from one tag, with its covariance in field coordinates.
+     */
+    private static class Observation {
+        private final double timestampSecs;
+        private final int tagId;
+        private final double x, y, varXX, varXY, varYY;
+
+        // The tag's position relative to the robot (in the robot's frame) and on the field, for solving the heading
+        private final double tagRobotX, tagRobotY, tagFieldX, tagFieldY;
+        private final double rangeStdDev;
+
+        private Observation (
+                double timestampSecs,
+                int tagId,
+                double x,
+                double y,
+                double varXX,
+                double varXY,
+                double varYY,
+                double tagRobotX,
+                double tagRobotY,
+                double tagFieldX,
+                double tagFieldY,
+                double rangeStdDev
+            ) {
+            this.timestampSecs = timestampSecs;
+            this.tagId = tagId;
+            this.x = x;
+            this.y = y;
+            this.varXX = varXX;
+            this.varXY = varXY;
+            this.varYY = varYY;
+            this.tagRobotX = tagRobotX;
+            this.tagRobotY = tagRobotY;
+            this.tagFieldX = tagFieldX;
+            this.tagFieldY = tagFieldY;
+            this.rangeStdDev = rangeStdDev;
+        }
+    }
+
+    /**
+     * Get the intake camera's pose relative to the robot's center.
+     */
+    private static Transform3d getRobotToIntakeCamera () {
+        return new Transform3d(
+            new Translation3d(INTAKE_CAMERA_X_METERS.get(), INTAKE_CAMERA_Y_METERS.get(), INTAKE_CAMERA_Z_METERS.get()),
+            new Rotation3d(
+                0,
+                Math.toRadians(INTAKE_CAMERA_PITCH_DEGREES.get()),
+                Math.toRadians(INTAKE_CAMERA_YAW_DEGREES.get())
+            )
+        );
+    }
+
+    /**
+     * Get the arm camera's pose relative to the robot's center at the given FPGA timestamp.
+     */
+    private Transform3d getRobotToArmCamera (double timestampSecs) {
+        double armRadians = Math.toRadians(getArmDegreesAt(timestampSecs));
+        double cameraDistance = ARM_CAMERA_DISTANCE_METERS.get();
+
+        // The arm hangs straight down at zero degrees and is horizontal at 90 degrees
+        Translation3d cameraTranslation = new Translation3d(
+            ARM_PIVOT_X_METERS.get() + cameraDistance * Math.sin(armRadians),
+            0,
+            ARM_PIVOT_Z_METERS.get() - cameraDistance * Math.cos(armRadians)
+        );
+
+        double pitchRadians = Math.PI / 2 - armRadians + Math.toRadians(ARM_CAMERA_MOUNT_PITCH_DEGREES.get());
+        return new Transform3d(cameraTranslation, new Rotation3d(0, pitchRadians, 0));
+    }
+
+    private void recordArmAngle () {
+        armHistoryTimes[armHistoryNext] = Timer.getFPGATimestamp();
+        armHistoryDegrees[armHistoryNext] = arm.getArmRotation().getDegrees();
+        armHistoryNext = (armHistoryNext + 1) % ARM_HISTORY_LENGTH;
+        armHistoryCount = Math.min(armHistoryCount + 1, ARM_HISTORY_LENGTH);
+    }
+
+    /**
+     * Interpolate the recorded arm angle at the given FPGA timestamp.
+     */
+    private double getArmDegreesAt (double timestampSecs) {
+        // Walk back from the newest sample to the first one at or before the timestamp
+        int newer = (armHistoryNext - 1 + ARM_HISTORY_LENGTH) % ARM_HISTORY_LENGTH;
+        for (int i = 1; i < armHistoryCount; i ++) {
+            int older = (newer - 1 + ARM_HISTORY_LENGTH) % ARM_HISTORY_LENGTH;
+            if (armHistoryTimes[older] <= timestampSecs) {
+                double span = armHistoryTimes[newer] - armHistoryTimes[older];
+                double t = span > 0 ? MathUtil.clamp((timestampSecs - armHistoryTimes[older]) / span, 0, 1) : 1;
+                return MathUtil.interpolate(armHistoryDegrees[older], armHistoryDegrees[newer], t);
+            }
+            newer = older;
+        }
+
+        return armHistoryDegrees[newer];
+    }
+
+    /**
+     * Localize from every frame received since the last update. This should be called once per cycle, after
+     * {@link Limelight#update()}. The estimates produced are available from {@link #getEstimates()} until the next
+     * update.
+     */
+    public void update () {
+        recordArmAngle();
+
+        observations.clear();
+        estimates.clear();
+
+        for (Camera camera : cameras) {
+            Optional<LimelightFrame> frame;
+            while ((frame = camera.frames.poll()).isPresent()) {
+                if (fieldLayout.isPresent()) observe(camera, frame.get());
+            }
+        }
+
+        // Combine observations captured at about the same time, oldest first
+        observations.sort((a, b) -> Double.compare(a.timestampSecs, b.timestampSecs));
+
+        int groupStart = 0;
+        for (int i = 1; i <= observations.size(); i ++) {
+            boolean groupEnds = i == observations.size() ||
+                observations.get(i).timestampSecs - observations.get(groupStart).timestampSecs > SIMULTANEOUS_WINDOW_SECS;
+
+            if (groupEnds) {
+                estimates.add(fuse(observations.subList(groupStart, i)));
+                groupStart = i;
+            }
+        }
+
+        if (!estimates.isEmpty()) {
+            latestEstimate = Optional.of(estimates.get(estimates.size() - 1));
+        }
+    }
+
+    /**
+     * Get the estimates produced by the last update, oldest first.
+     */
+    public List<FusedPoseEstimate> getEstimates () {
+        return estimates;
+    }
+
+    public Optional<FusedPoseEstimate> getLatestEstimate () {
+        return latestEstimate;
+    }
+
+    private void observe (Camera camera, LimelightFrame frame) {
+        if (!frame.hasAprilTag()) return;
+
+        double[] cameraSpace = frame.getTargetPoseCameraSpace();
+        if (cameraSpace.length < 6) return;
+
+        Optional<Pose3d> tagPose = fieldLayout.get().getTagPose(frame.getTargetID());
+        if (tagPose.isEmpty()) {
+            reject(Rejection.UNKNOWN_TAG);
+            return;
+        }
+
+        double distance = Math.sqrt(
+            cameraSpace[0] * cameraSpace[0] +
+            cameraSpace[1] * cameraSpace[1] +
+            cameraSpace[2] * cameraSpace[2]
+        );
+
+        if (distance > MAX_TAG_DISTANCE_METERS.get()) {
+            reject(Rejection.TOO_FAR);
+            return;
+        }
+
+        double timestampSecs = frame.getCaptureTimestampSecs();
+        Transform3d robotToCamera = camera.robotToCamera.apply(timestampSecs);
+
+        // Limelight camera space is x right, y down, z forward. Convert to x forward, y left, z up, then into the
+        // robot's frame.
+        Translation3d tagInRobot = new Translation3d(cameraSpace[2], -cameraSpace[0], -cameraSpace[1])
+            .rotateBy(robotToCamera.getRotation())
+            .plus(robotToCamera.getTranslation());
+
+        double tagRobotX = tagInRobot.getX(), tagRobotY = tagInRobot.getY();
+        Pose2d tagFieldPose = tagPose.get().toPose2d();
+        double heading = swerve.getHeadingAt(timestampSecs).getRadians();
+
+        // A tag faces out along its x axis, so one seen head-on faces back at the camera
+        double measuredTagYaw = robotToCamera.getRotation().getZ() + Math.PI - Math.toRadians(cameraSpace[4]);
+        double expectedTagYaw = tagFieldPose.getRotation().getRadians() - heading;
+        if (Math.abs(MathUtil.angleModulus(measuredTagYaw - expectedTagYaw)) > Math.toRadians(MAX_TAG_ORIENTATION_ERROR_DEGREES.get())) {
+            reject(Rejection.AMBIGUOUS);
+            return;
+        }
+
+        // The robot is at the tag's field position minus the tag's offset from the robot, rotated into the field
+        double cos = Math.cos(heading), sin = Math.sin(heading);
+        double x = tagFieldPose.getX() - (tagRobotX * cos - tagRobotY * sin);
+        double y = tagFieldPose.getY() - (tagRobotX * sin + tagRobotY * cos);
+
+        if (
+            x < -FIELD_MARGIN_METERS || x > fieldLayout.get().getFieldLength() + FIELD_MARGIN_METERS ||
+            y < -FIELD_MARGIN_METERS || y > fieldLayout.get().getFieldWidth() + FIELD_MARGIN_METERS
+        ) {
+            reject(Rejection.OFF_FIELD);
+            return;
+        }
+
+        // Covariance elongated along the ray to the tag, rotated into field coordinates
+        double distanceSq = Math.max(distance * distance, 1);
+        double rangeStdDev = RANGE_STD_DEV_AT_ONE_METER.get() * distanceSq;
+        double lateralStdDev = LATERAL_STD_DEV_AT_ONE_METER.get() * distanceSq;
+        double rayAngle = heading + Math.atan2(tagRobotY, tagRobotX);
+        double rayCos = Math.cos(rayAngle), raySin = Math.sin(rayAngle);
+        double rangeVar = rangeStdDev * rangeStdDev, lateralVar = lateralStdDev * lateralStdDev;
+
+        observations.add(new Observation(
+            timestampSecs,
+            frame.getTargetID(),
+            x,
+            y,
+            rangeVar * rayCos * rayCos + lateralVar * raySin * raySin,
+            (rangeVar - lateralVar) * rayCos * raySin,
+            rangeVar * raySin * raySin + lateralVar * rayCos * rayCos,
+            tagRobotX,
+            tagRobotY,
+            tagFieldPose.getX(),
+            tagFieldPose.getY(),
+            rangeStdDev
+        ));
+
+        camera.acceptedCount ++;
+    }
+
+    /**
+     * Combine observations in information form: the fused information matrix is the sum of the observations'
+     * inverse covariances, and the fused position is the information-weighted mean.
+     */
+    private FusedPoseEstimate fuse (List<Observation> group) {
+        double infoXX = 0, infoXY = 0, infoYY = 0, infoX = 0, infoY = 0, timeWeightedSum = 0, timeWeight = 0;
+
+        for (Observation observation : group) {
+            double det = observation.varXX * observation.varYY - observation.varXY * observation.varXY;
+            double ixx = observation.varYY / det, ixy = -observation.varXY / det, iyy = observation.varXX / det;
+
+            infoXX += ixx;
+            infoXY += ixy;
+            infoYY += iyy;
+            infoX += ixx * observation.x + ixy * observation.y;
+            infoY += ixy * observation.x + iyy * observation.y;
+
+            double weight = ixx + iyy;
+            timeWeightedSum += weight * observation.timestampSecs;
+            timeWeight += weight;
+        }
+
+        double det = infoXX * infoYY - infoXY * infoXY;
+        double varXX = infoYY / det, varXY = -infoXY / det, varYY = infoXX / det;
+        double x = varXX * infoX + varXY * infoY;
+        double y = varXY * infoX + varYY * infoY;
+        double timestampSecs = timeWeightedSum / timeWeight;
+
+        // Solve the heading from the pair of different tags farthest apart in the robot's frame
+        double heading = swerve.getHeadingAt(timestampSecs).getRadians();
+        double headingVar = Double.POSITIVE_INFINITY;
+        double bestBaseline = MIN_HEADING_BASELINE_METERS;
+
+        for (int i = 0; i < group.size(); i ++) {
+            for (int j = i + 1; j < group.size(); j ++) {
+                Observation a = group.get(i), b = group.get(j);
+                if (a.tagId == b.tagId) continue;
+
+                double robotDx = b.tagRobotX - a.tagRobotX, robotDy = b.tagRobotY - a.tagRobotY;
+                double baseline = Math.hypot(robotDx, robotDy);
+                if (baseline <= bestBaseline) continue;
+
+                bestBaseline = baseline;
+                heading = MathUtil.angleModulus(
+                    Math.atan2(b.tagFieldY - a.tagFieldY, b.tagFieldX - a.tagFieldX) - Math.atan2(robotDy, robotDx)
+                );
+
+                double headingStdDev = (a.rangeStdDev + b.rangeStdDev) / baseline;
+                headingVar = headingStdDev * headingStdDev;
+            }
+        }
+
+        Matrix<N3, N3> covariance = new Matrix<>(Nat.N3(), Nat.N3());
+        covariance.set(0, 0, varXX);
+        covariance.set(0, 1, varXY);
+        covariance.set(1, 0, varXY);
+        covariance.set(1, 1, varYY);
+        covariance.set(2, 2, headingVar);
+
+        return new FusedPoseEstimate(new Pose2d(x, y, new Rotation2d(heading)), timestampSecs, covariance, group.size());
+    }
+
+    private void reject (Rejection reason) {
+        rejectedCounts[reason.ordinal()] ++;
+    }
+
+    @Override
+    public void initSendable (SendableBuilder builder) {
+        for (Camera camera : cameras) {
+            builder.addDoubleProperty(camera.name + " Accepted", () -> camera.acceptedCount, null);
+        }
+        for (Rejection reason : Rejection.values()) {
+            builder.addDoubleProperty("Rejected " + reason.name(), () -> rejectedCounts[reason.ordinal()], null);
+        }
+        builder.addDoubleProperty("Estimate X (m)", () -> latestEstimate.map(e -> e.pose().getX()).orElse(0.), null);
+        builder.addDoubleProperty("Estimate Y (m)", () -> latestEstimate.map(e -> e.pose().getY()).orElse(0.), null);
+        builder.addDoubleProperty(
+            "Estimate XY Std Dev (m)",
+            () -> latestEstimate.map(e -> Math.sqrt(e.covariance().get(0, 0) + e.covariance().get(1, 1))).orElse(0.),
+            null
+        );
+    }
+
+}
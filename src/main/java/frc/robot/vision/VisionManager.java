@@ -14,6 +14,7 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import frc.robot.limelight.Limelight;
 import frc.robot.limelight.Limelight.AprilTagData;
 import frc.robot.limelight.Limelight.CameraMode;
+import frc.robot.limelight.Limelight.FrameSubscription;
 
 /** Add your docs here. */
 public class VisionManager {
@@ -34,6 +35,7 @@ public class VisionManager {
     private UsbCamera panCam = new UsbCamera("Pan Camera", 0);
     
     private final DualDebouncer armVisionProcessorDebouncer = new DualDebouncer(false, 0.5, 0);
+    private final DualDebouncer intakeVisionProcessorDebouncer = new DualDebouncer(false, 0.5, 0);
     
 	private VisionManager () {
 		camServer = CameraServer.addSwitchedCamera("Arm Camera stream");
@@ -51,15 +53,42 @@ public class VisionManager {
             useArmVisionProcessor ? CameraMode.VISION_PROCESSOR : CameraMode.DRIVER_CAMERA
         );
         
-        Limelight.INTAKE_LIMELIGHT.setCameraMode(CameraMode.DRIVER_CAMERA);
+        boolean useIntakeVisionProcessor = intakeVisionProcessorDebouncer.calculate(false);
+        
+        Limelight.INTAKE_LIMELIGHT.setCameraMode(
+            useIntakeVisionProcessor ? CameraMode.VISION_PROCESSOR : CameraMode.DRIVER_CAMERA
+        );
         
     }
     
-    public Optional<AprilTagData> getArmAprilTag () {
+    /**
+     * Keep the arm limelight in vision processor mode. This must be called every cycle while its results are needed.
+     */
+    public void requestArmVisionProcessor () {
         armVisionProcessorDebouncer.calculate(true);
+    }
+    
+    /**
+     * Keep the intake limelight in vision processor mode, so it can localize from AprilTags. This must be called every
+     * cycle while its results are needed; otherwise it stays a driver camera.
+     */
+    public void requestIntakeVisionProcessor () {
+        intakeVisionProcessorDebouncer.calculate(true);
+    }
+    
+    public Optional<AprilTagData> getArmAprilTag () {
+        requestArmVisionProcessor();
         return Limelight.ARM_LIMELIGHT.getAprilTag();
     }
     
+    /**
+     * Subscribe to every frame from the arm limelight. The arm limelight only processes frames while
+     * {@link #requestArmVisionProcessor()} is being called.
+     */
+    public FrameSubscription subscribeArmFrames () {
+        return Limelight.ARM_LIMELIGHT.subscribeFrames();
+    }
+    
 	public void updateArmRotation (Rotation2d armRotation) {
         double armAngle = armRotation.getDegrees();
 		if (armAngle <= ARM_OFFSET_DEGREES) {
@@ -0,0 +1,85 @@
+package frc.robot.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.util.sendable.SendableBuilder;
+import frc.robot.RobotContainer;
+import frc.robot.limelight.Limelight;
+import frc.robot.subsystems.swerve.Swerve;
+import frc.robot.vision.MultiCameraLocalizer.FusedPoseEstimate;
+
+/**
+ * Corrects the swerve pose estimate with the robot poses localized from AprilTags by the
+ * {@link MultiCameraLocalizer}. Every estimate is back-dated to the time its images were captured, so the estimator
+ * corrects the pose from that moment and replays odometry since then, and each estimate is trusted according to
+ * its covariance. Estimates which didn't measure the heading never correct it, since the gyro measures it better.
+ * <br></br>
+ * Fusion is disabled until it is enabled from the dashboard, since the estimates are only as accurate as the camera
+ * poses configured in the {@link MultiCameraLocalizer}. The intake camera is only switched to vision processing
+ * while fusion is enabled, so the driver keeps its view otherwise.
+ */
+public class VisionPoseFusion implements Sendable {
+
+    private static VisionPoseFusion instance;
+
+    public static VisionPoseFusion getInstance () {
+        if (instance == null)
+            instance = new VisionPoseFusion();
+        return instance;
+    }
+
+    private final Swerve swerve = Swerve.getInstance();
+    private final MultiCameraLocalizer localizer = MultiCameraLocalizer.getInstance();
+
+    private boolean enabled = false;
+    private Pose2d lastVisionPose = new Pose2d();
+    private double lastXStdDev = 0, lastYStdDev = 0;
+    private int acceptedCount = 0;
+
+    private VisionPoseFusion () {
+        RobotContainer.putConfigSendable("Vision Fusion", this);
+    }
+
+    public void setEnabled (boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Localize from every frame received since the last update and fuse the estimates into the pose estimate. This
+     * should be called once per cycle, after {@link Limelight#update()}.
+     */
+    public void update () {
+        localizer.update();
+        if (!enabled) return;
+
+        VisionManager.getInstance().requestIntakeVisionProcessor();
+
+        for (FusedPoseEstimate estimate : localizer.getEstimates()) {
+            // The pose estimator treats the axes independently, so the correlation between x and y is dropped
+            lastVisionPose = estimate.pose();
+            lastXStdDev = Math.sqrt(estimate.covariance().get(0, 0));
+            lastYStdDev = Math.sqrt(estimate.covariance().get(1, 1));
+            acceptedCount ++;
+
+            swerve.addVisionMeasurement(
+                estimate.pose(),
+                estimate.timestampSecs(),
+                lastXStdDev,
+                lastYStdDev,
+                Math.sqrt(estimate.covariance().get(2, 2))
+            );
+        }
+    }
+
+    @Override
+    public void initSendable (SendableBuilder builder) {
+        builder.addBooleanProperty("Enabled", () -> enabled, this::setEnabled);
+        builder.addDoubleProperty("Accepted", () -> acceptedCount, null);
+        builder.addDoubleProperty("Last Vision X (m)", () -> lastVisionPose.getX(), null);
+        builder.addDoubleProperty("Last Vision Y (m)", () -> lastVisionPose.getY(), null);
+        builder.addDoubleProperty("Last Vision Heading (deg)", () -> lastVisionPose.getRotation().getDegrees(), null);
+        builder.addDoubleProperty("Last X Std Dev (m)", () -> lastXStdDev, null);
+        builder.addDoubleProperty("Last Y Std Dev (m)", () -> lastYStdDev, null);
+    }
+
+}
@@ -0,0 +1,39 @@
+package frc.robot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Assertions for code which runs every control cycle, and so must not allocate.
+ */
+public final class AllocationAssertions {
+
+    /**
+     * The first rounds can include allocations made while the JIT compiles the action, so the best of several
+     * rounds is checked.
+     */
+    private static final int ROUNDS = 5;
+
+    private AllocationAssertions () { }
+
+    /**
+     * Assert that the given action allocates nothing on the calling thread, when run as if in a warmed-up robot loop.
+     * @param description   What the action is, for the failure message.
+     * @param action        The action to run. It should loop enough times for the JIT to compile it.
+     */
+    public static void assertDoesNotAllocate (String description, Runnable action) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long allocatedBytes = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round ++) {
+            long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+            action.run();
+            allocatedBytes = Math.min(allocatedBytes, threadBean.getThreadAllocatedBytes(threadId) - startBytes);
+        }
+
+        assertEquals(0, allocatedBytes, description + " allocated " + allocatedBytes + " bytes");
+    }
+
+}
@@ -0,0 +1,232 @@
+package frc.robot.limelight;
+
+import static frc.robot.AllocationAssertions.assertDoesNotAllocate;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.limelight.LimelightJsonParser.TargetList;
+
+class LimelightJsonParserTest {
+
+    private static final double EPSILON = 1e-12;
+
+    private static final String FIDUCIAL_6 =
+        "{\"fID\":6,\"fam\":\"16H5C\",\"pts\":[[412.5,188.25],[468.0,190.5],[466.75,246.0],[410.25,243.5]]," +
+        "\"skew\":[],\"t6c_ts\":[-0.412,0.096,-2.381,3.52,-9.87,0.61],\"t6r_fs\":[-6.112,-1.287,0.172,1.05,-2.3,178.6]," +
+        "\"t6t_cs\":[0.389,0.188,2.402,-3.4,9.91,-0.66],\"ta\":0.00423,\"tx\":8.91,\"ty\":-4.37,\"typ\":217.1}";
+
+    private static final String FIDUCIAL_7 =
+        "{\"fID\":7,\"fam\":\"16H5C\",\"pts\":[[102.0,201.5],[151.25,203.0],[150.5,252.75],[101.25,250.0]]," +
+        "\"ambiguity\":0.125,\"t6r_fs\":[-6.098,-1.301,0.168,0.9,-2.1,178.9],\"ta\":0.00311,\"tx\":-22.37,\"ty\":-5.12}";
+
+    /**
+     * A dump in the format of the 2023 Limelight firmware, with two fiducials and a retroreflective target.
+     */
+    private static final String SAMPLE_DUMP =
+        "{\"Results\":{\"Classifier\":[],\"Detector\":[],\"Fiducial\":[" + FIDUCIAL_6 + "," + FIDUCIAL_7 + "]," +
+        "\"Retro\":[{\"pts\":[],\"ta\":0.02,\"tx\":1.5,\"ty\":2.5}],\"botpose\":[-6.105,-1.294,0.17,0.98,-2.2,178.75]," +
+        "\"botpose_wpiblue\":[2.165,2.716,0.17,0.98,-2.2,178.75],\"pID\":1.0,\"tl\":18.52,\"ts\":4823411.25,\"v\":1}}";
+
+    private static String createDump (String results) {
+        return "{\"Results\":{" + results + "}}";
+    }
+
+    /**
+     * Parse a dump whose pipeline latency is the given JSON number text.
+     */
+    private static double parseNumber (String number) {
+        LimelightJsonParser parser = new LimelightJsonParser();
+        assertTrue(parser.parse(createDump("\"tl\":" + number)), "Failed to parse " + number);
+        return parser.getPipelineLatencyMillis();
+    }
+
+    @Test
+    void parsesSampleDump () {
+        LimelightJsonParser parser = new LimelightJsonParser();
+        assertTrue(parser.parse(SAMPLE_DUMP));
+        assertTrue(parser.isValid());
+
+        TargetList fiducials = parser.getFiducials();
+        assertEquals(2, fiducials.getCount());
+
+        assertEquals(6, fiducials.getId(0));
+        assertEquals(8.91, fiducials.getHorizontalOffset(0), EPSILON);
+        assertEquals(-4.37, fiducials.getVerticalOffset(0), EPSILON);
+        assertEquals(0.00423, fiducials.getArea(0), EPSILON);
+        assertTrue(Double.isNaN(fiducials.getAmbiguity(0)));
+        assertEquals(4, fiducials.getCornerCount(0));
+        assertEquals(466.75, fiducials.getCornerX(0, 2), EPSILON);
+        assertEquals(246.0, fiducials.getCornerY(0, 2), EPSILON);
+        assertArrayEquals(new double[] {0.389, 0.188, 2.402, -3.4, 9.91, -0.66}, fiducials.getTargetPoseCameraSpace(0), EPSILON);
+        assertArrayEquals(new double[] {-6.112, -1.287, 0.172, 1.05, -2.3, 178.6}, fiducials.getRobotPoseFieldSpace(0), EPSILON);
+
+        assertEquals(7, fiducials.getId(1));
+        assertEquals(0.125, fiducials.getAmbiguity(1), EPSILON);
+        assertArrayEquals(new double[6], fiducials.getTargetPoseCameraSpace(1), EPSILON);
+
+        TargetList retroTargets = parser.getRetroTargets();
+        assertEquals(1, retroTargets.getCount());
+        assertEquals(-1, retroTargets.getId(0));
+        assertEquals(1.5, retroTargets.getHorizontalOffset(0), EPSILON);
+        assertEquals(0, retroTargets.getCornerCount(0));
+
+        assertArrayEquals(new double[] {2.165, 2.716, 0.17, 0.98, -2.2, 178.75}, parser.getBlueBotPose(), EPSILON);
+        assertEquals(18.52, parser.getPipelineLatencyMillis(), EPSILON);
+        assertEquals(4823411.25, parser.getTimestampMillis(), EPSILON);
+        assertEquals(1, parser.getPipelineIndex());
+    }
+
+    @Test
+    void parsesEmptyResults () {
+        LimelightJsonParser parser = new LimelightJsonParser();
+        assertTrue(parser.parse(SAMPLE_DUMP));
+        assertTrue(parser.parse(" { } "));
+
+        // Results from the previous dump don't carry over
+        assertEquals(0, parser.getFiducials().getCount());
+        assertEquals(-1, parser.getPipelineIndex());
+        assertArrayEquals(new double[6], parser.getBlueBotPose(), EPSILON);
+    }
+
+    @Test
+    void skipsTargetsBeyondCapacity () {
+        int fiducialCount = LimelightJsonParser.MAX_FIDUCIALS + 4;
+        StringBuilder fiducials = new StringBuilder();
+        for (int i = 0; i < fiducialCount; i ++) {
+            if (i > 0) fiducials.append(',');
+            fiducials.append("{\"fID\":").append(i).append(",\"tx\":").append(i * 0.5).append('}');
+        }
+
+        // Extra corners are skipped too
+        StringBuilder corners = new StringBuilder();
+        for (int i = 0; i < LimelightJsonParser.MAX_CORNERS + 2; i ++) {
+            if (i > 0) corners.append(',');
+            corners.append('[').append(i).append(',').append(-i).append(']');
+        }
+
+        LimelightJsonParser parser = new LimelightJsonParser();
+        assertTrue(parser.parse(createDump(
+            "\"Fiducial\":[" + fiducials + "],\"Retro\":[{\"pts\":[" + corners + "]}],\"tl\":12.5"
+        )));
+
+        TargetList targets = parser.getFiducials();
+        assertEquals(LimelightJsonParser.MAX_FIDUCIALS, targets.getCount());
+        for (int i = 0; i < targets.getCount(); i ++) {
+            assertEquals(i, targets.getId(i));
+            assertEquals(i * 0.5, targets.getHorizontalOffset(i), EPSILON);
+        }
+
+        assertEquals(LimelightJsonParser.MAX_CORNERS, parser.getRetroTargets().getCornerCount(0));
+        assertEquals(LimelightJsonParser.MAX_CORNERS - 1, parser.getRetroTargets().getCornerX(0, LimelightJsonParser.MAX_CORNERS - 1), EPSILON);
+
+        // Values after the skipped targets are still read
+        assertEquals(12.5, parser.getPipelineLatencyMillis(), EPSILON);
+    }
+
+    @Test
+    void rejectsMalformedDumps () {
+        String[] malformedDumps = {
+            "",
+            "   ",
+            "{",
+            "[]",
+            "{\"Results\":{}",
+            "{\"Results\":{}}}",
+            "{\"Results\":{}} x",
+            "{\"Results\" {}}",
+            "{\"Results\":{},}",
+            "{,\"Results\":{}}",
+            "{\"Results\":{\"tl\":1 \"ts\":2}}",
+            "{\"Results\":{\"Fiducial\":[{},]}}",
+            "{\"Results\":{\"Fiducial\":[{\"pts\":[[1]]}]}}",
+            "{\"Results\":{\"unterminated:1}}",
+            createDump("\"v\":tru"),
+            createDump("\"v\":truex"),
+            createDump("\"v\":nul"),
+            createDump("\"v\":fals"),
+            createDump("\"v\":nothing"),
+            createDump("\"tl\":."),
+            createDump("\"tl\":-."),
+            createDump("\"tl\":-"),
+            createDump("\"tl\":.5"),
+            createDump("\"tl\":-.5"),
+            createDump("\"tl\":1."),
+            createDump("\"tl\":1.e5"),
+            createDump("\"tl\":1e"),
+            createDump("\"tl\":1e+"),
+            createDump("\"tl\":1E-"),
+            createDump("\"tl\":+1"),
+            createDump("\"tl\":01"),
+            createDump("\"tl\":-00.5"),
+            // Malformed values are rejected even where they would be skipped
+            createDump("\"skipped\":[1.]"),
+            createDump("\"skipped\":{\"a\":-}"),
+        };
+
+        LimelightJsonParser parser = new LimelightJsonParser();
+        for (String dump : malformedDumps) {
+            assertTrue(parser.parse(SAMPLE_DUMP));
+            assertFalse(parser.parse(dump), "Parsed malformed dump: " + dump);
+            assertFalse(parser.isValid());
+            assertEquals(0, parser.getFiducials().getCount());
+            assertEquals(0, parser.getRetroTargets().getCount());
+        }
+    }
+
+    @Test
+    void acceptsLiteralsAndStrings () {
+        LimelightJsonParser parser = new LimelightJsonParser();
+        assertTrue(parser.parse(createDump(
+            "\"a\":true,\"b\":false,\"c\":null,\"d\":[true,null],\"e\":\"esc\\\"aped\",\"tl\":3"
+        )));
+        assertEquals(3, parser.getPipelineLatencyMillis(), EPSILON);
+    }
+
+    @Test
+    void parsesNumberEdgeCases () {
+        assertEquals(0, parseNumber("0"), 0);
+        assertEquals(-12.5, parseNumber("-12.5"), EPSILON);
+        assertEquals(0.000123, parseNumber("0.000123"), EPSILON);
+        assertEquals(1500, parseNumber("1.5e3"), EPSILON);
+        assertEquals(0.02, parseNumber("2E-2"), EPSILON);
+        assertEquals(100, parseNumber("1e+2"), EPSILON);
+        assertEquals(-2.5e-7, parseNumber("-25e-8"), 1e-20);
+        assertEquals(1.25e100, parseNumber("1.25e100"), 1e88);
+
+        // Powers of ten beyond the exact range are applied in steps, so the largest numbers are off by a few ulps
+        assertEquals(Double.MAX_VALUE, parseNumber("1.7976931348623157e308"), Double.MAX_VALUE * 1e-15);
+        assertEquals(4.9e-324, parseNumber("4.9e-324"), 4.9e-324);
+
+        // Zero stays zero however large its exponent, rather than becoming zero times infinity
+        assertEquals(0, parseNumber("0e400"), 0);
+        assertEquals(0, parseNumber("0.000e-400"), 0);
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(parseNumber("-0.0e400")));
+
+        // Numbers beyond the range of a double overflow or underflow as Double.parseDouble does
+        assertEquals(Double.POSITIVE_INFINITY, parseNumber("1e400"));
+        assertEquals(Double.NEGATIVE_INFINITY, parseNumber("-1e99999999999"));
+        assertEquals(0, parseNumber("1e-400"), 0);
+
+        // Digits beyond what a double holds are dropped, keeping their magnitude
+        assertEquals(Math.PI, parseNumber("3.14159265358979323846264338327950288"), 1e-15);
+        assertEquals(1.2345678901234568e23, parseNumber("123456789012345678901234"), 1e9);
+        assertEquals(1e-30, parseNumber("0.000000000000000000000000000001000000000000000000"), 1e-44);
+    }
+
+    @Test
+    void parseDoesNotAllocate () {
+        LimelightJsonParser parser = new LimelightJsonParser();
+        assertDoesNotAllocate("parse", () -> {
+            for (int i = 0; i < 20_000; i ++) {
+                parser.parse(SAMPLE_DUMP);
+            }
+        });
+
+        assertTrue(parser.isValid());
+    }
+
+}
@@ -0,0 +1,160 @@
+package frc.robot.subsystems.swerve;
+
+import static frc.robot.AllocationAssertions.assertDoesNotAllocate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.geometry.Translation2d;
+
+class SwerveModuleControlTest {
+
+    private static final double
+        MAX_STEER_VOLTS = 3,
+        MAX_WHEEL_SPEED = 4,
+        DT_SECS = 0.005,
+        EPSILON = 1e-9;
+
+    private static final SimpleMotorFeedforward
+        DRIVE_FEEDFORWARD = new SimpleMotorFeedforward(0.2, 2.5, 0.3),
+        STEER_FEEDFORWARD = new SimpleMotorFeedforward(0.14, 0.004, 0.0001);
+
+    private static final Translation2d[] MODULE_TRANSLATIONS = {
+        new Translation2d(0.3, 0.3),
+        new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3),
+        new Translation2d(-0.3, -0.3),
+    };
+
+    private static SwerveModuleControl createControl (double steerKP) {
+        return new SwerveModuleControl(
+            new RotationalPID(steerKP, 0, 0, 1),
+            MAX_STEER_VOLTS,
+            () -> DRIVE_FEEDFORWARD,
+            () -> STEER_FEEDFORWARD
+        );
+    }
+
+    @Test
+    void reversesInsteadOfSteeringPastNinetyDegrees () {
+        SwerveModuleControl control = createControl(0.01);
+
+        control.calculate(2, 170, 1, 0, 0, 0);
+        assertEquals(-2, control.getDriveSpeed(), EPSILON);
+        assertEquals(DRIVE_FEEDFORWARD.calculate(-2, -1), control.getDriveVolts(), EPSILON);
+        assertEquals(350, control.getSteerDegrees(), EPSILON);
+
+        control.calculate(2, 80, 1, 0, 0, 0);
+        assertEquals(2, control.getDriveSpeed(), EPSILON);
+        assertEquals(80, control.getSteerDegrees(), EPSILON);
+    }
+
+    @Test
+    void tractionLimitDropsTheSetpointAcceleration () {
+        SwerveModuleControl control = createControl(0.01);
+        control.setTractionLimit(1, 0.5);
+
+        control.calculate(3, 0, 4, 0, 0, 0);
+        assertEquals(1.5, control.getDriveSpeed(), EPSILON);
+        assertEquals(DRIVE_FEEDFORWARD.calculate(1.5, 0), control.getDriveVolts(), EPSILON);
+
+        control.calculate(1.2, 0, 4, 0, 0, 0);
+        assertEquals(DRIVE_FEEDFORWARD.calculate(1.2, 4), control.getDriveVolts(), EPSILON);
+    }
+
+    @Test
+    void stoppedModulesDoNotSteer () {
+        SwerveModuleControl control = createControl(0.01);
+
+        control.calculate(1, 45, 0, 0, 0, 0);
+        assertTrue(control.isSteering());
+
+        control.calculate(0, 90, 0, 0, 0, 0);
+        assertFalse(control.isSteering());
+        assertEquals(DRIVE_FEEDFORWARD.calculate(0, 0), control.getDriveVolts(), EPSILON);
+    }
+
+    @Test
+    void steerVoltsFollowTheSetpointMotion () {
+        // Without a steer PID, the steer output is only the feedforward
+        SwerveModuleControl control = createControl(0);
+
+        control.calculate(1, 30, 0, 200, 1000, 30);
+        double expected = STEER_FEEDFORWARD.kv * 200 + STEER_FEEDFORWARD.ka * 1000 + STEER_FEEDFORWARD.ks;
+        assertEquals(expected, control.calculateSteerVolts(30), EPSILON);
+        assertEquals(expected, control.getOnboardSteerFeedforwardVolts(), EPSILON);
+
+        control.calculate(1, 30, 0, -200, 0, 30);
+        assertEquals(-STEER_FEEDFORWARD.kv * 200 - STEER_FEEDFORWARD.ks, control.calculateSteerVolts(30), EPSILON);
+
+        // The output is capped however fast the setpoint moves
+        control.calculate(1, 30, 0, 5000, 0, 30);
+        assertEquals(MAX_STEER_VOLTS, control.calculateSteerVolts(30), EPSILON);
+
+        // A still setpoint needs no static friction compensation
+        control.calculate(1, 30, 0, 0, 0, 30);
+        assertEquals(0, control.calculateSteerVolts(30), EPSILON);
+        assertEquals(0, control.getOnboardSteerFeedforwardVolts(), EPSILON);
+    }
+
+    /**
+     * Run both of {@link Swerve}'s drive paths, from the desired chassis speeds to the motor outputs of every module,
+     * as {@link Swerve#moveRobotRelative} and {@link SwerveModule#update} do each cycle.
+     */
+    private static void runDrivePaths (
+            SwerveModuleStateBank directStates,
+            SwerveSetpointGenerator generator,
+            SwerveModuleControl[] controls,
+            double[] speeds,
+            int iterations
+        ) {
+        for (int i = 0; i < iterations; i ++) {
+            double currentDegrees = i * 0.5;
+
+            speeds[0] = Math.sin(i * 0.01) * 5;
+            speeds[1] = Math.cos(i * 0.013) * 5;
+            speeds[2] = Math.sin(i * 0.007) * 6;
+            LatencyCompensator.discretize(speeds, DT_SECS);
+
+            directStates.setFromChassisSpeeds(speeds[0], speeds[1], speeds[2]);
+            directStates.desaturate(MAX_WHEEL_SPEED);
+            generator.calculate(speeds[0], speeds[1], speeds[2], MAX_WHEEL_SPEED, DT_SECS);
+            SwerveModuleStateBank setpoint = generator.getModuleStates();
+
+            for (int module = 0; module < controls.length; module ++) {
+                SwerveModuleControl control = controls[module];
+                control.calculate(directStates.getSpeed(module), directStates.getAngleDegrees(module), 0, 0, 0, currentDegrees);
+                control.calculateSteerVolts(currentDegrees);
+
+                control.calculate(
+                    setpoint.getSpeed(module),
+                    setpoint.getAngleDegrees(module),
+                    setpoint.getAcceleration(module),
+                    setpoint.getSteerVelocity(module),
+                    setpoint.getSteerAcceleration(module),
+                    currentDegrees
+                );
+                control.calculateSteerVolts(currentDegrees);
+                control.getOnboardSteerFeedforwardVolts();
+            }
+        }
+    }
+
+    @Test
+    void drivePathsDoNotAllocate () {
+        SwerveModuleStateBank directStates = new SwerveModuleStateBank(MODULE_TRANSLATIONS);
+        SwerveSetpointGenerator generator = new SwerveSetpointGenerator(MODULE_TRANSLATIONS, 10, 30, () -> 600);
+        SwerveModuleControl[] controls = new SwerveModuleControl[MODULE_TRANSLATIONS.length];
+        for (int i = 0; i < controls.length; i ++) {
+            controls[i] = createControl(0.01);
+            controls[i].setTractionLimit(0, 2);
+        }
+
+        double[] speeds = new double[3];
+        assertDoesNotAllocate("The drive paths", () -> runDrivePaths(directStates, generator, controls, speeds, 100_000));
+    }
+
+}
@@ -0,0 +1,81 @@
+package frc.robot.subsystems.swerve;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+class SwerveModuleStateBankTest {
+
+    private static final double
+        MAX_WHEEL_SPEED = 4,
+        EPSILON = 1e-9;
+
+    private static final Translation2d[] MODULE_TRANSLATIONS = {
+        new Translation2d(0.3, 0.3),
+        new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3),
+        new Translation2d(-0.3, -0.3),
+    };
+
+    private static void assertAnglesEqual (double expectedDegrees, double actualDegrees) {
+        assertEquals(0, MathUtil.inputModulus(actualDegrees - expectedDegrees, -180, 180), 1e-6);
+    }
+
+    @Test
+    void matchesWPILibKinematics () {
+        SwerveDriveKinematics kinematics = new SwerveDriveKinematics(MODULE_TRANSLATIONS);
+        SwerveModuleStateBank states = new SwerveModuleStateBank(MODULE_TRANSLATIONS);
+
+        double[][] chassisSpeeds = { {1, 0, 0}, {0, -2, 0}, {0, 0, 3}, {2.5, 1.5, -4}, {6, 6, 2} };
+        for (double[] speeds : chassisSpeeds) {
+            SwerveModuleState[] expected = kinematics.toSwerveModuleStates(new ChassisSpeeds(speeds[0], speeds[1], speeds[2]));
+            SwerveDriveKinematics.desaturateWheelSpeeds(expected, MAX_WHEEL_SPEED);
+
+            states.setFromChassisSpeeds(speeds[0], speeds[1], speeds[2]);
+            states.desaturate(MAX_WHEEL_SPEED);
+
+            for (int i = 0; i < states.size(); i ++) {
+                assertEquals(expected[i].speedMetersPerSecond, states.getSpeed(i), 1e-6);
+                assertAnglesEqual(expected[i].angle.getDegrees(), states.getAngleDegrees(i));
+            }
+        }
+    }
+
+    @Test
+    void stoppingKeepsTheLastAngles () {
+        SwerveModuleStateBank states = new SwerveModuleStateBank(MODULE_TRANSLATIONS);
+        states.setFromChassisSpeeds(0, 1, 0);
+        states.setFromChassisSpeeds(0, 0, 0);
+
+        for (int i = 0; i < states.size(); i ++) {
+            assertEquals(0, states.getSpeed(i), EPSILON);
+            assertEquals(90, states.getAngleDegrees(i), EPSILON);
+        }
+    }
+
+    @Test
+    void ignoredModulesDoNotLimitDesaturation () {
+        // A module far from the others is the fastest when rotating, so it limits the others unless ignored
+        SwerveModuleStateBank states = new SwerveModuleStateBank(
+            new Translation2d(2, 0),
+            new Translation2d(0.3, -0.3),
+            new Translation2d(-0.3, 0.3),
+            new Translation2d(-0.3, -0.3)
+        );
+
+        states.setFromChassisSpeeds(0, 0, 4);
+        assertEquals(0.5, states.desaturate(MAX_WHEEL_SPEED), EPSILON);
+
+        states.setIgnored(0, true);
+        states.setFromChassisSpeeds(0, 0, 4);
+        assertEquals(1, states.desaturate(MAX_WHEEL_SPEED), EPSILON);
+        assertEquals(4 * Math.hypot(0.3, 0.3), states.getSpeed(1), EPSILON);
+    }
+
+}
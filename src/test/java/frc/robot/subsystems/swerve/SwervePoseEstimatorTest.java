@@ -0,0 +1,239 @@
+package frc.robot.subsystems.swerve;
+
+import static frc.robot.AllocationAssertions.assertDoesNotAllocate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+
+class SwervePoseEstimatorTest {
+
+    private static final double PERIOD_SECS = 0.004, EPSILON = 1e-9;
+    private static final int CAPACITY = 512;
+
+    private static final Translation2d[] MODULE_TRANSLATIONS = {
+        new Translation2d(0.3, 0.3),
+        new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3),
+        new Translation2d(-0.3, -0.3),
+    };
+
+    /**
+     * Odometry inputs for a robot driving at constant robot-relative speeds from the origin, facing along x.
+     */
+    private static class Trajectory {
+        private final double vx, vy, omega;
+        private final double[] moduleSpeeds = new double[MODULE_TRANSLATIONS.length];
+        private final double[] anglesDegrees = new double[MODULE_TRANSLATIONS.length];
+        private final double[] distances = new double[MODULE_TRANSLATIONS.length];
+
+        private Trajectory (double vx, double vy, double omega) {
+            this.vx = vx;
+            this.vy = vy;
+            this.omega = omega;
+
+            // The chassis speeds are constant, so each module has a constant speed and robot-relative angle
+            for (int i = 0; i < MODULE_TRANSLATIONS.length; i ++) {
+                double moduleVx = vx - omega * MODULE_TRANSLATIONS[i].getY();
+                double moduleVy = vy + omega * MODULE_TRANSLATIONS[i].getX();
+                moduleSpeeds[i] = Math.hypot(moduleVx, moduleVy);
+                anglesDegrees[i] = Math.toDegrees(Math.atan2(moduleVy, moduleVx));
+            }
+        }
+
+        private double getTimestamp (int step) {
+            return step * PERIOD_SECS;
+        }
+
+        private double getGyroAngle (int step) {
+            return omega * getTimestamp(step);
+        }
+
+        private double[] getDistances (int step) {
+            for (int i = 0; i < distances.length; i ++) {
+                distances[i] = moduleSpeeds[i] * getTimestamp(step);
+            }
+            return distances;
+        }
+
+        /**
+         * Get the exact pose at the given step, by integrating the constant chassis speeds along an arc.
+         */
+        private Pose2d getPose (int step) {
+            double t = getTimestamp(step);
+            double theta = omega * t;
+            if (omega == 0) return new Pose2d(vx * t, vy * t, new Rotation2d());
+
+            double sinTerm = Math.sin(theta) / omega, cosTerm = (1 - Math.cos(theta)) / omega;
+            return new Pose2d(vx * sinTerm - vy * cosTerm, vx * cosTerm + vy * sinTerm, new Rotation2d(theta));
+        }
+
+        private SwerveModulePosition[] getModulePositions (int step) {
+            SwerveModulePosition[] positions = new SwerveModulePosition[MODULE_TRANSLATIONS.length];
+            for (int i = 0; i < positions.length; i ++) {
+                positions[i] = new SwerveModulePosition(
+                    moduleSpeeds[i] * getTimestamp(step),
+                    Rotation2d.fromDegrees(anglesDegrees[i])
+                );
+            }
+            return positions;
+        }
+    }
+
+    private static SwervePoseEstimator createEstimator (Trajectory trajectory) {
+        SwervePoseEstimator estimator = new SwervePoseEstimator(MODULE_TRANSLATIONS, CAPACITY);
+        estimator.resetPosition(trajectory.getGyroAngle(0), trajectory.getDistances(0), new Pose2d());
+        return estimator;
+    }
+
+    private static void drive (SwervePoseEstimator estimator, Trajectory trajectory, int fromStep, int toStep) {
+        for (int step = fromStep; step <= toStep; step ++) {
+            estimator.update(
+                trajectory.getTimestamp(step),
+                trajectory.getGyroAngle(step),
+                trajectory.getDistances(step),
+                trajectory.anglesDegrees
+            );
+        }
+    }
+
+    private static void assertPose (Pose2d expected, SwervePoseEstimator estimator, double tolerance) {
+        assertEquals(expected.getX(), estimator.getX(), tolerance);
+        assertEquals(expected.getY(), estimator.getY(), tolerance);
+        assertEquals(0, MathUtil.angleModulus(expected.getRotation().getRadians() - estimator.getThetaRadians()), tolerance);
+    }
+
+    @Test
+    void followsStraightLine () {
+        Trajectory trajectory = new Trajectory(2, 1, 0);
+        SwervePoseEstimator estimator = createEstimator(trajectory);
+
+        drive(estimator, trajectory, 1, 400);
+        assertPose(trajectory.getPose(400), estimator, EPSILON);
+    }
+
+    @Test
+    void followsArc () {
+        Trajectory trajectory = new Trajectory(2, 0.5, 1.5);
+        SwervePoseEstimator estimator = createEstimator(trajectory);
+
+        // Drive past the history capacity, so the ring buffer wraps
+        for (int step = 1; step <= 2 * CAPACITY; step ++) {
+            drive(estimator, trajectory, step, step);
+            if (step % 100 == 0) assertPose(trajectory.getPose(step), estimator, 1e-6);
+        }
+    }
+
+    @Test
+    void zeroWeightModulesAreIgnored () {
+        Trajectory trajectory = new Trajectory(2, 0, 1);
+        SwervePoseEstimator estimator = createEstimator(trajectory);
+        estimator.setModuleWeight(0, 0);
+
+        // The ignored module's wheel slips, measuring twice the distance it actually drove
+        for (int step = 1; step <= 250; step ++) {
+            double[] distances = trajectory.getDistances(step);
+            distances[0] *= 2;
+            estimator.update(trajectory.getTimestamp(step), trajectory.getGyroAngle(step), distances, trajectory.anglesDegrees);
+        }
+
+        assertPose(trajectory.getPose(250), estimator, 1e-6);
+    }
+
+    @Test
+    void visionMeasurementCorrectsPastPoseAndReplaysOdometry () {
+        Trajectory trajectory = new Trajectory(2, 0, 0);
+        SwervePoseEstimator estimator = createEstimator(trajectory);
+        drive(estimator, trajectory, 1, 250);
+
+        // A measurement half a meter to the left of the pose at step 125, trusted as much as odometry, moves the
+        // estimate halfway there. Driving straight along x, the correction carries through to the current pose.
+        Pose2d pastPose = trajectory.getPose(125);
+        estimator.addVisionMeasurement(pastPose.getX(), pastPose.getY() + 0.5, 0, trajectory.getTimestamp(125), 0.1, 0.1, 0.1);
+
+        Pose2d expected = trajectory.getPose(250);
+        assertEquals(expected.getX(), estimator.getX(), 1e-9);
+        assertEquals(expected.getY() + 0.25, estimator.getY(), 1e-9);
+        assertEquals(0, estimator.getThetaRadians(), 1e-9);
+
+        // Later odometry continues from the corrected pose
+        drive(estimator, trajectory, 251, 300);
+        assertEquals(trajectory.getPose(300).getX(), estimator.getX(), 1e-9);
+        assertEquals(0.25, estimator.getY(), 1e-9);
+    }
+
+    @Test
+    void visionMeasurementsOutsideTheHistoryAreIgnored () {
+        Trajectory trajectory = new Trajectory(2, 0, 0);
+        SwervePoseEstimator estimator = createEstimator(trajectory);
+        drive(estimator, trajectory, 1, 2 * CAPACITY);
+
+        estimator.addVisionMeasurement(0, 5, 0, trajectory.getTimestamp(CAPACITY - 1));
+        estimator.addVisionMeasurement(0, 5, 0, trajectory.getTimestamp(2 * CAPACITY + 1));
+        assertPose(trajectory.getPose(2 * CAPACITY), estimator, EPSILON);
+    }
+
+    @Test
+    void matchesWPILibEstimator () {
+        Trajectory trajectory = new Trajectory(2, 0.5, 1.5);
+        SwervePoseEstimator estimator = createEstimator(trajectory);
+        SwerveDrivePoseEstimator wpilibEstimator = new SwerveDrivePoseEstimator(
+            new SwerveDriveKinematics(MODULE_TRANSLATIONS),
+            new Rotation2d(),
+            trajectory.getModulePositions(0),
+            new Pose2d()
+        );
+
+        for (int step = 1; step <= 300; step ++) {
+            drive(estimator, trajectory, step, step);
+            wpilibEstimator.updateWithTime(
+                trajectory.getTimestamp(step),
+                new Rotation2d(trajectory.getGyroAngle(step)),
+                trajectory.getModulePositions(step)
+            );
+
+            // A measurement from 20 updates ago, offset from the true pose there
+            if (step % 25 == 0) {
+                Pose2d truePose = trajectory.getPose(step - 20);
+                Pose2d visionPose = new Pose2d(truePose.getX() + 0.2, truePose.getY() - 0.1, truePose.getRotation().plus(Rotation2d.fromDegrees(3)));
+                estimator.addVisionMeasurement(
+                    visionPose.getX(),
+                    visionPose.getY(),
+                    visionPose.getRotation().getRadians(),
+                    trajectory.getTimestamp(step - 20)
+                );
+                wpilibEstimator.addVisionMeasurement(visionPose, trajectory.getTimestamp(step - 20));
+            }
+
+            Pose2d expected = wpilibEstimator.getEstimatedPosition();
+            assertEquals(expected.getX(), estimator.getX(), 1e-6);
+            assertEquals(expected.getY(), estimator.getY(), 1e-6);
+            assertEquals(0, MathUtil.angleModulus(expected.getRotation().getRadians() - estimator.getThetaRadians()), 1e-6);
+        }
+    }
+
+    @Test
+    void updatesAndVisionMeasurementsDoNotAllocate () {
+        Trajectory trajectory = new Trajectory(2, 0.5, 1.5);
+        SwervePoseEstimator estimator = createEstimator(trajectory);
+        Pose2d origin = new Pose2d();
+
+        assertDoesNotAllocate("The estimator", () -> {
+            estimator.resetPosition(trajectory.getGyroAngle(0), trajectory.getDistances(0), origin);
+            for (int step = 1; step <= 20_000; step ++) {
+                drive(estimator, trajectory, step, step);
+                if (step % 10 == 0 && step > 25) {
+                    estimator.addVisionMeasurement(0, 0, 0, trajectory.getTimestamp(step - 25), 0.5, 0.5, 0.5);
+                }
+            }
+        });
+    }
+
+}
@@ -0,0 +1,250 @@
+package frc.robot.subsystems.swerve;
+
+import static frc.robot.AllocationAssertions.assertDoesNotAllocate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+class SwerveSetpointGeneratorTest {
+
+    private static final double
+        MAX_DRIVE_ACCEL = 10,
+        MAX_ANGULAR_ACCEL = 30,
+        MAX_STEER_VELOCITY_DEGREES_PER_SEC = 600,
+        UNLIMITED = 1e9,
+        MAX_WHEEL_SPEED = 4,
+        DT_SECS = 0.02,
+        EPSILON = 1e-9;
+
+    /**
+     * Steer limits are found by bisection, which is only accurate to about 0.1% of a step.
+     */
+    private static final double STEER_TOLERANCE_DEGREES = 0.5;
+
+    private static final Translation2d[] MODULE_TRANSLATIONS = {
+        new Translation2d(0.3, 0.3),
+        new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3),
+        new Translation2d(-0.3, -0.3),
+    };
+
+    private static SwerveSetpointGenerator createGenerator () {
+        return createGenerator(MAX_DRIVE_ACCEL, MAX_STEER_VELOCITY_DEGREES_PER_SEC);
+    }
+
+    private static SwerveSetpointGenerator createGenerator (double maxDriveAccel, double maxSteerVelocity) {
+        return new SwerveSetpointGenerator(MODULE_TRANSLATIONS, maxDriveAccel, MAX_ANGULAR_ACCEL, () -> maxSteerVelocity);
+    }
+
+    private static ChassisSpeeds getChassisSpeeds (SwerveSetpointGenerator generator) {
+        ChassisSpeeds speeds = new ChassisSpeeds();
+        generator.getChassisSpeeds(speeds);
+        return speeds;
+    }
+
+    /**
+     * Run the generator until it reaches the desired speeds, or fail if it takes more than the given number of steps.
+     */
+    private static void runUntilReached (SwerveSetpointGenerator generator, double vx, double vy, double omega, int maxSteps) {
+        for (int step = 0; step < maxSteps; step ++) {
+            generator.calculate(vx, vy, omega, MAX_WHEEL_SPEED, DT_SECS);
+            ChassisSpeeds speeds = getChassisSpeeds(generator);
+            if (
+                Math.abs(speeds.vxMetersPerSecond - vx) < EPSILON &&
+                Math.abs(speeds.vyMetersPerSecond - vy) < EPSILON &&
+                Math.abs(speeds.omegaRadiansPerSecond - omega) < EPSILON
+            ) return;
+        }
+
+        throw new AssertionError("The setpoint did not reach the desired speeds in " + maxSteps + " steps");
+    }
+
+    /**
+     * Get how far a module has to steer to go from one angle to another, allowing for drive direction reversal.
+     */
+    private static double getSteerDegrees (double fromDegrees, double toDegrees) {
+        double steer = Math.abs(MathUtil.inputModulus(toDegrees - fromDegrees, -180, 180));
+        return steer > 90 ? 180 - steer : steer;
+    }
+
+    private static double[] getModuleAngles (SwerveSetpointGenerator generator) {
+        SwerveModuleStateBank states = generator.getModuleStates();
+        double[] angles = new double[states.size()];
+        for (int i = 0; i < angles.length; i ++) {
+            angles[i] = states.getAngleDegrees(i);
+        }
+        return angles;
+    }
+
+    @Test
+    void accelerationIsLimited () {
+        SwerveSetpointGenerator generator = createGenerator();
+
+        for (int step = 1; step <= 10; step ++) {
+            generator.calculate(3, 0, 0, MAX_WHEEL_SPEED, DT_SECS);
+            assertEquals(MAX_DRIVE_ACCEL * DT_SECS * step, getChassisSpeeds(generator).vxMetersPerSecond, EPSILON);
+        }
+
+        runUntilReached(generator, 3, 0, 0, 100);
+    }
+
+    @Test
+    void angularAccelerationIsLimited () {
+        SwerveSetpointGenerator generator = createGenerator(UNLIMITED, UNLIMITED);
+
+        generator.calculate(0, 0, 5, MAX_WHEEL_SPEED, DT_SECS);
+        assertEquals(MAX_ANGULAR_ACCEL * DT_SECS, getChassisSpeeds(generator).omegaRadiansPerSecond, EPSILON);
+    }
+
+    @Test
+    void steerRateIsLimited () {
+        SwerveSetpointGenerator generator = createGenerator(UNLIMITED, MAX_STEER_VELOCITY_DEGREES_PER_SEC);
+        runUntilReached(generator, 2, 0, 0, 100);
+
+        // Turning the direction of travel by 90 degrees has to be spread over several steps
+        double maxSteerPerStep = MAX_STEER_VELOCITY_DEGREES_PER_SEC * DT_SECS;
+        double[] previousAngles = getModuleAngles(generator);
+        int steps = 0;
+
+        while (Math.abs(getChassisSpeeds(generator).vyMetersPerSecond - 2) > EPSILON) {
+            generator.calculate(0, 2, 0, MAX_WHEEL_SPEED, DT_SECS);
+            double[] angles = getModuleAngles(generator);
+            for (int i = 0; i < angles.length; i ++) {
+                assertTrue(getSteerDegrees(previousAngles[i], angles[i]) <= maxSteerPerStep + STEER_TOLERANCE_DEGREES);
+            }
+
+            previousAngles = angles;
+            assertTrue(++ steps < 100, "The setpoint did not reach the desired speeds");
+        }
+
+        assertTrue(steps >= 90 / maxSteerPerStep, "The modules steered faster than the steer limit allows");
+    }
+
+    @Test
+    void reversalSlowsDownInsteadOfSteering () {
+        SwerveSetpointGenerator generator = createGenerator();
+        runUntilReached(generator, 2, 0, 0, 100);
+
+        double previousVx = getChassisSpeeds(generator).vxMetersPerSecond;
+        for (int step = 0; step < 100; step ++) {
+            generator.calculate(-2, 0, 0, MAX_WHEEL_SPEED, DT_SECS);
+            ChassisSpeeds speeds = getChassisSpeeds(generator);
+
+            // The robot decelerates straight through zero without veering sideways, and the modules never need
+            // to steer since they can reverse their drive direction instead
+            assertEquals(0, speeds.vyMetersPerSecond, EPSILON);
+            assertTrue(previousVx - speeds.vxMetersPerSecond <= MAX_DRIVE_ACCEL * DT_SECS + EPSILON);
+            for (double angle : getModuleAngles(generator)) {
+                assertEquals(0, getSteerDegrees(0, angle), EPSILON);
+            }
+
+            previousVx = speeds.vxMetersPerSecond;
+            if (previousVx == -2) return;
+        }
+
+        throw new AssertionError("The setpoint did not reverse");
+    }
+
+    @Test
+    void setpointRatesFollowTheModules () {
+        SwerveSetpointGenerator generator = createGenerator();
+        runUntilReached(generator, 2, 0, 0, 100);
+
+        // Decelerating straight through zero, each module's acceleration along its own angle is the robot's
+        // deceleration, even once the module angles flip around
+        for (int step = 0; step < 20; step ++) {
+            generator.calculate(-2, 0, 0, MAX_WHEEL_SPEED, DT_SECS);
+            SwerveModuleStateBank states = generator.getModuleStates();
+            for (int i = 0; i < states.size(); i ++) {
+                double accelX = states.getAcceleration(i) * Math.cos(Math.toRadians(states.getAngleDegrees(i)));
+                assertEquals(-MAX_DRIVE_ACCEL, accelX, 1e-6);
+                assertEquals(0, states.getSteerVelocity(i), EPSILON);
+            }
+        }
+
+        // Turning left, the modules steer counterclockwise no faster than the steer limit
+        runUntilReached(generator, 2, 0, 0, 100);
+        generator.calculate(0, 2, 0, MAX_WHEEL_SPEED, DT_SECS);
+        SwerveModuleStateBank states = generator.getModuleStates();
+        for (int i = 0; i < states.size(); i ++) {
+            assertTrue(states.getSteerVelocity(i) > 0);
+            assertTrue(states.getSteerVelocity(i) <= MAX_STEER_VELOCITY_DEGREES_PER_SEC + STEER_TOLERANCE_DEGREES / DT_SECS);
+            assertEquals(states.getSteerVelocity(i) / DT_SECS, states.getSteerAcceleration(i), 1e-6);
+        }
+    }
+
+    @Test
+    void wheelSpeedsAreDesaturatedKeepingDirection () {
+        SwerveSetpointGenerator generator = new SwerveSetpointGenerator(MODULE_TRANSLATIONS, UNLIMITED, UNLIMITED, () -> UNLIMITED);
+        generator.calculate(6, 6, 2, MAX_WHEEL_SPEED, DT_SECS);
+
+        SwerveModuleStateBank states = generator.getModuleStates();
+        double fastest = 0;
+        for (int i = 0; i < states.size(); i ++) {
+            fastest = Math.max(fastest, states.getSpeed(i));
+        }
+        assertEquals(MAX_WHEEL_SPEED, fastest, 1e-6);
+
+        // The whole chassis velocity is scaled, so its direction and curvature are kept
+        ChassisSpeeds speeds = getChassisSpeeds(generator);
+        assertEquals(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, EPSILON);
+        assertEquals(1. / 3, speeds.omegaRadiansPerSecond / speeds.vxMetersPerSecond, EPSILON);
+    }
+
+    @Test
+    void stoppedModulesSteerFreely () {
+        SwerveSetpointGenerator generator = createGenerator();
+
+        // Starting from rest, the modules point straight at the new direction instead of being steer limited, while
+        // moving slowly enough to still count as stopped
+        generator.calculate(0, 1, 0, MAX_WHEEL_SPEED, DT_SECS);
+        assertTrue(getChassisSpeeds(generator).vyMetersPerSecond > 0);
+        for (double angle : getModuleAngles(generator)) {
+            assertEquals(90, angle, EPSILON);
+        }
+
+        // Once they point the right way, they accelerate normally
+        runUntilReached(generator, 0, 1, 0, 100);
+    }
+
+    @Test
+    void ignoredModulesDoNotLimitTheSetpoint () {
+        // A module far from the others is the fastest when rotating, so it limits the rotation rate unless ignored
+        Translation2d[] translations = {
+            new Translation2d(2, 0),
+            new Translation2d(0.3, -0.3),
+            new Translation2d(-0.3, 0.3),
+            new Translation2d(-0.3, -0.3),
+        };
+
+        SwerveSetpointGenerator generator = new SwerveSetpointGenerator(translations, UNLIMITED, UNLIMITED, () -> UNLIMITED);
+        generator.calculate(0, 0, 20, MAX_WHEEL_SPEED, DT_SECS);
+        assertEquals(MAX_WHEEL_SPEED / 2, getChassisSpeeds(generator).omegaRadiansPerSecond, 1e-6);
+
+        generator.reset();
+        generator.setModuleIgnored(0, true);
+        generator.calculate(0, 0, 20, MAX_WHEEL_SPEED, DT_SECS);
+        assertEquals(MAX_WHEEL_SPEED / Math.hypot(0.3, 0.3), getChassisSpeeds(generator).omegaRadiansPerSecond, 1e-6);
+    }
+
+    /**
+     * Run the generator through a mix of feasible and limited setpoints.
+     */
+    private static void runMixedSetpoints (SwerveSetpointGenerator generator, int iterations) {
+        for (int i = 0; i < iterations; i ++) {
+            generator.calculate(Math.sin(i * 0.01) * 3, Math.cos(i * 0.013) * 3, Math.sin(i * 0.007) * 4, MAX_WHEEL_SPEED, DT_SECS);
+        }
+    }
+
+    @Test
+    void calculateDoesNotAllocate () {
+        SwerveSetpointGenerator generator = createGenerator();
+        assertDoesNotAllocate("calculate", () -> runMixedSetpoints(generator, 100_000));
+    }
+
+}